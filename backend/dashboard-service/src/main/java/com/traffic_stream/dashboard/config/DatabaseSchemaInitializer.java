@@ -0,0 +1,95 @@
+package com.traffic_stream.dashboard.config;
+
+import jakarta.annotation.PostConstruct;
+import com.traffic_stream.dashboard.repository.TrafficRollupRepository;
+import com.traffic_stream.dashboard.repository.TrafficSketchRepository;
+import jakarta.persistence.EntityManagerFactory;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Bổ sung các ràng buộc mà Hibernate (ddl-auto=update) không quản lý tốt.
+ * <p>
+ * Natural key (camera_id, timestamp) của traffic_metrics được tạo ở đây thay vì
+ * khai báo trên entity, vì Hibernate sẽ drop/recreate unique constraint mỗi lần
+ * khởi động. Bean này phụ thuộc EntityManagerFactory nên luôn chạy sau khi bảng
+ * đã được tạo và trước khi Kafka listener bắt đầu consume.
+ * </p>
+ * <p>
+ * Các bảng rollup (traffic_rollup_*) và sketch (traffic_sketch_*) cũng được tạo ở đây vì khóa chính là (key, bucket)
+ * và chỉ được ghi bằng upsert JDBC.
+ * </p>
+ */
+@Component
+@Slf4j
+public class DatabaseSchemaInitializer {
+
+    static final String TRAFFIC_NATURAL_KEY = "uk_traffic_camera_time";
+    /** Index thường cũ trên cùng cột (camera_id, timestamp), thừa khi đã có unique key. */
+    static final String LEGACY_CAMERA_TIME_INDEX = "idx_traffic_camera_time";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TrafficRollupRepository rollupRepository;
+    private final TrafficSketchRepository sketchRepository;
+
+    public DatabaseSchemaInitializer(JdbcTemplate jdbcTemplate,
+                                     EntityManagerFactory entityManagerFactory,
+                                     TrafficRollupRepository rollupRepository,
+                                     TrafficSketchRepository sketchRepository) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.rollupRepository = rollupRepository;
+        this.sketchRepository = sketchRepository;
+    }
+
+    @PostConstruct
+    public void initialize() {
+        ensureTrafficMetricNaturalKey();
+        ensureRollupTables();
+    }
+
+    private void ensureRollupTables() {
+        for (String ddl : rollupRepository.ddlStatements()) {
+            jdbcTemplate.execute(ddl);
+        }
+        for (String ddl : sketchRepository.ddlStatements()) {
+            jdbcTemplate.execute(ddl);
+        }
+    }
+
+    private void ensureTrafficMetricNaturalKey() {
+        createTrafficMetricNaturalKey();
+        dropLegacyCameraTimeIndex();
+    }
+
+    private void createTrafficMetricNaturalKey() {
+        Integer existing = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM pg_indexes WHERE tablename = 'traffic_metrics' AND indexname = ?",
+                Integer.class, TRAFFIC_NATURAL_KEY);
+        if (existing != null && existing > 0) {
+            return;
+        }
+
+        log.info("Creating unique key {} on traffic_metrics(camera_id, timestamp)...", TRAFFIC_NATURAL_KEY);
+
+        // Xóa các bản ghi trùng do redelivery trước đây, giữ lại bản ghi có id nhỏ nhất
+        int removed = jdbcTemplate.update(
+                "DELETE FROM traffic_metrics t USING traffic_metrics d " +
+                "WHERE t.camera_id = d.camera_id AND t.timestamp = d.timestamp AND t.id > d.id");
+        if (removed > 0) {
+            log.warn("Removed {} duplicate traffic_metrics rows before creating {}", removed, TRAFFIC_NATURAL_KEY);
+        }
+
+        jdbcTemplate.execute("CREATE UNIQUE INDEX IF NOT EXISTS " + TRAFFIC_NATURAL_KEY +
+                " ON traffic_metrics (camera_id, timestamp)");
+        log.info("✓ Unique key {} is ready", TRAFFIC_NATURAL_KEY);
+    }
+
+    /**
+     * Unique key đã phục vụ mọi truy vấn theo (camera_id, timestamp); giữ thêm index cũ chỉ làm chậm ingest
+     * (mỗi insert cập nhật 2 B-tree giống hệt) và tốn gấp đôi dung lượng.
+     */
+    private void dropLegacyCameraTimeIndex() {
+        jdbcTemplate.execute("DROP INDEX IF EXISTS " + LEGACY_CAMERA_TIME_INDEX);
+    }
+}
@@ -2,7 +2,11 @@ package com.traffic_stream.dashboard.config;
 
 import com.traffic_stream.dashboard.dto.TrafficMetricsDTO;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.common.serialization.Serializer;
 import org.apache.kafka.common.serialization.StringDeserializer;
+import org.apache.kafka.common.serialization.StringSerializer;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -10,10 +14,18 @@ import org.springframework.kafka.annotation.EnableKafka;
 import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
 import org.springframework.kafka.core.ConsumerFactory;
 import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.core.ProducerFactory;
+import org.springframework.kafka.listener.DefaultErrorHandler;
+import org.springframework.kafka.support.serializer.DelegatingByTypeSerializer;
 import org.springframework.kafka.support.serializer.ErrorHandlingDeserializer;
 import org.springframework.kafka.support.serializer.JsonDeserializer;
+import org.springframework.kafka.support.serializer.JsonSerializer;
+import org.springframework.util.backoff.ExponentialBackOff;
 
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 @Configuration
@@ -32,6 +44,15 @@ public class KafkaConfig {
     @Value("${spring.kafka.listener.concurrency}")
     private int concurrency;
 
+    @Value("${app.kafka.backoff.initial-interval-ms:1000}")
+    private long backOffInitialMs;
+
+    @Value("${app.kafka.backoff.multiplier:2.0}")
+    private double backOffMultiplier;
+
+    @Value("${app.kafka.backoff.max-interval-ms:60000}")
+    private long backOffMaxMs;
+
     @Bean
     public ConsumerFactory<String, TrafficMetricsDTO> consumerFactory() {
         Map<String, Object> props = new HashMap<>();
@@ -61,6 +82,59 @@ public class KafkaConfig {
         factory.setConsumerFactory(consumerFactory());
         factory.setBatchListener(true);
         factory.setConcurrency(concurrency); // Thiết lập số luồng xử lý song song
+        factory.setCommonErrorHandler(infrastructureErrorHandler());
+        return factory;
+    }
+
+    /**
+     * Listener ném lỗi khi DB/Kafka không dùng được: giữ nguyên batch, pause consumer và thử lại với back-off
+     * tăng dần tới max-interval, không giới hạn số lần (offset chưa commit nên không mất dữ liệu).
+     * Record hỏng không đi qua đây mà được listener chuyển sang retry topic.
+     */
+    private DefaultErrorHandler infrastructureErrorHandler() {
+        ExponentialBackOff backOff = new ExponentialBackOff(backOffInitialMs, backOffMultiplier);
+        backOff.setMaxInterval(backOffMaxMs);
+        return new DefaultErrorHandler(backOff);
+    }
+
+    /**
+     * Container cho retry topic: xử lý từng record (không batch), 1 luồng là đủ
+     * vì chỉ các record lỗi mới đi vào đây.
+     */
+    @Bean
+    public ConcurrentKafkaListenerContainerFactory<String, TrafficMetricsDTO> retryKafkaListenerContainerFactory() {
+        ConcurrentKafkaListenerContainerFactory<String, TrafficMetricsDTO> factory =
+                new ConcurrentKafkaListenerContainerFactory<>();
+        factory.setConsumerFactory(consumerFactory());
+        factory.setBatchListener(false);
+        factory.setConcurrency(1);
         return factory;
     }
+
+    /**
+     * Producer cho retry/dead-letter topic.
+     * DTO được ghi dưới dạng JSON (không kèm type header), còn byte[] (payload không deserialize được) ghi nguyên bản.
+     */
+    @Bean
+    public ProducerFactory<String, Object> metricsRetryProducerFactory() {
+        Map<String, Object> props = new HashMap<>();
+        props.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+        props.put(ProducerConfig.ACKS_CONFIG, "all");
+        props.put(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, true);
+
+        JsonSerializer<Object> jsonSerializer = new JsonSerializer<>();
+        jsonSerializer.setAddTypeInfo(false);
+
+        Map<Class<?>, Serializer<?>> delegates = new LinkedHashMap<>();
+        delegates.put(byte[].class, new ByteArraySerializer());
+        delegates.put(Object.class, jsonSerializer);
+
+        return new DefaultKafkaProducerFactory<>(props, new StringSerializer(),
+                new DelegatingByTypeSerializer(delegates, true));
+    }
+
+    @Bean
+    public KafkaTemplate<String, Object> metricsRetryKafkaTemplate() {
+        return new KafkaTemplate<>(metricsRetryProducerFactory());
+    }
 }
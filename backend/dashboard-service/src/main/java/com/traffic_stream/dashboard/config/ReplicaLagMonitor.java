@@ -0,0 +1,58 @@
+package com.traffic_stream.dashboard.config;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Đo độ trễ replay của read replica định kỳ và bật/tắt việc định tuyến đọc sang replica.
+ * <p>
+ * Replica đã replay hết WAL nhận được thì coi như trễ 0 (tránh báo trễ giả khi primary đang rảnh);
+ * ngược lại trễ = now() - thời điểm transaction cuối được replay.
+ * </p>
+ */
+@Component
+@Slf4j
+@ConditionalOnExpression("!'${app.datasource.replica.jdbc-url:}'.isEmpty()")
+public class ReplicaLagMonitor {
+
+    private static final String LAG_SQL =
+            "SELECT CASE WHEN NOT pg_is_in_recovery() THEN 0 " +
+            "WHEN pg_last_wal_receive_lsn() = pg_last_wal_replay_lsn() THEN 0 " +
+            "ELSE COALESCE(EXTRACT(EPOCH FROM now() - pg_last_xact_replay_timestamp()), 0) END";
+
+    private final ReplicaRoutingDataSource routingDataSource;
+    private final JdbcTemplate replicaJdbc;
+    private final double maxLagSeconds;
+
+    public ReplicaLagMonitor(ReplicaRoutingDataSource routingDataSource,
+                             MeterRegistry meterRegistry,
+                             @Value("${app.datasource.replica.max-lag-seconds:30}") double maxLagSeconds) {
+        this.routingDataSource = routingDataSource;
+        this.replicaJdbc = new JdbcTemplate(routingDataSource.getReplica());
+        this.replicaJdbc.setQueryTimeout(5);
+        this.maxLagSeconds = maxLagSeconds;
+
+        Gauge.builder("traffic.datasource.replica.lag.seconds", routingDataSource, ReplicaRoutingDataSource::getReplicaLagSeconds)
+                .register(meterRegistry);
+        Gauge.builder("traffic.datasource.replica.available", routingDataSource, r -> r.isReplicaAvailable() ? 1 : 0)
+                .register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${app.datasource.replica.health-check-interval-ms:5000}")
+    public void checkReplica() {
+        try {
+            Double lag = replicaJdbc.queryForObject(LAG_SQL, Double.class);
+            double lagSeconds = lag == null ? 0 : lag;
+            routingDataSource.updateReplicaStatus(lagSeconds <= maxLagSeconds, lagSeconds,
+                    "lag " + lagSeconds + "s > " + maxLagSeconds + "s");
+        } catch (Exception e) {
+            routingDataSource.markUnavailable("health check failed: " + e.getMessage());
+        }
+    }
+}
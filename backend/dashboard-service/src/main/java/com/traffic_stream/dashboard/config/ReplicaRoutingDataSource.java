@@ -0,0 +1,105 @@
+package com.traffic_stream.dashboard.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Map;
+
+/**
+ * Định tuyến connection theo loại transaction: transaction read-only đi vào replica, còn lại đi vào primary.
+ * <p>
+ * Phải được bọc trong LazyConnectionDataSourceProxy: JpaTransactionManager mở connection trước khi cờ
+ * read-only được gắn vào TransactionSynchronizationManager, proxy lùi việc lấy connection thật tới câu lệnh
+ * đầu tiên nên lúc đó mới quyết định được. Khi replica trễ quá ngưỡng hoặc không lấy được connection,
+ * truy vấn đọc quay về primary thay vì lỗi.
+ * </p>
+ */
+@Slf4j
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource {
+
+    enum Target { PRIMARY, REPLICA }
+
+    private final DataSource primary;
+    private final DataSource replica;
+
+    private volatile boolean replicaAvailable = true;
+    private volatile double replicaLagSeconds = 0;
+
+    public ReplicaRoutingDataSource(DataSource primary, DataSource replica) {
+        this.primary = primary;
+        this.replica = replica;
+        setTargetDataSources(Map.of(Target.PRIMARY, primary, Target.REPLICA, replica));
+        setDefaultTargetDataSource(primary);
+        afterPropertiesSet();
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        return useReplica() ? Target.REPLICA : Target.PRIMARY;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        if (!useReplica()) {
+            return primary.getConnection();
+        }
+        try {
+            return replica.getConnection();
+        } catch (SQLException e) {
+            markUnavailable("connection failed: " + e.getMessage());
+            return primary.getConnection();
+        }
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        if (!useReplica()) {
+            return primary.getConnection(username, password);
+        }
+        try {
+            return replica.getConnection(username, password);
+        } catch (SQLException e) {
+            markUnavailable("connection failed: " + e.getMessage());
+            return primary.getConnection(username, password);
+        }
+    }
+
+    private boolean useReplica() {
+        return replicaAvailable
+                && TransactionSynchronizationManager.isActualTransactionActive()
+                && TransactionSynchronizationManager.isCurrentTransactionReadOnly();
+    }
+
+    DataSource getReplica() {
+        return replica;
+    }
+
+    /**
+     * Cập nhật trạng thái replica sau mỗi lần đo độ trễ (ReplicaLagMonitor).
+     */
+    void updateReplicaStatus(boolean available, double lagSeconds, String reason) {
+        this.replicaLagSeconds = lagSeconds;
+        if (available && !replicaAvailable) {
+            log.info("Read replica is back (lag {}s), routing read-only transactions to replica", lagSeconds);
+        } else if (!available && replicaAvailable) {
+            log.warn("Read replica disabled ({}), routing read-only transactions to primary", reason);
+        }
+        this.replicaAvailable = available;
+    }
+
+    void markUnavailable(String reason) {
+        updateReplicaStatus(false, replicaLagSeconds, reason);
+    }
+
+    public boolean isReplicaAvailable() {
+        return replicaAvailable;
+    }
+
+    public double getReplicaLagSeconds() {
+        return replicaLagSeconds;
+    }
+}
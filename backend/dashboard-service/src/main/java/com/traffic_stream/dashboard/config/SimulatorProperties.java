@@ -0,0 +1,76 @@
+package com.traffic_stream.dashboard.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Cấu hình bộ sinh dữ liệu giả lập (chỉ dùng khi app.simulate=true).
+ */
+@Component
+@ConfigurationProperties(prefix = "app.simulator")
+@Getter
+@Setter
+public class SimulatorProperties {
+
+    public enum Target { KAFKA, DIRECT }
+
+    /** KAFKA: publish vào traffic_metrics_topic; DIRECT: gọi thẳng pipeline ingest (bỏ qua Kafka). */
+    private Target target = Target.KAFKA;
+
+    private int cameras = 700;
+
+    /** Danh sách quận; camera được chia đều theo vòng tròn. */
+    private List<String> districts = new ArrayList<>(List.of(
+            "Quận 1", "Quận 2", "Quận 3", "Quận 4", "Quận 5", "Quận 6", "Quận 7", "Quận 8",
+            "Quận 9", "Quận 10", "Quận 11", "Quận 12", "Quận Bình Thạnh", "Quận Thủ Đức",
+            "Quận Tân Bình", "Quận Tân Phú", "Quận Phú Nhuận", "Quận Gò Vấp", "Quận Bình Tân",
+            "Huyện Bình Chánh", "Huyện Củ Chi", "Huyện Hóc Môn", "Huyện Nhà Bè"));
+
+    /** Tổng số message/giây. 0 = mỗi camera 1 message mỗi camera-interval-ms (giống pipeline thật). */
+    private double rate = 0;
+
+    private long cameraIntervalMs = 15000;
+
+    private long tickMs = 100;
+
+    /** Số phương tiện trung bình mỗi frame ở giờ cao điểm. */
+    private double peakMeanCount = 40;
+
+    /** Tỉ lệ lưu lượng ban đêm so với cao điểm (0..1). */
+    private double nightFactor = 0.15;
+
+    /**
+     * Tỉ lệ các loại phương tiện (key giống detection_details của traffic-analysis-service).
+     * Thứ tự có ý nghĩa: key đầu là loại chiếm ưu thế và các loại được rút theo đúng thứ tự này.
+     */
+    private Map<String, Double> classMix = defaultClassMix();
+
+    /** Xác suất mỗi phút bắt đầu một đợt tăng đột biến ở một quận ngẫu nhiên. */
+    private double burstPerMinute = 0.2;
+
+    private double burstMultiplier = 3.0;
+
+    private long burstDurationSeconds = 120;
+
+    /** Seed cố định để các lần soak test có cùng tập camera và cùng chuỗi số ngẫu nhiên. */
+    private long seed = 42;
+
+    // Không dùng Map.of: thứ tự duyệt của nó đổi theo từng JVM, làm mất tính tất định của seed
+    private static Map<String, Double> defaultClassMix() {
+        Map<String, Double> mix = new LinkedHashMap<>();
+        mix.put("motorcycle", 0.74);
+        mix.put("car", 0.17);
+        mix.put("truck", 0.04);
+        mix.put("bus", 0.02);
+        mix.put("bicycle", 0.02);
+        mix.put("person", 0.01);
+        return mix;
+    }
+}
@@ -1,21 +1,99 @@
 package com.traffic_stream.dashboard.config;
 
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.messaging.simp.config.ChannelRegistration;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
+import org.springframework.messaging.support.AbstractSubscribableChannel;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketSession;
 import org.springframework.web.socket.config.annotation.*;
+import org.springframework.web.socket.handler.ConcurrentWebSocketSessionDecorator;
+import org.springframework.web.socket.handler.ConcurrentWebSocketSessionDecorator.OverflowStrategy;
+import org.springframework.web.socket.messaging.SubProtocolWebSocketHandler;
 
+/**
+ * Cấu hình STOMP broker.
+ * <p>
+ * Kế thừa trực tiếp DelegatingWebSocketMessageBrokerConfiguration (thay cho @EnableWebSocketMessageBroker)
+ * để có thể chọn OverflowStrategy cho session: client chậm bị ngắt khi vượt send-time-limit, còn khi
+ * vượt send-buffer-size-limit thì hoặc bị ngắt (TERMINATE) hoặc bị bỏ các frame cũ nhất đang chờ gửi (DROP),
+ * thay vì làm chậm các client khác. DROP không phải conflation: frame bị bỏ là mất hẳn (kể cả frame delta),
+ * client chỉ nhận lại giá trị mới khi field đó thay đổi ở frame sau.
+ * </p>
+ */
 @Configuration
-@EnableWebSocketMessageBroker
-public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
+public class WebSocketConfig extends DelegatingWebSocketMessageBrokerConfiguration {
+
+    @Value("${app.websocket.send-time-limit-ms:10000}")
+    private int sendTimeLimitMs;
+
+    @Value("${app.websocket.send-buffer-size-limit:524288}")
+    private int sendBufferSizeLimit;
+
+    @Value("${app.websocket.message-size-limit:65536}")
+    private int messageSizeLimit;
+
+    @Value("${app.websocket.overflow-strategy:DROP}")
+    private OverflowStrategy overflowStrategy;
+
+    @Value("${app.websocket.outbound-pool-size:8}")
+    private int outboundPoolSize;
+
     @Override
-    public void configureMessageBroker(MessageBrokerRegistry config) {
+    protected void configureMessageBroker(MessageBrokerRegistry config) {
+        super.configureMessageBroker(config);
         config.enableSimpleBroker("/topic");
         config.setApplicationDestinationPrefixes("/app");
     }
 
     @Override
-    public void registerStompEndpoints(StompEndpointRegistry registry) {
+    protected void registerStompEndpoints(StompEndpointRegistry registry) {
+        super.registerStompEndpoints(registry);
         // Allow all origins for websocket handshake and enable SockJS fallback
         registry.addEndpoint("/ws").setAllowedOriginPatterns("*").withSockJS();
     }
-}
\ No newline at end of file
+
+    @Override
+    protected void configureWebSocketTransport(WebSocketTransportRegistration registration) {
+        super.configureWebSocketTransport(registration);
+        registration.setSendTimeLimit(sendTimeLimitMs)
+                .setSendBufferSizeLimit(sendBufferSizeLimit)
+                .setMessageSizeLimit(messageSizeLimit);
+    }
+
+    @Override
+    protected void configureClientOutboundChannel(ChannelRegistration registration) {
+        super.configureClientOutboundChannel(registration);
+        registration.taskExecutor().corePoolSize(outboundPoolSize).maxPoolSize(outboundPoolSize);
+    }
+
+    @Bean
+    @Override
+    public WebSocketHandler subProtocolWebSocketHandler(AbstractSubscribableChannel clientInboundChannel,
+                                                        AbstractSubscribableChannel clientOutboundChannel) {
+        return new OverflowAwareSubProtocolWebSocketHandler(clientInboundChannel, clientOutboundChannel, overflowStrategy);
+    }
+
+    /**
+     * SubProtocolWebSocketHandler với OverflowStrategy cấu hình được cho từng session.
+     */
+    private static class OverflowAwareSubProtocolWebSocketHandler extends SubProtocolWebSocketHandler {
+
+        private final OverflowStrategy overflowStrategy;
+
+        OverflowAwareSubProtocolWebSocketHandler(AbstractSubscribableChannel clientInboundChannel,
+                                                 AbstractSubscribableChannel clientOutboundChannel,
+                                                 OverflowStrategy overflowStrategy) {
+            super(clientInboundChannel, clientOutboundChannel);
+            this.overflowStrategy = overflowStrategy;
+        }
+
+        @Override
+        protected WebSocketSession decorateSession(WebSocketSession session) {
+            return new ConcurrentWebSocketSessionDecorator(
+                    session, getSendTimeLimit(), getSendBufferSizeLimit(), overflowStrategy);
+        }
+    }
+}
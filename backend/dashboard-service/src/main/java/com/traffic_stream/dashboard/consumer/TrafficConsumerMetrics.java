@@ -0,0 +1,66 @@
+package com.traffic_stream.dashboard.consumer;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+
+/**
+ * Counter cho pipeline consume traffic_metrics_topic (xuất ra /actuator/prometheus).
+ */
+@Component
+public class TrafficConsumerMetrics {
+
+    private static final String RECORDS = "traffic.consumer.records";
+
+    private final Counter processed;
+    private final Counter deserializationFailed;
+    private final Counter sentToRetry;
+    private final Counter retrySucceeded;
+    private final Counter deadLettered;
+    private final Counter dltReplayed;
+    private final Counter batchBisections;
+    private final Counter infrastructureBackOffs;
+
+    public TrafficConsumerMetrics(MeterRegistry registry) {
+        this.processed = registry.counter(RECORDS, "outcome", "processed");
+        this.deserializationFailed = registry.counter(RECORDS, "outcome", "deserialization_failed");
+        this.sentToRetry = registry.counter(RECORDS, "outcome", "sent_to_retry");
+        this.retrySucceeded = registry.counter(RECORDS, "outcome", "retry_succeeded");
+        this.deadLettered = registry.counter(RECORDS, "outcome", "dead_lettered");
+        this.dltReplayed = registry.counter(RECORDS, "outcome", "dlt_replayed");
+        this.batchBisections = registry.counter("traffic.consumer.batch.bisections");
+        this.infrastructureBackOffs = registry.counter("traffic.consumer.batch.backoffs");
+    }
+
+    public void processed(int count) {
+        processed.increment(count);
+    }
+
+    public void deserializationFailed() {
+        deserializationFailed.increment();
+    }
+
+    public void sentToRetry(int count) {
+        sentToRetry.increment(count);
+    }
+
+    public void retrySucceeded() {
+        retrySucceeded.increment();
+    }
+
+    public void deadLettered() {
+        deadLettered.increment();
+    }
+
+    public void dltReplayed(int count) {
+        dltReplayed.increment(count);
+    }
+
+    public void bisection() {
+        batchBisections.increment();
+    }
+
+    public void infrastructureBackOff() {
+        infrastructureBackOffs.increment();
+    }
+}
@@ -1,37 +1,175 @@
 package com.traffic_stream.dashboard.consumer;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.traffic_stream.dashboard.dto.TrafficMetricsDTO;
 import com.traffic_stream.dashboard.service.TrafficService;
-import lombok.RequiredArgsConstructor;
+import com.traffic_stream.dashboard.shared.utils.KafkaSendHelper;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.log.LogAccessor;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.kafka.KafkaException;
 import org.springframework.kafka.annotation.KafkaListener;
-import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.serializer.DeserializationException;
+import org.springframework.kafka.support.serializer.SerializationUtils;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.CannotCreateTransactionException;
 
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
+/**
+ * Consumer chính của traffic_metrics_topic.
+ * <ul>
+ *     <li>Record không deserialize được → gửi nguyên payload sang dead-letter topic.</li>
+ *     <li>Batch lỗi khi ghi DB → chia đôi (bisection) cho tới khi cô lập được record lỗi,
+ *     các record còn lại vẫn được ghi; record lỗi được chuyển sang retry topic.</li>
+ *     <li>Lỗi hạ tầng (mất kết nối DB...) → ném lỗi ra container: error handler giữ nguyên batch và thử lại
+ *     với back-off tăng dần (consumer bị pause, không rebalance), không đẩy cả batch vào retry topic.</li>
+ * </ul>
+ * Retry topic chỉ dành cho record hỏng ({@link TrafficMetricsRetryConsumer}) nên partition chính không bị chặn vì chúng.
+ * Mọi lệnh gửi sang retry/dead-letter topic được chờ broker xác nhận trước khi listener trả về (tức trước khi
+ * commit offset); gửi lỗi thì batch được xử lý lại, nhờ natural key nên ghi DB lần 2 không sinh bản ghi trùng.
+ */
 @Service
 @Slf4j
-@RequiredArgsConstructor
 public class TrafficMetricsConsumer {
 
+    private static final LogAccessor LOG_ACCESSOR = new LogAccessor(TrafficMetricsConsumer.class);
+
     private final TrafficService trafficService;
+    private final KafkaTemplate<String, Object> retryTemplate;
+    private final TrafficConsumerMetrics metrics;
+
+    @Value("${app.kafka.retry.topic}")
+    private String retryTopic;
+
+    @Value("${app.kafka.dlt.topic}")
+    private String dltTopic;
+
+    @Value("${app.kafka.send-timeout-ms:10000}")
+    private long sendTimeoutMs;
+
+    public TrafficMetricsConsumer(TrafficService trafficService,
+                                  KafkaTemplate<String, Object> metricsRetryKafkaTemplate,
+                                  TrafficConsumerMetrics metrics) {
+        this.trafficService = trafficService;
+        this.retryTemplate = metricsRetryKafkaTemplate;
+        this.metrics = metrics;
+    }
 
     @KafkaListener(
             topics = "${spring.kafka.topic.name}",
             groupId = "${spring.kafka.consumer.group-id}",
             containerFactory = "kafkaListenerContainerFactory"
     )
-    public void consumeTrafficMetricsBatch(List<TrafficMetricsDTO> metricsList) {
-        try {
-            if (metricsList != null && !metricsList.isEmpty()) {
-                log.info("Received batch of {} metrics", metricsList.size());
+    public void consumeTrafficMetricsBatch(List<ConsumerRecord<String, TrafficMetricsDTO>> records) {
+        if (records == null || records.isEmpty()) return;
+        log.info("Received batch of {} metrics", records.size());
 
-                trafficService.processMetricsBatch(metricsList);
+        List<ConsumerRecord<String, TrafficMetricsDTO>> valid = new ArrayList<>(records.size());
+        List<ConsumerRecord<String, TrafficMetricsDTO>> undeserializable = new ArrayList<>();
+        for (ConsumerRecord<String, TrafficMetricsDTO> record : records) {
+            if (record.value() != null) {
+                valid.add(record);
+            } else {
+                undeserializable.add(record);
             }
-        } catch (Exception e) {
-            log.error("Error processing batch metrics", e);
         }
+
+        // Ghi DB trước: lỗi hạ tầng ném ra ngoài ngay, chưa có gì được gửi sang topic khác
+        List<CompletableFuture<?>> sends = new ArrayList<>();
+        if (!valid.isEmpty()) {
+            try {
+                trafficService.processMetricsBatch(values(valid));
+                metrics.processed(valid.size());
+            } catch (Exception e) {
+                if (isInfrastructureFailure(e)) {
+                    throw backOff(valid.size(), e);
+                }
+                log.error("Error processing batch of {} metrics, isolating failing records: {}", valid.size(), e.getMessage());
+                persistWithBisection(valid, e, sends);
+            }
+        }
+        for (ConsumerRecord<String, TrafficMetricsDTO> record : undeserializable) {
+            sends.add(deadLetterUndeserializable(record));
+        }
+        KafkaSendHelper.awaitAll(sends, Duration.ofMillis(sendTimeoutMs), retryTopic + "/" + dltTopic);
+    }
+
+    /**
+     * Ghi lại batch lỗi theo kiểu chia đôi: nửa nào ghi được thì xong, nửa lỗi tiếp tục chia
+     * cho tới khi còn 1 record → gửi sang retry topic. Gặp lỗi hạ tầng giữa chừng thì bỏ dở và để
+     * error handler thử lại cả batch (các nửa đã ghi sẽ bị bỏ qua nhờ ON CONFLICT DO NOTHING).
+     */
+    private void persistWithBisection(List<ConsumerRecord<String, TrafficMetricsDTO>> records, Exception cause,
+                                      List<CompletableFuture<?>> sends) {
+        if (records.size() == 1) {
+            sendToRetry(records, cause, sends);
+            return;
+        }
+
+        metrics.bisection();
+        int mid = records.size() / 2;
+        for (List<ConsumerRecord<String, TrafficMetricsDTO>> half : List.of(records.subList(0, mid), records.subList(mid, records.size()))) {
+            try {
+                trafficService.persistMetricsBatch(values(half));
+                metrics.processed(half.size());
+            } catch (Exception e) {
+                if (isInfrastructureFailure(e)) {
+                    throw backOff(half.size(), e);
+                }
+                persistWithBisection(half, e, sends);
+            }
+        }
+    }
+
+    private boolean isInfrastructureFailure(Exception e) {
+        return e instanceof DataAccessResourceFailureException
+                || e instanceof TransientDataAccessException
+                || e instanceof CannotCreateTransactionException;
+    }
+
+    private KafkaException backOff(int size, Exception cause) {
+        metrics.infrastructureBackOff();
+        log.warn("Infrastructure failure while writing {} metrics, backing off and retrying the batch: {}",
+                size, cause.getMessage());
+        return new KafkaException("Infrastructure failure, batch will be redelivered", cause);
+    }
+
+    private void sendToRetry(List<ConsumerRecord<String, TrafficMetricsDTO>> records, Exception cause,
+                             List<CompletableFuture<?>> sends) {
+        log.warn("Sending {} record(s) to {}: {}", records.size(), retryTopic, cause.getMessage());
+        for (ConsumerRecord<String, TrafficMetricsDTO> record : records) {
+            sends.add(retryTemplate.send(retryTopic, record.key(), record.value()));
+        }
+        metrics.sentToRetry(records.size());
+    }
+
+    private CompletableFuture<?> deadLetterUndeserializable(ConsumerRecord<String, TrafficMetricsDTO> record) {
+        DeserializationException ex = SerializationUtils.getExceptionFromHeader(
+                record, SerializationUtils.VALUE_DESERIALIZER_EXCEPTION_HEADER, LOG_ACCESSOR);
+        byte[] payload = ex != null ? ex.getData() : null;
+        log.warn("Undeserializable record at {}-{}@{} sent to {}: {}", record.topic(), record.partition(),
+                record.offset(), dltTopic, ex != null ? ex.getMessage() : "null value");
+
+        ProducerRecord<String, Object> dead = new ProducerRecord<>(dltTopic, record.key(), payload != null ? payload : new byte[0]);
+        dead.headers().add("x-original-topic", record.topic().getBytes());
+        dead.headers().add("x-original-offset", String.valueOf(record.offset()).getBytes());
+        metrics.deserializationFailed();
+        return retryTemplate.send(dead);
+    }
+
+    private List<TrafficMetricsDTO> values(List<ConsumerRecord<String, TrafficMetricsDTO>> records) {
+        List<TrafficMetricsDTO> list = new ArrayList<>(records.size());
+        for (ConsumerRecord<String, TrafficMetricsDTO> record : records) {
+            list.add(record.value());
+        }
+        return list;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,64 @@
+package com.traffic_stream.dashboard.consumer;
+
+import com.traffic_stream.dashboard.dto.TrafficMetricsDTO;
+import com.traffic_stream.dashboard.service.TrafficService;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.springframework.kafka.annotation.DltHandler;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.annotation.RetryableTopic;
+import org.springframework.kafka.retrytopic.TopicSuffixingStrategy;
+import org.springframework.retry.annotation.Backoff;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+
+/**
+ * Retry không chặn cho các record bị tách ra từ batch lỗi.
+ * <p>
+ * traffic_metrics_topic-retry → -retry-0, -retry-1, ... (back-off tăng dần) → -retry-dlt.
+ * Record ở DLT có thể replay qua POST /api/admin/dlt/replay.
+ * </p>
+ */
+@Service
+@Slf4j
+public class TrafficMetricsRetryConsumer {
+
+    private final TrafficService trafficService;
+    private final TrafficConsumerMetrics metrics;
+
+    public TrafficMetricsRetryConsumer(TrafficService trafficService, TrafficConsumerMetrics metrics) {
+        this.trafficService = trafficService;
+        this.metrics = metrics;
+    }
+
+    @RetryableTopic(
+            attempts = "${app.kafka.retry.attempts:4}",
+            backoff = @Backoff(
+                    delayExpression = "${app.kafka.retry.initial-delay-ms:1000}",
+                    multiplierExpression = "${app.kafka.retry.multiplier:2.0}",
+                    maxDelayExpression = "${app.kafka.retry.max-delay-ms:30000}"),
+            retryTopicSuffix = "-",
+            dltTopicSuffix = "-dlt",
+            topicSuffixingStrategy = TopicSuffixingStrategy.SUFFIX_WITH_INDEX_VALUE,
+            kafkaTemplate = "metricsRetryKafkaTemplate"
+    )
+    @KafkaListener(
+            topics = "${app.kafka.retry.topic}",
+            groupId = "${spring.kafka.consumer.group-id}-retry",
+            containerFactory = "retryKafkaListenerContainerFactory"
+    )
+    public void consumeRetry(ConsumerRecord<String, TrafficMetricsDTO> record) {
+        TrafficMetricsDTO dto = record.value();
+        trafficService.persistMetricsBatch(List.of(dto));
+        metrics.retrySucceeded();
+        log.info("Retried metric of camera {} from {} successfully", dto.getCameraId(), record.topic());
+    }
+
+    @DltHandler
+    public void handleDeadLetter(ConsumerRecord<String, TrafficMetricsDTO> record) {
+        metrics.deadLettered();
+        log.error("Metric moved to dead-letter topic {} (key={}, offset={})",
+                record.topic(), record.key(), record.offset());
+    }
+}
@@ -0,0 +1,38 @@
+package com.traffic_stream.dashboard.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Builder;
+import lombok.Data;
+
+@Data
+@Builder
+@Schema(description = "Camera position with its latest vehicle count, for the map view")
+public class CameraLocationDTO {
+
+    @Schema(description = "Unique identifier of the camera", example = "CAM001")
+    private String cameraId;
+
+    @Schema(description = "Display name of the camera", example = "Nguyen Hue - Ben Thanh")
+    private String cameraName;
+
+    @Schema(description = "District where the camera is located", example = "District 1")
+    private String district;
+
+    @Schema(description = "Latitude", example = "10.7736")
+    private Double latitude;
+
+    @Schema(description = "Longitude", example = "106.7040")
+    private Double longitude;
+
+    @Schema(description = "Distance from the query point in meters (nearest queries only)", example = "152.4")
+    private Double distanceMeters;
+
+    @Schema(description = "Latest total vehicle count (null if no recent data)", example = "42")
+    private Integer totalCount;
+
+    @Schema(description = "Highest vehicle count recorded", example = "120")
+    private Integer maxCount;
+
+    @Schema(description = "Timestamp of the latest record (epoch millis)", example = "1733040000000")
+    private Long timestamp;
+}
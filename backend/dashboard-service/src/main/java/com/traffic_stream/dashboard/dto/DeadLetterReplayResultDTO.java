@@ -0,0 +1,17 @@
+package com.traffic_stream.dashboard.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+public class DeadLetterReplayResultDTO {
+    private List<String> topics;
+    private long recordsRead;
+    private long inserted;
+    private long duplicatesSkipped;
+    private long failed;
+    private long elapsedMs;
+}
@@ -0,0 +1,22 @@
+package com.traffic_stream.dashboard.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+/**
+ * Số camera phân biệt có dữ liệu (xấp xỉ, HLL) kèm khoảng tin cậy ~95%.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class DistinctCountDTO {
+    private String district;
+    private Instant start;
+    private Instant end;
+    private long estimate;
+    private long lowerBound;
+    private long upperBound;
+}
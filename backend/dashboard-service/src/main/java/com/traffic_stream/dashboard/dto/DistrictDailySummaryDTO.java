@@ -1,6 +1,7 @@
 package com.traffic_stream.dashboard.dto;
 
 import com.traffic_stream.dashboard.entity.TrafficMetric;
+import com.traffic_stream.dashboard.shared.constant.VehicleClass;
 import lombok.Data;
 import java.util.HashMap;
 import java.util.Map;
@@ -24,42 +25,17 @@ public class DistrictDailySummaryDTO {
             return;
         }
 
-        metric.getDetectionDetails().forEach((rawType, count) -> {
-            String mappedType = mapVehicleType(rawType);
-
-            if (mappedType != null) {
-                this.totalCount += count;
-                this.detectionDetailsSummary.merge(mappedType, count.longValue(), Long::sum);
-            }
-        });
+        metric.getDetectionDetails().forEach((rawType, count) -> addCount(VehicleClass.of(rawType), count));
     }
 
     /**
-     * HÀM HELPER MỚI: Ánh xạ loại phương tiện
-     * Trả về null nếu loại này cần bị bỏ qua (ví dụ: "person").
+     * Cộng số lượng của 1 loại (đã tổng hợp sẵn, ví dụ từ rollup). PERSON bị bỏ qua.
      */
-    private String mapVehicleType(String rawType) {
-        if (rawType == null) {
-            return "other";
-        }
-
-        switch (rawType.toLowerCase()) {
-            case "car":
-                return "car";
-            case "motorcycle":
-                return "motorcycle";
-            case "truck":
-                return "truck";
-
-            case "person":
-                return null;
-
-            case "bus":
-            case "bicycle":
-            case "train":
-                return "other";
-            default:
-                return "other";
+    public void addCount(VehicleClass vehicleClass, long count) {
+        if (!vehicleClass.isVehicle() || count == 0) {
+            return;
         }
+        this.totalCount += count;
+        this.detectionDetailsSummary.merge(vehicleClass.getSummaryType(), count, Long::sum);
     }
-}
\ No newline at end of file
+}
@@ -1,6 +1,7 @@
 package com.traffic_stream.dashboard.dto;
 
 import com.traffic_stream.dashboard.entity.TrafficMetric;
+import com.traffic_stream.dashboard.shared.constant.VehicleClass;
 import lombok.Data;
 import java.util.HashMap;
 import java.util.Map;
@@ -30,7 +31,7 @@ public class HourlyDistrictSummaryDTO {
         }
 
         metric.getDetectionDetails().forEach((rawType, count) -> {
-            String mappedType = mapVehicleType(rawType);
+            String mappedType = VehicleClass.of(rawType).getSummaryType();
 
             if (mappedType != null) {
                 this.totalCount += count;
@@ -38,31 +39,4 @@ public class HourlyDistrictSummaryDTO {
             }
         });
     }
-
-    /**
-     * HÀM HELPER MỚI: Ánh xạ loại phương tiện
-     * Trả về null nếu loại này cần bị bỏ qua (ví dụ: "person").
-     */
-    private String mapVehicleType(String rawType) {
-        if (rawType == null) {
-            return "other";
-        }
-
-        switch (rawType.toLowerCase()) {
-            case "car":
-                return "car";
-            case "motorcycle":
-                return "motorcycle";
-            case "truck":
-                return "truck";
-            case "person":
-                return null;
-            case "bus":
-            case "bicycle":
-            case "train":
-                return "other";
-            default:
-                return "other";
-        }
-    }
-}
\ No newline at end of file
+}
@@ -0,0 +1,25 @@
+package com.traffic_stream.dashboard.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+import java.util.Map;
+
+/**
+ * Phân vị (xấp xỉ, KLL) của số xe mỗi camera-phút. district = null là toàn thành phố.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class PercentileSummaryDTO {
+    private String district;
+    private Instant start;
+    private Instant end;
+    private long sampleCount;
+    private Double min;
+    private Double max;
+    private Map<String, Double> percentiles;
+    private double rankError;
+}
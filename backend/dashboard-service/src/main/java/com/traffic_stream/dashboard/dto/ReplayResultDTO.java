@@ -0,0 +1,18 @@
+package com.traffic_stream.dashboard.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.time.Instant;
+
+@Data
+@AllArgsConstructor
+public class ReplayResultDTO {
+    private String topic;
+    private Instant from;
+    private Instant to;
+    private long recordsRead;
+    private long inserted;
+    private long duplicatesSkipped;
+    private long elapsedMs;
+}
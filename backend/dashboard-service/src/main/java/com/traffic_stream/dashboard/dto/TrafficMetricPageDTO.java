@@ -0,0 +1,18 @@
+package com.traffic_stream.dashboard.dto;
+
+import com.traffic_stream.dashboard.entity.TrafficMetric;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * Một trang của /by-date/page. nextCursor = null khi đã hết dữ liệu.
+ */
+@Data
+@AllArgsConstructor
+public class TrafficMetricPageDTO {
+    private List<TrafficMetric> items;
+    private int size;
+    private String nextCursor;
+}
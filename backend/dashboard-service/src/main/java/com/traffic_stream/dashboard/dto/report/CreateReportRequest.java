@@ -41,5 +41,8 @@ public class CreateReportRequest {
     @Schema(description = "Thời gian thực thi báo cáo (ISO 8601). Nếu null thì thực thi ngay lập tức", example = "2025-01-08T01:00:00Z", type = "string", format = "date-time")
     public Instant executeAt = Instant.now();
 
+    @Schema(description = "Dùng lại báo cáo đã tạo nếu tham số và dữ liệu giống hệt. Đặt false để luôn tạo mới", example = "true", defaultValue = "true")
+    public Boolean useCache = true;
+
 }
 
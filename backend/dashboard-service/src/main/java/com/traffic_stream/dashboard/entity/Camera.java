@@ -0,0 +1,42 @@
+package com.traffic_stream.dashboard.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+/**
+ * Danh mục camera, được duy trì từ luồng ingest (thay cho SELECT DISTINCT trên traffic_metrics).
+ */
+@Entity
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+@Table(name = "cameras", indexes = {
+        @Index(name = "idx_cameras_district", columnList = "district")
+})
+public class Camera {
+
+    @Id
+    @Column(name = "camera_id")
+    private String cameraId;
+
+    @Column(name = "camera_name")
+    private String cameraName;
+
+    @Column(name = "district")
+    private String district;
+
+    private Double latitude;
+    private Double longitude;
+
+    @Column(name = "first_seen")
+    private Instant firstSeen;
+
+    @Column(name = "last_seen")
+    private Instant lastSeen;
+}
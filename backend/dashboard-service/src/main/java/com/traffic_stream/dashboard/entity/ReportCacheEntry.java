@@ -0,0 +1,38 @@
+package com.traffic_stream.dashboard.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+/**
+ * Một báo cáo đã dựng, có thể dùng lại cho job khác có cùng tham số và cùng dữ liệu (xem ReportResultCache).
+ * cacheKey là SHA-256 (hex) của tham số chuẩn hóa + watermark dữ liệu; objectPath trỏ tới PDF trong bucket documents.
+ */
+@Entity
+@Data
+@Table(name = "report_cache")
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class ReportCacheEntry {
+
+    @Id
+    @Column(length = 64)
+    private String cacheKey;
+
+    @Column(columnDefinition = "text", nullable = false)
+    private String objectPath;
+
+    private Long sizeBytes;
+
+    private Long sourceJobId;
+
+    private Instant createdAt;
+    private Instant lastHitAt;
+
+    private Long hitCount;
+}
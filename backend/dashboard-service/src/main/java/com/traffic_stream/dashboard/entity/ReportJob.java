@@ -48,6 +48,9 @@ public class ReportJob {
     private Instant createdAt;
     private Instant executeAt;
 
+    // null (job cũ) được coi như true
+    private Boolean useCache;
+
     @PrePersist
     public void prePersist() {
         this.createdAt = Instant.now();
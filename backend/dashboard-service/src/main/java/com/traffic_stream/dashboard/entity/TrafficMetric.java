@@ -17,9 +17,10 @@ import java.util.Map;
 @Data
 @Table(name = "traffic_metrics", indexes = {
         @Index(name = "idx_traffic_timestamp", columnList = "timestamp"),
-        @Index(name = "idx_traffic_district_time", columnList = "district, timestamp"),
-        @Index(name = "idx_traffic_camera_time", columnList = "camera_id, timestamp")
+        @Index(name = "idx_traffic_time_id", columnList = "timestamp, id"),
+        @Index(name = "idx_traffic_district_time", columnList = "district, timestamp")
 })
+// (camera_id, timestamp) do unique key uk_traffic_camera_time phục vụ, xem DatabaseSchemaInitializer
 public class TrafficMetric {
 
     @Id
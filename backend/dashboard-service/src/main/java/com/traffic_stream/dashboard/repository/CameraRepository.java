@@ -0,0 +1,30 @@
+package com.traffic_stream.dashboard.repository;
+
+import com.traffic_stream.dashboard.entity.Camera;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface CameraRepository extends JpaRepository<Camera, String> {
+
+    /**
+     * Backfill danh mục camera từ dữ liệu thô (chỉ chạy 1 lần khi bảng cameras rỗng lúc khởi động).
+     * Tên/quận/toạ độ lấy từ bản ghi mới nhất; coordinates là [lng, lat].
+     * Camera đã được ingest ghi trước (backfill chạy sau khi Kafka listener bắt đầu) chỉ được sửa first_seen.
+     */
+    @Modifying
+    @Query(value = "INSERT INTO cameras (camera_id, camera_name, district, latitude, longitude, first_seen, last_seen) " +
+            "SELECT l.camera_id, l.camera_name, l.district, " +
+            "CAST(l.coordinates ->> 1 AS DOUBLE PRECISION), CAST(l.coordinates ->> 0 AS DOUBLE PRECISION), " +
+            "s.first_seen, s.last_seen " +
+            "FROM (SELECT DISTINCT ON (t.camera_id) t.camera_id, t.camera_name, t.district, t.coordinates " +
+            "      FROM traffic_metrics t WHERE t.camera_id IS NOT NULL " +
+            "      ORDER BY t.camera_id, t.timestamp DESC) l " +
+            "JOIN (SELECT camera_id, MIN(timestamp) AS first_seen, MAX(timestamp) AS last_seen " +
+            "      FROM traffic_metrics GROUP BY camera_id) s ON s.camera_id = l.camera_id " +
+            "ON CONFLICT (camera_id) DO UPDATE SET first_seen = LEAST(cameras.first_seen, EXCLUDED.first_seen)",
+            nativeQuery = true)
+    int backfillFromMetrics();
+}
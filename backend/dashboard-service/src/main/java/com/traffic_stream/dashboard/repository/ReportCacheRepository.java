@@ -0,0 +1,23 @@
+package com.traffic_stream.dashboard.repository;
+
+import com.traffic_stream.dashboard.entity.ReportCacheEntry;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.List;
+
+@Repository
+public interface ReportCacheRepository extends JpaRepository<ReportCacheEntry, String> {
+
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM ReportCacheEntry e WHERE e.createdAt < :cutoff")
+    int deleteCreatedBefore(@Param("cutoff") Instant cutoff);
+
+    List<ReportCacheEntry> findAllByOrderByLastHitAtDesc();
+}
@@ -47,6 +47,31 @@ public interface TrafficMetricRepository extends JpaRepository<TrafficMetric, Lo
     // API 3 : Lấy TẤT CẢ bản ghi theo ngày
     List<TrafficMetric> findByTimestampBetween(Instant start, Instant end);
 
+    /**
+     * API 3 (phân trang keyset): câu SQL của {@link #findPageAfter}, tách ra để test EXPLAIN đúng câu đang chạy.
+     * Con trỏ so sánh theo hàng (timestamp, id) &gt; (afterTimestamp, afterId) nên Postgres dùng nó làm cận dưới
+     * khi quét idx_traffic_time_id, thay vì quét từ :start rồi lọc bỏ mọi trang trước.
+     */
+    String PAGE_AFTER_SQL = "SELECT t.* FROM traffic_metrics t " +
+            "WHERE t.timestamp >= :start AND t.timestamp < :end " +
+            "AND (t.timestamp, t.id) > (:afterTimestamp, :afterId) " +
+            "AND (:cameraId IS NULL OR t.camera_id = :cameraId) " +
+            "ORDER BY t.timestamp ASC, t.id ASC " +
+            "LIMIT :limit";
+
+    /**
+     * API 3 (phân trang keyset): các bản ghi đứng sau con trỏ (afterTimestamp, afterId),
+     * sắp theo (timestamp, id). Không dùng OFFSET và con trỏ là cận của index scan nên trang sau cũng rẻ như trang đầu.
+     */
+    @Query(value = PAGE_AFTER_SQL, nativeQuery = true)
+    List<TrafficMetric> findPageAfter(
+            @Param("start") Instant start,
+            @Param("end") Instant end,
+            @Param("cameraId") String cameraId,
+            @Param("afterTimestamp") Instant afterTimestamp,
+            @Param("afterId") Long afterId,
+            @Param("limit") int limit);
+
     /**
      * API 4 (CHO CHART 24H): Lấy tổng count theo từng giờ trong ngày
      * - Lọc theo khoảng thời gian (start, end)
@@ -159,6 +184,19 @@ public interface TrafficMetricRepository extends JpaRepository<TrafficMetric, Lo
             "GROUP BY t.cameraId")
     List<Object[]> findMaxCountsByCameraIds(@Param("cameraIds") List<String> cameraIds);
 
+    /**
+     * Bản ghi mới nhất của MỖI camera trong 1 query (warm-up live state, tránh N+1)
+     */
+    @Query(value = "SELECT DISTINCT ON (t.camera_id) t.* FROM traffic_metrics t " +
+            "ORDER BY t.camera_id, t.timestamp DESC", nativeQuery = true)
+    List<TrafficMetric> findLatestMetricPerCamera();
+
+    /**
+     * Max Count của tất cả camera (warm-up live state). Trả về: [cameraId, maxCount]
+     */
+    @Query("SELECT t.cameraId, MAX(t.totalCount) FROM TrafficMetric t GROUP BY t.cameraId")
+    List<Object[]> findMaxCountPerCamera();
+
     /**
      * Lấy Max Count của 1 camera cụ thể (Dùng cho Consumer)
      */
@@ -200,4 +238,33 @@ public interface TrafficMetricRepository extends JpaRepository<TrafficMetric, Lo
             @Param("end") Instant end,
             @Param("tz") String timezone);
 
+
+    /**
+     * Warm-up cửa sổ live: tổng total_count theo [quận, tên camera, slot], slot = epoch giây / slotSeconds.
+     */
+    @Query(value = "SELECT t.district, t.camera_name, " +
+            "CAST(FLOOR(EXTRACT(EPOCH FROM t.timestamp) / :slotSeconds) AS BIGINT) AS slot, " +
+            "SUM(t.total_count) " +
+            "FROM traffic_metrics t " +
+            "WHERE t.timestamp >= :start AND t.timestamp < :end " +
+            "GROUP BY t.district, t.camera_name, slot", nativeQuery = true)
+    List<Object[]> sumTotalCountByDistrictCameraAndSlot(
+            @Param("start") Instant start,
+            @Param("end") Instant end,
+            @Param("slotSeconds") int slotSeconds);
+
+    /**
+     * Warm-up cửa sổ live: tổng từng loại xe (key thô của detection_details) theo slot.
+     */
+    @Query(value = "SELECT CAST(FLOOR(EXTRACT(EPOCH FROM t.timestamp) / :slotSeconds) AS BIGINT) AS slot, " +
+            "d.key, SUM(CAST(d.value AS BIGINT)) " +
+            "FROM traffic_metrics t " +
+            "CROSS JOIN LATERAL jsonb_each_text(t.detection_details) d " +
+            "WHERE t.timestamp >= :start AND t.timestamp < :end " +
+            "GROUP BY slot, d.key", nativeQuery = true)
+    List<Object[]> sumDetectionsBySlot(
+            @Param("start") Instant start,
+            @Param("end") Instant end,
+            @Param("slotSeconds") int slotSeconds);
+
 }
\ No newline at end of file
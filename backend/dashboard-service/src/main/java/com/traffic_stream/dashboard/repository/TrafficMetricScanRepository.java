@@ -0,0 +1,195 @@
+package com.traffic_stream.dashboard.repository;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Đọc traffic_metrics theo cursor cho báo cáo: mỗi dòng là một projection nhẹ (không hydrate entity),
+ * được đẩy cho handler rồi bỏ đi, nên bộ nhớ chỉ phụ thuộc fetch size chứ không phụ thuộc độ dài khoảng.
+ * <p>
+ * PostgreSQL chỉ dùng cursor phía server khi autocommit tắt, nên scan luôn chạy trong transaction read-only
+ * (tham gia transaction của caller nếu có, và được định tuyến sang replica nếu cấu hình).
+ * </p>
+ */
+@Repository
+public class TrafficMetricScanRepository {
+
+    private static final String SELECT =
+            "SELECT camera_id, camera_name, district, timestamp, total_count, " +
+            "detection_details::text AS detection_details, annotated_image_url " +
+            "FROM traffic_metrics WHERE timestamp BETWEEN ? AND ? ";
+
+    /**
+     * Một dòng của scan. Đối tượng (kể cả detectionDetails) được TÁI SỬ DỤNG cho dòng kế tiếp:
+     * handler phải copy những gì cần giữ lại.
+     */
+    public static final class MetricRow {
+        private String cameraId;
+        private String cameraName;
+        private String district;
+        private long timestampMillis;
+        private int totalCount;
+        private final Map<String, Integer> detectionDetails = new HashMap<>();
+        private boolean hasDetails;
+        private String annotatedImageUrl;
+
+        public String getCameraId() {
+            return cameraId;
+        }
+
+        public String getCameraName() {
+            return cameraName;
+        }
+
+        public String getDistrict() {
+            return district;
+        }
+
+        public long getTimestampMillis() {
+            return timestampMillis;
+        }
+
+        public int getTotalCount() {
+            return totalCount;
+        }
+
+        /** null nếu cột detection_details rỗng. */
+        public Map<String, Integer> getDetectionDetails() {
+            return hasDetails ? detectionDetails : null;
+        }
+
+        public String getAnnotatedImageUrl() {
+            return annotatedImageUrl;
+        }
+    }
+
+    public interface MetricRowHandler {
+        void accept(MetricRow row);
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final JsonFactory jsonFactory;
+    private final int fetchSize;
+
+    public TrafficMetricScanRepository(JdbcTemplate jdbcTemplate,
+                                       ObjectMapper objectMapper,
+                                       @Value("${app.report.fetch-size:5000}") int fetchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.jsonFactory = objectMapper.getFactory();
+        this.fetchSize = fetchSize;
+    }
+
+    /**
+     * Duyệt các bản ghi trong [start, end] (cùng biên với findBy...TimestampBetween), lọc theo camera nếu
+     * {@code cameraIds} khác rỗng, ngược lại theo quận nếu {@code districts} khác rỗng. Không đảm bảo thứ tự.
+     *
+     * @return số dòng đã duyệt
+     */
+    @Transactional(readOnly = true)
+    public long scan(Instant start, Instant end, List<String> cameraIds, List<String> districts, MetricRowHandler handler) {
+        boolean byCamera = cameraIds != null && !cameraIds.isEmpty();
+        boolean byDistrict = !byCamera && districts != null && !districts.isEmpty();
+        String sql = SELECT + (byCamera ? "AND camera_id = ANY(?)" : byDistrict ? "AND district = ANY(?)" : "");
+
+        MetricRow row = new MetricRow();
+        long[] rows = {0};
+        jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            ps.setFetchSize(fetchSize);
+            ps.setTimestamp(1, Timestamp.from(start));
+            ps.setTimestamp(2, Timestamp.from(end));
+            if (byCamera || byDistrict) {
+                ps.setArray(3, con.createArrayOf("varchar", (byCamera ? cameraIds : districts).toArray()));
+            }
+            return ps;
+        }, (RowCallbackHandler) rs -> {
+            row.cameraId = rs.getString(1);
+            row.cameraName = rs.getString(2);
+            row.district = rs.getString(3);
+            row.timestampMillis = rs.getTimestamp(4).getTime();
+            row.totalCount = rs.getInt(5);
+            row.hasDetails = parseDetails(rs.getString(6), row.detectionDetails);
+            row.annotatedImageUrl = rs.getString(7);
+            handler.accept(row);
+            rows[0]++;
+        });
+        return rows[0];
+    }
+
+    /**
+     * Với mỗi camera, bản ghi có ảnh annotate và total_count cao nhất trong [start, end] (cùng bộ lọc với
+     * {@link #scan}). Chỉ trả về 1 dòng / camera; detectionDetails của MetricRow luôn null.
+     */
+    @Transactional(readOnly = true)
+    public long scanTopImagePerCamera(Instant start, Instant end, List<String> cameraIds, List<String> districts,
+                                      MetricRowHandler handler) {
+        boolean byCamera = cameraIds != null && !cameraIds.isEmpty();
+        boolean byDistrict = !byCamera && districts != null && !districts.isEmpty();
+        String sql = "SELECT DISTINCT ON (camera_id) camera_id, camera_name, district, timestamp, total_count, " +
+                "annotated_image_url FROM traffic_metrics WHERE timestamp BETWEEN ? AND ? " +
+                "AND annotated_image_url IS NOT NULL AND annotated_image_url <> '' " +
+                (byCamera ? "AND camera_id = ANY(?) " : byDistrict ? "AND district = ANY(?) " : "") +
+                "ORDER BY camera_id, total_count DESC, timestamp";
+
+        MetricRow row = new MetricRow();
+        long[] rows = {0};
+        jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement(sql);
+            ps.setTimestamp(1, Timestamp.from(start));
+            ps.setTimestamp(2, Timestamp.from(end));
+            if (byCamera || byDistrict) {
+                ps.setArray(3, con.createArrayOf("varchar", (byCamera ? cameraIds : districts).toArray()));
+            }
+            return ps;
+        }, (RowCallbackHandler) rs -> {
+            row.cameraId = rs.getString(1);
+            row.cameraName = rs.getString(2);
+            row.district = rs.getString(3);
+            row.timestampMillis = rs.getTimestamp(4).getTime();
+            row.totalCount = rs.getInt(5);
+            row.hasDetails = false;
+            row.annotatedImageUrl = rs.getString(6);
+            handler.accept(row);
+            rows[0]++;
+        });
+        return rows[0];
+    }
+
+    /** Parse jsonb {"car": 3, ...} thẳng vào map tái sử dụng (không dựng cây JSON). */
+    private boolean parseDetails(String json, Map<String, Integer> target) {
+        target.clear();
+        if (json == null) return false;
+        try (JsonParser parser = jsonFactory.createParser(json)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) return false;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String key = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                if (value == JsonToken.VALUE_NUMBER_INT || value == JsonToken.VALUE_NUMBER_FLOAT) {
+                    target.put(key, parser.getIntValue());
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            return true;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Invalid detection_details: " + json, e);
+        }
+    }
+}
@@ -0,0 +1,412 @@
+package com.traffic_stream.dashboard.repository;
+
+import com.traffic_stream.dashboard.shared.constant.VehicleClass;
+import lombok.Getter;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * Truy cập các bảng rollup (tổng hợp sẵn theo phút/giờ cho từng camera và từng quận).
+ * <p>
+ * Bảng được tạo bởi DatabaseSchemaInitializer (không phải entity JPA) vì khóa chính là
+ * (key, bucket) và được ghi bằng upsert cộng dồn. bucket là thời điểm đầu phút/giờ (UTC);
+ * giờ Việt Nam lệch cố định +7 nên bucket giờ cũng trùng với giờ địa phương.
+ * </p>
+ */
+@Repository
+public class TrafficRollupRepository {
+
+    public enum Rollup {
+        CAMERA_MINUTE("traffic_rollup_camera_minute", "camera_id", ChronoUnit.MINUTES),
+        CAMERA_HOUR("traffic_rollup_camera_hour", "camera_id", ChronoUnit.HOURS),
+        DISTRICT_MINUTE("traffic_rollup_district_minute", "district", ChronoUnit.MINUTES),
+        DISTRICT_HOUR("traffic_rollup_district_hour", "district", ChronoUnit.HOURS);
+
+        private final String table;
+        private final String keyColumn;
+        private final ChronoUnit unit;
+
+        Rollup(String table, String keyColumn, ChronoUnit unit) {
+            this.table = table;
+            this.keyColumn = keyColumn;
+            this.unit = unit;
+        }
+
+        public String getTable() {
+            return table;
+        }
+
+        public String getKeyColumn() {
+            return keyColumn;
+        }
+
+        public ChronoUnit getUnit() {
+            return unit;
+        }
+
+        public boolean isCamera() {
+            return this == CAMERA_MINUTE || this == CAMERA_HOUR;
+        }
+    }
+
+    /** Thứ tự cột đếm: total_count, vehicle_count, các loại xe (theo VehicleClass), sample_count. */
+    public static final List<String> COUNT_COLUMNS;
+    public static final int TOTAL = 0;
+    public static final int VEHICLE = 1;
+    public static final int SAMPLES;
+
+    static {
+        List<String> columns = new ArrayList<>();
+        columns.add("total_count");
+        columns.add("vehicle_count");
+        for (VehicleClass vc : VehicleClass.values()) {
+            columns.add(vc.getColumn());
+        }
+        columns.add("sample_count");
+        COUNT_COLUMNS = List.copyOf(columns);
+        SAMPLES = COUNT_COLUMNS.size() - 1;
+    }
+
+    public static int classIndex(VehicleClass vc) {
+        return 2 + vc.ordinal();
+    }
+
+    private static final String COUNT_LIST = String.join(", ", COUNT_COLUMNS);
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public TrafficRollupRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Một dòng rollup (dùng cho cả ghi delta lẫn đọc).
+     */
+    @Getter
+    public static final class RollupRow {
+        private final String key;
+        private final Instant bucket;
+        private final String district;
+        private final long[] counts;
+
+        public RollupRow(String key, Instant bucket, String district, long[] counts) {
+            this.key = key;
+            this.bucket = bucket;
+            this.district = district;
+            this.counts = counts;
+        }
+
+        public long get(int index) {
+            return counts[index];
+        }
+
+        public long get(VehicleClass vc) {
+            return counts[classIndex(vc)];
+        }
+    }
+
+    public static long[] newCounts() {
+        return new long[COUNT_COLUMNS.size()];
+    }
+
+    // ------------------------------------------------------------------
+    // DDL
+    // ------------------------------------------------------------------
+
+    public List<String> ddlStatements() {
+        String counts = COUNT_COLUMNS.stream()
+                .map(c -> c + " BIGINT NOT NULL DEFAULT 0")
+                .collect(Collectors.joining(", "));
+        List<String> ddl = new ArrayList<>();
+        for (Rollup r : Rollup.values()) {
+            String extra = r.isCamera() ? "district VARCHAR(255) NOT NULL DEFAULT '', " : "";
+            ddl.add("CREATE TABLE IF NOT EXISTS " + r.table + " (" +
+                    r.keyColumn + " VARCHAR(255) NOT NULL, " +
+                    "bucket TIMESTAMPTZ NOT NULL, " +
+                    extra + counts + ", " +
+                    "PRIMARY KEY (" + r.keyColumn + ", bucket))");
+            ddl.add("CREATE INDEX IF NOT EXISTS idx_" + r.table + "_bucket ON " + r.table + " (bucket)");
+        }
+        return ddl;
+    }
+
+    // ------------------------------------------------------------------
+    // Ghi (ingest)
+    // ------------------------------------------------------------------
+
+    /**
+     * Cộng dồn delta vào bảng rollup. Caller phải truyền các dòng đã sắp xếp theo (key, bucket)
+     * để các consumer chạy song song luôn khóa dòng theo cùng thứ tự (tránh deadlock).
+     */
+    public void upsert(Rollup r, List<RollupRow> rows) {
+        if (rows.isEmpty()) return;
+
+        String columns = r.keyColumn + ", bucket, " + (r.isCamera() ? "district, " : "") + COUNT_LIST;
+        int paramCount = 2 + (r.isCamera() ? 1 : 0) + COUNT_COLUMNS.size();
+        String placeholders = String.join(", ", Collections.nCopies(paramCount, "?"));
+        String updates = COUNT_COLUMNS.stream()
+                .map(c -> c + " = r." + c + " + EXCLUDED." + c)
+                .collect(Collectors.joining(", "));
+        if (r.isCamera()) {
+            updates = "district = EXCLUDED.district, " + updates;
+        }
+
+        String sql = "INSERT INTO " + r.table + " AS r (" + columns + ") VALUES (" + placeholders + ") " +
+                "ON CONFLICT (" + r.keyColumn + ", bucket) DO UPDATE SET " + updates;
+
+        jdbcTemplate.batchUpdate(sql, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                RollupRow row = rows.get(i);
+                int p = 1;
+                ps.setString(p++, row.key);
+                ps.setTimestamp(p++, Timestamp.from(row.bucket));
+                if (r.isCamera()) {
+                    ps.setString(p++, row.district != null ? row.district : "");
+                }
+                for (long c : row.counts) {
+                    ps.setLong(p++, c);
+                }
+            }
+
+            @Override
+            public int getBatchSize() {
+                return rows.size();
+            }
+        });
+    }
+
+    // ------------------------------------------------------------------
+    // Tính lại từ dữ liệu thô (reconcile / backfill)
+    // ------------------------------------------------------------------
+
+    /**
+     * Tính lại toàn bộ rollup trong [from, to) từ traffic_metrics. from/to phải tròn giờ.
+     * Phải chạy trong transaction: khóa 4 bảng rollup (SHARE ROW EXCLUSIVE) để ingest chờ
+     * tới khi tính xong, tránh cộng dồn lên dữ liệu sắp bị thay thế.
+     *
+     * @return số dòng camera-phút được tạo
+     */
+    public int rebuild(Instant from, Instant to) {
+        String tables = Arrays.stream(Rollup.values()).map(Rollup::getTable).collect(Collectors.joining(", "));
+        jdbcTemplate.execute("LOCK TABLE " + tables + " IN SHARE ROW EXCLUSIVE MODE");
+
+        Timestamp f = Timestamp.from(from);
+        Timestamp t = Timestamp.from(to);
+        for (Rollup r : Rollup.values()) {
+            jdbcTemplate.update("DELETE FROM " + r.table + " WHERE bucket >= ? AND bucket < ?", f, t);
+        }
+
+        int rows = jdbcTemplate.update(rawToCameraMinuteSql(), f, t);
+        jdbcTemplate.update(deriveSql(Rollup.CAMERA_MINUTE, Rollup.CAMERA_HOUR), f, t);
+        jdbcTemplate.update(deriveSql(Rollup.CAMERA_MINUTE, Rollup.DISTRICT_MINUTE), f, t);
+        jdbcTemplate.update(deriveSql(Rollup.CAMERA_HOUR, Rollup.DISTRICT_HOUR), f, t);
+        return rows;
+    }
+
+    private String rawToCameraMinuteSql() {
+        List<String> known = new ArrayList<>();
+        List<String> classSums = new ArrayList<>();
+        for (VehicleClass vc : VehicleClass.values()) {
+            if (vc == VehicleClass.OTHER) continue;
+            known.addAll(vc.getAliases());
+            classSums.add("COALESCE(SUM(x.v) FILTER (WHERE x.k IN (" + quote(vc.getAliases()) + ")), 0) AS " + vc.getColumn());
+        }
+        String personAliases = quote(VehicleClass.PERSON.getAliases());
+
+        StringBuilder lateral = new StringBuilder("SELECT COALESCE(SUM(x.v) FILTER (WHERE x.k NOT IN (")
+                .append(personAliases).append(")), 0) AS vehicle_count");
+        for (String s : classSums) {
+            lateral.append(", ").append(s);
+        }
+        lateral.append(", COALESCE(SUM(x.v) FILTER (WHERE x.k NOT IN (").append(quote(known)).append(")), 0) AS ")
+                .append(VehicleClass.OTHER.getColumn());
+
+        String classSelect = Arrays.stream(VehicleClass.values())
+                .map(vc -> "SUM(c." + vc.getColumn() + ")")
+                .collect(Collectors.joining(", "));
+
+        return "INSERT INTO " + Rollup.CAMERA_MINUTE.table + " (camera_id, bucket, district, " + COUNT_LIST + ") " +
+                "SELECT t.camera_id, date_trunc('minute', t.timestamp AT TIME ZONE 'UTC') AT TIME ZONE 'UTC' AS b, " +
+                "MAX(COALESCE(t.district, '')), SUM(t.total_count), SUM(c.vehicle_count), " + classSelect + ", COUNT(*) " +
+                "FROM traffic_metrics t " +
+                "CROSS JOIN LATERAL (" + lateral +
+                " FROM (SELECT lower(d.key) AS k, CAST(d.value AS BIGINT) AS v " +
+                "FROM jsonb_each_text(t.detection_details) d) x) c " +
+                "WHERE t.timestamp >= ? AND t.timestamp < ? AND t.camera_id IS NOT NULL " +
+                "GROUP BY t.camera_id, b";
+    }
+
+    private String deriveSql(Rollup source, Rollup target) {
+        String bucketExpr = target.unit == source.unit
+                ? "bucket"
+                : "date_trunc('hour', bucket AT TIME ZONE 'UTC') AT TIME ZONE 'UTC'";
+        String sums = COUNT_COLUMNS.stream().map(c -> "SUM(" + c + ")").collect(Collectors.joining(", "));
+        String keySelect = target.isCamera() ? "camera_id, " + bucketExpr + " AS b, MAX(district)" : "district, " + bucketExpr + " AS b";
+        String keyColumns = target.isCamera() ? "camera_id, bucket, district" : "district, bucket";
+        return "INSERT INTO " + target.table + " (" + keyColumns + ", " + COUNT_LIST + ") " +
+                "SELECT " + keySelect + ", " + sums + " FROM " + source.table + " " +
+                "WHERE bucket >= ? AND bucket < ? " +
+                "GROUP BY " + target.keyColumn + ", b";
+    }
+
+    private static String quote(List<String> values) {
+        return values.stream().map(v -> "'" + v.replace("'", "''") + "'").collect(Collectors.joining(", "));
+    }
+
+    public boolean isEmpty() {
+        List<Integer> any = jdbcTemplate.queryForList(
+                "SELECT 1 FROM " + Rollup.CAMERA_MINUTE.table + " LIMIT 1", Integer.class);
+        return any.isEmpty();
+    }
+
+    /** [min, max] timestamp của traffic_metrics, null nếu bảng rỗng. */
+    public Instant[] findRawTimeRange() {
+        return jdbcTemplate.query("SELECT MIN(timestamp), MAX(timestamp) FROM traffic_metrics", rs -> {
+            if (!rs.next() || rs.getTimestamp(1) == null) return null;
+            return new Instant[]{rs.getTimestamp(1).toInstant(), rs.getTimestamp(2).toInstant()};
+        });
+    }
+
+    // ------------------------------------------------------------------
+    // Đọc
+    // ------------------------------------------------------------------
+
+    /**
+     * Tổng 1 cột theo bucket trong [from, to), lọc tùy chọn theo key (camera_id hoặc district).
+     * Bucket đầu tiên là bucket chứa from.
+     */
+    public Map<Instant, Long> sumByBucket(Rollup r, String column, String key, Instant from, Instant to) {
+        if (!COUNT_COLUMNS.contains(column)) {
+            throw new IllegalArgumentException("Unknown rollup column: " + column);
+        }
+        Instant start = from.truncatedTo(r.unit);
+        StringBuilder sql = new StringBuilder("SELECT bucket, SUM(").append(column).append(") FROM ").append(r.table)
+                .append(" WHERE bucket >= ? AND bucket < ?");
+        List<Object> params = new ArrayList<>(List.of(Timestamp.from(start), Timestamp.from(to)));
+        if (key != null && !key.isEmpty()) {
+            sql.append(" AND ").append(r.keyColumn).append(" = ?");
+            params.add(key);
+        }
+        sql.append(" GROUP BY bucket ORDER BY bucket");
+
+        Map<Instant, Long> result = new LinkedHashMap<>();
+        jdbcTemplate.query(sql.toString(), rs -> {
+            result.put(rs.getTimestamp(1).toInstant(), rs.getLong(2));
+        }, params.toArray());
+        return result;
+    }
+
+    /**
+     * Toàn bộ dòng rollup trong [from, to), lọc tùy chọn theo danh sách key.
+     */
+    public List<RollupRow> findRows(Rollup r, Instant from, Instant to, Collection<String> keys) {
+        Instant start = from.truncatedTo(r.unit);
+        StringBuilder sql = new StringBuilder("SELECT ").append(r.keyColumn).append(", bucket, ")
+                .append(r.isCamera() ? "district, " : "").append(COUNT_LIST)
+                .append(" FROM ").append(r.table).append(" WHERE bucket >= ? AND bucket < ?");
+        List<Object> params = new ArrayList<>(List.of(Timestamp.from(start), Timestamp.from(to)));
+        if (keys != null && !keys.isEmpty()) {
+            sql.append(" AND ").append(r.keyColumn).append(" IN (")
+                    .append(String.join(", ", Collections.nCopies(keys.size(), "?"))).append(")");
+            params.addAll(keys);
+        }
+        sql.append(" ORDER BY bucket");
+        return jdbcTemplate.query(sql.toString(), (rs, i) -> mapRow(r, rs), params.toArray());
+    }
+
+    /**
+     * Duyệt các dòng rollup camera trong [from, to) theo cursor (không dựng List), lọc tùy chọn theo camera
+     * hoặc (nếu không lọc camera) theo quận. Cần chạy trong transaction để fetch size có hiệu lực.
+     */
+    public void streamCameraRows(Rollup r, Instant from, Instant to, Collection<String> cameraIds,
+                                 Collection<String> districts, int fetchSize, Consumer<RollupRow> handler) {
+        if (!r.isCamera()) {
+            throw new IllegalArgumentException("Not a camera rollup: " + r);
+        }
+        boolean byCamera = cameraIds != null && !cameraIds.isEmpty();
+        boolean byDistrict = !byCamera && districts != null && !districts.isEmpty();
+        String sql = "SELECT " + r.keyColumn + ", bucket, district, " + COUNT_LIST + " FROM " + r.table +
+                " WHERE bucket >= ? AND bucket < ?" +
+                (byCamera ? " AND camera_id = ANY(?)" : byDistrict ? " AND district = ANY(?)" : "");
+        jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            ps.setFetchSize(fetchSize);
+            ps.setTimestamp(1, Timestamp.from(from));
+            ps.setTimestamp(2, Timestamp.from(to));
+            if (byCamera || byDistrict) {
+                ps.setArray(3, con.createArrayOf("varchar", (byCamera ? cameraIds : districts).toArray()));
+            }
+            return ps;
+        }, (RowCallbackHandler) rs -> handler.accept(mapRow(r, rs)));
+    }
+
+    /**
+     * Tổng mọi cột theo key trong [from, to) (làm tròn ra phút): phần trọn giờ đọc bảng giờ,
+     * phần lẻ 2 đầu đọc bảng phút. Trả về 1 dòng / key (bucket = null), số dòng tỉ lệ với số key.
+     */
+    public List<RollupRow> sumByKey(Rollup minuteRollup, Rollup hourRollup, Instant from, Instant to) {
+        if (!minuteRollup.keyColumn.equals(hourRollup.keyColumn)) {
+            throw new IllegalArgumentException("Rollups must share the same key column");
+        }
+        Instant mStart = from.truncatedTo(ChronoUnit.MINUTES);
+        Instant mEnd = to.truncatedTo(ChronoUnit.MINUTES).equals(to) ? to : to.truncatedTo(ChronoUnit.MINUTES).plus(1, ChronoUnit.MINUTES);
+        Instant hStart = mStart.truncatedTo(ChronoUnit.HOURS).equals(mStart) ? mStart : mStart.truncatedTo(ChronoUnit.HOURS).plus(1, ChronoUnit.HOURS);
+        Instant hEnd = mEnd.truncatedTo(ChronoUnit.HOURS);
+
+        String sums = COUNT_COLUMNS.stream().map(c -> "SUM(" + c + ")").collect(Collectors.joining(", "));
+        String key = minuteRollup.keyColumn;
+        String sql;
+        Object[] params;
+        if (hStart.isBefore(hEnd)) {
+            sql = "SELECT " + key + ", " + sums + " FROM (" +
+                    "SELECT " + key + ", " + COUNT_LIST + " FROM " + hourRollup.table + " WHERE bucket >= ? AND bucket < ? " +
+                    "UNION ALL " +
+                    "SELECT " + key + ", " + COUNT_LIST + " FROM " + minuteRollup.table +
+                    " WHERE (bucket >= ? AND bucket < ?) OR (bucket >= ? AND bucket < ?)" +
+                    ") x GROUP BY " + key;
+            params = new Object[]{Timestamp.from(hStart), Timestamp.from(hEnd),
+                    Timestamp.from(mStart), Timestamp.from(hStart), Timestamp.from(hEnd), Timestamp.from(mEnd)};
+        } else {
+            sql = "SELECT " + key + ", " + sums + " FROM " + minuteRollup.table +
+                    " WHERE bucket >= ? AND bucket < ? GROUP BY " + key;
+            params = new Object[]{Timestamp.from(mStart), Timestamp.from(mEnd)};
+        }
+
+        return jdbcTemplate.query(sql, (rs, i) -> {
+            long[] counts = newCounts();
+            for (int c = 0; c < counts.length; c++) {
+                counts[c] = rs.getLong(2 + c);
+            }
+            return new RollupRow(rs.getString(1), null, rs.getString(1), counts);
+        }, params);
+    }
+
+    private RollupRow mapRow(Rollup r, ResultSet rs) throws SQLException {
+        String key = rs.getString(1);
+        Instant bucket = rs.getTimestamp(2).toInstant();
+        int offset = 3;
+        String district = key;
+        if (r.isCamera()) {
+            district = rs.getString(3);
+            offset = 4;
+        }
+        long[] counts = newCounts();
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = rs.getLong(offset + i);
+        }
+        return new RollupRow(key, bucket, district, counts);
+    }
+}
@@ -0,0 +1,155 @@
+package com.traffic_stream.dashboard.repository;
+
+import lombok.Getter;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Bảng sketch theo quận (phút/giờ): cameras = HLL các camera có dữ liệu, counts = KLL của số xe mỗi camera-phút.
+ * <p>
+ * Sketch được dựng lại từ traffic_rollup_camera_minute (không cộng dồn) nên ghi đè cả dòng là idempotent.
+ * </p>
+ */
+@Repository
+public class TrafficSketchRepository {
+
+    public enum SketchTable {
+        DISTRICT_MINUTE("traffic_sketch_district_minute", ChronoUnit.MINUTES),
+        DISTRICT_HOUR("traffic_sketch_district_hour", ChronoUnit.HOURS);
+
+        private final String table;
+        private final ChronoUnit unit;
+
+        SketchTable(String table, ChronoUnit unit) {
+            this.table = table;
+            this.unit = unit;
+        }
+
+        public String getTable() {
+            return table;
+        }
+
+        public ChronoUnit getUnit() {
+            return unit;
+        }
+    }
+
+    @Getter
+    public static class SketchRow {
+        private final String district;
+        private final Instant bucket;
+        private final byte[] cameras;
+        private final byte[] counts;
+
+        public SketchRow(String district, Instant bucket, byte[] cameras, byte[] counts) {
+            this.district = district;
+            this.bucket = bucket;
+            this.cameras = cameras;
+            this.counts = counts;
+        }
+    }
+
+    /** Một dòng camera-phút đọc từ rollup: đầu vào để dựng sketch. */
+    public interface CameraMinuteHandler {
+        void accept(String district, Instant bucket, String cameraId, long vehicleCount);
+    }
+
+    public interface SketchRowHandler {
+        void accept(SketchRow row);
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public TrafficSketchRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    public List<String> ddlStatements() {
+        List<String> ddl = new ArrayList<>();
+        for (SketchTable t : SketchTable.values()) {
+            ddl.add("CREATE TABLE IF NOT EXISTS " + t.table + " (" +
+                    "district VARCHAR(255) NOT NULL, " +
+                    "bucket TIMESTAMPTZ NOT NULL, " +
+                    "cameras BYTEA NOT NULL, " +
+                    "counts BYTEA NOT NULL, " +
+                    "PRIMARY KEY (district, bucket))");
+            ddl.add("CREATE INDEX IF NOT EXISTS idx_" + t.table + "_bucket ON " + t.table + " (bucket)");
+        }
+        return ddl;
+    }
+
+    /**
+     * Duyệt các camera-phút trong [from, to), sắp theo (district, bucket) để caller dựng sketch theo từng nhóm liên tiếp.
+     */
+    public void streamCameraMinutes(Instant from, Instant to, CameraMinuteHandler handler) {
+        jdbcTemplate.query(
+                "SELECT district, bucket, camera_id, vehicle_count FROM traffic_rollup_camera_minute " +
+                "WHERE bucket >= ? AND bucket < ? AND district <> '' ORDER BY district, bucket",
+                (RowCallbackHandler) rs -> handler.accept(rs.getString(1), rs.getTimestamp(2).toInstant(),
+                        rs.getString(3), rs.getLong(4)),
+                Timestamp.from(from), Timestamp.from(to));
+    }
+
+    public void upsert(SketchTable t, List<SketchRow> rows) {
+        if (rows.isEmpty()) return;
+        jdbcTemplate.batchUpdate(
+                "INSERT INTO " + t.table + " (district, bucket, cameras, counts) VALUES (?, ?, ?, ?) " +
+                "ON CONFLICT (district, bucket) DO UPDATE SET cameras = EXCLUDED.cameras, counts = EXCLUDED.counts",
+                new BatchPreparedStatementSetter() {
+                    @Override
+                    public void setValues(PreparedStatement ps, int i) throws SQLException {
+                        SketchRow row = rows.get(i);
+                        ps.setString(1, row.district);
+                        ps.setTimestamp(2, Timestamp.from(row.bucket));
+                        ps.setBytes(3, row.cameras);
+                        ps.setBytes(4, row.counts);
+                    }
+
+                    @Override
+                    public int getBatchSize() {
+                        return rows.size();
+                    }
+                });
+    }
+
+    /**
+     * Sketch trong [from, to) của một bảng, sắp theo (district, bucket). district = null → mọi quận.
+     */
+    public void stream(SketchTable t, Instant from, Instant to, String district, SketchRowHandler handler) {
+        String sql = "SELECT district, bucket, cameras, counts FROM " + t.table +
+                " WHERE bucket >= ? AND bucket < ?" + (district != null ? " AND district = ?" : "") +
+                " ORDER BY district, bucket";
+        Object[] params = district != null
+                ? new Object[]{Timestamp.from(from), Timestamp.from(to), district}
+                : new Object[]{Timestamp.from(from), Timestamp.from(to)};
+        jdbcTemplate.query(sql, (RowCallbackHandler) rs -> handler.accept(new SketchRow(rs.getString(1),
+                rs.getTimestamp(2).toInstant(), rs.getBytes(3), rs.getBytes(4))), params);
+    }
+
+    /** Bucket phút mới nhất đã có sketch, null nếu bảng rỗng. */
+    public Instant findLatestMinuteBucket() {
+        Timestamp ts = jdbcTemplate.queryForObject(
+                "SELECT MAX(bucket) FROM " + SketchTable.DISTRICT_MINUTE.table, Timestamp.class);
+        return ts == null ? null : ts.toInstant();
+    }
+
+    /** [min, max] bucket của rollup camera-phút (nguồn để backfill sketch), null nếu chưa có dữ liệu. */
+    public Instant[] findCameraMinuteRange() {
+        return jdbcTemplate.query(
+                "SELECT MIN(bucket), MAX(bucket) FROM traffic_rollup_camera_minute",
+                rs -> {
+                    if (!rs.next() || rs.getTimestamp(1) == null) return null;
+                    return new Instant[]{rs.getTimestamp(1).toInstant(), rs.getTimestamp(2).toInstant()};
+                });
+    }
+}
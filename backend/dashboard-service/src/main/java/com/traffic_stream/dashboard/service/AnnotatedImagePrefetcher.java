@@ -0,0 +1,239 @@
+package com.traffic_stream.dashboard.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Tải trước ảnh annotated cho báo cáo PDF: song song trên pool giới hạn, thu nhỏ về khung hiển thị rồi
+ * mã hóa JPEG một lần, cache theo URL (giới hạn theo tổng số byte) dùng chung giữa các báo cáo.
+ * <p>
+ * Ảnh lỗi không được cache (có thể chỉ lỗi tạm thời); caller vẽ placeholder cho URL không có trong kết quả.
+ * Hit/miss có ở cache_gets_total{cache="report_images"}.
+ * </p>
+ */
+@Slf4j
+@Service
+public class AnnotatedImagePrefetcher {
+
+    public static final String CACHE_NAME = "report_images";
+
+    /** Khung ảnh trong PDF là 240x180 pt; render ở 2x để ảnh vẫn nét khi in/zoom. */
+    private static final int TARGET_WIDTH = 480;
+    private static final int TARGET_HEIGHT = 360;
+    private static final float JPEG_QUALITY = 0.85f;
+    private static final int MAX_RETRIES = 2;
+
+    private final ImageUrlResolverService urlResolver;
+    private final Cache<String, byte[]> cache;
+    private final ThreadPoolTaskExecutor executor;
+    private final long timeoutMillis;
+
+    public AnnotatedImagePrefetcher(ImageUrlResolverService urlResolver,
+                                    MeterRegistry registry,
+                                    @Value("${app.report.image.fetch-threads:6}") int threads,
+                                    @Value("${app.report.image.cache-max-bytes:33554432}") long cacheMaxBytes,
+                                    @Value("${app.report.image.prefetch-timeout-ms:40000}") long timeoutMillis) {
+        this.urlResolver = urlResolver;
+        this.timeoutMillis = timeoutMillis;
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(cacheMaxBytes)
+                .weigher((String url, byte[] jpeg) -> jpeg.length)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(registry, cache, CACHE_NAME);
+
+        this.executor = new ThreadPoolTaskExecutor();
+        this.executor.setCorePoolSize(threads);
+        this.executor.setMaxPoolSize(threads);
+        this.executor.setQueueCapacity(Integer.MAX_VALUE);
+        this.executor.setThreadNamePrefix("report-image-");
+        this.executor.setDaemon(true);
+        this.executor.initialize();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * Tải (hoặc lấy từ cache) các ảnh, chờ tối đa prefetch-timeout cho cả nhóm.
+     *
+     * @return URL gốc → JPEG đã thu nhỏ; URL tải lỗi/quá hạn không có trong map
+     */
+    public Map<String, byte[]> prefetch(Collection<String> urls) {
+        long started = System.currentTimeMillis();
+        Map<String, byte[]> result = new HashMap<>();
+        Map<String, Future<byte[]>> pending = new LinkedHashMap<>();
+
+        for (String url : new LinkedHashSet<>(urls)) {
+            if (url == null || url.trim().isEmpty()) continue;
+            byte[] cached = cache.getIfPresent(url);
+            if (cached != null) {
+                result.put(url, cached);
+            } else {
+                pending.put(url, executor.submit(() -> load(url)));
+            }
+        }
+
+        long deadline = started + timeoutMillis;
+        for (Map.Entry<String, Future<byte[]>> e : pending.entrySet()) {
+            try {
+                byte[] jpeg = e.getValue().get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+                if (jpeg != null) {
+                    cache.put(e.getKey(), jpeg);
+                    result.put(e.getKey(), jpeg);
+                }
+            } catch (TimeoutException ex) {
+                e.getValue().cancel(true);
+                log.warn("Image prefetch timed out: {}", e.getKey());
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (ExecutionException ex) {
+                log.warn("Image prefetch failed: {} - {}", e.getKey(), ex.getCause().getMessage());
+            }
+        }
+
+        log.info("Prefetched {}/{} annotated images ({} from cache) in {}ms",
+                result.size(), urls.size(), result.size() - countLoaded(pending, result), System.currentTimeMillis() - started);
+        return result;
+    }
+
+    private static long countLoaded(Map<String, Future<byte[]>> pending, Map<String, byte[]> result) {
+        return pending.keySet().stream().filter(result::containsKey).count();
+    }
+
+    private byte[] load(String originalUrl) throws IOException {
+        String imageUrl = urlResolver.resolveImageUrl(originalUrl);
+        if (!originalUrl.equals(imageUrl)) {
+            log.debug("URL resolved: {} -> {}", originalUrl, imageUrl);
+        }
+        BufferedImage image = loadImageWithRetry(imageUrl);
+        if (image == null) return null;
+        return toJpeg(downscale(image));
+    }
+
+    /** Thu nhỏ (giữ tỉ lệ) để vừa khung TARGET; luôn trả về ảnh RGB (JPEG không có kênh alpha). */
+    static BufferedImage downscale(BufferedImage source) {
+        double scale = Math.min(1.0, Math.min((double) TARGET_WIDTH / source.getWidth(),
+                (double) TARGET_HEIGHT / source.getHeight()));
+        int width = Math.max(1, (int) Math.round(source.getWidth() * scale));
+        int height = Math.max(1, (int) Math.round(source.getHeight() * scale));
+
+        BufferedImage target = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = target.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            g.setColor(Color.WHITE);
+            g.fillRect(0, 0, width, height);
+            g.drawImage(source, 0, 0, width, height, null);
+        } finally {
+            g.dispose();
+        }
+        return target;
+    }
+
+    private static byte[] toJpeg(BufferedImage image) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (ImageOutputStream out = ImageIO.createImageOutputStream(baos)) {
+            writer.setOutput(out);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(JPEG_QUALITY);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return baos.toByteArray();
+    }
+
+    /**
+     * Load image with retry logic
+     */
+    private BufferedImage loadImageWithRetry(String imageUrl) {
+        for (int attempt = 1; attempt <= MAX_RETRIES; attempt++) {
+            try {
+                log.debug("Loading image attempt {}/{}: {}", attempt, MAX_RETRIES, imageUrl);
+
+                URL url = new URL(imageUrl);
+
+                // Check if it's a file URL or HTTP URL
+                if (imageUrl.startsWith("file:")) {
+                    // Local file
+                    return ImageIO.read(url);
+                } else {
+                    // HTTP/HTTPS URL
+                    HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+                    connection.setConnectTimeout(15000); // 15 seconds
+                    connection.setReadTimeout(15000);
+                    connection.setRequestProperty("User-Agent", "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36");
+                    connection.setRequestProperty("Accept", "image/*");
+                    connection.setInstanceFollowRedirects(true);
+                    connection.setDoInput(true);
+
+                    try {
+                        int responseCode = connection.getResponseCode();
+                        if (responseCode == 200) {
+                            BufferedImage image = ImageIO.read(connection.getInputStream());
+                            if (image != null) {
+                                return image;
+                            }
+                            log.warn("ImageIO.read returned null for URL: {}", imageUrl);
+                        } else {
+                            log.warn("HTTP error {} for URL: {}", responseCode, imageUrl);
+                        }
+                    } finally {
+                        connection.disconnect();
+                    }
+                }
+            } catch (java.net.SocketTimeoutException e) {
+                log.warn("Timeout on attempt {}/{}: {}", attempt, MAX_RETRIES, imageUrl);
+            } catch (java.net.UnknownHostException e) {
+                log.warn("Unknown host: {} - {}", imageUrl, e.getMessage());
+                break; // No point retrying DNS errors
+            } catch (java.net.MalformedURLException e) {
+                log.error("Malformed URL: {} - {}", imageUrl, e.getMessage());
+                break; // No point retrying bad URLs
+            } catch (Exception e) {
+                log.warn("Error on attempt {}/{}: {} - {}", attempt, MAX_RETRIES, imageUrl, e.getMessage());
+            }
+
+            // Wait before retry (except on last attempt)
+            if (attempt < MAX_RETRIES) {
+                try {
+                    Thread.sleep(1000); // Wait 1 second before retry
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+
+        log.error("Failed to load image after {} attempts: {}", MAX_RETRIES, imageUrl);
+        return null;
+    }
+}
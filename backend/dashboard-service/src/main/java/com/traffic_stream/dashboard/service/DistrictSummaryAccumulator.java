@@ -0,0 +1,72 @@
+package com.traffic_stream.dashboard.service;
+
+import com.traffic_stream.dashboard.dto.report.ReportSummaryDTO;
+import com.traffic_stream.dashboard.repository.TrafficMetricScanRepository.MetricRow;
+import com.traffic_stream.dashboard.shared.utils.TimeHelper;
+
+import java.time.Instant;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Tóm tắt theo quận (tổng xe, giờ cao điểm "HH:00" giờ VN, top 5 camera theo tên) gom dần từ cursor,
+ * thay cho việc groupingBy trên List&lt;TrafficMetric&gt; của cả khoảng. Không thread-safe.
+ */
+final class DistrictSummaryAccumulator {
+
+    private static final long HOUR_MILLIS = 3_600_000L;
+    /** Asia/Ho_Chi_Minh không có DST: offset cố định. */
+    private static final long VN_OFFSET_MILLIS =
+            TimeHelper.ZONE_VN.getRules().getOffset(Instant.EPOCH).getTotalSeconds() * 1000L;
+
+    private final Map<String, District> districts = new HashMap<>();
+    private long records;
+
+    void add(MetricRow row) {
+        records++;
+        District d = districts.computeIfAbsent(row.getDistrict(), k -> new District());
+        d.total += row.getTotalCount();
+        int hour = (int) Math.floorMod(Math.floorDiv(row.getTimestampMillis() + VN_OFFSET_MILLIS, HOUR_MILLIS), 24L);
+        d.hourly[hour] += row.getTotalCount();
+        d.hourSeen |= 1 << hour;
+        d.cameras.merge(row.getCameraName(), (long) row.getTotalCount(), Long::sum);
+    }
+
+    long getRecords() {
+        return records;
+    }
+
+    List<ReportSummaryDTO> toSummaries() {
+        return districts.entrySet().stream()
+                .map(e -> e.getValue().toSummary(e.getKey()))
+                .sorted(Comparator.comparing(ReportSummaryDTO::getDistrict))
+                .collect(Collectors.toList());
+    }
+
+    private static final class District {
+        long total;
+        final long[] hourly = new long[24];
+        int hourSeen;
+        final Map<String, Long> cameras = new HashMap<>();
+
+        ReportSummaryDTO toSummary(String district) {
+            int peak = -1;
+            for (int h = 0; h < 24; h++) {
+                if ((hourSeen & (1 << h)) != 0 && (peak < 0 || hourly[h] > hourly[peak])) peak = h;
+            }
+
+            List<String> topCameras = cameras.entrySet().stream()
+                    .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+                    .limit(5)
+                    .map(Map.Entry::getKey)
+                    .collect(Collectors.toList());
+
+            ReportSummaryDTO summary = new ReportSummaryDTO();
+            summary.setDistrict(district);
+            summary.setTotalVehicles(total);
+            summary.setPeakHour(peak < 0 ? "N/A" : String.format("%02d:00", peak));
+            summary.setTopCameras(topCameras);
+            return summary;
+        }
+    }
+}
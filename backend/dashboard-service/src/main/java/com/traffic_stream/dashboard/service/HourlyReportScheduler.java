@@ -1,6 +1,8 @@
 package com.traffic_stream.dashboard.service;
 
 import com.traffic_stream.dashboard.dto.DashboardUpdateDTO;
+import com.traffic_stream.dashboard.dto.HourlyDistrictSummaryDTO;
+import com.traffic_stream.dashboard.service.realtime.LiveWindowEngine;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.scheduling.annotation.Async;
@@ -10,6 +12,7 @@ import org.springframework.messaging.simp.SimpMessagingTemplate;
 
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
+import java.util.List;
 
 @Service
 @Slf4j
@@ -17,14 +20,16 @@ import java.time.temporal.ChronoUnit;
 public class HourlyReportScheduler {
 
     private final TrafficService trafficService;
+    private final LiveWindowEngine liveWindow;
     private final SimpMessagingTemplate ws;
 
     /**
-     * Chạy mỗi 1 PHÚT
+     * Mặc định chạy mỗi 1 PHÚT (app.dashboard.push-interval-ms, có thể giảm xuống vài giây)
      * Thêm @Async để chạy trên luồng riêng, tránh block hệ thống
+     * Khi cửa sổ live và ring phút đã sẵn sàng thì không truy vấn DB; ngược lại dùng các query cũ.
      */
     @Async
-    @Scheduled(cron = "0 * * * * *")
+    @Scheduled(fixedRateString = "${app.dashboard.push-interval-ms:60000}")
     public void sendDashboardUpdate() {
         try {
             long startTime = System.currentTimeMillis();
@@ -32,6 +37,16 @@ public class HourlyReportScheduler {
             Instant now = Instant.now().minus(2, ChronoUnit.MINUTES);
             Instant recentStart = now.minus(59, ChronoUnit.SECONDS); 
 
+            if (liveWindow.isReady()) {
+                List<HourlyDistrictSummaryDTO> hourlySummary = trafficService.getDetailedHourlySummaryFromMemory(recentStart, now);
+                if (hourlySummary == null) {
+                    hourlySummary = trafficService.getDetailedHourlySummaryByDistrict(recentStart, now);
+                }
+                ws.convertAndSend("/topic/dashboard-update", liveWindow.buildUpdate(hourlySummary));
+                log.debug("Đã gửi gói tin Dashboard Update từ cửa sổ live (Time: {}ms)", System.currentTimeMillis() - startTime);
+                return;
+            }
+
             DashboardUpdateDTO updateData = DashboardUpdateDTO.builder()
                     .hourlySummary(trafficService.getDetailedHourlySummaryByDistrict(recentStart, now))
                     .fastestGrowing(trafficService.getTop5FastestGrowingDistricts())
@@ -8,24 +8,28 @@ import org.apache.pdfbox.pdmodel.font.PDFont;
 import org.apache.pdfbox.pdmodel.font.PDType0Font;
 import org.apache.pdfbox.pdmodel.font.PDType1Font;
 import org.apache.pdfbox.pdmodel.font.Standard14Fonts;
+import org.apache.pdfbox.pdmodel.graphics.image.JPEGFactory;
+import org.apache.pdfbox.pdmodel.graphics.image.LosslessFactory;
 import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
 import org.jfree.chart.ChartFactory;
 import org.jfree.chart.JFreeChart;
 import org.jfree.chart.plot.PlotOrientation;
 import org.jfree.data.category.DefaultCategoryDataset;
 import org.jfree.data.general.DefaultPieDataset;
+import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
-import javax.imageio.ImageIO;
 import java.awt.*;
+import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
-import java.io.ByteArrayOutputStream;
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.net.URL;
+import java.nio.file.Files;
 import java.time.Instant;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
@@ -40,12 +44,6 @@ import java.util.Map;
 @Service
 public class PdfBuilderService {
 
-    private final ImageUrlResolverService urlResolver;
-
-    public PdfBuilderService(ImageUrlResolverService urlResolver) {
-        this.urlResolver = urlResolver;
-    }
-
     private static final DateTimeFormatter DATE_TIME_FORMATTER =
             DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm").withZone(ZoneId.of("Asia/Ho_Chi_Minh"));
 
@@ -59,55 +57,76 @@ public class PdfBuilderService {
     private static final Color TEXT_COLOR = Color.BLACK;
     private static final Color GRID_COLOR = new Color(189, 195, 199);
 
-    // Fonts
-    private PDFont fontBold;
-    private PDFont fontRegular;
+    // Biểu đồ được raster ở kích thước gốc x chartScale (2 = nét hơn khi in/zoom, đổi lại file lớn hơn)
+    @Value("${app.report.chart.scale:1}")
+    private int chartScale;
+
+    // Font Unicode (hỗ trợ tiếng Việt): tìm và đọc vào bộ nhớ một lần lúc khởi động, mỗi document chỉ parse lại từ byte
+    private byte[] regularFontBytes;
+    private byte[] boldFontBytes;
 
     /**
-     * Initialize fonts for a specific document (must be called before using other methods)
+     * Tìm cặp font regular/bold theo thứ tự ưu tiên. Không có font nào hỗ trợ tiếng Việt thì dừng khởi động
+     * luôn thay vì để từng báo cáo lỗi lúc chạy.
      */
-    public void initializeFonts(PDDocument document) throws IOException {
-        // Try multiple font sources in order of preference
+    @PostConstruct
+    void locateFonts() {
+        long started = System.currentTimeMillis();
 
         // 1. Try Windows fonts first (most reliable on Windows)
-        if (loadWindowsFonts(document)) {
-            log.info("Loaded Windows system fonts (supports Vietnamese)");
-            return;
-        }
+        byte[][] fonts = readWindowsFonts();
+        String source = "Windows system fonts";
 
-        // 2. Try Liberation Sans from PDFBox
-        if (loadLiberationFonts(document)) {
-            log.info("Loaded Liberation Sans fonts (supports Vietnamese)");
-            return;
+        // 2. Try Liberation Sans from classpath
+        if (fonts == null) {
+            fonts = readLiberationFonts();
+            source = "Liberation Sans fonts";
         }
 
         // 3. Try Linux fonts
-        if (loadLinuxFonts(document)) {
-            log.info("Loaded Linux system fonts (supports Vietnamese)");
-            return;
+        if (fonts == null) {
+            fonts = readLinuxFonts();
+            source = "Linux system fonts";
+        }
+
+        // 4. Last resort - fail instead of using Helvetica
+        if (fonts == null) {
+            throw new IllegalStateException("Cannot load any Unicode font that supports Vietnamese characters. Please install Arial, Liberation Sans, or DejaVu Sans fonts.");
         }
 
-        // 4. Last resort - throw exception instead of using Helvetica
-        throw new IOException("Cannot load any Unicode font that supports Vietnamese characters. Please install Arial, Liberation Sans, or DejaVu Sans fonts.");
+        this.regularFontBytes = fonts[0];
+        this.boldFontBytes = fonts[1];
+        log.info("Loaded {} for PDF reports (supports Vietnamese, {} + {} bytes, {}ms)",
+                source, regularFontBytes.length, boldFontBytes.length, System.currentTimeMillis() - started);
     }
 
-    private boolean loadWindowsFonts(PDDocument document) {
+    /**
+     * Tạo context dựng cho một document: nhúng font (chỉ subset glyph thực sự dùng) vào document đó,
+     * phải gọi trước các hàm vẽ khác. Mỗi báo cáo dùng context riêng nên nhiều báo cáo có thể dựng song song.
+     */
+    public PdfRenderContext createContext(PDDocument document) throws IOException {
+        long started = System.nanoTime();
+        PDFont regular = PDType0Font.load(document, new ByteArrayInputStream(regularFontBytes), true);
+        PDFont bold = PDType0Font.load(document, new ByteArrayInputStream(boldFontBytes), true);
+        log.debug("PDF fonts prepared in {}ms", (System.nanoTime() - started) / 1_000_000);
+        return new PdfRenderContext(document, regular, bold);
+    }
+
+    private byte[][] readWindowsFonts() {
         try {
             File arialRegular = new File("C:/Windows/Fonts/arial.ttf");
             File arialBold = new File("C:/Windows/Fonts/arialbd.ttf");
 
             if (arialRegular.exists() && arialBold.exists()) {
-                this.fontRegular = PDType0Font.load(document, arialRegular);
-                this.fontBold = PDType0Font.load(document, arialBold);
-                return true;
+                return new byte[][]{Files.readAllBytes(arialRegular.toPath()), Files.readAllBytes(arialBold.toPath())};
             }
         } catch (Exception e) {
             log.debug("Windows fonts not available: {}", e.getMessage());
         }
-        return false;
+        return null;
     }
 
-    private boolean loadLiberationFonts(PDDocument document) {
+    private byte[][] readLiberationFonts() {
         try {
             // Try different possible paths for Liberation Sans
             String[] paths = {
@@ -119,24 +138,20 @@ public class PdfBuilderService {
             for (String regularPath : paths) {
                 String boldPath = regularPath.replace("Regular", "Bold");
 
-                InputStream regularStream = getClass().getResourceAsStream(regularPath);
-                InputStream boldStream = getClass().getResourceAsStream(boldPath);
-
-                if (regularStream != null && boldStream != null) {
-                    this.fontRegular = PDType0Font.load(document, regularStream);
-                    this.fontBold = PDType0Font.load(document, boldStream);
-                    regularStream.close();
-                    boldStream.close();
-                    return true;
+                try (InputStream regularStream = getClass().getResourceAsStream(regularPath);
+                     InputStream boldStream = getClass().getResourceAsStream(boldPath)) {
+                    if (regularStream != null && boldStream != null) {
+                        return new byte[][]{regularStream.readAllBytes(), boldStream.readAllBytes()};
+                    }
                 }
             }
         } catch (Exception e) {
             log.debug("Liberation Sans fonts not available: {}", e.getMessage());
         }
-        return false;
+        return null;
     }
 
-    private boolean loadLinuxFonts(PDDocument document) {
+    private byte[][] readLinuxFonts() {
         try {
             // Try Liberation Sans (Debian/Ubuntu package: fonts-liberation)
             String[][] linuxFontPaths = {
@@ -158,31 +173,23 @@ public class PdfBuilderService {
                 File boldFile = new File(fontPair[1]);
 
                 if (regularFile.exists() && boldFile.exists()) {
-                    this.fontRegular = PDType0Font.load(document, regularFile);
-                    this.fontBold = PDType0Font.load(document, boldFile);
-                    log.info("Loaded Linux fonts from: {}", fontPair[0]);
-                    return true;
+                    log.info("Using Linux fonts from: {}", fontPair[0]);
+                    return new byte[][]{Files.readAllBytes(regularFile.toPath()), Files.readAllBytes(boldFile.toPath())};
                 }
             }
         } catch (Exception e) {
             log.debug("Linux fonts not available: {}", e.getMessage());
         }
-        return false;
-    }
-
-    /**
-     * Tạo trang mới và trả về ContentStream
-     */
-    public PDPage createNewPage(PDDocument document) {
-        PDPage page = new PDPage(PDRectangle.A4);
-        document.addPage(page);
-        return page;
+        return null;
     }
 
     /**
      * Vẽ header trang
      */
-    public void drawHeader(PDPageContentStream content, String title, int pageNumber) throws IOException {
+    public void drawHeader(PdfRenderContext ctx, String title, int pageNumber) throws IOException {
+        PDPageContentStream content = ctx.content();
+        PDFont fontRegular = ctx.getFontRegular();
+        PDFont fontBold = ctx.getFontBold();
 
         // Draw header background
         content.setNonStrokingColor(HEADER_COLOR);
@@ -210,7 +217,9 @@ public class PdfBuilderService {
     /**
      * Vẽ section header
      */
-    public float drawSectionHeader(PDPageContentStream content, String sectionTitle, float yPosition) throws IOException {
+    public float drawSectionHeader(PdfRenderContext ctx, String sectionTitle, float yPosition) throws IOException {
+        PDPageContentStream content = ctx.content();
+        PDFont fontBold = ctx.getFontBold();
         content.setNonStrokingColor(SECTION_COLOR);
         content.addRect(50, yPosition - 5, 495, 25);
         content.fill();
@@ -229,7 +238,9 @@ public class PdfBuilderService {
     /**
      * Vẽ text thường
      */
-    public float drawText(PDPageContentStream content, String text, float x, float yPosition, int fontSize) throws IOException {
+    public float drawText(PdfRenderContext ctx, String text, float x, float yPosition, int fontSize) throws IOException {
+        PDPageContentStream content = ctx.content();
+        PDFont fontRegular = ctx.getFontRegular();
         content.beginText();
         content.setFont(fontRegular, fontSize);
         content.newLineAtOffset(x, yPosition);
@@ -241,7 +252,9 @@ public class PdfBuilderService {
     /**
      * Vẽ text in đậm
      */
-    public float drawBoldText(PDPageContentStream content, String text, float x, float yPosition, int fontSize) throws IOException {
+    public float drawBoldText(PdfRenderContext ctx, String text, float x, float yPosition, int fontSize) throws IOException {
+        PDPageContentStream content = ctx.content();
+        PDFont fontBold = ctx.getFontBold();
         content.beginText();
         content.setFont(fontBold, fontSize);
         content.newLineAtOffset(x, yPosition);
@@ -300,9 +313,12 @@ public class PdfBuilderService {
     /**
      * Vẽ bảng
      */
-    public float drawTable(PDPageContentStream content, float yPosition,
+    public float drawTable(PdfRenderContext ctx, float yPosition,
                           String[] headers, List<String[]> rows,
                           float[] columnWidths) throws IOException {
+        PDPageContentStream content = ctx.content();
+        PDFont fontRegular = ctx.getFontRegular();
+        PDFont fontBold = ctx.getFontBold();
 
         float tableWidth = 0;
         for (float width : columnWidths) {
@@ -369,7 +385,10 @@ public class PdfBuilderService {
     /**
      * Vẽ key-value pair with text wrapping for long values
      */
-    public float drawKeyValue(PDPageContentStream content, String key, String value, float x, float yPosition) throws IOException {
+    public float drawKeyValue(PdfRenderContext ctx, String key, String value, float x, float yPosition) throws IOException {
+        PDPageContentStream content = ctx.content();
+        PDFont fontRegular = ctx.getFontRegular();
+        PDFont fontBold = ctx.getFontBold();
         // Draw key
         content.beginText();
         content.setFont(fontBold, 10);
@@ -415,7 +434,8 @@ public class PdfBuilderService {
     /**
      * Vẽ bullet list
      */
-    public float drawBulletList(PDPageContentStream content, List<String> items, float x, float yPosition) throws IOException {
+    public float drawBulletList(PdfRenderContext ctx, List<String> items, float x, float yPosition) throws IOException {
+        PDPageContentStream content = ctx.content();
         for (String item : items) {
             // Draw bullet
             content.setNonStrokingColor(SECTION_COLOR);
@@ -424,7 +444,7 @@ public class PdfBuilderService {
             content.setNonStrokingColor(TEXT_COLOR);
 
             // Draw text (with word wrap)
-            yPosition = drawWrappedText(content, item, x + 10, yPosition, 475, 10);
+            yPosition = drawWrappedText(ctx, item, x + 10, yPosition, 475, 10);
             yPosition -= 5;
         }
         return yPosition;
@@ -460,8 +480,10 @@ public class PdfBuilderService {
     /**
      * Vẽ text với word wrap
      */
-    public float drawWrappedText(PDPageContentStream content, String text, float x, float yPosition,
+    public float drawWrappedText(PdfRenderContext ctx, String text, float x, float yPosition,
                                  float maxWidth, int fontSize) throws IOException {
+        PDPageContentStream content = ctx.content();
+        PDFont fontRegular = ctx.getFontRegular();
         String[] words = text.split(" ");
         StringBuilder line = new StringBuilder();
 
@@ -619,151 +641,50 @@ public class PdfBuilderService {
     }
 
     /**
-     * Chuyển JFreeChart thành PDImageXObject
+     * Chuyển JFreeChart thành PDImageXObject: vẽ thẳng vào ảnh RGB (không alpha → không cần SMask) ở mật độ
+     * chartScale rồi nhúng lossless, không qua vòng encode/decode PNG. Kích thước hiển thị trong PDF không đổi.
      */
     private PDImageXObject chartToImage(PDDocument document, JFreeChart chart, int width, int height) throws IOException {
-        BufferedImage bufferedImage = chart.createBufferedImage(width, height);
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        ImageIO.write(bufferedImage, "png", baos);
-        return PDImageXObject.createFromByteArray(document, baos.toByteArray(), "chart");
+        BufferedImage bufferedImage = new BufferedImage(width * chartScale, height * chartScale, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2 = bufferedImage.createGraphics();
+        try {
+            g2.scale(chartScale, chartScale);
+            chart.draw(g2, new Rectangle2D.Double(0, 0, width, height));
+        } finally {
+            g2.dispose();
+        }
+        return LosslessFactory.createFromImage(document, bufferedImage);
     }
 
     /**
-     * Vẽ ảnh từ URL với xử lý lỗi an toàn
+     * Vẽ ảnh JPEG đã tải trước (xem AnnotatedImagePrefetcher); null → placeholder.
+     * JPEG được nhúng nguyên (DCTDecode), không giải mã/nén lại.
      */
-    public boolean drawImageFromUrl(PDPageContentStream content, PDDocument document,
-                                 String imageUrl, float x, float y, float width, float height) {
+    public boolean drawJpegImage(PdfRenderContext ctx,
+                                 byte[] jpeg, float x, float y, float width, float height) {
+        PDPageContentStream content = ctx.content();
+        if (jpeg == null) {
+            drawImagePlaceholder(ctx, x, y, width, height, "Load failed");
+            return false;
+        }
         try {
-            // Validate URL
-            if (imageUrl == null || imageUrl.trim().isEmpty()) {
-                log.warn("Empty image URL provided");
-                drawImagePlaceholder(content, x, y, width, height, "No URL");
-                return false;
-            }
-
-            // Resolve URL from frontend format to backend-accessible format
-            String originalUrl = imageUrl;
-            imageUrl = urlResolver.resolveImageUrl(imageUrl);
-            if (!originalUrl.equals(imageUrl)) {
-                log.info("URL resolved: {} -> {}", originalUrl, imageUrl);
-            }
-
-            log.info("Attempting to load image from URL: {}", imageUrl);
-
-            // Try loading image
-            BufferedImage bufferedImage = loadImageWithRetry(imageUrl, 2);
-
-            if (bufferedImage == null) {
-                log.warn("Failed to load image after retries: {}", imageUrl);
-                drawImagePlaceholder(content, x, y, width, height, "Load failed");
-                return false;
-            }
-
-            log.info("Image loaded successfully, size: {}x{}", bufferedImage.getWidth(), bufferedImage.getHeight());
-
-            // Convert to JPEG (better PDF compatibility)
-            ByteArrayOutputStream baos = new ByteArrayOutputStream();
-            boolean writeSuccess = ImageIO.write(bufferedImage, "JPEG", baos);
-
-            if (!writeSuccess || baos.size() == 0) {
-                log.warn("Failed to convert image to JPEG: {}", imageUrl);
-                drawImagePlaceholder(content, x, y, width, height, "Convert failed");
-                return false;
-            }
-
-            log.info("Image converted to JPEG, size: {} bytes", baos.size());
-
-            // Create and draw image
-            PDImageXObject image = PDImageXObject.createFromByteArray(
-                document,
-                baos.toByteArray(),
-                "image"
-            );
+            PDImageXObject image = JPEGFactory.createFromByteArray(ctx.getDocument(), jpeg);
             content.drawImage(image, x, y, width, height);
-
-            log.info("Successfully drew image from URL: {}", imageUrl);
             return true;
-
         } catch (Exception e) {
-            log.error("Unexpected error loading image from URL: {} - {}", imageUrl, e.getMessage(), e);
-            drawImagePlaceholder(content, x, y, width, height, "Error");
+            log.error("Unexpected error drawing prefetched image - {}", e.getMessage(), e);
+            drawImagePlaceholder(ctx, x, y, width, height, "Error");
             return false;
         }
     }
 
-    /**
-     * Load image with retry logic
-     */
-    private BufferedImage loadImageWithRetry(String imageUrl, int maxRetries) {
-        for (int attempt = 1; attempt <= maxRetries; attempt++) {
-            try {
-                log.debug("Loading image attempt {}/{}: {}", attempt, maxRetries, imageUrl);
-
-                URL url = new URL(imageUrl);
-
-                // Check if it's a file URL or HTTP URL
-                if (imageUrl.startsWith("file:")) {
-                    // Local file
-                    return ImageIO.read(url);
-                } else {
-                    // HTTP/HTTPS URL
-                    java.net.HttpURLConnection connection = (java.net.HttpURLConnection) url.openConnection();
-                    connection.setConnectTimeout(15000); // 15 seconds
-                    connection.setReadTimeout(15000);
-                    connection.setRequestProperty("User-Agent", "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36");
-                    connection.setRequestProperty("Accept", "image/*");
-                    connection.setInstanceFollowRedirects(true);
-                    connection.setDoInput(true);
-
-                    int responseCode = connection.getResponseCode();
-                    log.debug("HTTP response code: {}", responseCode);
-
-                    if (responseCode == 200) {
-                        BufferedImage image = ImageIO.read(connection.getInputStream());
-                        if (image != null) {
-                            log.debug("Successfully loaded image on attempt {}", attempt);
-                            return image;
-                        } else {
-                            log.warn("ImageIO.read returned null for URL: {}", imageUrl);
-                        }
-                    } else {
-                        log.warn("HTTP error {} for URL: {}", responseCode, imageUrl);
-                    }
-
-                    connection.disconnect();
-                }
-            } catch (java.net.SocketTimeoutException e) {
-                log.warn("Timeout on attempt {}/{}: {}", attempt, maxRetries, imageUrl);
-            } catch (java.net.UnknownHostException e) {
-                log.warn("Unknown host: {} - {}", imageUrl, e.getMessage());
-                break; // No point retrying DNS errors
-            } catch (java.net.MalformedURLException e) {
-                log.error("Malformed URL: {} - {}", imageUrl, e.getMessage());
-                break; // No point retrying bad URLs
-            } catch (Exception e) {
-                log.warn("Error on attempt {}/{}: {} - {}", attempt, maxRetries, imageUrl, e.getMessage());
-            }
-
-            // Wait before retry (except on last attempt)
-            if (attempt < maxRetries) {
-                try {
-                    Thread.sleep(1000); // Wait 1 second before retry
-                } catch (InterruptedException ie) {
-                    Thread.currentThread().interrupt();
-                    break;
-                }
-            }
-        }
-
-        log.error("Failed to load image after {} attempts: {}", maxRetries, imageUrl);
-        return null;
-    }
-
     /**
      * Vẽ placeholder khi ảnh không tải được
      */
-    private void drawImagePlaceholder(PDPageContentStream content, float x, float y,
+    private void drawImagePlaceholder(PdfRenderContext ctx, float x, float y,
                                      float width, float height, String reason) {
+        PDPageContentStream content = ctx.content();
+        PDFont fontRegular = ctx.getFontRegular();
         try {
             // Draw border
             content.setStrokingColor(GRID_COLOR);
@@ -834,15 +755,15 @@ public class PdfBuilderService {
     /**
      * Calculate text width in points
      */
-    public float getTextWidth(String text, int fontSize) throws IOException {
-        return fontRegular.getStringWidth(text) / 1000 * fontSize;
+    public float getTextWidth(PdfRenderContext ctx, String text, int fontSize) throws IOException {
+        return ctx.getFontRegular().getStringWidth(text) / 1000 * fontSize;
     }
 
     /**
      * Truncate text to fit within maxWidth
      */
-    public String truncateText(String text, float maxWidth, int fontSize) throws IOException {
-        float textWidth = getTextWidth(text, fontSize);
+    public String truncateText(PdfRenderContext ctx, String text, float maxWidth, int fontSize) throws IOException {
+        float textWidth = getTextWidth(ctx, text, fontSize);
 
         if (textWidth <= maxWidth) {
             return text;
@@ -856,7 +777,7 @@ public class PdfBuilderService {
         while (left < right) {
             int mid = (left + right + 1) / 2;
             String testText = text.substring(0, mid);
-            float testWidth = getTextWidth(testText, fontSize);
+            float testWidth = getTextWidth(ctx, testText, fontSize);
 
             if (testWidth <= maxWidth) {
                 result = testText;
@@ -0,0 +1,81 @@
+package com.traffic_stream.dashboard.service;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.font.PDFont;
+
+import java.io.IOException;
+
+/**
+ * Trạng thái dựng của MỘT tài liệu PDF: document, font đã nạp cho document đó, số trang và trang đang vẽ.
+ * <p>
+ * PdfBuilderService/PdfReportService là singleton và chạy song song trên các luồng report-worker, nên mọi
+ * trạng thái thay đổi trong lúc dựng phải nằm ở đây thay vì ở field của service. Không thread-safe:
+ * mỗi báo cáo tạo một context riêng (PdfBuilderService.createContext) và chỉ dùng trên luồng của nó.
+ * </p>
+ */
+public final class PdfRenderContext {
+
+    private final PDDocument document;
+    private final PDFont fontRegular;
+    private final PDFont fontBold;
+
+    private int pageNumber = 1;
+    private PDPageContentStream content;
+
+    PdfRenderContext(PDDocument document, PDFont fontRegular, PDFont fontBold) {
+        this.document = document;
+        this.fontRegular = fontRegular;
+        this.fontBold = fontBold;
+    }
+
+    public PDDocument getDocument() {
+        return document;
+    }
+
+    public PDFont getFontRegular() {
+        return fontRegular;
+    }
+
+    public PDFont getFontBold() {
+        return fontBold;
+    }
+
+    /**
+     * Số trang hiện tại rồi tăng lên cho trang kế tiếp.
+     */
+    public int nextPageNumber() {
+        return pageNumber++;
+    }
+
+    /**
+     * Thêm một trang A4 mới và mở content stream cho nó (trang trước nếu còn mở sẽ được đóng).
+     */
+    public PDPageContentStream newPage() throws IOException {
+        closePage();
+        PDPage page = new PDPage(PDRectangle.A4);
+        document.addPage(page);
+        content = new PDPageContentStream(document, page);
+        return content;
+    }
+
+    /**
+     * Content stream của trang đang vẽ.
+     */
+    public PDPageContentStream content() {
+        if (content == null) {
+            throw new IllegalStateException("No page is open, call newPage() first");
+        }
+        return content;
+    }
+
+    public void closePage() throws IOException {
+        if (content != null) {
+            PDPageContentStream open = content;
+            content = null;
+            open.close();
+        }
+    }
+}
@@ -7,12 +7,11 @@ import com.traffic_stream.dashboard.shared.utils.MinioEndpointUtils;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.pdfbox.pdmodel.PDDocument;
-import org.apache.pdfbox.pdmodel.PDPage;
 import org.apache.pdfbox.pdmodel.PDPageContentStream;
 import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
 import org.springframework.stereotype.Service;
 
-import java.io.File;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.time.Instant;
 import java.util.*;
@@ -28,55 +27,56 @@ public class PdfReportService {
 
     private final PdfBuilderService pdfBuilder;
     private final MinioEndpointUtils minioEndpointUtils;
-    private int currentPageNumber = 1;
+    private final AnnotatedImagePrefetcher imagePrefetcher;
 
-    public File generatePdfReport(ReportJob job, ReportAnalysisDTO analysis) throws IOException {
+    /**
+     * Dựng PDF hoàn toàn trong bộ nhớ (không ghi file tạm) và trả về nội dung để upload thẳng lên MinIO.
+     */
+    public byte[] generatePdfReport(ReportJob job, ReportAnalysisDTO analysis) throws IOException {
         log.info("Generating comprehensive PDF report for job {}", job.getId());
 
         PDDocument document = new PDDocument();
-        currentPageNumber = 1;
 
         try {
             // Initialize fonts with Unicode support (for Vietnamese)
-            pdfBuilder.initializeFonts(document);
+            PdfRenderContext ctx = pdfBuilder.createContext(document);
             log.info("Fonts initialized for document");
 
             // Cover Page
-            addCoverPage(document, analysis);
+            addCoverPage(ctx, analysis);
 
             // I. Thông tin báo cáo
-            addReportInfoSection(document, analysis);
+            addReportInfoSection(ctx, analysis);
 
             // II. Tổng hợp hệ thống
-            addSystemSummarySection(document, analysis);
+            addSystemSummarySection(ctx, analysis);
 
             // III. Phân tích theo quận
-            addDistrictAnalysisSection(document, analysis);
+            addDistrictAnalysisSection(ctx, analysis);
 
             // IV. Phân tích theo camera
-            addCameraAnalysisSection(document, analysis);
+            addCameraAnalysisSection(ctx, analysis);
 
             // V. Phân tích theo thời gian
-            addTimelineAnalysisSection(document, analysis);
+            addTimelineAnalysisSection(ctx, analysis);
 
             // VI. Phân tích loại phương tiện
-            addVehicleTypeAnalysisSection(document, analysis);
+            addVehicleTypeAnalysisSection(ctx, analysis);
 
             // VII. Sự kiện bất thường
-            addAnomalySection(document, analysis);
+            addAnomalySection(ctx, analysis);
 
             // VIII. Minh họa (Annotated Images)
-            addAnnotatedImagesSection(document, analysis);
+            addAnnotatedImagesSection(ctx, analysis);
 
             // IX. Kết luận & Kiến nghị
-            addConclusionSection(document, analysis);
+            addConclusionSection(ctx, analysis);
 
-            // Save to temp file
-            File tempFile = File.createTempFile("traffic_report_" + job.getId() + "_", ".pdf");
-            document.save(tempFile);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(256 * 1024);
+            document.save(out);
 
-            log.info("PDF report saved to {}", tempFile.getAbsolutePath());
-            return tempFile;
+            log.info("PDF report rendered for job {}: {} bytes", job.getId(), out.size());
+            return out.toByteArray();
 
         } finally {
             document.close();
@@ -85,112 +85,108 @@ public class PdfReportService {
 
     // ========== COVER PAGE ==========
 
-    private void addCoverPage(PDDocument document, ReportAnalysisDTO analysis) throws IOException {
-        PDPage page = pdfBuilder.createNewPage(document);
-        PDPageContentStream content = new PDPageContentStream(document, page);
+    private void addCoverPage(PdfRenderContext ctx, ReportAnalysisDTO analysis) throws IOException {
+        PDPageContentStream content = ctx.newPage();
 
         try {
             // Title
             float y = 650;
             content.setNonStrokingColor(41/255f, 128/255f, 185/255f);
-            pdfBuilder.drawBoldText(content, "BÁO CÁO GIAO THÔNG TỰ ĐỘNG", 100, y, 24);
+            pdfBuilder.drawBoldText(ctx, "BÁO CÁO GIAO THÔNG TỰ ĐỘNG", 100, y, 24);
 
             y -= 40;
             content.setNonStrokingColor(0, 0, 0);
-            pdfBuilder.drawBoldText(content, analysis.getReportTitle(), 100, y, 20);
+            pdfBuilder.drawBoldText(ctx, analysis.getReportTitle(), 100, y, 20);
 
             y -= 60;
-            pdfBuilder.drawText(content, "Thời gian: " + pdfBuilder.formatDateTime(analysis.getStartTime()) +
+            pdfBuilder.drawText(ctx, "Thời gian: " + pdfBuilder.formatDateTime(analysis.getStartTime()) +
                     " - " + pdfBuilder.formatDateTime(analysis.getEndTime()), 100, y, 12);
 
             y -= 30;
-            pdfBuilder.drawText(content, "Số camera phân tích: " + analysis.getTotalCameras(), 100, y, 12);
+            pdfBuilder.drawText(ctx, "Số camera phân tích: " + analysis.getTotalCameras(), 100, y, 12);
             y -= 20;
-            pdfBuilder.drawText(content, "Tổng số phương tiện: " + pdfBuilder.formatNumber(analysis.getTotalVehicles()), 100, y, 12);
+            pdfBuilder.drawText(ctx, "Tổng số phương tiện: " + pdfBuilder.formatNumber(analysis.getTotalVehicles()), 100, y, 12);
 
             y -= 60;
-            pdfBuilder.drawText(content, "Báo cáo được tạo tự động bởi hệ thống Traffic Streaming Platform", 100, y, 10);
-            pdfBuilder.drawText(content, "Ngày tạo: " + pdfBuilder.formatDateTime(Instant.now()), 100, y - 20, 10);
+            pdfBuilder.drawText(ctx, "Báo cáo được tạo tự động bởi hệ thống Traffic Streaming Platform", 100, y, 10);
+            pdfBuilder.drawText(ctx, "Ngày tạo: " + pdfBuilder.formatDateTime(Instant.now()), 100, y - 20, 10);
 
         } finally {
-            content.close();
+            ctx.closePage();
         }
-        currentPageNumber++;
+        ctx.nextPageNumber();
     }
 
     // ========== I. THÔNG TIN BÁO CÁO ==========
 
-    private void addReportInfoSection(PDDocument document, ReportAnalysisDTO analysis) throws IOException {
-        PDPage page = pdfBuilder.createNewPage(document);
-        PDPageContentStream content = new PDPageContentStream(document, page);
+    private void addReportInfoSection(PdfRenderContext ctx, ReportAnalysisDTO analysis) throws IOException {
+        ctx.newPage();
 
         try {
-            pdfBuilder.drawHeader(content, "I. THÔNG TIN BÁO CÁO", currentPageNumber++);
-            float y = pdfBuilder.drawSectionHeader(content, "Thông tin chung", 720);
+            pdfBuilder.drawHeader(ctx, "I. THÔNG TIN BÁO CÁO", ctx.nextPageNumber());
+            float y = pdfBuilder.drawSectionHeader(ctx, "Thông tin chung", 720);
 
-            y = pdfBuilder.drawKeyValue(content, "Tên báo cáo", analysis.getReportTitle(), 70, y);
-            y = pdfBuilder.drawKeyValue(content, "Thời gian bắt đầu", pdfBuilder.formatDateTime(analysis.getStartTime()), 70, y);
-            y = pdfBuilder.drawKeyValue(content, "Thời gian kết thúc", pdfBuilder.formatDateTime(analysis.getEndTime()), 70, y);
-            y = pdfBuilder.drawKeyValue(content, "Khoảng tổng hợp", analysis.getIntervalMinutes() + " phút", 70, y);
+            y = pdfBuilder.drawKeyValue(ctx, "Tên báo cáo", analysis.getReportTitle(), 70, y);
+            y = pdfBuilder.drawKeyValue(ctx, "Thời gian bắt đầu", pdfBuilder.formatDateTime(analysis.getStartTime()), 70, y);
+            y = pdfBuilder.drawKeyValue(ctx, "Thời gian kết thúc", pdfBuilder.formatDateTime(analysis.getEndTime()), 70, y);
+            y = pdfBuilder.drawKeyValue(ctx, "Khoảng tổng hợp", analysis.getIntervalMinutes() + " phút", 70, y);
 
             y -= 10;
-            y = pdfBuilder.drawSectionHeader(content, "Thông tin camera", y);
-            y = pdfBuilder.drawKeyValue(content, "Tổng số camera", analysis.getTotalCameras().toString(), 70, y);
-            y = pdfBuilder.drawKeyValue(content, "Camera hoạt động", analysis.getActiveCameras().toString(), 70, y);
-            y = pdfBuilder.drawKeyValue(content, "Camera offline", analysis.getOfflineCameras().toString(), 70, y);
+            y = pdfBuilder.drawSectionHeader(ctx, "Thông tin camera", y);
+            y = pdfBuilder.drawKeyValue(ctx, "Tổng số camera", analysis.getTotalCameras().toString(), 70, y);
+            y = pdfBuilder.drawKeyValue(ctx, "Camera hoạt động", analysis.getActiveCameras().toString(), 70, y);
+            y = pdfBuilder.drawKeyValue(ctx, "Camera offline", analysis.getOfflineCameras().toString(), 70, y);
 
         } finally {
-            content.close();
+            ctx.closePage();
         }
     }
 
     // ========== II. TỔNG HỢP HỆ THỐNG ==========
 
-    private void addSystemSummarySection(PDDocument document, ReportAnalysisDTO analysis) throws IOException {
-        PDPage page = pdfBuilder.createNewPage(document);
-        PDPageContentStream content = new PDPageContentStream(document, page);
+    private void addSystemSummarySection(PdfRenderContext ctx, ReportAnalysisDTO analysis) throws IOException {
+        PDPageContentStream content = ctx.newPage();
 
         try {
-            pdfBuilder.drawHeader(content, "II. TỔNG HỢP HỆ THỐNG", currentPageNumber++);
-            float y = pdfBuilder.drawSectionHeader(content, "Tổng quan", 720);
+            pdfBuilder.drawHeader(ctx, "II. TỔNG HỢP HỆ THỐNG", ctx.nextPageNumber());
+            float y = pdfBuilder.drawSectionHeader(ctx, "Tổng quan", 720);
 
-            y = pdfBuilder.drawKeyValue(content, "Tổng số phương tiện",
+            y = pdfBuilder.drawKeyValue(ctx, "Tổng số phương tiện",
                     pdfBuilder.formatNumber(analysis.getTotalVehicles()), 70, y);
-            y = pdfBuilder.drawKeyValue(content, "Trung bình xe/camera",
+            y = pdfBuilder.drawKeyValue(ctx, "Trung bình xe/camera",
                     pdfBuilder.formatDouble(analysis.getAvgVehiclesPerCamera(), 1), 70, y);
 
             y -= 10;
-            y = pdfBuilder.drawSectionHeader(content, "Xếp hạng", y);
-            y = pdfBuilder.drawKeyValue(content, "Quận đông nhất", analysis.getBusiestDistrict(), 70, y);
-            y = pdfBuilder.drawKeyValue(content, "Quận vắng nhất", analysis.getQuietestDistrict(), 70, y);
-            y = pdfBuilder.drawKeyValue(content, "Camera đông nhất", analysis.getBusiestCamera(), 70, y);
-            y = pdfBuilder.drawKeyValue(content, "Camera vắng nhất", analysis.getQuietestCamera(), 70, y);
+            y = pdfBuilder.drawSectionHeader(ctx, "Xếp hạng", y);
+            y = pdfBuilder.drawKeyValue(ctx, "Quận đông nhất", analysis.getBusiestDistrict(), 70, y);
+            y = pdfBuilder.drawKeyValue(ctx, "Quận vắng nhất", analysis.getQuietestDistrict(), 70, y);
+            y = pdfBuilder.drawKeyValue(ctx, "Camera đông nhất", analysis.getBusiestCamera(), 70, y);
+            y = pdfBuilder.drawKeyValue(ctx, "Camera vắng nhất", analysis.getQuietestCamera(), 70, y);
 
             // Pie chart for vehicle types
             if (analysis.getVehicleTypePercentages() != null && !analysis.getVehicleTypePercentages().isEmpty()) {
                 y -= 20;
-                y = pdfBuilder.drawSectionHeader(content, "Tỷ lệ loại phương tiện", y);
+                y = pdfBuilder.drawSectionHeader(ctx, "Tỷ lệ loại phương tiện", y);
 
-                PDImageXObject pieChart = pdfBuilder.createPieChart(document,
+                PDImageXObject pieChart = pdfBuilder.createPieChart(ctx.getDocument(),
                         "Tỷ lệ loại phương tiện",
                         analysis.getVehicleTypePercentages());
                 content.drawImage(pieChart, 100, y - 300, 400, 280);
             }
 
         } finally {
-            content.close();
+            ctx.closePage();
         }
     }
 
     // ========== III. PHÂN TÍCH THEO QUẬN ==========
 
-    private void addDistrictAnalysisSection(PDDocument document, ReportAnalysisDTO analysis) throws IOException {
-        PDPage page = pdfBuilder.createNewPage(document);
-        PDPageContentStream content = new PDPageContentStream(document, page);
+    private void addDistrictAnalysisSection(PdfRenderContext ctx, ReportAnalysisDTO analysis) throws IOException {
+        PDPageContentStream content = ctx.newPage();
 
         try {
-            pdfBuilder.drawHeader(content, "III. PHÂN TÍCH THEO QUẬN", currentPageNumber++);
-            float y = pdfBuilder.drawSectionHeader(content, "Bảng tổng hợp theo quận", 720);
+            pdfBuilder.drawHeader(ctx, "III. PHÂN TÍCH THEO QUẬN", ctx.nextPageNumber());
+            float y = pdfBuilder.drawSectionHeader(ctx, "Bảng tổng hợp theo quận", 720);
 
             // Table
             String[] headers = {"Quận", "Tổng PT", "Tỷ lệ %", "Camera", "TB/Camera"};
@@ -208,7 +204,7 @@ public class PdfReportService {
                     })
                     .collect(Collectors.toList());
 
-            y = pdfBuilder.drawTable(content, y, headers, rows, widths);
+            y = pdfBuilder.drawTable(ctx, y, headers, rows, widths);
 
             // Bar chart
             if (y > 250 && analysis.getDistrictAnalyses().size() > 0) {
@@ -222,29 +218,28 @@ public class PdfReportService {
                                 LinkedHashMap::new
                         ));
 
-                PDImageXObject barChart = pdfBuilder.createBarChart(document,
+                PDImageXObject barChart = pdfBuilder.createBarChart(ctx.getDocument(),
                         "Top 10 quận có lưu lượng cao nhất",
                         chartData);
                 content.drawImage(barChart, 50, y - 280, 500, 250);
             }
 
         } finally {
-            content.close();
+            ctx.closePage();
         }
     }
 
     // ========== IV. PHÂN TÍCH THEO CAMERA ==========
 
-    private void addCameraAnalysisSection(PDDocument document, ReportAnalysisDTO analysis) throws IOException {
+    private void addCameraAnalysisSection(PdfRenderContext ctx, ReportAnalysisDTO analysis) throws IOException {
         List<CameraAnalysis> cameras = analysis.getCameraAnalyses();
 
         // Page 1: Table
-        PDPage page1 = pdfBuilder.createNewPage(document);
-        PDPageContentStream content1 = new PDPageContentStream(document, page1);
+        ctx.newPage();
 
         try {
-            pdfBuilder.drawHeader(content1, "IV. PHÂN TÍCH THEO CAMERA", currentPageNumber++);
-            float y = pdfBuilder.drawSectionHeader(content1, "Bảng tổng hợp camera", 720);
+            pdfBuilder.drawHeader(ctx, "IV. PHÂN TÍCH THEO CAMERA", ctx.nextPageNumber());
+            float y = pdfBuilder.drawSectionHeader(ctx, "Bảng tổng hợp camera", 720);
 
             String[] headers = {"Camera ID", "Tên", "Quận", "Tổng PT", "TB", "Trạng thái"};
             // Adjusted widths: reduced Camera ID, increased name column, optimized others
@@ -262,19 +257,18 @@ public class PdfReportService {
                     })
                     .collect(Collectors.toList());
 
-            pdfBuilder.drawTable(content1, y, headers, rows, widths);
+            pdfBuilder.drawTable(ctx, y, headers, rows, widths);
 
         } finally {
-            content1.close();
+            ctx.closePage();
         }
 
         // Page 2: Chart
-        PDPage page2 = pdfBuilder.createNewPage(document);
-        PDPageContentStream content2 = new PDPageContentStream(document, page2);
+        PDPageContentStream content = ctx.newPage();
 
         try {
-            pdfBuilder.drawHeader(content2, "IV. PHÂN TÍCH THEO CAMERA (tt)", currentPageNumber++);
-            float y = pdfBuilder.drawSectionHeader(content2, "Top 15 camera đông nhất", 720);
+            pdfBuilder.drawHeader(ctx, "IV. PHÂN TÍCH THEO CAMERA (tt)", ctx.nextPageNumber());
+            float y = pdfBuilder.drawSectionHeader(ctx, "Top 15 camera đông nhất", 720);
 
             Map<String, Long> chartData = cameras.stream()
                     .limit(15)
@@ -285,14 +279,14 @@ public class PdfReportService {
                             LinkedHashMap::new
                     ));
 
-            PDImageXObject barChart = pdfBuilder.createBarChart(document,
+            PDImageXObject barChart = pdfBuilder.createBarChart(ctx.getDocument(),
                     "Top camera có lưu lượng cao nhất",
                     chartData);
-            content2.drawImage(barChart, 50, y - 280, 500, 250);
+            content.drawImage(barChart, 50, y - 280, 500, 250);
 
             // Anomaly cameras
             y -= 300;
-            y = pdfBuilder.drawSectionHeader(content2, "Camera bất thường", y);
+            y = pdfBuilder.drawSectionHeader(ctx, "Camera bất thường", y);
 
             List<String> anomalyCameras = cameras.stream()
                     .filter(CameraAnalysis::getHasAnomaly)
@@ -301,44 +295,43 @@ public class PdfReportService {
                     .collect(Collectors.toList());
 
             if (anomalyCameras.isEmpty()) {
-                pdfBuilder.drawText(content2, "Không phát hiện bất thường", 70, y, 10);
+                pdfBuilder.drawText(ctx, "Không phát hiện bất thường", 70, y, 10);
             } else {
-                pdfBuilder.drawBulletList(content2, anomalyCameras, 70, y);
+                pdfBuilder.drawBulletList(ctx, anomalyCameras, 70, y);
             }
 
         } finally {
-            content2.close();
+            ctx.closePage();
         }
     }
 
     // ========== V. PHÂN TÍCH THEO THỜI GIAN ==========
 
-    private void addTimelineAnalysisSection(PDDocument document, ReportAnalysisDTO analysis) throws IOException {
-        PDPage page = pdfBuilder.createNewPage(document);
-        PDPageContentStream content = new PDPageContentStream(document, page);
+    private void addTimelineAnalysisSection(PdfRenderContext ctx, ReportAnalysisDTO analysis) throws IOException {
+        PDPageContentStream content = ctx.newPage();
 
         try {
-            pdfBuilder.drawHeader(content, "V. PHÂN TÍCH THEO THỜI GIAN", currentPageNumber++);
-            float y = pdfBuilder.drawSectionHeader(content, "Cao điểm và thấp điểm", 720);
+            pdfBuilder.drawHeader(ctx, "V. PHÂN TÍCH THEO THỜI GIAN", ctx.nextPageNumber());
+            float y = pdfBuilder.drawSectionHeader(ctx, "Cao điểm và thấp điểm", 720);
 
             if (analysis.getPeakHour() != null) {
-                y = pdfBuilder.drawKeyValue(content, "Giờ cao điểm",
+                y = pdfBuilder.drawKeyValue(ctx, "Giờ cao điểm",
                         pdfBuilder.formatDateTime(analysis.getPeakHour()), 70, y);
-                y = pdfBuilder.drawKeyValue(content, "Lưu lượng cao điểm",
+                y = pdfBuilder.drawKeyValue(ctx, "Lưu lượng cao điểm",
                         pdfBuilder.formatNumber(analysis.getPeakHourVolume()) + " phương tiện", 70, y);
             }
 
             if (analysis.getOffPeakHour() != null) {
-                y = pdfBuilder.drawKeyValue(content, "Giờ thấp điểm",
+                y = pdfBuilder.drawKeyValue(ctx, "Giờ thấp điểm",
                         pdfBuilder.formatDateTime(analysis.getOffPeakHour()), 70, y);
-                y = pdfBuilder.drawKeyValue(content, "Lưu lượng thấp điểm",
+                y = pdfBuilder.drawKeyValue(ctx, "Lưu lượng thấp điểm",
                         pdfBuilder.formatNumber(analysis.getOffPeakHourVolume()) + " phương tiện", 70, y);
             }
 
             // Timeline chart
             if (analysis.getTimelineData() != null && !analysis.getTimelineData().isEmpty()) {
                 y -= 20;
-                y = pdfBuilder.drawSectionHeader(content, "Biểu đồ timeline", y);
+                y = pdfBuilder.drawSectionHeader(ctx, "Biểu đồ timeline", y);
 
                 Map<String, Long> timelineChart = analysis.getTimelineData().stream()
                         .collect(Collectors.toMap(
@@ -348,26 +341,25 @@ public class PdfReportService {
                                 LinkedHashMap::new
                         ));
 
-                PDImageXObject lineChart = pdfBuilder.createLineChart(document,
+                PDImageXObject lineChart = pdfBuilder.createLineChart(ctx.getDocument(),
                         "Lưu lượng theo thời gian",
                         timelineChart);
                 content.drawImage(lineChart, 50, y - 230, 500, 220);
             }
 
         } finally {
-            content.close();
+            ctx.closePage();
         }
     }
 
     // ========== VI. PHÂN TÍCH LOẠI PHƯƠNG TIỆN ==========
 
-    private void addVehicleTypeAnalysisSection(PDDocument document, ReportAnalysisDTO analysis) throws IOException {
-        PDPage page = pdfBuilder.createNewPage(document);
-        PDPageContentStream content = new PDPageContentStream(document, page);
+    private void addVehicleTypeAnalysisSection(PdfRenderContext ctx, ReportAnalysisDTO analysis) throws IOException {
+        PDPageContentStream content = ctx.newPage();
 
         try {
-            pdfBuilder.drawHeader(content, "VI. PHÂN TÍCH LOẠI PHƯƠNG TIỆN", currentPageNumber++);
-            float y = pdfBuilder.drawSectionHeader(content, "Thống kê loại phương tiện", 720);
+            pdfBuilder.drawHeader(ctx, "VI. PHÂN TÍCH LOẠI PHƯƠNG TIỆN", ctx.nextPageNumber());
+            float y = pdfBuilder.drawSectionHeader(ctx, "Thống kê loại phương tiện", 720);
 
             if (analysis.getVehicleTypeCounts() != null) {
                 String[] headers = {"Loại phương tiện", "Số lượng", "Tỷ lệ %"};
@@ -382,12 +374,12 @@ public class PdfReportService {
                         })
                         .collect(Collectors.toList());
 
-                y = pdfBuilder.drawTable(content, y, headers, rows, widths);
+                y = pdfBuilder.drawTable(ctx, y, headers, rows, widths);
 
                 // Bar chart
                 if (y > 300) {
                     y -= 20;
-                    PDImageXObject barChart = pdfBuilder.createBarChart(document,
+                    PDImageXObject barChart = pdfBuilder.createBarChart(ctx.getDocument(),
                             "Phân bố loại phương tiện",
                             analysis.getVehicleTypeCounts());
                     content.drawImage(barChart, 50, y - 280, 500, 250);
@@ -395,29 +387,28 @@ public class PdfReportService {
             }
 
         } finally {
-            content.close();
+            ctx.closePage();
         }
     }
 
     // ========== VII. SỰ KIỆN BẤT THƯỜNG ==========
 
-    private void addAnomalySection(PDDocument document, ReportAnalysisDTO analysis) throws IOException {
-        PDPage page = pdfBuilder.createNewPage(document);
-        PDPageContentStream content = new PDPageContentStream(document, page);
+    private void addAnomalySection(PdfRenderContext ctx, ReportAnalysisDTO analysis) throws IOException {
+        ctx.newPage();
 
         try {
-            pdfBuilder.drawHeader(content, "VII. SỰ KIỆN BẤT THƯỜNG", currentPageNumber++);
-            float y = pdfBuilder.drawSectionHeader(content, "Camera offline", 720);
+            pdfBuilder.drawHeader(ctx, "VII. SỰ KIỆN BẤT THƯỜNG", ctx.nextPageNumber());
+            float y = pdfBuilder.drawSectionHeader(ctx, "Camera offline", 720);
 
             if (analysis.getOfflineCameraList() != null && !analysis.getOfflineCameraList().isEmpty()) {
-                pdfBuilder.drawBulletList(content, analysis.getOfflineCameraList(), 70, y);
+                pdfBuilder.drawBulletList(ctx, analysis.getOfflineCameraList(), 70, y);
                 y -= (analysis.getOfflineCameraList().size() * 15 + 20);
             } else {
-                y = pdfBuilder.drawText(content, "Không có camera offline", 70, y, 10);
+                y = pdfBuilder.drawText(ctx, "Không có camera offline", 70, y, 10);
                 y -= 20;
             }
 
-            y = pdfBuilder.drawSectionHeader(content, "Sự kiện bất thường", y);
+            y = pdfBuilder.drawSectionHeader(ctx, "Sự kiện bất thường", y);
 
             if (analysis.getAnomalies() != null && !analysis.getAnomalies().isEmpty()) {
                 List<String> anomalyList = analysis.getAnomalies().stream()
@@ -429,19 +420,19 @@ public class PdfReportService {
                                 a.getDescription()))
                         .collect(Collectors.toList());
 
-                pdfBuilder.drawBulletList(content, anomalyList, 70, y);
+                pdfBuilder.drawBulletList(ctx, anomalyList, 70, y);
             } else {
-                pdfBuilder.drawText(content, "Không phát hiện sự kiện bất thường", 70, y, 10);
+                pdfBuilder.drawText(ctx, "Không phát hiện sự kiện bất thường", 70, y, 10);
             }
 
         } finally {
-            content.close();
+            ctx.closePage();
         }
     }
 
     // ========== VIII. MINH HỌA ==========
 
-    private void addAnnotatedImagesSection(PDDocument document, ReportAnalysisDTO analysis) throws IOException {
+    private void addAnnotatedImagesSection(PdfRenderContext ctx, ReportAnalysisDTO analysis) throws IOException {
         if (analysis.getAnnotatedImages() == null || analysis.getAnnotatedImages().isEmpty()) {
             log.info("No annotated images to add to report");
             return;
@@ -450,19 +441,28 @@ public class PdfReportService {
         List<AnnotatedImageInfo> images = analysis.getAnnotatedImages();
         log.info("Adding {} annotated images to report", images.size());
 
+        // Tải trước toàn bộ ảnh song song (có cache dùng chung), sau đó chỉ còn nhúng byte JPEG
+        long prefetchStarted = System.currentTimeMillis();
+        List<String> urls = new ArrayList<>(images.size());
+        for (AnnotatedImageInfo img : images) {
+            img.setImageUrl(minioEndpointUtils.toInternalUrl(img.getImageUrl()));
+            urls.add(img.getImageUrl());
+        }
+        Map<String, byte[]> prefetched = imagePrefetcher.prefetch(urls);
+        long renderStarted = System.currentTimeMillis();
+
         int imagesPerPage = 4; // 2x2 grid (reduced for better quality)
         int totalPages = (int) Math.ceil((double) images.size() / imagesPerPage);
 
         for (int pageIdx = 0; pageIdx < totalPages; pageIdx++) {
-            PDPage page = pdfBuilder.createNewPage(document);
-            PDPageContentStream content = new PDPageContentStream(document, page);
+            ctx.newPage();
 
             try {
-                pdfBuilder.drawHeader(content, "VIII. MINH HỌA - ẢNH ANNOTATED", currentPageNumber++);
+                pdfBuilder.drawHeader(ctx, "VIII. MINH HỌA - ẢNH ANNOTATED", ctx.nextPageNumber());
 
                 // Add note about timestamp accuracy
                 float noteY = 695;
-                pdfBuilder.drawText(content,
+                pdfBuilder.drawText(ctx,
                     "* Thời gian hiển thị là approximate, có thể chênh lệch 1-2 phút với thời gian trên ảnh",
                     60, noteY, 7);
 
@@ -477,7 +477,6 @@ public class PdfReportService {
 
                 for (int i = startIdx; i < endIdx; i++) {
                     AnnotatedImageInfo img = images.get(i);
-                    img.setImageUrl(minioEndpointUtils.toInternalUrl(img.getImageUrl()));
 
                     int row = (i - startIdx) / 2;
                     int col = (i - startIdx) % 2;
@@ -486,8 +485,8 @@ public class PdfReportService {
                     float imgY = y - row * (imgHeight + spacingY + 30);
 
                     // Draw image (with error handling)
-                    boolean imageLoaded = pdfBuilder.drawImageFromUrl(
-                        content, document, img.getImageUrl(),
+                    boolean imageLoaded = pdfBuilder.drawJpegImage(
+                        ctx, img.getImageUrl() != null ? prefetched.get(img.getImageUrl()) : null,
                         x, imgY - imgHeight, imgWidth, imgHeight
                     );
 
@@ -499,16 +498,16 @@ public class PdfReportService {
                     String cameraInfo = String.format("%s (%s)", cameraName, img.getCameraId());
 
                     // Truncate camera info if longer than image width
-                    if (pdfBuilder.getTextWidth(cameraInfo, 9) > imgWidth) {
+                    if (pdfBuilder.getTextWidth(ctx, cameraInfo, 9) > imgWidth) {
                         // Try shorter version without ID in parentheses
                         cameraInfo = cameraName;
-                        if (pdfBuilder.getTextWidth(cameraInfo, 9) > imgWidth) {
+                        if (pdfBuilder.getTextWidth(ctx, cameraInfo, 9) > imgWidth) {
                             // Still too long, truncate with ellipsis
-                            cameraInfo = pdfBuilder.truncateText(cameraInfo, imgWidth - 10, 9) + "...";
+                            cameraInfo = pdfBuilder.truncateText(ctx, cameraInfo, imgWidth - 10, 9) + "...";
                         }
                     }
 
-                    pdfBuilder.drawText(content, cameraInfo, x, captionY, 9);
+                    pdfBuilder.drawText(ctx, cameraInfo, x, captionY, 9);
 
                     // Vehicle count and timestamp
                     // Note: Timestamp is from traffic metric record, may differ from actual image capture time
@@ -516,7 +515,7 @@ public class PdfReportService {
                         img.getVehicleCount() != null ? img.getVehicleCount() : 0,
                         img.getTimestamp() != null ? pdfBuilder.formatTime(img.getTimestamp()) : "N/A"
                     );
-                    pdfBuilder.drawText(content, details, x, captionY - 12, 8);
+                    pdfBuilder.drawText(ctx, details, x, captionY - 12, 8);
 
                     if (!imageLoaded) {
                         log.warn("Image not loaded for camera: {}", img.getCameraId());
@@ -527,36 +526,36 @@ public class PdfReportService {
                 log.error("Error adding annotated images page {}", pageIdx, e);
                 // Continue with next page even if this one fails
             } finally {
-                content.close();
+                ctx.closePage();
             }
         }
 
-        log.info("Completed adding annotated images section");
+        log.info("Completed adding annotated images section (prefetch {}ms, render {}ms)",
+                renderStarted - prefetchStarted, System.currentTimeMillis() - renderStarted);
     }
 
     // ========== IX. KẾT LUẬN & KIẾN NGHỊ ==========
 
-    private void addConclusionSection(PDDocument document, ReportAnalysisDTO analysis) throws IOException {
-        PDPage page = pdfBuilder.createNewPage(document);
-        PDPageContentStream content = new PDPageContentStream(document, page);
+    private void addConclusionSection(PdfRenderContext ctx, ReportAnalysisDTO analysis) throws IOException {
+        ctx.newPage();
 
         try {
-            pdfBuilder.drawHeader(content, "IX. KẾT LUẬN & KIẾN NGHỊ", currentPageNumber++);
-            float y = pdfBuilder.drawSectionHeader(content, "Kết luận và kiến nghị", 720);
+            pdfBuilder.drawHeader(ctx, "IX. KẾT LUẬN & KIẾN NGHỊ", ctx.nextPageNumber());
+            float y = pdfBuilder.drawSectionHeader(ctx, "Kết luận và kiến nghị", 720);
 
             if (analysis.getConclusions() != null && !analysis.getConclusions().isEmpty()) {
-                pdfBuilder.drawBulletList(content, analysis.getConclusions(), 70, y);
+                pdfBuilder.drawBulletList(ctx, analysis.getConclusions(), 70, y);
             } else {
-                pdfBuilder.drawText(content, "Không có kết luận", 70, y, 10);
+                pdfBuilder.drawText(ctx, "Không có kết luận", 70, y, 10);
             }
 
             // Footer
             y = 100;
-            pdfBuilder.drawText(content, "--- HẾT BÁO CÁO ---", 250, y, 12);
-            pdfBuilder.drawText(content, "Hệ thống Traffic Streaming Platform", 200, y - 20, 10);
+            pdfBuilder.drawText(ctx, "--- HẾT BÁO CÁO ---", 250, y, 12);
+            pdfBuilder.drawText(ctx, "Hệ thống Traffic Streaming Platform", 200, y - 20, 10);
 
         } finally {
-            content.close();
+            ctx.closePage();
         }
     }
 }
@@ -0,0 +1,354 @@
+package com.traffic_stream.dashboard.service;
+
+import com.traffic_stream.dashboard.dto.report.ReportAnalysisDTO.TimelineData;
+import com.traffic_stream.dashboard.entity.TrafficMetric;
+import com.traffic_stream.dashboard.repository.TrafficMetricScanRepository.MetricRow;
+import com.traffic_stream.dashboard.repository.TrafficRollupRepository;
+import com.traffic_stream.dashboard.repository.TrafficRollupRepository.RollupRow;
+import com.traffic_stream.dashboard.shared.constant.VehicleClass;
+
+import java.time.Instant;
+import java.util.*;
+
+/**
+ * Gom mọi tổng hợp cần cho báo cáo (quận, camera, giờ, interval, loại xe, ảnh minh họa) trong MỘT lần duyệt
+ * dữ liệu thô; {@link ReportAnalysisService} dựng mọi phần của ReportAnalysisDTO từ đây.
+ * <p>
+ * Quận và loại xe được mã hóa thành id int, giờ và interval là mảng theo offset từ bucket đầu tiên,
+ * nên mỗi bản ghi chỉ tốn 2 lần tra HashMap (camera, quận) + 1 lần mỗi loại xe, không tạo List trung gian.
+ * Kết quả không phụ thuộc thứ tự dòng (trừ khi hòa), nên có thể nạp thẳng từ cursor. Ngoài bản ghi thô,
+ * accumulator nhận được dòng rollup camera (phút/giờ) khi interval của báo cáo là bội của giờ.
+ * Không thread-safe.
+ * </p>
+ */
+final class ReportAnalysisAccumulator {
+
+    private static final long HOUR_MILLIS = 3_600_000L;
+    /** Giới hạn số bucket cấp phát trước (phần vượt quá được nới dần khi gặp dữ liệu). */
+    private static final int MAX_PRESIZED_BUCKETS = 1 << 14;
+
+    private final long intervalMillis;
+
+    private final Map<String, Integer> districtIds = new HashMap<>();
+    private final List<DistrictStats> districts = new ArrayList<>();
+    private final Map<String, Integer> typeIds = new HashMap<>();
+    private final List<String> types = new ArrayList<>();
+    private final Map<String, CameraStats> cameras = new HashMap<>();
+
+    private long records;
+    private long totalVehicles;
+    private long[] typeTotals = new long[16];
+
+    private long hourBase;
+    private long[] hourTotals;
+    private final BitSet hourSeen = new BitSet();
+
+    private long intervalBase;
+    private IntervalStats[] intervals;
+
+    ReportAnalysisAccumulator(Instant start, Instant end, int intervalMinutes) {
+        this.intervalMillis = intervalMinutes * 60L * 1000L;
+        long startMs = start.toEpochMilli();
+        long spanMs = Math.max(0, end.toEpochMilli() - startMs);
+        this.hourBase = Math.floorDiv(startMs, HOUR_MILLIS);
+        this.hourTotals = new long[presize(spanMs / HOUR_MILLIS + 2)];
+        this.intervalBase = Math.floorDiv(startMs, intervalMillis);
+        this.intervals = new IntervalStats[presize(spanMs / intervalMillis + 2)];
+    }
+
+    private static int presize(long buckets) {
+        return (int) Math.min(buckets, MAX_PRESIZED_BUCKETS);
+    }
+
+    // ------------------------------------------------------------------
+    // Ghi
+    // ------------------------------------------------------------------
+
+    void add(TrafficMetric m) {
+        add(m.getCameraId(), m.getCameraName(), m.getDistrict(), m.getTimestamp().toEpochMilli(),
+                m.getTotalCount(), m.getDetectionDetails(), m.getAnnotatedImageUrl());
+    }
+
+    void add(MetricRow row) {
+        add(row.getCameraId(), row.getCameraName(), row.getDistrict(), row.getTimestampMillis(),
+                row.getTotalCount(), row.getDetectionDetails(), row.getAnnotatedImageUrl());
+    }
+
+    void add(String cameraId, String cameraName, String district, long timestampMillis, int totalCount,
+             Map<String, Integer> detectionDetails, String annotatedImageUrl) {
+        IntervalStats is = addAggregate(cameraId, cameraName, district, timestampMillis, totalCount, 1);
+        if (detectionDetails != null) {
+            for (Map.Entry<String, Integer> e : detectionDetails.entrySet()) {
+                if (e.getValue() == null) continue;
+                addType(is, e.getKey(), e.getValue());
+            }
+        }
+        offerImage(cameraId, cameraName, annotatedImageUrl, totalCount, timestampMillis);
+    }
+
+    /**
+     * Một dòng rollup camera (phút/giờ): đếm như {@code sample_count} bản ghi có tổng {@code total_count}
+     * tại đầu bucket. Loại xe theo cột rollup (VehicleClass), chỉ các loại khác 0.
+     */
+    void addRollup(RollupRow row, String cameraName) {
+        String district = row.getDistrict() == null || row.getDistrict().isEmpty() ? null : row.getDistrict();
+        IntervalStats is = addAggregate(row.getKey(), cameraName, district, row.getBucket().toEpochMilli(),
+                row.get(TrafficRollupRepository.TOTAL), row.get(TrafficRollupRepository.SAMPLES));
+        for (VehicleClass vc : VehicleClass.values()) {
+            long count = row.get(vc);
+            if (count != 0) addType(is, vc.getColumn(), count);
+        }
+    }
+
+    /** Ứng viên ảnh minh họa của camera: giữ ảnh có total_count cao nhất. */
+    void offerImage(String cameraId, String cameraName, String annotatedImageUrl, int totalCount, long timestampMillis) {
+        if (annotatedImageUrl == null || annotatedImageUrl.isEmpty()) return;
+        CameraStats cs = cameras.get(cameraId);
+        if (cs == null) return;
+        if (cs.imageUrl == null || totalCount > cs.imageCount) {
+            cs.imageUrl = annotatedImageUrl;
+            cs.imageCameraName = cameraName;
+            cs.imageCount = totalCount;
+            cs.imageTimestamp = timestampMillis;
+        }
+    }
+
+    private IntervalStats addAggregate(String cameraId, String cameraName, String district, long timestampMillis,
+                                       long totalCount, long samples) {
+        records += samples;
+        totalVehicles += totalCount;
+
+        int d = districtId(district);
+        DistrictStats ds = districts.get(d);
+        ds.total += totalCount;
+
+        CameraStats cs = cameras.get(cameraId);
+        if (cs == null) {
+            // Bản ghi đầu tiên của camera là "mẫu" cho tên/quận
+            cs = new CameraStats(cameraId, cameraName, district);
+            cameras.put(cameraId, cs);
+        }
+        cs.total += totalCount;
+        cs.records += samples;
+        cs.lastTimestamp = Math.max(cs.lastTimestamp, timestampMillis);
+        if (cs.addDistrict(d)) {
+            ds.cameras++;
+        }
+
+        int h = hourIndex(Math.floorDiv(timestampMillis, HOUR_MILLIS));
+        hourTotals[h] += totalCount;
+        hourSeen.set(h);
+
+        IntervalStats is = interval(Math.floorDiv(timestampMillis, intervalMillis));
+        is.total += totalCount;
+        is.addDistrict(d, totalCount);
+        return is;
+    }
+
+    private void addType(IntervalStats is, String type, long count) {
+        int t = typeId(type);
+        typeTotals[t] += count;
+        is.addType(t, count);
+    }
+
+    private int districtId(String district) {
+        Integer id = districtIds.get(district);
+        if (id == null) {
+            id = districts.size();
+            districtIds.put(district, id);
+            districts.add(new DistrictStats(district));
+        }
+        return id;
+    }
+
+    private int typeId(String type) {
+        Integer id = typeIds.get(type);
+        if (id == null) {
+            id = types.size();
+            typeIds.put(type, id);
+            types.add(type);
+            if (id >= typeTotals.length) typeTotals = Arrays.copyOf(typeTotals, typeTotals.length * 2);
+        }
+        return id;
+    }
+
+    private int hourIndex(long hour) {
+        long idx = hour - hourBase;
+        if (idx < 0) {
+            int shift = (int) -idx;
+            long[] grown = new long[hourTotals.length + shift];
+            System.arraycopy(hourTotals, 0, grown, shift, hourTotals.length);
+            hourTotals = grown;
+            long[] seen = hourSeen.toLongArray();
+            hourSeen.clear();
+            BitSet.valueOf(seen).stream().forEach(i -> hourSeen.set(i + shift));
+            hourBase = hour;
+            return 0;
+        }
+        if (idx >= hourTotals.length) {
+            hourTotals = Arrays.copyOf(hourTotals, (int) Math.max(idx + 1, hourTotals.length * 2L));
+        }
+        return (int) idx;
+    }
+
+    private IntervalStats interval(long bucket) {
+        long idx = bucket - intervalBase;
+        if (idx < 0) {
+            int shift = (int) -idx;
+            IntervalStats[] grown = new IntervalStats[intervals.length + shift];
+            System.arraycopy(intervals, 0, grown, shift, intervals.length);
+            intervals = grown;
+            intervalBase = bucket;
+            idx = 0;
+        } else if (idx >= intervals.length) {
+            intervals = Arrays.copyOf(intervals, (int) Math.max(idx + 1, intervals.length * 2L));
+        }
+        IntervalStats is = intervals[(int) idx];
+        if (is == null) {
+            is = new IntervalStats();
+            intervals[(int) idx] = is;
+        }
+        return is;
+    }
+
+    // ------------------------------------------------------------------
+    // Đọc
+    // ------------------------------------------------------------------
+
+    boolean isEmpty() {
+        return records == 0;
+    }
+
+    long getRecords() {
+        return records;
+    }
+
+    long getTotalVehicles() {
+        return totalVehicles;
+    }
+
+    Collection<CameraStats> getCameras() {
+        return cameras.values();
+    }
+
+    List<DistrictStats> getDistricts() {
+        return districts;
+    }
+
+    /** Trung bình tổng số xe mỗi camera. */
+    double avgVehiclesPerCamera() {
+        return cameras.isEmpty() ? 0.0 : (double) totalVehicles / cameras.size();
+    }
+
+    /** Tổng theo loại xe (mọi loại từng xuất hiện trong detectionDetails). */
+    Map<String, Long> vehicleTypeTotals() {
+        Map<String, Long> result = new HashMap<>();
+        for (int t = 0; t < types.size(); t++) {
+            result.put(types.get(t), typeTotals[t]);
+        }
+        return result;
+    }
+
+    /** Tổng theo giờ (chỉ các giờ có dữ liệu), sắp theo thời gian. */
+    NavigableMap<Instant, Long> hourlyTotals() {
+        NavigableMap<Instant, Long> result = new TreeMap<>();
+        for (int i = hourSeen.nextSetBit(0); i >= 0; i = hourSeen.nextSetBit(i + 1)) {
+            result.put(Instant.ofEpochMilli((hourBase + i) * HOUR_MILLIS), hourTotals[i]);
+        }
+        return result;
+    }
+
+    /** Timeline theo interval (chỉ các interval có dữ liệu), sắp theo thời gian. */
+    List<TimelineData> timeline() {
+        List<TimelineData> result = new ArrayList<>();
+        for (int i = 0; i < intervals.length; i++) {
+            IntervalStats is = intervals[i];
+            if (is == null) continue;
+
+            Map<String, Long> byDistrict = new HashMap<>();
+            for (int d = is.districtSeen.nextSetBit(0); d >= 0; d = is.districtSeen.nextSetBit(d + 1)) {
+                byDistrict.put(districts.get(d).name, is.byDistrict[d]);
+            }
+            Map<String, Long> byVehicleType = new HashMap<>();
+            for (int t = is.typeSeen.nextSetBit(0); t >= 0; t = is.typeSeen.nextSetBit(t + 1)) {
+                byVehicleType.put(types.get(t), is.byType[t]);
+            }
+            result.add(TimelineData.builder()
+                    .timestamp(Instant.ofEpochMilli((intervalBase + i) * intervalMillis))
+                    .totalVehicles(is.total)
+                    .byDistrict(byDistrict)
+                    .byVehicleType(byVehicleType)
+                    .build());
+        }
+        return result;
+    }
+
+    // ------------------------------------------------------------------
+    // State
+    // ------------------------------------------------------------------
+
+    static final class DistrictStats {
+        final String name;
+        long total;
+        int cameras;
+
+        DistrictStats(String name) {
+            this.name = name;
+        }
+    }
+
+    static final class CameraStats {
+        final String cameraId;
+        final String cameraName;
+        final String district;
+        long total;
+        long records;
+        long lastTimestamp = Long.MIN_VALUE;
+        /** Id các quận camera từng xuất hiện (gần như luôn chỉ 1). */
+        private int[] districtIds = new int[0];
+
+        String imageUrl;
+        String imageCameraName;
+        int imageCount;
+        long imageTimestamp;
+
+        CameraStats(String cameraId, String cameraName, String district) {
+            this.cameraId = cameraId;
+            this.cameraName = cameraName;
+            this.district = district;
+        }
+
+        boolean addDistrict(int d) {
+            for (int id : districtIds) {
+                if (id == d) return false;
+            }
+            districtIds = Arrays.copyOf(districtIds, districtIds.length + 1);
+            districtIds[districtIds.length - 1] = d;
+            return true;
+        }
+
+        double avgVehicles() {
+            return (double) total / records;
+        }
+    }
+
+    private static final class IntervalStats {
+        long total;
+        long[] byDistrict = new long[4];
+        final BitSet districtSeen = new BitSet();
+        long[] byType = new long[8];
+        final BitSet typeSeen = new BitSet();
+
+        void addDistrict(int d, long count) {
+            if (d >= byDistrict.length) byDistrict = Arrays.copyOf(byDistrict, Math.max(d + 1, byDistrict.length * 2));
+            byDistrict[d] += count;
+            districtSeen.set(d);
+        }
+
+        void addType(int t, long count) {
+            if (t >= byType.length) byType = Arrays.copyOf(byType, Math.max(t + 1, byType.length * 2));
+            byType[t] += count;
+            typeSeen.set(t);
+        }
+    }
+}
@@ -3,15 +3,25 @@ package com.traffic_stream.dashboard.service;
 import com.traffic_stream.dashboard.dto.report.ReportAnalysisDTO;
 import com.traffic_stream.dashboard.dto.report.ReportAnalysisDTO.*;
 import com.traffic_stream.dashboard.entity.ReportJob;
-import com.traffic_stream.dashboard.entity.TrafficMetric;
-import com.traffic_stream.dashboard.repository.TrafficMetricRepository;
+import com.traffic_stream.dashboard.entity.Camera;
+import com.traffic_stream.dashboard.repository.TrafficMetricScanRepository;
+import com.traffic_stream.dashboard.repository.TrafficRollupRepository.Rollup;
+import com.traffic_stream.dashboard.repository.TrafficRollupRepository.RollupRow;
+import com.traffic_stream.dashboard.service.registry.CameraRegistry;
+import com.traffic_stream.dashboard.service.rollup.RollupsReadyEvent;
+import com.traffic_stream.dashboard.service.rollup.TrafficRollupService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.Duration;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
 import java.util.*;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 /**
@@ -22,21 +32,120 @@ import java.util.stream.Collectors;
 @RequiredArgsConstructor
 public class ReportAnalysisService {
 
-    private final TrafficMetricRepository trafficMetricRepository;
+    private final TrafficMetricScanRepository scanRepository;
+    private final TrafficRollupService rollupService;
+    private final CameraRegistry cameraRegistry;
+
+    @Value("${app.report.rollup-plan.enabled:true}")
+    private boolean rollupPlanEnabled;
+
+    @Value("${app.report.rollup-plan.min-hours:24}")
+    private long rollupMinHours;
+
+    @Value("${app.report.fetch-size:5000}")
+    private int fetchSize;
+
+    private volatile boolean rollupsReady;
 
     /**
      * Phân tích toàn bộ dữ liệu cho một report job
      */
+    @Transactional(readOnly = true)
     public ReportAnalysisDTO analyzeData(ReportJob job) {
         log.info("Starting comprehensive analysis for job {}", job.getId());
 
-        List<TrafficMetric> rawData = fetchRawData(job);
+        // Một lần duyệt duy nhất trên cursor, mọi phần của báo cáo dựng từ accumulator:
+        // bộ nhớ tỉ lệ với số camera/quận/bucket chứ không với số bản ghi
+        ReportAnalysisAccumulator acc = new ReportAnalysisAccumulator(
+                job.getStartTime(), job.getEndTime(), job.getIntervalMinutes());
+        long started = System.currentTimeMillis();
+        Plan plan = choosePlan(job);
+        if (plan == Plan.ROLLUP) {
+            loadFromRollups(job, acc);
+        } else {
+            scanRepository.scan(job.getStartTime(), job.getEndTime(), job.getCameras(), job.getDistricts(), acc::add);
+        }
 
-        if (rawData.isEmpty()) {
+        if (acc.isEmpty()) {
             throw new RuntimeException("Không có dữ liệu trong khoảng thời gian này");
         }
 
-        log.info("Analyzing {} traffic records", rawData.size());
+        log.info("Analyzed {} traffic records for job {} using {} plan in {}ms",
+                acc.getRecords(), job.getId(), plan, System.currentTimeMillis() - started);
+        return buildAnalysis(job, acc);
+    }
+
+    // ========== KẾ HOẠCH ĐỌC DỮ LIỆU ==========
+
+    /**
+     * RAW: duyệt từng bản ghi thô. ROLLUP: đọc rollup camera theo giờ (2 đầu lẻ đọc rollup phút), chỉ quay
+     * về bảng thô cho ảnh minh họa (1 dòng / camera).
+     */
+    enum Plan { RAW, ROLLUP }
+
+    @EventListener(RollupsReadyEvent.class)
+    public void onRollupsReady() {
+        rollupsReady = true;
+    }
+
+    Plan choosePlan(ReportJob job) {
+        long hours = Duration.between(job.getStartTime(), job.getEndTime()).toHours();
+        String reason;
+        if (!rollupPlanEnabled) {
+            reason = "rollup plan disabled";
+        } else if (!rollupsReady) {
+            reason = "rollups not ready yet";
+        } else if (job.getIntervalMinutes() % 60 != 0) {
+            reason = "interval " + job.getIntervalMinutes() + " min is not a multiple of an hour";
+        } else if (hours < rollupMinHours) {
+            reason = "range " + hours + "h is shorter than " + rollupMinHours + "h";
+        } else {
+            log.info("Report job {} plan: ROLLUP (camera hour rollups, {}h, interval {} min; raw rows only for annotated images)",
+                    job.getId(), hours, job.getIntervalMinutes());
+            return Plan.ROLLUP;
+        }
+        log.info("Report job {} plan: RAW ({})", job.getId(), reason);
+        return Plan.RAW;
+    }
+
+    private void loadFromRollups(ReportJob job, ReportAnalysisAccumulator acc) {
+        // Rollup chính xác tới phút: [phút chứa start, hết phút chứa end] (end của job là inclusive)
+        Instant mStart = job.getStartTime().truncatedTo(ChronoUnit.MINUTES);
+        Instant mEnd = job.getEndTime().truncatedTo(ChronoUnit.MINUTES).plus(1, ChronoUnit.MINUTES);
+        Instant hStart = mStart.truncatedTo(ChronoUnit.HOURS).equals(mStart)
+                ? mStart : mStart.truncatedTo(ChronoUnit.HOURS).plus(1, ChronoUnit.HOURS);
+        Instant hEnd = mEnd.truncatedTo(ChronoUnit.HOURS);
+
+        Map<String, String> names = new HashMap<>();
+        Consumer<RollupRow> sink = row -> acc.addRollup(row, names.computeIfAbsent(row.getKey(),
+                id -> cameraRegistry.find(id).map(Camera::getCameraName).orElse(id)));
+        if (hStart.isBefore(hEnd)) {
+            streamCameraRollup(Rollup.CAMERA_MINUTE, mStart, hStart, job, sink);
+            streamCameraRollup(Rollup.CAMERA_HOUR, hStart, hEnd, job, sink);
+            streamCameraRollup(Rollup.CAMERA_MINUTE, hEnd, mEnd, job, sink);
+        } else {
+            streamCameraRollup(Rollup.CAMERA_MINUTE, mStart, mEnd, job, sink);
+        }
+
+        // Ảnh minh họa cần bản ghi thô, nhưng chỉ lấy 1 dòng / camera
+        scanRepository.scanTopImagePerCamera(job.getStartTime(), job.getEndTime(), job.getCameras(), job.getDistricts(),
+                row -> acc.offerImage(row.getCameraId(), row.getCameraName(), row.getAnnotatedImageUrl(),
+                        row.getTotalCount(), row.getTimestampMillis()));
+    }
+
+    private void streamCameraRollup(Rollup rollup, Instant from, Instant to, ReportJob job, Consumer<RollupRow> sink) {
+        if (!from.isBefore(to)) return;
+        rollupService.streamCameraRows(rollup, from, to, job.getCameras(), job.getDistricts(), fetchSize, sink);
+    }
+
+    private ReportAnalysisDTO buildAnalysis(ReportJob job, ReportAnalysisAccumulator acc) {
+        List<DistrictAnalysis> districtAnalyses = analyzeByDistrict(acc);
+        Map<String, Long> vehicleTypeCounts = calculateVehicleTypeCounts(acc);
+        List<AnomalyEvent> anomalies = detectAnomalies(acc);
+        NavigableMap<Instant, Long> hourly = acc.hourlyTotals();
+        Map.Entry<Instant, Long> peak = hourly.entrySet().stream().max(Map.Entry.comparingByValue()).orElse(null);
+        Map.Entry<Instant, Long> offPeak = hourly.entrySet().stream().min(Map.Entry.comparingByValue()).orElse(null);
+        String busiestDistrict = findBusiestDistrict(acc);
 
         return ReportAnalysisDTO.builder()
                 // I. Thông tin báo cáo
@@ -44,87 +153,65 @@ public class ReportAnalysisService {
                 .startTime(job.getStartTime())
                 .endTime(job.getEndTime())
                 .intervalMinutes(job.getIntervalMinutes())
-                .totalCameras(countTotalCameras(rawData))
-                .activeCameras(countActiveCameras(rawData, job))
-                .offlineCameras(countOfflineCameras(rawData, job))
+                .totalCameras(countTotalCameras(acc))
+                .activeCameras(countActiveCameras(acc, job))
+                .offlineCameras(countOfflineCameras(acc, job))
 
                 // II. Tổng hợp hệ thống
-                .totalVehicles(calculateTotalVehicles(rawData))
-                .avgVehiclesPerCamera(calculateAvgVehiclesPerCamera(rawData))
-                .vehicleTypePercentages(calculateVehicleTypePercentages(rawData))
-                .busiestDistrict(findBusiestDistrict(rawData))
-                .quietestDistrict(findQuietestDistrict(rawData))
-                .busiestCamera(findBusiestCamera(rawData))
-                .quietestCamera(findQuietestCamera(rawData))
+                .totalVehicles(acc.getTotalVehicles())
+                .avgVehiclesPerCamera(acc.avgVehiclesPerCamera())
+                .vehicleTypePercentages(calculateVehicleTypePercentages(vehicleTypeCounts))
+                .busiestDistrict(busiestDistrict)
+                .quietestDistrict(findQuietestDistrict(acc))
+                .busiestCamera(findBusiestCamera(acc))
+                .quietestCamera(findQuietestCamera(acc))
 
                 // III. Phân tích theo quận
-                .districtAnalyses(analyzeByDistrict(rawData))
+                .districtAnalyses(districtAnalyses)
 
                 // IV. Phân tích theo camera
-                .cameraAnalyses(analyzeByCamera(rawData, job))
+                .cameraAnalyses(analyzeByCamera(acc))
 
                 // V. Phân tích theo thời gian
-                .timelineData(analyzeTimeline(rawData, job.getIntervalMinutes()))
-                .peakHour(findPeakHour(rawData))
-                .peakHourVolume(findPeakHourVolume(rawData))
-                .offPeakHour(findOffPeakHour(rawData))
-                .offPeakHourVolume(findOffPeakHourVolume(rawData))
+                .timelineData(acc.timeline())
+                .peakHour(peak != null ? peak.getKey() : null)
+                .peakHourVolume(peak != null ? peak.getValue() : 0L)
+                .offPeakHour(offPeak != null ? offPeak.getKey() : null)
+                .offPeakHourVolume(offPeak != null ? offPeak.getValue() : 0L)
 
                 // VI. Phân tích loại phương tiện
-                .vehicleTypeCounts(calculateVehicleTypeCounts(rawData))
+                .vehicleTypeCounts(vehicleTypeCounts)
 
                 // VII. Sự kiện bất thường
-                .offlineCameraList(findOfflineCameras(rawData, job))
-                .anomalies(detectAnomalies(rawData, job))
+                .offlineCameraList(findOfflineCameras(acc, job))
+                .anomalies(anomalies)
 
                 // VIII. Minh họa
-                .annotatedImages(collectAnnotatedImages(rawData))
+                .annotatedImages(collectAnnotatedImages(acc))
 
                 // IX. Kết luận & kiến nghị
-                .conclusions(generateConclusions(rawData, job))
+                .conclusions(generateConclusions(job, acc, busiestDistrict, districtAnalyses,
+                        peak, offPeak, vehicleTypeCounts, anomalies))
 
                 .build();
     }
 
-    private List<TrafficMetric> fetchRawData(ReportJob job) {
-        List<String> cameras = job.getCameras();
-        List<String> districts = job.getDistricts();
-
-        if (cameras != null && !cameras.isEmpty()) {
-            return trafficMetricRepository.findByCameraIdInAndTimestampBetween(
-                    cameras, job.getStartTime(), job.getEndTime());
-        } else if (districts != null && !districts.isEmpty()) {
-            return trafficMetricRepository.findByDistrictInAndTimestampBetween(
-                    districts, job.getStartTime(), job.getEndTime());
-        } else {
-            return trafficMetricRepository.findByTimestampBetween(
-                    job.getStartTime(), job.getEndTime());
-        }
-
-
-    }
-
     // ========== I. THÔNG TIN BÁO CÁO ==========
 
-    private Integer countTotalCameras(List<TrafficMetric> data) {
-        return (int) data.stream()
-                .map(TrafficMetric::getCameraId)
-                .distinct()
-                .count();
+    private Integer countTotalCameras(ReportAnalysisAccumulator acc) {
+        return acc.getCameras().size();
     }
 
-    private Integer countActiveCameras(List<TrafficMetric> data, @SuppressWarnings("unused") ReportJob job) {
+    private Integer countActiveCameras(ReportAnalysisAccumulator acc, @SuppressWarnings("unused") ReportJob job) {
         // Camera is ACTIVE if it sent ANY data during the report period
         // Since we query data within the report period, all cameras in data are active
-        Set<String> activeCameras = data.stream()
-                .map(TrafficMetric::getCameraId)
-                .collect(Collectors.toSet());
+        int activeCameras = acc.getCameras().size();
 
-        log.info("Active cameras: {} (cameras with data during report period)", activeCameras.size());
-        return activeCameras.size();
+        log.info("Active cameras: {} (cameras with data during report period)", activeCameras);
+        return activeCameras;
     }
 
-    private Integer countOfflineCameras(@SuppressWarnings("unused") List<TrafficMetric> data, @SuppressWarnings("unused") ReportJob job) {
+    private Integer countOfflineCameras(@SuppressWarnings("unused") ReportAnalysisAccumulator acc, @SuppressWarnings("unused") ReportJob job) {
         // Offline cameras = cameras that sent NO data during report period
         // Since we only query data from the report period, if a camera is in the data,
         // it means it sent at least some data, so it's NOT offline
@@ -137,29 +224,7 @@ public class ReportAnalysisService {
 
     // ========== II. TỔNG HỢP HỆ THỐNG ==========
 
-    private Long calculateTotalVehicles(List<TrafficMetric> data) {
-        return data.stream()
-                .mapToLong(TrafficMetric::getTotalCount)
-                .sum();
-    }
-
-    private Double calculateAvgVehiclesPerCamera(List<TrafficMetric> data) {
-        Map<String, Long> cameraVehicles = data.stream()
-                .collect(Collectors.groupingBy(
-                        TrafficMetric::getCameraId,
-                        Collectors.summingLong(TrafficMetric::getTotalCount)
-                ));
-
-        if (cameraVehicles.isEmpty()) return 0.0;
-
-        return cameraVehicles.values().stream()
-                .mapToLong(Long::longValue)
-                .average()
-                .orElse(0.0);
-    }
-
-    private Map<String, Double> calculateVehicleTypePercentages(List<TrafficMetric> data) {
-        Map<String, Long> counts = calculateVehicleTypeCounts(data);
+    private Map<String, Double> calculateVehicleTypePercentages(Map<String, Long> counts) {
         long total = counts.values().stream().mapToLong(Long::longValue).sum();
 
         if (total == 0) return Collections.emptyMap();
@@ -171,106 +236,60 @@ public class ReportAnalysisService {
                 ));
     }
 
-    private String findBusiestDistrict(List<TrafficMetric> data) {
-        return data.stream()
-                .collect(Collectors.groupingBy(
-                        TrafficMetric::getDistrict,
-                        Collectors.summingLong(TrafficMetric::getTotalCount)
-                ))
-                .entrySet().stream()
-                .max(Map.Entry.comparingByValue())
-                .map(Map.Entry::getKey)
+    private String findBusiestDistrict(ReportAnalysisAccumulator acc) {
+        return acc.getDistricts().stream()
+                .max(Comparator.comparingLong(d -> d.total))
+                .map(d -> d.name)
                 .orElse("N/A");
     }
 
-    private String findQuietestDistrict(List<TrafficMetric> data) {
-        return data.stream()
-                .collect(Collectors.groupingBy(
-                        TrafficMetric::getDistrict,
-                        Collectors.summingLong(TrafficMetric::getTotalCount)
-                ))
-                .entrySet().stream()
-                .min(Map.Entry.comparingByValue())
-                .map(Map.Entry::getKey)
+    private String findQuietestDistrict(ReportAnalysisAccumulator acc) {
+        return acc.getDistricts().stream()
+                .min(Comparator.comparingLong(d -> d.total))
+                .map(d -> d.name)
                 .orElse("N/A");
     }
 
-    private String findBusiestCamera(List<TrafficMetric> data) {
-        return data.stream()
-                .collect(Collectors.groupingBy(
-                        TrafficMetric::getCameraId,
-                        Collectors.summingLong(TrafficMetric::getTotalCount)
-                ))
-                .entrySet().stream()
-                .max(Map.Entry.comparingByValue())
-                .map(Map.Entry::getKey)
+    private String findBusiestCamera(ReportAnalysisAccumulator acc) {
+        return acc.getCameras().stream()
+                .max(Comparator.comparingLong(c -> c.total))
+                .map(c -> c.cameraId)
                 .orElse("N/A");
     }
 
-    private String findQuietestCamera(List<TrafficMetric> data) {
-        return data.stream()
-                .collect(Collectors.groupingBy(
-                        TrafficMetric::getCameraId,
-                        Collectors.summingLong(TrafficMetric::getTotalCount)
-                ))
-                .entrySet().stream()
-                .min(Map.Entry.comparingByValue())
-                .map(Map.Entry::getKey)
+    private String findQuietestCamera(ReportAnalysisAccumulator acc) {
+        return acc.getCameras().stream()
+                .min(Comparator.comparingLong(c -> c.total))
+                .map(c -> c.cameraId)
                 .orElse("N/A");
     }
 
     // ========== III. PHÂN TÍCH THEO QUẬN ==========
 
-    private List<DistrictAnalysis> analyzeByDistrict(List<TrafficMetric> data) {
-        Map<String, List<TrafficMetric>> byDistrict = data.stream()
-                .collect(Collectors.groupingBy(TrafficMetric::getDistrict));
-
-        long totalVehicles = calculateTotalVehicles(data);
-
-        return byDistrict.entrySet().stream()
-                .map(entry -> {
-                    String district = entry.getKey();
-                    List<TrafficMetric> metrics = entry.getValue();
-                    long districtVehicles = metrics.stream()
-                            .mapToLong(TrafficMetric::getTotalCount)
-                            .sum();
-
-                    int activeCameras = (int) metrics.stream()
-                            .map(TrafficMetric::getCameraId)
-                            .distinct()
-                            .count();
-
-                    return DistrictAnalysis.builder()
-                            .districtName(district)
-                            .totalVehicles(districtVehicles)
-                            .percentage(totalVehicles > 0 ? (districtVehicles * 100.0) / totalVehicles : 0.0)
-                            .activeCameras(activeCameras)
-                            .avgVehiclesPerCamera(activeCameras > 0 ? (double) districtVehicles / activeCameras : 0.0)
-                            .build();
-                })
+    private List<DistrictAnalysis> analyzeByDistrict(ReportAnalysisAccumulator acc) {
+        long totalVehicles = acc.getTotalVehicles();
+
+        return acc.getDistricts().stream()
+                .map(d -> DistrictAnalysis.builder()
+                        .districtName(d.name)
+                        .totalVehicles(d.total)
+                        .percentage(totalVehicles > 0 ? (d.total * 100.0) / totalVehicles : 0.0)
+                        .activeCameras(d.cameras)
+                        .avgVehiclesPerCamera(d.cameras > 0 ? (double) d.total / d.cameras : 0.0)
+                        .build())
                 .sorted(Comparator.comparing(DistrictAnalysis::getTotalVehicles).reversed())
                 .collect(Collectors.toList());
     }
 
     // ========== IV. PHÂN TÍCH THEO CAMERA ==========
 
-    private List<CameraAnalysis> analyzeByCamera(List<TrafficMetric> data, @SuppressWarnings("unused") ReportJob job) {
-        Map<String, List<TrafficMetric>> byCamera = data.stream()
-                .collect(Collectors.groupingBy(TrafficMetric::getCameraId));
-
+    private List<CameraAnalysis> analyzeByCamera(ReportAnalysisAccumulator acc) {
         // Calculate average per camera for anomaly detection
-        double systemAvg = calculateAvgVehiclesPerCamera(data);
+        double systemAvg = acc.avgVehiclesPerCamera();
 
-        return byCamera.entrySet().stream()
-                .map(entry -> {
-                    String cameraId = entry.getKey();
-                    List<TrafficMetric> metrics = entry.getValue();
-
-                    TrafficMetric sample = metrics.get(0);
-                    long totalVehicles = metrics.stream()
-                            .mapToLong(TrafficMetric::getTotalCount)
-                            .sum();
-                    double avgVehicles = (double) totalVehicles / metrics.size();
+        return acc.getCameras().stream()
+                .map(camera -> {
+                    double avgVehicles = camera.avgVehicles();
 
                     // Camera is ACTIVE because it has data in the result set
                     boolean isActive = true;
@@ -288,10 +307,10 @@ public class ReportAnalysisService {
                     }
 
                     return CameraAnalysis.builder()
-                            .cameraId(cameraId)
-                            .cameraName(sample.getCameraName())
-                            .district(sample.getDistrict())
-                            .totalVehicles(totalVehicles)
+                            .cameraId(camera.cameraId)
+                            .cameraName(camera.cameraName)
+                            .district(camera.district)
+                            .totalVehicles(camera.total)
                             .avgVehicles(avgVehicles)
                             .isActive(isActive)
                             .hasAnomaly(hasAnomaly)
@@ -302,119 +321,10 @@ public class ReportAnalysisService {
                 .collect(Collectors.toList());
     }
 
-    // ========== V. PHÂN TÍCH THEO THỜI GIAN ==========
-
-    private List<TimelineData> analyzeTimeline(List<TrafficMetric> data, int intervalMinutes) {
-        // Group by time interval
-        Map<Instant, List<TrafficMetric>> byInterval = data.stream()
-                .collect(Collectors.groupingBy(m ->
-                        roundToInterval(m.getTimestamp(), intervalMinutes)
-                ));
-
-        return byInterval.entrySet().stream()
-                .map(entry -> {
-                    Instant timestamp = entry.getKey();
-                    List<TrafficMetric> metrics = entry.getValue();
-
-                    long totalVehicles = metrics.stream()
-                            .mapToLong(TrafficMetric::getTotalCount)
-                            .sum();
-
-                    Map<String, Long> byDistrict = metrics.stream()
-                            .collect(Collectors.groupingBy(
-                                    TrafficMetric::getDistrict,
-                                    Collectors.summingLong(TrafficMetric::getTotalCount)
-                            ));
-
-                    Map<String, Long> byVehicleType = new HashMap<>();
-                    metrics.forEach(m -> {
-                        Map<String, Integer> details = m.getDetectionDetails();
-                        if (details != null) {
-                            details.forEach((type, count) ->
-                                byVehicleType.merge(type, count.longValue(), Long::sum)
-                            );
-                        }
-                    });
-
-                    return TimelineData.builder()
-                            .timestamp(timestamp)
-                            .totalVehicles(totalVehicles)
-                            .byDistrict(byDistrict)
-                            .byVehicleType(byVehicleType)
-                            .build();
-                })
-                .sorted(Comparator.comparing(TimelineData::getTimestamp))
-                .collect(Collectors.toList());
-    }
-
-    private Instant roundToInterval(Instant timestamp, int intervalMinutes) {
-        long epochMilli = timestamp.toEpochMilli();
-        long intervalMilli = intervalMinutes * 60L * 1000L;
-        long rounded = (epochMilli / intervalMilli) * intervalMilli;
-        return Instant.ofEpochMilli(rounded);
-    }
-
-    private Instant findPeakHour(List<TrafficMetric> data) {
-        return data.stream()
-                .collect(Collectors.groupingBy(
-                        m -> m.getTimestamp().truncatedTo(ChronoUnit.HOURS),
-                        Collectors.summingLong(TrafficMetric::getTotalCount)
-                ))
-                .entrySet().stream()
-                .max(Map.Entry.comparingByValue())
-                .map(Map.Entry::getKey)
-                .orElse(null);
-    }
-
-    private Long findPeakHourVolume(List<TrafficMetric> data) {
-        return data.stream()
-                .collect(Collectors.groupingBy(
-                        m -> m.getTimestamp().truncatedTo(ChronoUnit.HOURS),
-                        Collectors.summingLong(TrafficMetric::getTotalCount)
-                ))
-                .values().stream()
-                .max(Long::compareTo)
-                .orElse(0L);
-    }
-
-    private Instant findOffPeakHour(List<TrafficMetric> data) {
-        return data.stream()
-                .collect(Collectors.groupingBy(
-                        m -> m.getTimestamp().truncatedTo(ChronoUnit.HOURS),
-                        Collectors.summingLong(TrafficMetric::getTotalCount)
-                ))
-                .entrySet().stream()
-                .min(Map.Entry.comparingByValue())
-                .map(Map.Entry::getKey)
-                .orElse(null);
-    }
-
-    private Long findOffPeakHourVolume(List<TrafficMetric> data) {
-        return data.stream()
-                .collect(Collectors.groupingBy(
-                        m -> m.getTimestamp().truncatedTo(ChronoUnit.HOURS),
-                        Collectors.summingLong(TrafficMetric::getTotalCount)
-                ))
-                .values().stream()
-                .min(Long::compareTo)
-                .orElse(0L);
-    }
-
     // ========== VI. PHÂN TÍCH LOẠI PHƯƠNG TIỆN ==========
 
-    private Map<String, Long> calculateVehicleTypeCounts(List<TrafficMetric> data) {
-        Map<String, Long> counts = new HashMap<>();
-
-        data.forEach(metric -> {
-            Map<String, Integer> details = metric.getDetectionDetails();
-            if (details != null) {
-                details.forEach((type, count) ->
-                    counts.merge(type, count.longValue(), Long::sum)
-                );
-            }
-        });
-
-        return counts.entrySet().stream()
+    private Map<String, Long> calculateVehicleTypeCounts(ReportAnalysisAccumulator acc) {
+        return acc.vehicleTypeTotals().entrySet().stream()
                 .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
                 .collect(Collectors.toMap(
                         Map.Entry::getKey,
@@ -426,7 +336,7 @@ public class ReportAnalysisService {
 
     // ========== VII. SỰ KIỆN BẤT THƯỜNG ==========
 
-    private List<String> findOfflineCameras(@SuppressWarnings("unused") List<TrafficMetric> data, @SuppressWarnings("unused") ReportJob job) {
+    private List<String> findOfflineCameras(@SuppressWarnings("unused") ReportAnalysisAccumulator acc, @SuppressWarnings("unused") ReportJob job) {
         // Since we only have data from cameras that sent data during report period,
         // all cameras in the data are by definition ACTIVE (not offline)
         // To detect offline cameras, we would need a camera registry to compare against
@@ -435,27 +345,23 @@ public class ReportAnalysisService {
         return new ArrayList<>();
     }
 
-    private List<AnomalyEvent> detectAnomalies(List<TrafficMetric> data, @SuppressWarnings("unused") ReportJob job) {
+    private List<AnomalyEvent> detectAnomalies(ReportAnalysisAccumulator acc) {
         List<AnomalyEvent> anomalies = new ArrayList<>();
-        double systemAvg = calculateAvgVehiclesPerCamera(data);
-
-        Map<String, List<TrafficMetric>> byCamera = data.stream()
-                .collect(Collectors.groupingBy(TrafficMetric::getCameraId));
+        double systemAvg = acc.avgVehiclesPerCamera();
 
-        byCamera.forEach((cameraId, metrics) -> {
-            TrafficMetric sample = metrics.get(0);
-            long totalVehicles = metrics.stream().mapToLong(TrafficMetric::getTotalCount).sum();
-            double avgVehicles = (double) totalVehicles / metrics.size();
+        for (ReportAnalysisAccumulator.CameraStats camera : acc.getCameras()) {
+            double avgVehicles = camera.avgVehicles();
+            Instant detectedAt = Instant.ofEpochMilli(camera.lastTimestamp);
 
             // Traffic surge - chỉ detect nếu lưu lượng cao hơn 100% so với trung bình
             if (avgVehicles > systemAvg * 2.0) {
                 anomalies.add(AnomalyEvent.builder()
-                        .cameraId(cameraId)
-                        .cameraName(sample.getCameraName())
+                        .cameraId(camera.cameraId)
+                        .cameraName(camera.cameraName)
                         .type("TRAFFIC_SURGE")
                         .description(String.format("Lưu lượng tăng %.0f%% so với trung bình hệ thống",
                                 ((avgVehicles / systemAvg) - 1) * 100))
-                        .detectedAt(metrics.get(metrics.size() - 1).getTimestamp())
+                        .detectedAt(detectedAt)
                         .severity(Math.min(1.0, avgVehicles / systemAvg / 3.0))
                         .build());
             }
@@ -463,12 +369,12 @@ public class ReportAnalysisService {
             // Traffic drop - chỉ detect nếu lưu lượng thấp hơn 70% so với trung bình
             if (avgVehicles < systemAvg * 0.3 && avgVehicles > 0) {
                 anomalies.add(AnomalyEvent.builder()
-                        .cameraId(cameraId)
-                        .cameraName(sample.getCameraName())
+                        .cameraId(camera.cameraId)
+                        .cameraName(camera.cameraName)
                         .type("TRAFFIC_DROP")
                         .description(String.format("Lưu lượng giảm %.0f%% so với trung bình hệ thống",
                                 (1 - avgVehicles / systemAvg) * 100))
-                        .detectedAt(metrics.get(metrics.size() - 1).getTimestamp())
+                        .detectedAt(detectedAt)
                         .severity(Math.min(1.0, (systemAvg - avgVehicles) / systemAvg))
                         .build());
             }
@@ -476,7 +382,7 @@ public class ReportAnalysisService {
             // NOTE: OFFLINE detection removed completely
             // Cameras in the data set are by definition ACTIVE (not offline)
             // They sent data during the report period
-        });
+        }
 
         return anomalies.stream()
                 .sorted(Comparator.comparing(AnomalyEvent::getSeverity).reversed())
@@ -485,35 +391,28 @@ public class ReportAnalysisService {
 
     // ========== VIII. MINH HỌA ==========
 
-    private List<AnnotatedImageInfo> collectAnnotatedImages(List<TrafficMetric> data) {
+    private List<AnnotatedImageInfo> collectAnnotatedImages(ReportAnalysisAccumulator acc) {
         // Get top 12 images from different cameras with highest vehicle counts
-        Map<String, TrafficMetric> topMetricsByCamera = new HashMap<>();
-
-        log.info("Collecting annotated images from {} traffic metrics", data.size());
+        log.info("Collecting annotated images from {} traffic metrics", acc.getRecords());
 
-        data.forEach(metric -> {
-            if (metric.getAnnotatedImageUrl() != null && !metric.getAnnotatedImageUrl().isEmpty()) {
-                topMetricsByCamera.merge(metric.getCameraId(), metric,
-                        (existing, newMetric) ->
-                                newMetric.getTotalCount() > existing.getTotalCount() ? newMetric : existing
-                );
-            }
-        });
+        List<ReportAnalysisAccumulator.CameraStats> withImages = acc.getCameras().stream()
+                .filter(c -> c.imageUrl != null)
+                .collect(Collectors.toList());
 
-        log.info("Found {} cameras with annotated images", topMetricsByCamera.size());
+        log.info("Found {} cameras with annotated images", withImages.size());
 
-        List<AnnotatedImageInfo> result = topMetricsByCamera.values().stream()
-                .sorted(Comparator.comparing(TrafficMetric::getTotalCount).reversed())
+        List<AnnotatedImageInfo> result = withImages.stream()
+                .sorted(Comparator.comparingInt((ReportAnalysisAccumulator.CameraStats c) -> c.imageCount).reversed())
                 .limit(12)
-                .map(m -> {
+                .map(c -> {
                     log.debug("Adding annotated image - Camera: {}, URL: {}, Vehicles: {}",
-                        m.getCameraId(), m.getAnnotatedImageUrl(), m.getTotalCount());
+                        c.cameraId, c.imageUrl, c.imageCount);
                     return AnnotatedImageInfo.builder()
-                            .cameraId(m.getCameraId())
-                            .cameraName(m.getCameraName())
-                            .imageUrl(m.getAnnotatedImageUrl())
-                            .timestamp(m.getTimestamp())
-                            .vehicleCount(m.getTotalCount())
+                            .cameraId(c.cameraId)
+                            .cameraName(c.imageCameraName)
+                            .imageUrl(c.imageUrl)
+                            .timestamp(Instant.ofEpochMilli(c.imageTimestamp))
+                            .vehicleCount(c.imageCount)
                             .build();
                 })
                 .collect(Collectors.toList());
@@ -524,11 +423,18 @@ public class ReportAnalysisService {
 
     // ========== IX. KẾT LUẬN & KIẾN NGHỊ ==========
 
-    private List<String> generateConclusions(List<TrafficMetric> data, ReportJob job) {
+    private List<String> generateConclusions(ReportJob job,
+                                             ReportAnalysisAccumulator acc,
+                                             String busiestDistrict,
+                                             List<DistrictAnalysis> districts,
+                                             Map.Entry<Instant, Long> peak,
+                                             Map.Entry<Instant, Long> offPeak,
+                                             Map<String, Long> vehicleTypes,
+                                             List<AnomalyEvent> anomalies) {
         List<String> conclusions = new ArrayList<>();
 
         // 1. Tổng quan
-        long totalVehicles = calculateTotalVehicles(data);
+        long totalVehicles = acc.getTotalVehicles();
 
         conclusions.add(String.format("Tổng cộng %,d phương tiện được ghi nhận trong khoảng thời gian từ %s đến %s.",
                 totalVehicles,
@@ -537,10 +443,8 @@ public class ReportAnalysisService {
 
         // 2. Quận đông nhất (nếu có dữ liệu)
         if (totalVehicles > 0) {
-            String busiestDistrict = findBusiestDistrict(data);
-            List<DistrictAnalysis> districts = analyzeByDistrict(data);
             districts.stream()
-                    .filter(d -> d.getDistrictName().equals(busiestDistrict))
+                    .filter(d -> Objects.equals(d.getDistrictName(), busiestDistrict))
                     .findFirst()
                     .ifPresent(d -> {
                         if (d.getPercentage() > 40) {
@@ -556,9 +460,9 @@ public class ReportAnalysisService {
         }
 
         // 3. Giờ cao điểm (chỉ khi có nhiều mẫu dữ liệu)
-        Instant peakHour = findPeakHour(data);
-        Long peakVolume = findPeakHourVolume(data);
-        Instant offPeakHour = findOffPeakHour(data);
+        Instant peakHour = peak != null ? peak.getKey() : null;
+        Long peakVolume = peak != null ? peak.getValue() : 0L;
+        Instant offPeakHour = offPeak != null ? offPeak.getKey() : null;
 
         if (peakHour != null && !peakHour.equals(offPeakHour)) {
             conclusions.add(String.format("Giờ cao điểm vào lúc %s với %,d phương tiện. Khuyến nghị tăng cường điều phối giao thông vào khung giờ này.",
@@ -566,7 +470,6 @@ public class ReportAnalysisService {
         }
 
         // 4. Loại phương tiện
-        Map<String, Long> vehicleTypes = calculateVehicleTypeCounts(data);
         if (!vehicleTypes.isEmpty()) {
             vehicleTypes.entrySet().stream()
                     .max(Map.Entry.comparingByValue())
@@ -578,7 +481,7 @@ public class ReportAnalysisService {
         }
 
         // 5. Hiệu suất hệ thống - ĐÁNH GIÁ THỰC TẾ
-        double avgPerCamera = calculateAvgVehiclesPerCamera(data);
+        double avgPerCamera = acc.avgVehiclesPerCamera();
         String systemStatus;
 
         if (avgPerCamera > 2000) {
@@ -597,7 +500,6 @@ public class ReportAnalysisService {
                 avgPerCamera, systemStatus));
 
         // 6. Bất thường (nếu có)
-        List<AnomalyEvent> anomalies = detectAnomalies(data, job);
         if (!anomalies.isEmpty()) {
             long surgeCount = anomalies.stream().filter(a -> "TRAFFIC_SURGE".equals(a.getType())).count();
             long dropCount = anomalies.stream().filter(a -> "TRAFFIC_DROP".equals(a.getType())).count();
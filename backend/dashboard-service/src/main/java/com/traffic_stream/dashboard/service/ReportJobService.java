@@ -6,6 +6,7 @@ import com.traffic_stream.dashboard.dto.report.CreateReportResponse;
 import com.traffic_stream.dashboard.entity.ReportJob;
 import com.traffic_stream.dashboard.repository.ReportJobRepository;
 import com.traffic_stream.dashboard.repository.TrafficMetricRepository;
+import com.traffic_stream.dashboard.service.registry.CameraRegistry;
 import com.traffic_stream.dashboard.service.storage.MinioStorageService;
 import com.traffic_stream.dashboard.shared.constant.ReportJobStatus;
 import com.traffic_stream.dashboard.shared.exception.ResourceNotFoundException;
@@ -28,6 +29,7 @@ public class ReportJobService {
     private final TrafficMetricRepository trafficMetricRepository;
     private final MinioStorageService minioStorageService;
     private final MinioBucketProperties minioBucketProperties;
+    private final CameraRegistry cameraRegistry;
 
     @Transactional
     public CreateReportResponse createReportJob(CreateReportRequest request) {
@@ -52,14 +54,16 @@ public class ReportJobService {
         Set<String> uniqueDistricts = normalizeList(districts);
         Set<String> uniqueCameras = normalizeList(cameras);
 
-        // Case 1: Validate districts (1 query)
-        if (!uniqueDistricts.isEmpty()) {
-            List<String> existingDistricts = trafficMetricRepository
-                    .findExistingDistrictsIn(new ArrayList<>(uniqueDistricts));
+        // Registry camera trong bộ nhớ (không query DB); chỉ dùng query trên traffic_metrics khi registry chưa nạp xong
+        boolean useRegistry = cameraRegistry.isReady();
 
-            Set<String> existingDistrictSet = new HashSet<>(existingDistricts);
+        // Case 1: Validate districts
+        if (!uniqueDistricts.isEmpty()) {
+            Set<String> existingDistrictSet = useRegistry
+                    ? null
+                    : new HashSet<>(trafficMetricRepository.findExistingDistrictsIn(new ArrayList<>(uniqueDistricts)));
             List<String> invalidDistricts = uniqueDistricts.stream()
-                    .filter(d -> !existingDistrictSet.contains(d))
+                    .filter(d -> useRegistry ? !cameraRegistry.districtExists(d) : !existingDistrictSet.contains(d))
                     .sorted()
                     .collect(Collectors.toList());
 
@@ -70,14 +74,13 @@ public class ReportJobService {
             }
         }
 
-        // Case 2: Validate cameras exist and belong to requested districts (1-2 queries)
+        // Case 2: Validate cameras exist and belong to requested districts
         if (!uniqueCameras.isEmpty()) {
-            List<String> existingCameras = trafficMetricRepository
-                    .findExistingCameraIdsIn(new ArrayList<>(uniqueCameras));
-
-            Set<String> existingCameraSet = new HashSet<>(existingCameras);
+            Set<String> existingCameraSet = useRegistry
+                    ? null
+                    : new HashSet<>(trafficMetricRepository.findExistingCameraIdsIn(new ArrayList<>(uniqueCameras)));
             List<String> invalidCameras = uniqueCameras.stream()
-                    .filter(c -> !existingCameraSet.contains(c))
+                    .filter(c -> useRegistry ? !cameraRegistry.cameraExists(c) : !existingCameraSet.contains(c))
                     .sorted()
                     .collect(Collectors.toList());
 
@@ -87,17 +90,19 @@ public class ReportJobService {
                 );
             }
 
-            // Case 3: If both districts and cameras provided, validate camera-district mapping (1 query)
+            // Case 3: If both districts and cameras provided, validate camera-district mapping
             if (!uniqueDistricts.isEmpty()) {
-                List<Object[]> mappings = trafficMetricRepository
-                        .findCameraDistrictMappingsByCameraIds(new ArrayList<>(uniqueCameras));
-
                 // Build camera -> district mapping
                 Map<String, String> cameraToDistrictMap = new HashMap<>();
-                for (Object[] row : mappings) {
-                    String cameraId = (String) row[0];
-                    String district = (String) row[1];
-                    cameraToDistrictMap.put(cameraId, district);
+                if (useRegistry) {
+                    for (String cameraId : uniqueCameras) {
+                        cameraToDistrictMap.put(cameraId, cameraRegistry.districtOf(cameraId));
+                    }
+                } else {
+                    for (Object[] row : trafficMetricRepository
+                            .findCameraDistrictMappingsByCameraIds(new ArrayList<>(uniqueCameras))) {
+                        cameraToDistrictMap.put((String) row[0], (String) row[1]);
+                    }
                 }
 
                 // Find cameras not in requested districts
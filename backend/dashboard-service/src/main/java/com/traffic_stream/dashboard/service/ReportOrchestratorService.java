@@ -11,7 +11,7 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Service;
 
-import java.io.File;
+import java.util.Optional;
 
 @Service
 @Slf4j
@@ -23,34 +23,51 @@ public class ReportOrchestratorService {
     private final ReportJobRepository repo;
     private final SimpMessagingTemplate ws;
     private final MinioBucketProperties minioBucketProperties;
+    private final ReportResultCache resultCache;
 
     public ReportOrchestratorService(ReportAnalysisService analysisService,
                                      PdfReportService pdfService,
                                      MinioStorageService minioService,
                                      ReportJobRepository repo,
                                      SimpMessagingTemplate ws,
-                                     MinioBucketProperties minioBucketProperties) {
+                                     MinioBucketProperties minioBucketProperties,
+                                     ReportResultCache resultCache) {
         this.analysisService = analysisService;
         this.pdfService = pdfService;
         this.minioService = minioService;
         this.repo = repo;
         this.ws = ws;
         this.minioBucketProperties = minioBucketProperties;
+        this.resultCache = resultCache;
     }
 
     public void process(ReportJob job) throws Exception {
         log.info("Starting comprehensive report orchestration for job {}", job.getId());
 
+        // Job giống hệt (tham số + dữ liệu) đã có báo cáo → dùng lại object PDF, bỏ qua phân tích và dựng PDF
+        Optional<String> cacheKey = resultCache.keyOf(job);
+        Optional<String> cached = cacheKey.flatMap(resultCache::lookup);
+        if (cached.isPresent()) {
+            log.info("Report cache hit for job {}: reusing {}", job.getId(), cached.get());
+            complete(job, cached.get());
+            return;
+        }
+
         log.info("Analyzing traffic data...");
         ReportAnalysisDTO analysis = analysisService.analyzeData(job);
 
         log.info("Generating PDF report...");
-        File pdf = pdfService.generatePdfReport(job, analysis);
-        log.info("PDF generated: {} bytes", pdf.length());
+        byte[] pdf = pdfService.generatePdfReport(job, analysis);
+        log.info("PDF generated: {} bytes", pdf.length);
 
         log.info("Uploading to MinIO...");
         String objectPath = minioService.uploadReportFile(pdf, job, minioBucketProperties.getDocuments());
+        cacheKey.ifPresent(key -> resultCache.store(key, job, objectPath, pdf.length));
+
+        complete(job, objectPath);
+    }
 
+    private void complete(ReportJob job, String objectPath) {
         job.setFileUrl(objectPath);
         job.setStatus(ReportJobStatus.COMPLETED);
         repo.save(job);
@@ -63,17 +80,6 @@ public class ReportOrchestratorService {
         ws.convertAndSend("/topic/report/", notify);
         log.info("WebSocket notification sent for job {}", job.getId());
 
-        // Step 6: Cleanup temp file
-        try {
-            if (pdf.delete()) {
-                log.info("Temp file deleted successfully");
-            } else {
-                log.warn("Failed to delete temp file: {}", pdf.getAbsolutePath());
-            }
-        } catch (Exception e) {
-            log.warn("Error deleting temp file: {}", e.getMessage());
-        }
-
         log.info("Orchestration completed successfully for job {}", job.getId());
     }
 }
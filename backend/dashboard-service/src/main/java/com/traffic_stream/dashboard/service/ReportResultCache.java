@@ -0,0 +1,233 @@
+package com.traffic_stream.dashboard.service;
+
+import com.traffic_stream.dashboard.config.MinioBucketProperties;
+import com.traffic_stream.dashboard.entity.ReportCacheEntry;
+import com.traffic_stream.dashboard.entity.ReportJob;
+import com.traffic_stream.dashboard.repository.ReportCacheRepository;
+import com.traffic_stream.dashboard.repository.TrafficRollupRepository;
+import com.traffic_stream.dashboard.repository.TrafficRollupRepository.Rollup;
+import com.traffic_stream.dashboard.repository.TrafficRollupRepository.RollupRow;
+import com.traffic_stream.dashboard.service.registry.CameraRegistry;
+import com.traffic_stream.dashboard.service.rollup.RollupsReadyEvent;
+import com.traffic_stream.dashboard.service.rollup.TrafficRollupService;
+import com.traffic_stream.dashboard.service.storage.MinioStorageService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Cache kết quả báo cáo theo nội dung: job có cùng tham số (tên, khoảng thời gian, interval, quận, camera)
+ * trên cùng dữ liệu dùng lại PDF đã upload thay vì phân tích + dựng lại.
+ * <p>
+ * Khóa = SHA-256 của tham số đã chuẩn hóa (danh sách bỏ trùng, sắp xếp) + watermark dữ liệu. Watermark là
+ * tổng sample_count/total_count của rollup camera (phút ở 2 đầu, giờ ở giữa) trong khoảng, lọc theo
+ * camera/quận của job: bản ghi đến muộn làm đổi watermark nên không bao giờ trả về báo cáo cũ; replay
+ * trùng không được cộng vào rollup nên không làm mất cache. Tên job nằm trong khóa vì nó là tiêu đề PDF.
+ * </p>
+ * <p>
+ * Chỉ cache khoảng đã đóng (endTime &lt;= hiện tại) và khi rollup (cùng danh mục camera, nếu job lọc theo quận)
+ * đã sẵn sàng. Entry bị loại theo tuổi và theo tổng dung lượng (LRU theo lần dùng gần nhất); object PDF thuộc về
+ * job đã tạo ra nó nên không bị xóa khỏi MinIO.
+ * </p>
+ */
+@Service
+@Slf4j
+public class ReportResultCache {
+
+    /** Tăng khi bố cục/nội dung PDF thay đổi để không dùng lại báo cáo dựng bằng phiên bản cũ. */
+    private static final String FORMAT_VERSION = "v1";
+
+    private final ReportCacheRepository repository;
+    private final TrafficRollupService rollupService;
+    private final CameraRegistry cameraRegistry;
+    private final MinioStorageService minioService;
+    private final MinioBucketProperties bucketProperties;
+
+    @Value("${app.report.cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.report.cache.ttl-days:30}")
+    private long ttlDays;
+
+    @Value("${app.report.cache.max-bytes:1073741824}")
+    private long maxBytes;
+
+    private volatile boolean rollupsReady;
+
+    public ReportResultCache(ReportCacheRepository repository,
+                             TrafficRollupService rollupService,
+                             CameraRegistry cameraRegistry,
+                             MinioStorageService minioService,
+                             MinioBucketProperties bucketProperties) {
+        this.repository = repository;
+        this.rollupService = rollupService;
+        this.cameraRegistry = cameraRegistry;
+        this.minioService = minioService;
+        this.bucketProperties = bucketProperties;
+    }
+
+    @EventListener(RollupsReadyEvent.class)
+    public void onRollupsReady() {
+        rollupsReady = true;
+    }
+
+    /**
+     * Khóa cache của job, hoặc empty nếu job không được cache (tắt cache, job opt-out, khoảng chưa đóng,
+     * rollup chưa sẵn sàng, job lọc theo quận khi danh mục camera chưa nạp xong).
+     */
+    public Optional<String> keyOf(ReportJob job) {
+        if (!enabled || Boolean.FALSE.equals(job.getUseCache())) return Optional.empty();
+        if (!rollupsReady) {
+            log.debug("Report cache skipped for job {}: rollups not ready yet", job.getId());
+            return Optional.empty();
+        }
+        if (job.getEndTime().isAfter(Instant.now())) {
+            log.debug("Report cache skipped for job {}: range is still open", job.getId());
+            return Optional.empty();
+        }
+
+        List<String> districts = canonical(job.getDistricts());
+        List<String> cameras = canonical(job.getCameras());
+        // Lọc quận của watermark đi qua registry; chưa nạp xong thì mọi camera ra quận null → watermark 0:0:0
+        // bất kể dữ liệu, hai job cùng tham số sẽ trùng khóa dù dữ liệu đã đổi
+        if (!districts.isEmpty() && !cameraRegistry.isReady()) {
+            log.debug("Report cache skipped for job {}: camera registry not loaded yet", job.getId());
+            return Optional.empty();
+        }
+
+        String watermark;
+        try {
+            watermark = watermark(job, districts, cameras);
+        } catch (Exception e) {
+            log.warn("Report cache skipped for job {}: cannot read data watermark: {}", job.getId(), e.getMessage());
+            return Optional.empty();
+        }
+
+        String canonical = String.join("\n",
+                FORMAT_VERSION,
+                job.getName() != null ? job.getName().trim() : "",
+                String.valueOf(job.getStartTime().toEpochMilli()),
+                String.valueOf(job.getEndTime().toEpochMilli()),
+                String.valueOf(job.getIntervalMinutes()),
+                String.join(",", districts),
+                String.join(",", cameras),
+                watermark);
+        return Optional.of(sha256(canonical));
+    }
+
+    /**
+     * Object PDF đã cache cho khóa này, nếu còn trong MinIO. Entry trỏ tới object đã mất bị xóa luôn.
+     */
+    public Optional<String> lookup(String key) {
+        Optional<ReportCacheEntry> found = repository.findById(key);
+        if (found.isEmpty()) return Optional.empty();
+
+        ReportCacheEntry entry = found.get();
+        try {
+            if (!minioService.objectExists(entry.getObjectPath(), bucketProperties.getDocuments())) {
+                log.warn("Cached report object {} no longer exists, dropping cache entry", entry.getObjectPath());
+                repository.delete(entry);
+                return Optional.empty();
+            }
+        } catch (Exception e) {
+            log.warn("Could not verify cached report object {}: {}", entry.getObjectPath(), e.getMessage());
+            return Optional.empty();
+        }
+
+        entry.setLastHitAt(Instant.now());
+        entry.setHitCount(entry.getHitCount() == null ? 1 : entry.getHitCount() + 1);
+        repository.save(entry);
+        return Optional.of(entry.getObjectPath());
+    }
+
+    /**
+     * Ghi báo cáo vừa dựng vào cache. Lỗi chỉ được log: báo cáo đã upload xong, job không nên fail vì cache.
+     */
+    public void store(String key, ReportJob job, String objectPath, long sizeBytes) {
+        Instant now = Instant.now();
+        try {
+            repository.save(ReportCacheEntry.builder()
+                    .cacheKey(key)
+                    .objectPath(objectPath)
+                    .sizeBytes(sizeBytes)
+                    .sourceJobId(job.getId())
+                    .createdAt(now)
+                    .lastHitAt(now)
+                    .hitCount(0L)
+                    .build());
+        } catch (Exception e) {
+            log.warn("Failed to store report cache entry for job {}: {}", job.getId(), e.getMessage());
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app.report.cache.evict-interval-ms:3600000}")
+    public void evict() {
+        int expired = repository.deleteCreatedBefore(Instant.now().minus(Duration.ofDays(ttlDays)));
+
+        // Giữ các entry dùng gần nhất cho tới khi chạm giới hạn dung lượng
+        List<ReportCacheEntry> overflow = new ArrayList<>();
+        long total = 0;
+        for (ReportCacheEntry entry : repository.findAllByOrderByLastHitAtDesc()) {
+            total += entry.getSizeBytes() != null ? entry.getSizeBytes() : 0;
+            if (total > maxBytes) {
+                overflow.add(entry);
+            }
+        }
+        repository.deleteAll(overflow);
+
+        if (expired > 0 || !overflow.isEmpty()) {
+            log.info("Report cache eviction: {} expired, {} over size limit", expired, overflow.size());
+        }
+    }
+
+    /**
+     * Tổng (số bản ghi, số phương tiện, số dòng rollup) trong khoảng của job, chỉ tính camera thuộc bộ lọc.
+     */
+    private String watermark(ReportJob job, List<String> districts, List<String> cameras) {
+        Set<String> cameraFilter = new HashSet<>(cameras);
+        Set<String> districtFilter = new HashSet<>(districts);
+
+        long samples = 0;
+        long total = 0;
+        long rows = 0;
+        for (RollupRow row : rollupService.sumByKey(Rollup.CAMERA_MINUTE, Rollup.CAMERA_HOUR,
+                job.getStartTime(), job.getEndTime())) {
+            if (!cameraFilter.isEmpty() && !cameraFilter.contains(row.getKey())) continue;
+            if (!districtFilter.isEmpty() && !districtFilter.contains(cameraRegistry.districtOf(row.getKey()))) continue;
+            samples += row.get(TrafficRollupRepository.SAMPLES);
+            total += row.get(TrafficRollupRepository.TOTAL);
+            rows++;
+        }
+        return samples + ":" + total + ":" + rows;
+    }
+
+    private static List<String> canonical(List<String> values) {
+        if (values == null) return List.of();
+        return values.stream()
+                .filter(Objects::nonNull)
+                .map(String::trim)
+                .filter(s -> !s.isEmpty())
+                .distinct()
+                .sorted()
+                .collect(Collectors.toList());
+    }
+
+    private static String sha256(String value) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(value.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
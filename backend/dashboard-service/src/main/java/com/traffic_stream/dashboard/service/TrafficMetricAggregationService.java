@@ -1,26 +1,19 @@
 package com.traffic_stream.dashboard.service;
 import com.traffic_stream.dashboard.dto.report.ReportSummaryDTO;
 import com.traffic_stream.dashboard.entity.ReportJob;
-import com.traffic_stream.dashboard.entity.TrafficMetric;
-import com.traffic_stream.dashboard.repository.TrafficMetricRepository;
+import com.traffic_stream.dashboard.repository.TrafficMetricScanRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
-import java.time.ZoneId;
-import java.time.format.DateTimeFormatter;
-import java.util.*;
-import java.util.stream.Collectors;
+import java.util.List;
 
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class TrafficMetricAggregationService {
 
-    private final TrafficMetricRepository trafficMetricRepository;
-
-    private static final DateTimeFormatter HOUR_FORMATTER =
-            DateTimeFormatter.ofPattern("HH:00").withZone(ZoneId.of("Asia/Ho_Chi_Minh"));
+    private final TrafficMetricScanRepository scanRepository;
 
     public List<ReportSummaryDTO> aggregateData(ReportJob job) {
         try {
@@ -35,27 +28,18 @@ public class TrafficMetricAggregationService {
                     districts != null ? districts.size() : 0,
                     cameras != null ? cameras.size() : 0);
 
-            // Get raw data
-            log.info("Fetching raw data from database...");
-            List<TrafficMetric> rawData = fetchRawData(job, districts, cameras);
-            log.info("Fetched {} traffic metrics", rawData.size());
+            // Duyệt cursor, gom dần theo quận: không nạp cả khoảng vào bộ nhớ
+            log.info("Scanning raw data from database...");
+            DistrictSummaryAccumulator acc = new DistrictSummaryAccumulator();
+            scanRepository.scan(job.getStartTime(), job.getEndTime(), cameras, districts, acc::add);
+            log.info("Scanned {} traffic metrics", acc.getRecords());
 
-            if (rawData.isEmpty()) {
+            if (acc.getRecords() == 0) {
                 log.warn("No data found for job {} in the specified time range", job.getId());
                 throw new RuntimeException("Không có dữ liệu trong khoảng thời gian này");
             }
 
-            // Group by district
-            log.info("Grouping data by district...");
-            Map<String, List<TrafficMetric>> byDistrict = rawData.stream()
-                    .collect(Collectors.groupingBy(TrafficMetric::getDistrict));
-            log.info("Found {} districts in the data", byDistrict.size());
-
-            // Create summary for each district
-            List<ReportSummaryDTO> summaries = byDistrict.entrySet().stream()
-                    .map(entry -> createDistrictSummary(entry.getKey(), entry.getValue()))
-                    .sorted(Comparator.comparing(ReportSummaryDTO::getDistrict))
-                    .collect(Collectors.toList());
+            List<ReportSummaryDTO> summaries = acc.toSummaries();
 
             log.info("Successfully created {} district summaries", summaries.size());
             return summaries;
@@ -66,63 +50,4 @@ public class TrafficMetricAggregationService {
         }
     }
 
-    private List<TrafficMetric> fetchRawData(ReportJob job, List<String> districts, List<String> cameras) {
-        if (cameras != null && !cameras.isEmpty()) {
-            log.info("Querying by camera IDs: {}", cameras);
-            return trafficMetricRepository.findByCameraIdInAndTimestampBetween(
-                    cameras, job.getStartTime(), job.getEndTime()
-            );
-        } else if (districts != null && !districts.isEmpty()) {
-            log.info("Querying by districts: {}", districts);
-            return trafficMetricRepository.findByDistrictInAndTimestampBetween(
-                    districts, job.getStartTime(), job.getEndTime()
-            );
-        } else {
-            log.info("Querying all data without filters");
-            return trafficMetricRepository.findByTimestampBetween(
-                    job.getStartTime(), job.getEndTime()
-            );
-        }
-    }
-
-    private ReportSummaryDTO createDistrictSummary(String district, List<TrafficMetric> metrics) {
-        ReportSummaryDTO summary = new ReportSummaryDTO();
-        summary.setDistrict(district);
-
-        // Total vehicles
-        long totalVehicles = metrics.stream()
-                .mapToLong(TrafficMetric::getTotalCount)
-                .sum();
-        summary.setTotalVehicles(totalVehicles);
-
-        // Peak hour
-        Map<String, Long> hourlyTraffic = metrics.stream()
-                .collect(Collectors.groupingBy(
-                        m -> HOUR_FORMATTER.format(m.getTimestamp()),
-                        Collectors.summingLong(TrafficMetric::getTotalCount)
-                ));
-
-        String peakHour = hourlyTraffic.entrySet().stream()
-                .max(Map.Entry.comparingByValue())
-                .map(Map.Entry::getKey)
-                .orElse("N/A");
-        summary.setPeakHour(peakHour);
-
-        // Top cameras
-        List<String> topCameras = metrics.stream()
-                .collect(Collectors.groupingBy(
-                        TrafficMetric::getCameraName,
-                        Collectors.summingLong(TrafficMetric::getTotalCount)
-                ))
-                .entrySet().stream()
-                .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
-                .limit(5)
-                .map(Map.Entry::getKey)
-                .collect(Collectors.toList());
-        summary.setTopCameras(topCameras);
-
-        return summary;
-    }
-
 }
-
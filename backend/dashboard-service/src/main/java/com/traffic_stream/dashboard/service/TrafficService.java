@@ -2,16 +2,36 @@ package com.traffic_stream.dashboard.service;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.traffic_stream.dashboard.dto.*;
+import com.traffic_stream.dashboard.entity.Camera;
 import com.traffic_stream.dashboard.entity.TrafficMetric;
 import com.traffic_stream.dashboard.repository.TrafficMetricRepository;
+import com.traffic_stream.dashboard.repository.TrafficRollupRepository;
+import com.traffic_stream.dashboard.repository.TrafficRollupRepository.Rollup;
+import com.traffic_stream.dashboard.repository.TrafficRollupRepository.RollupRow;
+import com.traffic_stream.dashboard.service.realtime.LiveTrafficStateStore;
+import com.traffic_stream.dashboard.service.realtime.LiveWindowEngine;
+import com.traffic_stream.dashboard.service.realtime.MinuteRingStore;
+import com.traffic_stream.dashboard.service.cache.TimeBucketResponseCache;
+import com.traffic_stream.dashboard.service.realtime.TrafficBroadcastService;
+import com.traffic_stream.dashboard.service.registry.CameraRegistry;
+import com.traffic_stream.dashboard.service.registry.CameraSpatialIndex;
+import com.traffic_stream.dashboard.service.rollup.TrafficRollupService;
+import com.traffic_stream.dashboard.service.sketch.TrafficSketchService;
+import com.traffic_stream.dashboard.shared.constant.VehicleClass;
+import com.traffic_stream.dashboard.shared.exception.ServiceUnavailableException;
+import org.apache.datasketches.hll.HllSketch;
+import org.apache.datasketches.kll.KllDoublesSketch;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.jdbc.core.BatchPreparedStatementSetter;
 import org.springframework.jdbc.core.JdbcTemplate;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.sql.Timestamp;
@@ -31,23 +51,52 @@ public class TrafficService {
     private static final Logger log = LoggerFactory.getLogger(TrafficService.class);
 
     private final TrafficMetricRepository repository;
-    private final SimpMessagingTemplate messagingTemplate;
+    private final TrafficBroadcastService broadcastService;
     private final JdbcTemplate jdbcTemplate; 
     private final ObjectMapper objectMapper;
+    private final LiveTrafficStateStore liveState;
+    private final TrafficRollupService rollupService;
+    private final MinuteRingStore ringStore;
+    private final LiveWindowEngine liveWindow;
+    private final TimeBucketResponseCache responseCache;
+    private final CameraRegistry cameraRegistry;
+    private final CameraSpatialIndex spatialIndex;
+    private final TrafficSketchService sketchService;
 
     private final ExecutorService webSocketExecutor = Executors.newFixedThreadPool(10);
-    private final Map<String, Integer> maxCountCache = new java.util.concurrent.ConcurrentHashMap<>();
     private final ZoneId VIETNAM_ZONE = ZoneId.of("Asia/Ho_Chi_Minh");
-    private final String VIETNAM_TZ_NAME = "Asia/Ho_Chi_Minh";
+
+    private static final int DEFAULT_PAGE_SIZE = 1000;
+    private static final int MAX_PAGE_SIZE = 5000;
+    private static final double[] DEFAULT_QUANTILES = {0.5, 0.9, 0.95, 0.99};
+    private static final int DEFAULT_VIEWPORT_LIMIT = 2000;
+    private static final int MAX_VIEWPORT_LIMIT = 10000;
+    private static final int MAX_NEAREST = 100;
 
     public TrafficService(TrafficMetricRepository repository,
-                          SimpMessagingTemplate messagingTemplate,
+                          TrafficBroadcastService broadcastService,
                           JdbcTemplate jdbcTemplate,
-                          ObjectMapper objectMapper) {
+                          ObjectMapper objectMapper,
+                          LiveTrafficStateStore liveState,
+                          TrafficRollupService rollupService,
+                          MinuteRingStore ringStore,
+                          LiveWindowEngine liveWindow,
+                          TimeBucketResponseCache responseCache,
+                          CameraRegistry cameraRegistry,
+                          CameraSpatialIndex spatialIndex,
+                          TrafficSketchService sketchService) {
         this.repository = repository;
-        this.messagingTemplate = messagingTemplate;
+        this.broadcastService = broadcastService;
         this.jdbcTemplate = jdbcTemplate;
         this.objectMapper = objectMapper;
+        this.liveState = liveState;
+        this.rollupService = rollupService;
+        this.ringStore = ringStore;
+        this.liveWindow = liveWindow;
+        this.responseCache = responseCache;
+        this.cameraRegistry = cameraRegistry;
+        this.spatialIndex = spatialIndex;
+        this.sketchService = sketchService;
     }
 
     /**
@@ -59,84 +108,116 @@ public class TrafficService {
 
         long startTime = System.currentTimeMillis();
 
-        // 1. Populate max_count for each DTO (Cache-aside pattern)
-        for (TrafficMetricsDTO dto : dtoList) {
-            String cameraId = dto.getCameraId();
-            int currentCount = dto.getTotalCount();
-
-            // Get max from cache or DB
-            int max = maxCountCache.computeIfAbsent(cameraId, k -> {
-                Integer dbMax = repository.findMaxCountByCameraId(k);
-                return (dbMax != null) ? dbMax : 0;
-            });
-
-            // Update if current is greater
-            if (currentCount > max) {
-                max = currentCount;
-                maxCountCache.put(cameraId, max);
-            }
-
-            dto.setMaxCount(max);
-        }
+        // 1. Gán max_count cho từng DTO từ live state (live state chỉ cập nhật sau khi commit)
+        liveState.stampMaxCounts(dtoList);
 
         CompletableFuture.runAsync(() -> {
             try {
-                messagingTemplate.convertAndSend("/topic/traffic", dtoList);
+                broadcastService.publish(dtoList);
             } catch (Exception e) {
                 log.warn("Lỗi gửi WebSocket batch: {}", e.getMessage());
             }
         }, webSocketExecutor);
 
-        bulkInsertMetrics(dtoList);
+        List<TrafficMetricsDTO> inserted = bulkInsertMetrics(dtoList);
+        applyAggregates(inserted);
 
         long dataTime = dtoList.get(0).getTimestamp();
         long now = System.currentTimeMillis();
         long latency = now - dataTime;
-        log.info("Batch Size: {}. DB Insert: {}ms. Data Latency: {}ms (RowTime: {} -> Now: {})", 
-                dtoList.size(), (now - startTime), latency, Instant.ofEpochMilli(dataTime), Instant.ofEpochMilli(now));
+        log.info("Batch Size: {}. Inserted: {}. DB Insert: {}ms. Data Latency: {}ms (RowTime: {} -> Now: {})",
+                dtoList.size(), inserted.size(), (now - startTime), latency, Instant.ofEpochMilli(dataTime), Instant.ofEpochMilli(now));
     }
 
     /**
-     * Hàm Insert Bulk sử dụng Raw SQL để đạt hiệu năng tối đa
+     * Chỉ ghi DB + rollup (không đẩy WebSocket) – dùng cho replay, retry topic và chia đôi batch lỗi.
+     * Nhờ natural key (camera_id, timestamp) nên ghi lại nhiều lần không sinh bản ghi trùng.
+     *
+     * @return số bản ghi thực sự được thêm mới
      */
+    @Transactional
+    public int persistMetricsBatch(List<TrafficMetricsDTO> dtoList) {
+        if (dtoList == null || dtoList.isEmpty()) return 0;
+        List<TrafficMetricsDTO> inserted = bulkInsertMetrics(dtoList);
+        applyAggregates(inserted);
+        return inserted.size();
+    }
+
+    /**
+     * Rollup được ghi trong cùng transaction; live state, ring buffer, cửa sổ live và response cache chỉ cập nhật sau khi commit
+     * để batch bị rollback (rồi chia đôi/retry) không bị đếm 2 lần.
+     */
+    private void applyAggregates(List<TrafficMetricsDTO> inserted) {
+        if (inserted.isEmpty()) return;
+        rollupService.apply(inserted);
+        cameraRegistry.recordSeen(inserted);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    applyCommitted(inserted);
+                }
+            });
+        } else {
+            applyCommitted(inserted);
+        }
+    }
+
+    private void applyCommitted(List<TrafficMetricsDTO> inserted) {
+        liveState.apply(inserted);
+        ringStore.apply(inserted);
+        liveWindow.apply(inserted);
+        responseCache.onIngest(inserted);
+    }
+
     /**
-     * Hàm Insert Bulk sử dụng Raw SQL để đạt hiệu năng tối đa
+     * Hàm Insert Bulk sử dụng Raw SQL để đạt hiệu năng tối đa.
+     * - ON CONFLICT (camera_id, timestamp) DO NOTHING: redelivery/replay là idempotent.
+     * - Trả về các DTO thực sự được insert (bỏ qua bản ghi trùng).
+     * - Lỗi được ném ra ngoài để consumer chia đôi batch / chuyển sang retry topic.
      */
-    private void bulkInsertMetrics(List<TrafficMetricsDTO> list) {
+    private List<TrafficMetricsDTO> bulkInsertMetrics(List<TrafficMetricsDTO> list) {
         String sql = "INSERT INTO traffic_metrics " +
                 "(camera_id, camera_name, district, annotated_image_url, coordinates, detection_details, total_count, timestamp) " +
-                "VALUES (?, ?, ?, ?, ?::jsonb, ?::jsonb, ?, ?)";
+                "VALUES (?, ?, ?, ?, ?::jsonb, ?::jsonb, ?, ?) " +
+                "ON CONFLICT (camera_id, timestamp) DO NOTHING";
 
-        try {
-            int[] result = jdbcTemplate.batchUpdate(sql, new BatchPreparedStatementSetter() {
-                @Override
-                public void setValues(PreparedStatement ps, int i) throws SQLException {
-                    TrafficMetricsDTO dto = list.get(i);
-                    try {
-                        ps.setString(1, dto.getCameraId());
-                        ps.setString(2, dto.getCameraName());
-                        ps.setString(3, dto.getDistrict());
-                        ps.setString(4, dto.getAnnotatedImageUrl());
-
-                        ps.setString(5, objectMapper.writeValueAsString(dto.getCoordinates()));
-                        ps.setString(6, objectMapper.writeValueAsString(dto.getDetectionDetails()));
-
-                        ps.setInt(7, dto.getTotalCount());
-                        ps.setTimestamp(8, Timestamp.from(Instant.ofEpochMilli(dto.getTimestamp())));
-                    } catch (Exception e) {
-                        log.error("Lỗi map dữ liệu JDBC tại index {}: ", i, e);
-                    }
+        int[] result = jdbcTemplate.batchUpdate(sql, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                TrafficMetricsDTO dto = list.get(i);
+                try {
+                    ps.setString(1, dto.getCameraId());
+                    ps.setString(2, dto.getCameraName());
+                    ps.setString(3, dto.getDistrict());
+                    ps.setString(4, dto.getAnnotatedImageUrl());
+
+                    ps.setString(5, objectMapper.writeValueAsString(dto.getCoordinates()));
+                    ps.setString(6, objectMapper.writeValueAsString(dto.getDetectionDetails()));
+
+                    ps.setInt(7, dto.getTotalCount());
+                    ps.setTimestamp(8, Timestamp.from(Instant.ofEpochMilli(dto.getTimestamp())));
+                } catch (Exception e) {
+                    throw new SQLException("Lỗi map dữ liệu JDBC tại index " + i + " (camera " + dto.getCameraId() + ")", e);
                 }
+            }
 
-                @Override
-                public int getBatchSize() {
-                    return list.size();
-                }
-            });
-            log.info("Successfully inserted {} rows into database.", result.length);
-        } catch (Exception e) {
-            log.error("Lỗi Critical khi insert batch vào DB: ", e);
+            @Override
+            public int getBatchSize() {
+                return list.size();
+            }
+        });
+
+        List<TrafficMetricsDTO> inserted = new ArrayList<>(result.length);
+        for (int i = 0; i < result.length; i++) {
+            // SUCCESS_NO_INFO (-2) nghĩa là driver không trả về số dòng -> coi như đã insert
+            if (result[i] > 0 || result[i] == java.sql.Statement.SUCCESS_NO_INFO) {
+                inserted.add(list.get(i));
+            }
         }
+        log.info("Successfully inserted {} rows into database ({} duplicates skipped).",
+                inserted.size(), result.length - inserted.size());
+        return inserted;
     }
 
     /**
@@ -144,6 +225,7 @@ public class TrafficService {
      * - Nếu có date: Lấy 100 bản ghi mới nhất CỦA NGÀY ĐÓ.
      * - Nếu không có date: Lấy 100 bản ghi mới nhất TÍNH ĐẾN HIỆN TẠI (Real-time).
      */
+    @Transactional(readOnly = true)
     public List<TrafficMetric> getLatestTrafficMetrics(String district, String dateStr) {
         List<TrafficMetric> metrics;
 
@@ -158,11 +240,8 @@ public class TrafficService {
                 metrics = repository.findFirst100ByTimestampBetweenOrderByTimestampDesc(startOfDay, endOfDay);
             }
         } else {
-            if (district != null && !district.isEmpty()) {
-                metrics = repository.findFirst100ByDistrictOrderByTimestampDesc(district);
-            } else {
-                metrics = repository.findFirst100ByOrderByTimestampDesc();
-            }
+            // Real-time: phục vụ trực tiếp từ live state (đã có max count)
+            return liveState.getLatest100(district);
         }
 
         if (!metrics.isEmpty()) {
@@ -198,6 +277,7 @@ public class TrafficService {
      * + Nếu không truyền end: Mặc định đến hiện tại (Real-time).
      * + Nếu start == end (User chọn cùng 1 ngày): Tự động lấy full 24h ngày đó.
      */
+    @Transactional(readOnly = true)
     public Map<String, DistrictDailySummaryDTO> getDistrictSummary(String startStr, String endStr) {
         Instant now = Instant.now();
         Instant startOfDay = LocalDate.now(VIETNAM_ZONE).atStartOfDay(VIETNAM_ZONE).toInstant();
@@ -216,21 +296,28 @@ public class TrafficService {
             end = now;
         }
 
-        List<TrafficMetric> metrics = repository.findByTimestampBetween(start, end);
+        Instant rangeEnd = end;
+        return responseCache.get("district-summary", ChronoUnit.MINUTES, start, rangeEnd, List.of(),
+                () -> buildDistrictSummary(start, rangeEnd));
+    }
 
+    /**
+     * Tổng theo (quận, loại xe) lấy thẳng từ rollup: DB chỉ trả về 1 dòng / quận,
+     * không nạp entity thô nên bộ nhớ và độ trễ tỉ lệ với số quận thay vì số bản ghi.
+     */
+    private Map<String, DistrictDailySummaryDTO> buildDistrictSummary(Instant start, Instant end) {
         Map<String, DistrictDailySummaryDTO> summaryMap = new HashMap<>();
-
-        for (TrafficMetric metric : metrics) {
-            String district = metric.getDistrict();
+        for (RollupRow row : rollupService.sumByKey(Rollup.DISTRICT_MINUTE, Rollup.DISTRICT_HOUR, start, end)) {
+            String district = row.getKey();
             if (district == null || district.isEmpty()) {
                 continue;
             }
 
-            DistrictDailySummaryDTO summaryDTO = summaryMap.computeIfAbsent(
-                    district,
-                    d -> new DistrictDailySummaryDTO()
-            );
-            summaryDTO.addMetric(metric);
+            DistrictDailySummaryDTO summaryDTO = new DistrictDailySummaryDTO();
+            for (VehicleClass vc : VehicleClass.values()) {
+                summaryDTO.addCount(vc, row.get(vc));
+            }
+            summaryMap.put(district, summaryDTO);
         }
         return summaryMap;
     }
@@ -238,6 +325,7 @@ public class TrafficService {
     /**
      * API 3 : Lấy tất cả metrics theo ngày và camera
      */
+    @Transactional(readOnly = true)
     public List<TrafficMetric> getMetricsByDate(String dateStr, String cameraId) {
         LocalDate date = parseDateOrDefault(dateStr);
         Instant startOfDay = date.atStartOfDay(VIETNAM_ZONE).toInstant();
@@ -249,12 +337,53 @@ public class TrafficService {
         return repository.findByTimestampBetween(startOfDay, endOfDay);
     }
 
+    /**
+     * API 3 (phân trang): trang kế tiếp sau cursor, sắp theo (timestamp, id).
+     * cursor là chuỗi mờ do chính API trả về ở nextCursor; null/rỗng = trang đầu.
+     */
+    @Transactional(readOnly = true)
+    public TrafficMetricPageDTO getMetricsByDatePage(String dateStr, String cameraId, String cursor, Integer limit) {
+        LocalDate date = parseDateOrDefault(dateStr);
+        Instant startOfDay = date.atStartOfDay(VIETNAM_ZONE).toInstant();
+        Instant endOfDay = date.plusDays(1).atStartOfDay(VIETNAM_ZONE).toInstant();
+
+        int pageSize = (limit == null) ? DEFAULT_PAGE_SIZE : limit;
+        if (pageSize < 1 || pageSize > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("limit must be between 1 and " + MAX_PAGE_SIZE);
+        }
+
+        Instant afterTimestamp = startOfDay;
+        long afterId = -1L;
+        if (cursor != null && !cursor.isEmpty()) {
+            try {
+                String[] parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.US_ASCII).split(":");
+                afterTimestamp = Instant.ofEpochSecond(Long.parseLong(parts[0]), Long.parseLong(parts[1]));
+                afterId = Long.parseLong(parts[2]);
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("Invalid cursor: " + cursor);
+            }
+        }
+
+        String camera = (cameraId != null && !cameraId.isEmpty()) ? cameraId : null;
+        List<TrafficMetric> items = repository.findPageAfter(startOfDay, endOfDay, camera,
+                afterTimestamp, afterId, pageSize);
+
+        String nextCursor = null;
+        if (items.size() == pageSize) {
+            TrafficMetric last = items.get(items.size() - 1);
+            String raw = last.getTimestamp().getEpochSecond() + ":" + last.getTimestamp().getNano() + ":" + last.getId();
+            nextCursor = Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.US_ASCII));
+        }
+        return new TrafficMetricPageDTO(items, items.size(), nextCursor);
+    }
+
     /**
      * API 4 : Lấy summary theo giờ
      * Yêu cầu:
      *      - Thêm start, end (Mặc định 24h qua).
      *      - Thêm filter cameraId.
      */
+    @Transactional(readOnly = true)
     public Map<String, Long> getHourlyTimeSeries(String startStr, String endStr, String district, String cameraId) {
         Instant now = Instant.now();
         Instant twentyFourHoursAgo = now.minus(24, ChronoUnit.HOURS);
@@ -266,6 +395,12 @@ public class TrafficService {
             end = end.plus(1, ChronoUnit.DAYS);
         }
 
+        Instant rangeEnd = end;
+        return responseCache.get("hourly-series", ChronoUnit.HOURS, start, rangeEnd, Arrays.asList(district, cameraId),
+                () -> buildHourlyTimeSeries(start, rangeEnd, district, cameraId));
+    }
+
+    private Map<String, Long> buildHourlyTimeSeries(Instant start, Instant end, String district, String cameraId) {
         Map<String, Long> timeSeries = new LinkedHashMap<>();
         DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:00:00");
         ZonedDateTime currentZdt = start.atZone(VIETNAM_ZONE).truncatedTo(ChronoUnit.HOURS);
@@ -278,30 +413,24 @@ public class TrafficService {
             safety++;
         }
 
-        if (cameraId != null && !cameraId.isEmpty()) {
-            List<TrafficMetric> metrics = repository.findByTimestampBetweenAndCameraId(start, end, cameraId);
-            for (TrafficMetric metric : metrics) {
-                ZonedDateTime zdt = metric.getTimestamp().atZone(VIETNAM_ZONE).truncatedTo(ChronoUnit.HOURS);
-                String key = formatter.format(zdt);
-
-                long count = 0;
-                if (metric.getDetectionDetails() != null) {
-                    for (Map.Entry<String, Integer> e : metric.getDetectionDetails().entrySet()) {
-                        if (!"person".equalsIgnoreCase(e.getKey())) count += e.getValue();
-                    }
-                }
-                if (timeSeries.containsKey(key)) {
-                    timeSeries.merge(key, count, Long::sum);
-                }
-            }
-        } else {
-            List<Object[]> rows = repository.getHourlyTimeSeries(start, end, district, VIETNAM_TZ_NAME);
-            for (Object[] row : rows) {
-                String timeKey = (String) row[0];
-                Number total = (Number) row[1];
-                if (timeSeries.containsKey(timeKey)) {
-                    timeSeries.put(timeKey, total.longValue());
-                }
+        // Theo camera dùng vehicle_count (không tính person), theo quận dùng total_count.
+        // 25h gần nhất đọc từ ring buffer trong bộ nhớ, ngoài khoảng đó đọc rollup giờ.
+        long fromMinute = MinuteRingStore.toMinute(start.truncatedTo(ChronoUnit.HOURS));
+        long[] values = new long[timeSeries.size()];
+        boolean fromRing = (cameraId != null && !cameraId.isEmpty())
+                ? ringStore.cameraSeries(cameraId, MinuteRingStore.CAMERA_VEHICLE, fromMinute, 60, values)
+                : ringStore.districtSeries(district, TrafficRollupRepository.TOTAL, fromMinute, 60, values);
+        if (fromRing) {
+            return fillSeries(timeSeries, values);
+        }
+
+        Map<Instant, Long> buckets = (cameraId != null && !cameraId.isEmpty())
+                ? rollupService.sumByBucket(Rollup.CAMERA_HOUR, "vehicle_count", cameraId, start, end)
+                : rollupService.sumByBucket(Rollup.DISTRICT_HOUR, "total_count", district, start, end);
+        for (Map.Entry<Instant, Long> e : buckets.entrySet()) {
+            String key = formatter.format(e.getKey().atZone(VIETNAM_ZONE));
+            if (timeSeries.containsKey(key)) {
+                timeSeries.put(key, e.getValue());
             }
         }
         return timeSeries;
@@ -334,93 +463,128 @@ public class TrafficService {
         return LocalDate.parse(dateStr);
     }
 
+    /**
+     * Gán values[i] cho bucket thứ i của time series (cùng thứ tự với lúc tạo key).
+     */
+    private Map<String, Long> fillSeries(Map<String, Long> timeSeries, long[] values) {
+        int i = 0;
+        for (Map.Entry<String, Long> e : timeSeries.entrySet()) {
+            e.setValue(values[i++]);
+        }
+        return timeSeries;
+    }
+
     /** API 5
      * Lấy bản ghi metric mới nhất cho một camera cụ thể.
      * @param cameraId ID của camera
      * @return TrafficMetric mới nhất, hoặc null nếu không tìm thấy
      */
     public TrafficMetric getLatestMetricByCameraId(String cameraId) {
-        return repository.findFirstByCameraIdOrderByTimestampDesc(cameraId)
-                .orElse(null);
+        return liveState.getLatest(cameraId).orElse(null);
     }
 
     /**
      * Tổng hợp chi tiết theo QUẬN và PHÚT (Real-time)
      * - Dữ liệu trả về sẽ có format time là: yyyy-MM-dd'T'HH:mm:00
      * - Key Map bây giờ là: District + Time (để tách các phút ra)
-     * - OPTIMIZED: Lấy chi tiết từng loại xe từ DB để đảm bảo tính chính xác cho biểu đồ Stack.
+     * - Đọc từ ring buffer trong bộ nhớ (25h gần nhất) hoặc rollup district-minute, không bung JSONB của dữ liệu thô.
      */
+    @Transactional(readOnly = true)
     public List<HourlyDistrictSummaryDTO> getDetailedHourlySummaryByDistrict(Instant startTime, Instant endTime) {
-        List<Object[]> rows = repository.getDistrictMinuteTimeSeries(startTime, endTime, VIETNAM_TZ_NAME);
-        
-        Map<String, HourlyDistrictSummaryDTO> summaryMap = new HashMap<>();
+        List<HourlyDistrictSummaryDTO> result = getDetailedHourlySummaryFromMemory(startTime, endTime);
+        if (result != null) {
+            return result;
+        }
 
-        for (Object[] row : rows) {
-            String district = (String) row[0];
-            String timeBucket = (String) row[1];
-            String vehicleType = (String) row[2];
-            Number countNum = (Number) row[3];
+        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:00");
+        result = new ArrayList<>();
+        for (RollupRow row : rollupService.findRows(Rollup.DISTRICT_MINUTE, startTime, endTime, null)) {
+            if (row.getKey() == null || row.getKey().isEmpty()) continue;
+            addDistrictSummary(result, row.getKey(), row.getBucket(), row.getCounts(), formatter);
+        }
 
-            if (district == null || timeBucket == null || vehicleType == null || countNum == null) continue;
-            
-            long count = countNum.longValue();
-            
-            String mappedType = mapVehicleType(vehicleType); 
-            if (mappedType == null) continue; 
+        result.sort(Comparator.comparing(HourlyDistrictSummaryDTO::getHour).reversed());
+        return result;
+    }
 
-            String key = district + "_" + timeBucket;
-            HourlyDistrictSummaryDTO dto = summaryMap.computeIfAbsent(
-                    key,
-                    k -> new HourlyDistrictSummaryDTO(district, timeBucket)
-            );
+    /**
+     * Giống getDetailedHourlySummaryByDistrict nhưng chỉ đọc ring buffer (không mở transaction/connection);
+     * trả về null nếu ring chưa phủ khoảng này.
+     */
+    public List<HourlyDistrictSummaryDTO> getDetailedHourlySummaryFromMemory(Instant startTime, Instant endTime) {
+        long fromMinute = MinuteRingStore.toMinute(startTime);
+        long toMinute = Math.floorDiv(endTime.toEpochMilli() + 59_999L, 60_000L);
+        if (!ringStore.covers(fromMinute, toMinute)) {
+            return null;
+        }
 
-            dto.setTotalCount(dto.getTotalCount() + count); 
-            dto.getDetectionDetailsSummary().merge(mappedType, count, Long::sum);
+        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:00");
+        List<HourlyDistrictSummaryDTO> result = new ArrayList<>();
+        long[] counts = TrafficRollupRepository.newCounts();
+        for (String district : ringStore.districts()) {
+            if (district.isEmpty()) continue;
+            for (long minute = fromMinute; minute < toMinute; minute++) {
+                if (ringStore.readDistrictMinute(district, minute, counts)) {
+                    addDistrictSummary(result, district, Instant.ofEpochSecond(minute * 60), counts, formatter);
+                }
+            }
         }
 
-        List<HourlyDistrictSummaryDTO> result = new ArrayList<>(summaryMap.values());
         result.sort(Comparator.comparing(HourlyDistrictSummaryDTO::getHour).reversed());
         return result;
     }
 
-    /**
-     * Copy logic từ DTO ra để dùng ở Service Layer
-     */
-    private String mapVehicleType(String rawType) {
-        if (rawType == null) return "other";
-        switch (rawType.toLowerCase()) {
-            case "car": return "car";
-            case "motorcycle": return "motorcycle";
-            case "truck": return "truck";
-            case "person": return null; // Filter out person
-            case "bus":
-            case "bicycle":
-            case "train":
-                return "other";
-            default: return "other";
+    private void addDistrictSummary(List<HourlyDistrictSummaryDTO> result, String district, Instant bucket,
+                                    long[] counts, DateTimeFormatter formatter) {
+        if (counts[TrafficRollupRepository.VEHICLE] == 0) return;
+
+        HourlyDistrictSummaryDTO dto = new HourlyDistrictSummaryDTO(district, formatter.format(bucket.atZone(VIETNAM_ZONE)));
+        for (VehicleClass vc : VehicleClass.values()) {
+            long count = counts[TrafficRollupRepository.classIndex(vc)];
+            if (!vc.isVehicle() || count == 0) continue;
+            dto.setTotalCount(dto.getTotalCount() + count);
+            dto.getDetectionDetailsSummary().merge(vc.getSummaryType(), count, Long::sum);
         }
+        result.add(dto);
     }
 
+    @Transactional(readOnly = true)
     public List<DistrictDTO> getAllDistricts() {
-        return repository.findDistinctDistricts()
+        List<String> districts = cameraRegistry.isReady()
+                ? cameraRegistry.getDistricts()
+                : repository.findDistinctDistricts();
+        return districts
                 .stream()
                 .map(DistrictDTO::new)
                 .toList();
     }
 
+    @Transactional(readOnly = true)
     public List<CameraDTO> getAllCameras(String district) {
-        List<String> cameraIds;
-        if (district != null && !district.trim().isEmpty()) {
-            cameraIds = repository.findDistinctCameraIdsByDistrict(district);
-        } else {
-            cameraIds = repository.findDistinctCameraIds();
+        if (cameraRegistry.isReady()) {
+            return cameraRegistry.getCameras(district).stream()
+                    .map(c -> CameraDTO.builder()
+                            .cameraName(c.getCameraName())
+                            .cameraId(c.getCameraId())
+                            .district(c.getDistrict())
+                            .build())
+                    .toList();
         }
 
-        // Get only ONE (latest) metric per camera to avoid duplicates
-        return cameraIds.stream()
-                .map(repository::findFirstByCameraIdOrderByTimestampDesc)
-                .filter(Optional::isPresent)
-                .map(Optional::get)
+        List<LiveTrafficStateStore.CameraSnapshot> live = liveState.getCameras(district);
+        if (live != null) {
+            return live.stream()
+                    .map(s -> CameraDTO.builder()
+                            .cameraName(s.getCameraName())
+                            .cameraId(s.getCameraId())
+                            .district(s.getDistrict())
+                            .build())
+                    .toList();
+        }
+
+        // Cold start (live state chưa warm xong): 1 query DISTINCT ON thay vì N+1
+        return repository.findLatestMetricPerCamera().stream()
+                .filter(metric -> district == null || district.trim().isEmpty() || district.equals(metric.getDistrict()))
                 .map(metric -> CameraDTO.builder()
                         .cameraName(metric.getCameraName())
                         .cameraId(metric.getCameraId())
@@ -430,10 +594,69 @@ public class TrafficService {
                 .toList();
     }
 
+    /**
+     * FEATURE bản đồ: camera trong khung nhìn (bbox) kèm số xe mới nhất, tra từ chỉ mục lưới trong bộ nhớ
+     */
+    public List<CameraLocationDTO> getCamerasWithin(double minLat, double minLng, double maxLat, double maxLng,
+                                                    Integer limit) {
+        validateLatLng(minLat, minLng);
+        validateLatLng(maxLat, maxLng);
+        if (minLat > maxLat || minLng > maxLng) {
+            throw new IllegalArgumentException("minLat/minLng must not be greater than maxLat/maxLng");
+        }
+        requireSpatialIndex();
+        int max = (limit == null || limit <= 0) ? DEFAULT_VIEWPORT_LIMIT : Math.min(limit, MAX_VIEWPORT_LIMIT);
+        return spatialIndex.withinBounds(minLat, minLng, maxLat, maxLng, max).stream()
+                .map(c -> toLocation(c, null))
+                .toList();
+    }
+
+    /**
+     * FEATURE bản đồ: k camera gần một điểm nhất (khoảng cách haversine), kèm số xe mới nhất
+     */
+    public List<CameraLocationDTO> getNearestCameras(double lat, double lng, Integer k, Double maxDistanceMeters) {
+        validateLatLng(lat, lng);
+        requireSpatialIndex();
+        int count = (k == null || k <= 0) ? 10 : Math.min(k, MAX_NEAREST);
+        double radius = maxDistanceMeters != null ? maxDistanceMeters : 0;
+        return spatialIndex.nearest(lat, lng, count, radius).stream()
+                .map(hit -> toLocation(hit.getCamera(), Math.round(hit.getDistanceMeters() * 10.0) / 10.0))
+                .toList();
+    }
+
+    private void requireSpatialIndex() {
+        if (!spatialIndex.isReady()) {
+            throw new ServiceUnavailableException("Camera registry is still loading, please retry shortly", CameraSpatialIndex.LOADING_RETRY_AFTER_SECONDS);
+        }
+    }
+
+    private static void validateLatLng(double lat, double lng) {
+        if (lat < -90 || lat > 90 || lng < -180 || lng > 180) {
+            throw new IllegalArgumentException("Invalid coordinates: lat=" + lat + ", lng=" + lng);
+        }
+    }
+
+    /** Chỉ đọc snapshot trong bộ nhớ để tránh N truy vấn DB cho một khung nhìn. */
+    private CameraLocationDTO toLocation(Camera camera, Double distanceMeters) {
+        CameraLocationDTO.CameraLocationDTOBuilder builder = CameraLocationDTO.builder()
+                .cameraId(camera.getCameraId())
+                .cameraName(camera.getCameraName())
+                .district(camera.getDistrict())
+                .latitude(camera.getLatitude())
+                .longitude(camera.getLongitude())
+                .distanceMeters(distanceMeters);
+        liveState.peek(camera.getCameraId()).ifPresent(s -> builder
+                .totalCount(s.getTotalCount())
+                .maxCount(s.getMaxCount())
+                .timestamp(s.getTimestamp()));
+        return builder.build();
+    }
+
     /**
      * FEATURE lấy số lượng xe tối đa (Peak Traffic)
      * Trả về thông tin bản ghi có lượng xe cao nhất từng ghi nhận
      */
+    @Transactional(readOnly = true)
     public Map<String, Object> getMaxTrafficCount(String cameraId) {
         Optional<TrafficMetric> maxMetricOpt = repository.findTopByCameraIdOrderByTotalCountDesc(cameraId);
 
@@ -454,6 +677,7 @@ public class TrafficService {
      * FEATURE tính lưu lượng xe/phút (Traffic Flow Rate)
      * Logic: Tổng số xe đếm được trong khoảng thời gian / Tổng số phút của khoảng thời gian đó
      */
+    @Transactional(readOnly = true)
     public Map<String, Object> calculateTrafficFlow(String cameraId, String startStr, String endStr) {
         Instant now = Instant.now();
         Instant end = (endStr != null && !endStr.isEmpty()) ? parseToInstant(endStr, false) : now;
@@ -483,6 +707,7 @@ public class TrafficService {
      * - Khắc phục triệt để lỗi -100% / +100% do độ trễ xử lý.
      * - Dữ liệu luôn được "lấp đầy" bởi các phút lân cận.
      */
+    @Transactional(readOnly = true)
     public List<DistrictGrowthDTO> getTop5FastestGrowingDistricts() {
         Instant now = Instant.now();
 
@@ -536,6 +761,7 @@ public class TrafficService {
      * - Tính tổng số lượng từng loại xe từ field 'detectionDetails' JSONB.
      * - Loại bỏ "person" vì không phải là xe.
      */
+    @Transactional(readOnly = true)
     public List<VehicleTypeRatioDTO> getCityWideVehicleTypeRatio() {
         Instant now = Instant.now();
         Instant end = now;
@@ -584,6 +810,7 @@ public class TrafficService {
      * FEATURE (6a): Top 5 Quận đông nhất (Busiest Districts)
      * Logic: Trung bình cộng 5 phút (Sliding Window)
      */
+    @Transactional(readOnly = true)
     public List<TopTrafficDTO> getTop5BusiestDistricts() {
         return getTopBusiestEntities(true);
     }
@@ -592,6 +819,7 @@ public class TrafficService {
      * FEATURE (6b): Top 5 Camera đông nhất (Busiest Cameras)
      * Logic: Trung bình cộng 5 phút (Sliding Window)
      */
+    @Transactional(readOnly = true)
     public List<TopTrafficDTO> getTop5BusiestCameras() {
         return getTopBusiestEntities(false);
     }
@@ -629,6 +857,7 @@ public class TrafficService {
      * API: Lấy Time Series theo PHÚT
      * Mặc định: Từ 1 tiếng trước -> Hiện tại
      */
+    @Transactional(readOnly = true)
     public Map<String, Long> getMinuteTimeSeries(String startStr, String endStr, String district, String cameraId) {
         Instant now = Instant.now();
         Instant oneHourAgo = now.minus(1, ChronoUnit.HOURS);
@@ -636,6 +865,11 @@ public class TrafficService {
         Instant end = (endStr != null && !endStr.isEmpty()) ? parseToInstant(endStr, false) : now;
         Instant start = (startStr != null && !startStr.isEmpty()) ? parseToInstant(startStr, true) : oneHourAgo;
 
+        return responseCache.get("minute-series", ChronoUnit.MINUTES, start, end, Arrays.asList(district, cameraId),
+                () -> buildMinuteTimeSeries(start, end, district, cameraId));
+    }
+
+    private Map<String, Long> buildMinuteTimeSeries(Instant start, Instant end, String district, String cameraId) {
         Map<String, Long> timeSeries = new LinkedHashMap<>();
         DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:00");
 
@@ -649,24 +883,22 @@ public class TrafficService {
             safety++;
         }
 
-        if (cameraId != null && !cameraId.isEmpty()) {
-            List<TrafficMetric> metrics = repository.findByTimestampBetweenAndCameraId(start, end, cameraId);
-            for (TrafficMetric metric : metrics) {
-                ZonedDateTime zdt = metric.getTimestamp().atZone(VIETNAM_ZONE).truncatedTo(ChronoUnit.MINUTES);
-                String key = formatter.format(zdt);
-                long count = metric.getTotalCount();
-                if (timeSeries.containsKey(key)) {
-                    timeSeries.merge(key, count, Long::sum);
-                }
-            }
-        } else {
-            List<Object[]> rows = repository.getMinuteTimeSeries(start, end, district, VIETNAM_TZ_NAME);
-            for (Object[] row : rows) {
-                String timeKey = (String) row[0];
-                Number total = (Number) row[1];
-                if (timeSeries.containsKey(timeKey)) {
-                    timeSeries.put(timeKey, total.longValue());
-                }
+        long fromMinute = MinuteRingStore.toMinute(start.truncatedTo(ChronoUnit.MINUTES));
+        long[] values = new long[timeSeries.size()];
+        boolean fromRing = (cameraId != null && !cameraId.isEmpty())
+                ? ringStore.cameraSeries(cameraId, MinuteRingStore.CAMERA_TOTAL, fromMinute, 1, values)
+                : ringStore.districtSeries(district, TrafficRollupRepository.TOTAL, fromMinute, 1, values);
+        if (fromRing) {
+            return fillSeries(timeSeries, values);
+        }
+
+        Map<Instant, Long> buckets = (cameraId != null && !cameraId.isEmpty())
+                ? rollupService.sumByBucket(Rollup.CAMERA_MINUTE, "total_count", cameraId, start, end)
+                : rollupService.sumByBucket(Rollup.DISTRICT_MINUTE, "total_count", district, start, end);
+        for (Map.Entry<Instant, Long> e : buckets.entrySet()) {
+            String key = formatter.format(e.getKey().atZone(VIETNAM_ZONE));
+            if (timeSeries.containsKey(key)) {
+                timeSeries.put(key, e.getValue());
             }
         }
         return timeSeries;
@@ -699,4 +931,101 @@ public class TrafficService {
                 .map(e -> new DistrictGrowthDTO(e.getKey(), 0.0, e.getValue(), 0L))
                 .collect(Collectors.toList());
     }
-}
\ No newline at end of file
+
+    /**
+     * API Sketch: phân vị (xấp xỉ) số xe mỗi camera-phút trong khoảng [start, end), mặc định 24h qua.
+     * quantiles: danh sách hạng trong [0, 1], mặc định 0.5,0.9,0.95,0.99. district = null → toàn thành phố.
+     * Dữ liệu của vài phút gần nhất chỉ có sau khi sketch được chốt (app.sketch.seal-delay-seconds).
+     */
+    @Transactional(readOnly = true)
+    public PercentileSummaryDTO getCameraMinutePercentiles(String startStr, String endStr, String district, String quantiles) {
+        Instant[] range = resolveSketchRange(startStr, endStr);
+        double[] ranks = parseQuantiles(quantiles);
+        String districtFilter = (district != null && !district.isEmpty()) ? district : null;
+
+        KllDoublesSketch counts = sketchService.merge(districtFilter, range[0], range[1]).getCounts();
+        Map<String, Double> percentiles = new LinkedHashMap<>();
+        if (!counts.isEmpty()) {
+            double[] values = counts.getQuantiles(ranks);
+            for (int i = 0; i < ranks.length; i++) {
+                percentiles.put("p" + BigDecimal.valueOf(ranks[i] * 100).stripTrailingZeros().toPlainString(), values[i]);
+            }
+        }
+        return new PercentileSummaryDTO(districtFilter, range[0], range[1], counts.getN(),
+                counts.isEmpty() ? null : counts.getMinItem(),
+                counts.isEmpty() ? null : counts.getMaxItem(),
+                percentiles, counts.getNormalizedRankError(false));
+    }
+
+    /**
+     * API Sketch: số camera phân biệt có dữ liệu trong [start, end) (xấp xỉ HLL, khoảng tin cậy ~95%).
+     */
+    @Transactional(readOnly = true)
+    public DistinctCountDTO getDistinctCameraCount(String startStr, String endStr, String district) {
+        Instant[] range = resolveSketchRange(startStr, endStr);
+        String districtFilter = (district != null && !district.isEmpty()) ? district : null;
+
+        HllSketch cameras = sketchService.merge(districtFilter, range[0], range[1]).getCameras();
+        return new DistinctCountDTO(districtFilter, range[0], range[1],
+                Math.round(cameras.getEstimate()),
+                Math.round(cameras.getLowerBound(2)),
+                Math.round(cameras.getUpperBound(2)));
+    }
+
+    /**
+     * API Sketch: số camera hoạt động theo từng giờ (key: yyyy-MM-dd'T'HH:00:00 giờ VN), giờ không có dữ liệu = 0.
+     */
+    @Transactional(readOnly = true)
+    public Map<String, Long> getActiveCamerasHourly(String startStr, String endStr, String district) {
+        Instant[] range = resolveSketchRange(startStr, endStr);
+        String districtFilter = (district != null && !district.isEmpty()) ? district : null;
+
+        Map<String, Long> timeSeries = new LinkedHashMap<>();
+        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:00:00");
+        ZonedDateTime currentZdt = range[0].atZone(VIETNAM_ZONE).truncatedTo(ChronoUnit.HOURS);
+        ZonedDateTime endZdt = range[1].atZone(VIETNAM_ZONE);
+        int safety = 0;
+        while (currentZdt.isBefore(endZdt) && safety < 1000) {
+            timeSeries.put(formatter.format(currentZdt), 0L);
+            currentZdt = currentZdt.plusHours(1);
+            safety++;
+        }
+
+        sketchService.camerasByHour(districtFilter, range[0], range[1]).forEach((bucket, sketch) -> {
+            String key = formatter.format(bucket.atZone(VIETNAM_ZONE));
+            if (timeSeries.containsKey(key)) {
+                timeSeries.put(key, Math.round(sketch.getEstimate()));
+            }
+        });
+        return timeSeries;
+    }
+
+    private Instant[] resolveSketchRange(String startStr, String endStr) {
+        Instant now = Instant.now();
+        Instant end = (endStr != null && !endStr.isEmpty()) ? parseToInstant(endStr, false) : now;
+        Instant start = (startStr != null && !startStr.isEmpty()) ? parseToInstant(startStr, true) : end.minus(24, ChronoUnit.HOURS);
+        if (start.equals(end) && endStr != null) {
+            end = end.plus(1, ChronoUnit.DAYS);
+        }
+        if (!start.isBefore(end)) {
+            throw new IllegalArgumentException("start must be before end");
+        }
+        return new Instant[]{start, end};
+    }
+
+    private double[] parseQuantiles(String quantiles) {
+        if (quantiles == null || quantiles.isEmpty()) {
+            return DEFAULT_QUANTILES;
+        }
+        try {
+            double[] ranks = Arrays.stream(quantiles.split(",")).map(String::trim)
+                    .mapToDouble(Double::parseDouble).toArray();
+            for (double r : ranks) {
+                if (r < 0 || r > 1) throw new NumberFormatException();
+            }
+            return ranks;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid quantiles (expected values in [0, 1]): " + quantiles);
+        }
+    }
+}
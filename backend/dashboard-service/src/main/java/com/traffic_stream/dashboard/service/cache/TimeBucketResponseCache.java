@@ -0,0 +1,200 @@
+package com.traffic_stream.dashboard.service.cache;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.traffic_stream.dashboard.dto.TrafficMetricsDTO;
+import com.traffic_stream.dashboard.service.rollup.RollupsRebuiltEvent;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
+
+/**
+ * Cache kết quả các API time-series, chuẩn hóa theo time bucket.
+ * <ul>
+ *     <li>Khoảng [from, to) được làm tròn ra bucket (phút/giờ) nên mọi request trong cùng bucket dùng chung 1 entry.</li>
+ *     <li>Khoảng đã đóng (kết thúc trước hiện tại quá closed-grace) được giữ vô thời hạn; khoảng còn mở chỉ sống open-ttl.</li>
+ *     <li>Giới hạn theo số entry, Caffeine loại bỏ theo W-TinyLFU.</li>
+ *     <li>Ingest gặp dữ liệu đến muộn → xóa các entry đã đóng có khoảng chứa timestamp đó.</li>
+ *     <li>Đối soát tính lại rollup ({@link RollupsRebuiltEvent}) → xóa mọi entry giao với khoảng vừa tính lại.</li>
+ *     <li>Single-flight: nhiều request trượt cache cùng key chỉ chạy loader 1 lần, các request còn lại chờ kết quả.</li>
+ * </ul>
+ * Hit/miss/eviction được xuất qua Micrometer (cache_gets_total{cache="dashboard_response"...}).
+ */
+@Component
+@Slf4j
+public class TimeBucketResponseCache {
+
+    public static final String CACHE_NAME = "dashboard_response";
+
+    private final AsyncCache<Key, Entry> cache;
+    private final long openTtlNanos;
+    private final Duration closedGrace;
+
+    public TimeBucketResponseCache(@Value("${app.cache.max-entries:10000}") long maxEntries,
+                                   @Value("${app.cache.open-ttl-seconds:5}") long openTtlSeconds,
+                                   @Value("${app.cache.closed-grace-seconds:120}") long closedGraceSeconds,
+                                   MeterRegistry registry) {
+        this.openTtlNanos = Duration.ofSeconds(openTtlSeconds).toNanos();
+        this.closedGrace = Duration.ofSeconds(closedGraceSeconds);
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxEntries)
+                .expireAfter(new Expiry<Key, Entry>() {
+                    @Override
+                    public long expireAfterCreate(Key key, Entry value, long currentTime) {
+                        return value.closed ? Long.MAX_VALUE : openTtlNanos;
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(Key key, Entry value, long currentTime, long currentDuration) {
+                        return expireAfterCreate(key, value, currentTime);
+                    }
+
+                    @Override
+                    public long expireAfterRead(Key key, Entry value, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .recordStats()
+                .buildAsync();
+        CaffeineCacheMetrics.monitor(registry, cache, CACHE_NAME);
+    }
+
+    /**
+     * Lấy kết quả từ cache hoặc tính bằng loader.
+     *
+     * @param endpoint tên API (phân biệt các loại kết quả)
+     * @param unit     độ phân giải bucket (MINUTES / HOURS)
+     * @param params   các tham số lọc còn lại (district, cameraId...), có thể chứa null
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(String endpoint, ChronoUnit unit, Instant from, Instant to, List<?> params, Supplier<T> loader) {
+        Instant fromBucket = from.truncatedTo(unit);
+        Instant toBucket = ceil(to, unit);
+        Key key = new Key(endpoint, unit, fromBucket.getEpochSecond(), toBucket.getEpochSecond(), params);
+
+        // Chỉ đặt một future rỗng vào cache (nhanh, trong lock của map); loader chạy ngoài lock trên luồng của
+        // request đầu tiên. Future nằm sẵn trong map nên dữ liệu muộn đến trong lúc tính vẫn xóa được entry.
+        CompletableFuture<Entry> created = new CompletableFuture<>();
+        CompletableFuture<Entry> future = cache.get(key, (k, executor) -> created);
+        if (future == created) {
+            // Xác định "đóng" TRƯỚC khi tính: dữ liệu muộn đến trong lúc tính vẫn sẽ xóa được entry
+            boolean closed = !toBucket.isAfter(Instant.now().minus(closedGrace));
+            try {
+                created.complete(new Entry(loader.get(), closed));
+            } catch (RuntimeException | Error e) {
+                created.completeExceptionally(e); // Caffeine tự bỏ future lỗi, request sau sẽ tính lại
+                throw e;
+            }
+        }
+        try {
+            return (T) future.join().value;
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) throw cause;
+            throw e;
+        }
+    }
+
+    /**
+     * Gọi sau khi batch ingest commit: xóa các entry đã đóng chứa timestamp của dữ liệu đến muộn.
+     */
+    public void onIngest(List<TrafficMetricsDTO> inserted) {
+        if (inserted.isEmpty() || cache.synchronous().estimatedSize() == 0) return;
+
+        // Chỉ dữ liệu thuộc khoảng có thể đã được cache ở trạng thái "đóng" mới cần xử lý
+        long lateBefore = Instant.now().minus(closedGrace).getEpochSecond();
+        long minLate = Long.MAX_VALUE;
+        long maxLate = Long.MIN_VALUE;
+        for (TrafficMetricsDTO dto : inserted) {
+            long ts = Math.floorDiv(dto.getTimestamp(), 1000L);
+            if (ts < lateBefore) {
+                minLate = Math.min(minLate, ts);
+                maxLate = Math.max(maxLate, ts);
+            }
+        }
+        if (minLate == Long.MAX_VALUE) return;
+
+        long lo = minLate;
+        long hi = maxLate;
+        int before = (int) cache.synchronous().estimatedSize();
+        cache.asMap().keySet().removeIf(k -> k.fromSec <= hi && k.toSec > lo);
+        log.debug("Late data [{} .. {}] invalidated {} cached responses",
+                Instant.ofEpochSecond(lo), Instant.ofEpochSecond(hi), before - cache.synchronous().estimatedSize());
+    }
+
+    /**
+     * Rollup trong [from, to) vừa được đối soát ghi lại: các entry (kể cả entry đã đóng, vốn không tự hết hạn)
+     * tính từ rollup cũ của khoảng này phải bị xóa.
+     */
+    @EventListener(RollupsRebuiltEvent.class)
+    public void onRollupsRebuilt(RollupsRebuiltEvent event) {
+        long lo = event.getFrom().getEpochSecond();
+        long hi = event.getTo().getEpochSecond();
+        int before = (int) cache.synchronous().estimatedSize();
+        cache.asMap().keySet().removeIf(k -> k.fromSec < hi && k.toSec > lo);
+        log.debug("Rollups rebuilt [{} .. {}) invalidated {} cached responses",
+                event.getFrom(), event.getTo(), before - cache.synchronous().estimatedSize());
+    }
+
+    public void invalidateAll() {
+        cache.synchronous().invalidateAll();
+    }
+
+    private static Instant ceil(Instant t, ChronoUnit unit) {
+        Instant floor = t.truncatedTo(unit);
+        return floor.equals(t) ? t : floor.plus(1, unit);
+    }
+
+    private static final class Entry {
+        final Object value;
+        final boolean closed;
+
+        Entry(Object value, boolean closed) {
+            this.value = value;
+            this.closed = closed;
+        }
+    }
+
+    private static final class Key {
+        final String endpoint;
+        final ChronoUnit unit;
+        final long fromSec;
+        final long toSec;
+        final List<?> params;
+        final int hash;
+
+        Key(String endpoint, ChronoUnit unit, long fromSec, long toSec, List<?> params) {
+            this.endpoint = endpoint;
+            this.unit = unit;
+            this.fromSec = fromSec;
+            this.toSec = toSec;
+            this.params = params;
+            this.hash = Objects.hash(endpoint, unit, fromSec, toSec, params);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key k)) return false;
+            return fromSec == k.fromSec && toSec == k.toSec && unit == k.unit
+                    && endpoint.equals(k.endpoint) && Objects.equals(params, k.params);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,262 @@
+package com.traffic_stream.dashboard.service.export;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.traffic_stream.dashboard.shared.utils.TimeHelper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+
+/**
+ * Xuất toàn bộ bản ghi của một ngày (/by-date/export) dạng NDJSON hoặc CSV mà không dựng List trong bộ nhớ.
+ * <p>
+ * Đọc bằng cursor phía server (fetch size, trong transaction read-only vì PostgreSQL chỉ dùng cursor khi
+ * autocommit tắt) và ghi từng dòng thẳng ra OutputStream. Khi client đọc chậm, write() bị block nên
+ * ResultSet cũng dừng lấy batch tiếp theo: bộ nhớ chỉ phụ thuộc fetch size, không phụ thuộc số dòng.
+ * </p>
+ */
+@Service
+@Slf4j
+public class TrafficMetricExportService {
+
+    public enum Format {
+        NDJSON("application/x-ndjson", "ndjson"),
+        CSV("text/csv", "csv");
+
+        private final String contentType;
+        private final String extension;
+
+        Format(String contentType, String extension) {
+            this.contentType = contentType;
+            this.extension = extension;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+
+        public String getExtension() {
+            return extension;
+        }
+
+        public static Format of(String raw) {
+            if (raw == null || raw.isEmpty()) {
+                return NDJSON;
+            }
+            try {
+                return valueOf(raw.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unsupported export format: " + raw);
+            }
+        }
+    }
+
+    private static final String SELECT_DAY =
+            "SELECT id, camera_id, camera_name, district, annotated_image_url, " +
+            "coordinates::text AS coordinates, detection_details::text AS detection_details, total_count, timestamp " +
+            "FROM traffic_metrics WHERE timestamp >= ? AND timestamp < ? ";
+
+    private static final String CSV_HEADER =
+            "id,timestamp,camera_id,camera_name,district,total_count,coordinates,detection_details,annotated_image_url\n";
+
+    // Cùng format với @JsonFormat của TrafficMetric.timestamp để NDJSON khớp với /by-date
+    private static final DateTimeFormatter TIMESTAMP_FORMAT =
+            DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSSXXX").withZone(TimeHelper.ZONE_VN);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate readOnlyTransaction;
+    private final ObjectMapper objectMapper;
+    private final int fetchSize;
+
+    public TrafficMetricExportService(JdbcTemplate jdbcTemplate,
+                                      PlatformTransactionManager transactionManager,
+                                      ObjectMapper objectMapper,
+                                      @Value("${app.export.fetch-size:2000}") int fetchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.objectMapper = objectMapper;
+        this.fetchSize = fetchSize;
+    }
+
+    public LocalDate resolveDate(String dateStr) {
+        if (dateStr == null || dateStr.isEmpty()) return LocalDate.now(TimeHelper.ZONE_VN);
+        return LocalDate.parse(dateStr);
+    }
+
+    /**
+     * Ghi các bản ghi của ngày {@code date} (giờ VN) ra {@code out}, sắp theo (timestamp, id).
+     * Không đóng {@code out}; caller chịu trách nhiệm flush/đóng (ví dụ GZIPOutputStream).
+     *
+     * @return số dòng đã ghi
+     */
+    public long export(LocalDate date, String cameraId, Format format, OutputStream out) throws IOException {
+        Instant start = date.atStartOfDay(TimeHelper.ZONE_VN).toInstant();
+        Instant end = date.plusDays(1).atStartOfDay(TimeHelper.ZONE_VN).toInstant();
+        boolean byCamera = cameraId != null && !cameraId.isEmpty();
+        String sql = SELECT_DAY + (byCamera ? "AND camera_id = ? " : "") + "ORDER BY timestamp, id";
+
+        long startedAt = System.currentTimeMillis();
+        RowWriter writer = (format == Format.CSV) ? new CsvRowWriter(out) : new NdjsonRowWriter(objectMapper, out);
+
+        try {
+            writer.begin();
+            Long written = readOnlyTransaction.execute(status -> {
+                long[] rows = {0};
+                jdbcTemplate.query(con -> {
+                    PreparedStatement ps = con.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+                    ps.setFetchSize(fetchSize);
+                    ps.setTimestamp(1, Timestamp.from(start));
+                    ps.setTimestamp(2, Timestamp.from(end));
+                    if (byCamera) {
+                        ps.setString(3, cameraId);
+                    }
+                    return ps;
+                }, (RowCallbackHandler) rs -> {
+                    try {
+                        writer.write(rs);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    rows[0]++;
+                });
+                return rows[0];
+            });
+            writer.flush();
+
+            log.info("Exported {} traffic_metrics rows for {} ({}) in {} ms",
+                    written, date, format, System.currentTimeMillis() - startedAt);
+            return written == null ? 0 : written;
+        } catch (UncheckedIOException e) {
+            // Client ngắt kết nối giữa chừng: cursor/transaction đã được đóng khi exception đi qua
+            throw e.getCause();
+        }
+    }
+
+    private interface RowWriter {
+        void begin() throws IOException;
+
+        void write(ResultSet rs) throws SQLException, IOException;
+
+        void flush() throws IOException;
+    }
+
+    /** Mỗi dòng một object JSON, cùng tên field với TrafficMetric; jsonb được ghi thẳng, không parse lại. */
+    private static final class NdjsonRowWriter implements RowWriter {
+        private final JsonGenerator gen;
+
+        NdjsonRowWriter(ObjectMapper objectMapper, OutputStream out) throws IOException {
+            this.gen = objectMapper.getFactory().createGenerator(out, JsonEncoding.UTF8);
+            this.gen.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            // Tự ghi '\n' sau mỗi object thay cho dấu cách mặc định giữa các root value
+            this.gen.setRootValueSeparator(null);
+        }
+
+        @Override
+        public void begin() {
+        }
+
+        @Override
+        public void flush() throws IOException {
+            gen.flush();
+        }
+
+        @Override
+        public void write(ResultSet rs) throws SQLException, IOException {
+            gen.writeStartObject();
+            gen.writeNumberField("id", rs.getLong("id"));
+            gen.writeStringField("cameraId", rs.getString("camera_id"));
+            gen.writeStringField("cameraName", rs.getString("camera_name"));
+            gen.writeStringField("district", rs.getString("district"));
+            gen.writeStringField("annotatedImageUrl", rs.getString("annotated_image_url"));
+            writeRawJsonField("coordinates", rs.getString("coordinates"));
+            writeRawJsonField("detectionDetails", rs.getString("detection_details"));
+            gen.writeNumberField("totalCount", rs.getInt("total_count"));
+            gen.writeStringField("timestamp", formatTimestamp(rs.getTimestamp("timestamp")));
+            gen.writeEndObject();
+            gen.writeRaw('\n');
+        }
+
+        private void writeRawJsonField(String name, String json) throws IOException {
+            gen.writeFieldName(name);
+            if (json == null) {
+                gen.writeNull();
+            } else {
+                gen.writeRawValue(json);
+            }
+        }
+    }
+
+    /** CSV (RFC 4180); coordinates/detection_details giữ nguyên dạng JSON trong một ô. */
+    private static final class CsvRowWriter implements RowWriter {
+        private final Writer out;
+
+        CsvRowWriter(OutputStream out) {
+            this.out = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public void begin() throws IOException {
+            out.write(CSV_HEADER);
+        }
+
+        @Override
+        public void write(ResultSet rs) throws SQLException, IOException {
+            out.write(Long.toString(rs.getLong("id")));
+            out.write(',');
+            out.write(formatTimestamp(rs.getTimestamp("timestamp")));
+            cell(rs.getString("camera_id"));
+            cell(rs.getString("camera_name"));
+            cell(rs.getString("district"));
+            out.write(',');
+            out.write(Integer.toString(rs.getInt("total_count")));
+            cell(rs.getString("coordinates"));
+            cell(rs.getString("detection_details"));
+            cell(rs.getString("annotated_image_url"));
+            out.write('\n');
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        private void cell(String value) throws IOException {
+            out.write(',');
+            if (value == null || value.isEmpty()) {
+                return;
+            }
+            if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+                out.write(value);
+                return;
+            }
+            out.write('"');
+            out.write(value.replace("\"", "\"\""));
+            out.write('"');
+        }
+    }
+
+    private static String formatTimestamp(Timestamp ts) {
+        return ts == null ? "" : TIMESTAMP_FORMAT.format(ts.toInstant());
+    }
+}
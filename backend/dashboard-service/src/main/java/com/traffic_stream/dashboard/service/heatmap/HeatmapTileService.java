@@ -0,0 +1,159 @@
+package com.traffic_stream.dashboard.service.heatmap;
+
+import com.traffic_stream.dashboard.entity.Camera;
+import com.traffic_stream.dashboard.repository.TrafficRollupRepository;
+import com.traffic_stream.dashboard.repository.TrafficRollupRepository.Rollup;
+import com.traffic_stream.dashboard.repository.TrafficRollupRepository.RollupRow;
+import com.traffic_stream.dashboard.service.cache.TimeBucketResponseCache;
+import com.traffic_stream.dashboard.service.registry.CameraSpatialIndex;
+import com.traffic_stream.dashboard.service.rollup.TrafficRollupService;
+import com.traffic_stream.dashboard.shared.utils.TimeHelper;
+import com.traffic_stream.dashboard.shared.exception.ServiceUnavailableException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayOutputStream;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tile heatmap (z/x/y, Web Mercator) dựng sẵn từ toạ độ camera + rollup camera, thay cho việc tải toàn bộ
+ * bản ghi /by-date về trình duyệt.
+ * <p>
+ * Mỗi tile là lưới {@code size x size} ô, giá trị ô = tổng số xe của các camera nằm trong ô trong bucket
+ * thời gian (cả ngày hoặc 1 giờ). Tổng theo camera của một bucket được tính 1 lần (rollup giờ + phút),
+ * còn từng tile chỉ tra chỉ mục lưới toạ độ; cả hai đều đi qua {@link TimeBucketResponseCache}.
+ * </p>
+ * Định dạng nhị phân (varint = unsigned LEB128):
+ * <pre>
+ * u8      version (= 1)
+ * varint  size   (số ô mỗi cạnh)
+ * varint  max    (giá trị ô lớn nhất, để client chuẩn hóa màu)
+ * (varint runLength, varint value)*   — các run phủ đủ size*size ô, theo hàng, hàng 0 ở phía bắc
+ * </pre>
+ */
+@Service
+@Slf4j
+public class HeatmapTileService {
+
+    public static final int FORMAT_VERSION = 1;
+    private static final int MAX_ZOOM = 22;
+
+    private final TrafficRollupService rollupService;
+    private final CameraSpatialIndex spatialIndex;
+    private final TimeBucketResponseCache responseCache;
+    private final int gridSize;
+
+    public HeatmapTileService(TrafficRollupService rollupService,
+                              CameraSpatialIndex spatialIndex,
+                              TimeBucketResponseCache responseCache,
+                              @Value("${app.heatmap.grid-size:64}") int gridSize) {
+        this.rollupService = rollupService;
+        this.spatialIndex = spatialIndex;
+        this.responseCache = responseCache;
+        this.gridSize = gridSize;
+    }
+
+    /**
+     * Tile đã mã hóa của bucket: ngày {@code dateStr} (giờ VN, mặc định hôm nay), hoặc chỉ giờ {@code hour} của ngày đó.
+     */
+    public byte[] getTile(int z, int x, int y, String dateStr, Integer hour) {
+        if (z < 0 || z > MAX_ZOOM) {
+            throw new IllegalArgumentException("Zoom must be between 0 and " + MAX_ZOOM);
+        }
+        long tiles = 1L << z;
+        if (x < 0 || y < 0 || x >= tiles || y >= tiles) {
+            throw new IllegalArgumentException("Tile " + z + "/" + x + "/" + y + " is out of range");
+        }
+        if (hour != null && (hour < 0 || hour > 23)) {
+            throw new IllegalArgumentException("Hour must be between 0 and 23");
+        }
+        if (!spatialIndex.isReady()) {
+            throw new ServiceUnavailableException("Camera registry is still loading, please retry shortly", CameraSpatialIndex.LOADING_RETRY_AFTER_SECONDS);
+        }
+
+        LocalDate date = (dateStr == null || dateStr.isEmpty()) ? LocalDate.now(TimeHelper.ZONE_VN) : LocalDate.parse(dateStr);
+        Instant from = hour != null
+                ? date.atTime(hour, 0).atZone(TimeHelper.ZONE_VN).toInstant()
+                : date.atStartOfDay(TimeHelper.ZONE_VN).toInstant();
+        Instant to = hour != null ? from.plus(1, ChronoUnit.HOURS) : date.plusDays(1).atStartOfDay(TimeHelper.ZONE_VN).toInstant();
+
+        return responseCache.get("heatmap-tile", ChronoUnit.HOURS, from, to, List.of(z, x, y, gridSize),
+                () -> encode(render(z, x, y, cameraTotals(from, to))));
+    }
+
+    /** Tổng số xe theo camera trong bucket, dùng chung cho mọi tile của bucket đó. */
+    private Map<String, Long> cameraTotals(Instant from, Instant to) {
+        return responseCache.get("heatmap-cameras", ChronoUnit.HOURS, from, to, List.of(), () -> {
+            Map<String, Long> totals = new HashMap<>();
+            for (RollupRow row : rollupService.sumByKey(Rollup.CAMERA_MINUTE, Rollup.CAMERA_HOUR, from, to)) {
+                long total = row.get(TrafficRollupRepository.TOTAL);
+                if (row.getKey() != null && total > 0) {
+                    totals.put(row.getKey(), total);
+                }
+            }
+            return totals;
+        });
+    }
+
+    long[] render(int z, int x, int y, Map<String, Long> totals) {
+        long[] cells = new long[gridSize * gridSize];
+        if (totals.isEmpty()) return cells;
+
+        double n = 1L << z;
+        double west = x / n * 360.0 - 180.0;
+        double east = (x + 1) / n * 360.0 - 180.0;
+        double north = tileLat(y, n);
+        double south = tileLat(y + 1, n);
+
+        for (Camera camera : spatialIndex.withinBounds(south, west, north, east, Integer.MAX_VALUE)) {
+            Long total = totals.get(camera.getCameraId());
+            if (total == null) continue;
+            // Toạ độ pixel Mercator trong tile, [0, 1)
+            double px = (camera.getLongitude() + 180.0) / 360.0 * n - x;
+            double latRad = Math.toRadians(camera.getLatitude());
+            double py = (1 - Math.log(Math.tan(latRad) + 1 / Math.cos(latRad)) / Math.PI) / 2 * n - y;
+            int cx = Math.min(gridSize - 1, Math.max(0, (int) (px * gridSize)));
+            int cy = Math.min(gridSize - 1, Math.max(0, (int) (py * gridSize)));
+            cells[cy * gridSize + cx] += total;
+        }
+        return cells;
+    }
+
+    byte[] encode(long[] cells) {
+        long max = 0;
+        for (long v : cells) max = Math.max(max, v);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(16);
+        out.write(FORMAT_VERSION);
+        writeVarint(out, gridSize);
+        writeVarint(out, max);
+        int i = 0;
+        while (i < cells.length) {
+            long value = cells[i];
+            int run = 1;
+            while (i + run < cells.length && cells[i + run] == value) run++;
+            writeVarint(out, run);
+            writeVarint(out, value);
+            i += run;
+        }
+        return out.toByteArray();
+    }
+
+    private static double tileLat(int y, double n) {
+        return Math.toDegrees(Math.atan(Math.sinh(Math.PI * (1 - 2 * y / n))));
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+}
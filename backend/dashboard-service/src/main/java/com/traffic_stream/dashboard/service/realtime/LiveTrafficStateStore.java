@@ -0,0 +1,383 @@
+package com.traffic_stream.dashboard.service.realtime;
+
+import com.traffic_stream.dashboard.dto.TrafficMetricsDTO;
+import com.traffic_stream.dashboard.entity.TrafficMetric;
+import com.traffic_stream.dashboard.repository.TrafficMetricRepository;
+import com.traffic_stream.dashboard.service.registry.CameraRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
+
+/**
+ * Trạng thái "live" trong bộ nhớ, được cập nhật sau khi batch ingest commit (cùng lúc với MinuteRingStore):
+ * <ul>
+ *     <li>bản ghi mới nhất + max count (rolling max) của từng camera</li>
+ *     <li>100 bản ghi mới nhất toàn thành phố và của từng quận</li>
+ * </ul>
+ * Các API latest/cameras đọc trực tiếp từ đây. DB chỉ được dùng khi khởi động lạnh
+ * (warm-up bằng một query DISTINCT ON) hoặc khi gặp camera/quận chưa có trong bộ nhớ.
+ * <p>
+ * Cửa sổ 100 bản ghi theo quận chỉ được tạo cho quận có trong dữ liệu đã ghi hoặc trong {@link CameraRegistry};
+ * tham số district tùy ý từ API không làm map này lớn mãi.
+ * </p>
+ */
+@Component
+@Slf4j
+public class LiveTrafficStateStore {
+
+    public static final int LATEST_LIMIT = 100;
+    private static final String ALL_SCOPE = "*";
+
+    private final TrafficMetricRepository repository;
+    private final CameraRegistry cameraRegistry;
+
+    private final Map<String, CameraSnapshot> cameras = new ConcurrentHashMap<>();
+    private final Map<String, LatestWindow> latestWindows = new ConcurrentHashMap<>();
+    private volatile boolean camerasWarmed = false;
+
+    public LiveTrafficStateStore(TrafficMetricRepository repository, CameraRegistry cameraRegistry) {
+        this.repository = repository;
+        this.cameraRegistry = cameraRegistry;
+    }
+
+    /**
+     * Warm-up khi khởi động: bản ghi mới nhất và max count của mọi camera (2 query thay vì N+1).
+     */
+    @Async
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        try {
+            long start = System.currentTimeMillis();
+            Map<String, Integer> maxByCamera = new HashMap<>();
+            for (Object[] row : repository.findMaxCountPerCamera()) {
+                if (row[0] != null && row[1] != null) {
+                    maxByCamera.put((String) row[0], ((Number) row[1]).intValue());
+                }
+            }
+            for (TrafficMetric metric : repository.findLatestMetricPerCamera()) {
+                int max = Math.max(maxByCamera.getOrDefault(metric.getCameraId(), 0), metric.getTotalCount());
+                cameras.merge(metric.getCameraId(), CameraSnapshot.from(metric, max), CameraSnapshot::newer);
+            }
+            camerasWarmed = true;
+            log.info("Live state warmed with {} cameras in {}ms", cameras.size(), System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            log.warn("Live state warm-up failed, falling back to DB on demand: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Gán max_count cho các DTO của batch sắp broadcast (max hiện tại của camera + các bản ghi trước đó trong batch)
+     * mà không đổi trạng thái; trạng thái chỉ được cập nhật qua {@link #apply} sau khi batch commit.
+     * Khi chưa warm-up xong, max trong DB của các camera chưa có trong bộ nhớ được đọc bằng 1 query cho cả batch.
+     */
+    public void stampMaxCounts(List<TrafficMetricsDTO> batch) {
+        Map<String, Integer> dbMax = loadMaxFromDb(batch);
+        Map<String, Integer> running = new HashMap<>();
+        for (TrafficMetricsDTO dto : batch) {
+            String cameraId = dto.getCameraId();
+            if (cameraId == null) {
+                dto.setMaxCount(dto.getTotalCount());
+                continue;
+            }
+            int base = running.computeIfAbsent(cameraId, id -> {
+                CameraSnapshot snapshot = cameras.get(id);
+                return snapshot != null ? snapshot.maxCount : dbMax.getOrDefault(id, 0);
+            });
+            int max = Math.max(base, dto.getTotalCount());
+            running.put(cameraId, max);
+            dto.setMaxCount(max);
+        }
+    }
+
+    /**
+     * Cập nhật trạng thái từ các metric đã commit (max count của camera chưa có trong bộ nhớ: 1 query cho cả batch).
+     */
+    public void apply(List<TrafficMetricsDTO> committed) {
+        Map<String, Integer> dbMax = loadMaxFromDb(committed);
+        for (TrafficMetricsDTO dto : committed) {
+            apply(dto, dbMax.getOrDefault(dto.getCameraId(), 0));
+        }
+    }
+
+    private void apply(TrafficMetricsDTO dto, int dbMax) {
+        String cameraId = dto.getCameraId();
+        if (cameraId == null) return;
+
+        CameraSnapshot updated = cameras.compute(cameraId, (id, prev) -> {
+            int prevMax = prev != null ? prev.maxCount : dbMax;
+            CameraSnapshot next = CameraSnapshot.from(dto, Math.max(prevMax, dto.getTotalCount()));
+            if (prev != null && prev.timestamp > next.timestamp) {
+                return prev.withMax(next.maxCount);
+            }
+            return next;
+        });
+
+        CameraSnapshot incoming = CameraSnapshot.from(dto, updated.maxCount);
+        latestWindow(ALL_SCOPE).offer(incoming);
+        if (dto.getDistrict() != null) {
+            latestWindow(dto.getDistrict()).offer(incoming);
+        }
+    }
+
+    /**
+     * Max count trong DB của các camera trong batch chưa có trong bộ nhớ; rỗng khi đã warm-up (bộ nhớ là nguồn đủ).
+     */
+    private Map<String, Integer> loadMaxFromDb(List<TrafficMetricsDTO> batch) {
+        if (camerasWarmed) return Map.of();
+        List<String> unseen = batch.stream()
+                .map(TrafficMetricsDTO::getCameraId)
+                .filter(id -> id != null && !cameras.containsKey(id))
+                .distinct()
+                .toList();
+        if (unseen.isEmpty()) return Map.of();
+
+        Map<String, Integer> dbMax = new HashMap<>();
+        for (Object[] row : repository.findMaxCountsByCameraIds(unseen)) {
+            if (row[0] != null && row[1] != null) dbMax.put((String) row[0], ((Number) row[1]).intValue());
+        }
+        return dbMax;
+    }
+
+    private int loadMaxFromDb(String cameraId) {
+        if (camerasWarmed) return 0;
+        Integer dbMax = repository.findMaxCountByCameraId(cameraId);
+        return dbMax != null ? dbMax : 0;
+    }
+
+    /**
+     * Bản ghi mới nhất của một camera (fallback DB nếu chưa có trong bộ nhớ).
+     */
+    public Optional<TrafficMetric> getLatest(String cameraId) {
+        CameraSnapshot snapshot = cameras.get(cameraId);
+        if (snapshot != null) {
+            return Optional.of(snapshot.toEntity());
+        }
+        if (camerasWarmed) {
+            return Optional.empty();
+        }
+        return repository.findFirstByCameraIdOrderByTimestampDesc(cameraId)
+                .map(metric -> {
+                    int max = Math.max(loadMaxFromDb(cameraId), metric.getTotalCount());
+                    return cameras.merge(cameraId, CameraSnapshot.from(metric, max), CameraSnapshot::newer);
+                })
+                .map(CameraSnapshot::toEntity);
+    }
+
+    /**
+     * 100 bản ghi mới nhất (toàn thành phố hoặc của một quận), mới nhất trước.
+     */
+    public List<TrafficMetric> getLatest100(String district) {
+        String scope = (district != null && !district.isEmpty()) ? district : ALL_SCOPE;
+        LatestWindow window = latestWindows.get(scope);
+        if (window == null) {
+            if (!ALL_SCOPE.equals(scope) && !cameraRegistry.districtExists(scope)) {
+                // Quận không có trong danh mục: rỗng; danh mục chưa nạp xong thì đọc DB nhưng không giữ cửa sổ
+                if (cameraRegistry.isReady()) return List.of();
+                return loadLatest100(scope, new LatestWindow()).snapshot(this::maxCountOf);
+            }
+            window = latestWindow(scope);
+        }
+        if (!window.warmed) {
+            loadLatest100(scope, window);
+        }
+        return window.snapshot(this::maxCountOf);
+    }
+
+    /**
+     * Seed cửa sổ bằng 100 bản ghi mới nhất từ DB (kèm max count của các camera đó).
+     */
+    private LatestWindow loadLatest100(String scope, LatestWindow window) {
+        Supplier<List<TrafficMetric>> loader = ALL_SCOPE.equals(scope)
+                ? repository::findFirst100ByOrderByTimestampDesc
+                : () -> repository.findFirst100ByDistrictOrderByTimestampDesc(scope);
+        List<TrafficMetric> fromDb = loader.get();
+        Map<String, Integer> dbMax = new HashMap<>();
+        if (!camerasWarmed && !fromDb.isEmpty()) {
+            List<String> ids = fromDb.stream().map(TrafficMetric::getCameraId).distinct().toList();
+            for (Object[] row : repository.findMaxCountsByCameraIds(ids)) {
+                if (row[0] != null && row[1] != null) dbMax.put((String) row[0], ((Number) row[1]).intValue());
+            }
+        }
+        window.seed(fromDb, id -> Math.max(dbMax.getOrDefault(id, 0), maxCountOf(id)));
+        return window;
+    }
+
+    /**
+     * Danh sách camera (id, tên, quận) từ bộ nhớ; null nếu chưa warm xong để caller fallback DB.
+     */
+    public List<CameraSnapshot> getCameras(String district) {
+        if (!camerasWarmed) return null;
+        List<CameraSnapshot> result = new ArrayList<>();
+        for (CameraSnapshot snapshot : cameras.values()) {
+            if (district == null || district.isEmpty() || district.equals(snapshot.district)) {
+                result.add(snapshot);
+            }
+        }
+        result.sort(Comparator.comparing(s -> s.cameraId));
+        return result;
+    }
+
+    /**
+     * Snapshot mới nhất của camera chỉ từ bộ nhớ (không fallback DB), dùng cho truy vấn nhiều camera một lúc.
+     */
+    public Optional<CameraSnapshot> peek(String cameraId) {
+        return Optional.ofNullable(cameras.get(cameraId));
+    }
+
+    public int maxCountOf(String cameraId) {
+        CameraSnapshot snapshot = cameras.get(cameraId);
+        return snapshot != null ? snapshot.maxCount : 0;
+    }
+
+    private LatestWindow latestWindow(String scope) {
+        return latestWindows.computeIfAbsent(scope, k -> new LatestWindow());
+    }
+
+    /**
+     * Top-100 theo timestamp, giữ bằng min-heap giới hạn kích thước.
+     */
+    private static final class LatestWindow {
+        private final PriorityQueue<CameraSnapshot> heap =
+                new PriorityQueue<>(LATEST_LIMIT + 1, Comparator.comparingLong(s -> s.timestamp));
+        private volatile boolean warmed = false;
+
+        synchronized void offer(CameraSnapshot snapshot) {
+            if (heap.size() >= LATEST_LIMIT && heap.peek().timestamp >= snapshot.timestamp) {
+                return;
+            }
+            heap.offer(snapshot);
+            if (heap.size() > LATEST_LIMIT) {
+                heap.poll();
+            }
+        }
+
+        synchronized void seed(List<TrafficMetric> fromDb, ToIntFunction<String> maxLookup) {
+            if (warmed) return;
+            Set<String> present = new HashSet<>();
+            for (CameraSnapshot s : heap) present.add(s.cameraId + "@" + s.timestamp);
+            for (TrafficMetric metric : fromDb) {
+                CameraSnapshot s = CameraSnapshot.from(metric,
+                        Math.max(maxLookup.applyAsInt(metric.getCameraId()), metric.getTotalCount()));
+                if (present.add(s.cameraId + "@" + s.timestamp)) {
+                    offer(s);
+                }
+            }
+            warmed = true;
+        }
+
+        synchronized List<TrafficMetric> snapshot(ToIntFunction<String> maxLookup) {
+            List<CameraSnapshot> items = new ArrayList<>(heap);
+            items.sort(Comparator.comparingLong((CameraSnapshot s) -> s.timestamp).reversed());
+            List<TrafficMetric> result = new ArrayList<>(items.size());
+            for (CameraSnapshot s : items) {
+                // max count luôn lấy giá trị hiện tại của camera, không phải lúc bản ghi được thêm vào
+                result.add(s.withMax(Math.max(s.maxCount, maxLookup.applyAsInt(s.cameraId))).toEntity());
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Bản ghi gọn (immutable) của một camera tại một thời điểm.
+     */
+    public static final class CameraSnapshot {
+        final Long id;
+        final String cameraId;
+        final String cameraName;
+        final String district;
+        final String annotatedImageUrl;
+        final List<Double> coordinates;
+        final Map<String, Integer> detectionDetails;
+        final int totalCount;
+        final int maxCount;
+        final long timestamp;
+
+        private CameraSnapshot(Long id, String cameraId, String cameraName, String district, String annotatedImageUrl,
+                               List<Double> coordinates, Map<String, Integer> detectionDetails,
+                               int totalCount, int maxCount, long timestamp) {
+            this.id = id;
+            this.cameraId = cameraId;
+            this.cameraName = cameraName;
+            this.district = district;
+            this.annotatedImageUrl = annotatedImageUrl;
+            this.coordinates = coordinates;
+            this.detectionDetails = detectionDetails;
+            this.totalCount = totalCount;
+            this.maxCount = maxCount;
+            this.timestamp = timestamp;
+        }
+
+        static CameraSnapshot from(TrafficMetricsDTO dto, int maxCount) {
+            return new CameraSnapshot(null, dto.getCameraId(), dto.getCameraName(), dto.getDistrict(),
+                    dto.getAnnotatedImageUrl(),
+                    dto.getCoordinates() != null ? List.copyOf(dto.getCoordinates()) : null,
+                    dto.getDetectionDetails() != null ? Map.copyOf(dto.getDetectionDetails()) : null,
+                    dto.getTotalCount(), maxCount, dto.getTimestamp());
+        }
+
+        static CameraSnapshot from(TrafficMetric metric, int maxCount) {
+            return new CameraSnapshot(metric.getId(), metric.getCameraId(), metric.getCameraName(), metric.getDistrict(),
+                    metric.getAnnotatedImageUrl(), metric.getCoordinates(), metric.getDetectionDetails(),
+                    metric.getTotalCount(), maxCount,
+                    metric.getTimestamp() != null ? metric.getTimestamp().toEpochMilli() : 0L);
+        }
+
+        static CameraSnapshot newer(CameraSnapshot a, CameraSnapshot b) {
+            CameraSnapshot latest = a.timestamp >= b.timestamp ? a : b;
+            return latest.withMax(Math.max(a.maxCount, b.maxCount));
+        }
+
+        CameraSnapshot withMax(int max) {
+            if (max == maxCount) return this;
+            return new CameraSnapshot(id, cameraId, cameraName, district, annotatedImageUrl,
+                    coordinates, detectionDetails, totalCount, max, timestamp);
+        }
+
+        public TrafficMetric toEntity() {
+            TrafficMetric metric = new TrafficMetric();
+            metric.setId(id);
+            metric.setCameraId(cameraId);
+            metric.setCameraName(cameraName);
+            metric.setDistrict(district);
+            metric.setAnnotatedImageUrl(annotatedImageUrl);
+            metric.setCoordinates(coordinates);
+            metric.setDetectionDetails(detectionDetails);
+            metric.setTotalCount(totalCount);
+            metric.setMaxCount(maxCount);
+            metric.setTimestamp(Instant.ofEpochMilli(timestamp));
+            return metric;
+        }
+
+        public String getCameraId() {
+            return cameraId;
+        }
+
+        public String getCameraName() {
+            return cameraName;
+        }
+
+        public String getDistrict() {
+            return district;
+        }
+
+        public int getTotalCount() {
+            return totalCount;
+        }
+
+        public int getMaxCount() {
+            return maxCount;
+        }
+
+        public long getTimestamp() {
+            return timestamp;
+        }
+    }
+}
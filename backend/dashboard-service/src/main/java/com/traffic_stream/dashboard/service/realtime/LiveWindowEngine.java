@@ -0,0 +1,260 @@
+package com.traffic_stream.dashboard.service.realtime;
+
+import com.traffic_stream.dashboard.dto.DashboardUpdateDTO;
+import com.traffic_stream.dashboard.dto.DistrictGrowthDTO;
+import com.traffic_stream.dashboard.dto.HourlyDistrictSummaryDTO;
+import com.traffic_stream.dashboard.dto.TopTrafficDTO;
+import com.traffic_stream.dashboard.dto.TrafficMetricsDTO;
+import com.traffic_stream.dashboard.dto.VehicleTypeRatioDTO;
+import com.traffic_stream.dashboard.repository.TrafficMetricRepository;
+import com.traffic_stream.dashboard.shared.constant.VehicleClass;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.*;
+
+/**
+ * Cửa sổ trượt trong bộ nhớ cho gói /topic/dashboard-update: tổng 5 phút gần nhất và 5 phút trước đó
+ * theo quận, theo camera (camera_name) và theo loại xe toàn thành phố.
+ * <p>
+ * Dữ liệu chia thành slot {@value #SLOT_SECONDS} giây theo timestamp của bản ghi, mỗi thực thể giữ một mảng
+ * vòng {@value #SLOTS} slot; slot được xóa khi bị tái sử dụng cho khoảng thời gian mới. Được cập nhật sau khi
+ * transaction ingest commit, nên dựng cả DashboardUpdateDTO chỉ tốn O(số quận + số camera), không truy vấn DB.
+ * Khi khởi động, 10 phút gần nhất được nạp lại một lần từ traffic_metrics.
+ * </p>
+ */
+@Component
+@Slf4j
+public class LiveWindowEngine {
+
+    public static final int SLOT_SECONDS = 10;
+    /** Số slot của một cửa sổ 5 phút. */
+    static final int WINDOW_SLOTS = 5 * 60 / SLOT_SECONDS;
+    static final int SLOTS = 64;
+    /** Cho phép timestamp lệch lên tương lai tối đa bấy nhiêu slot (lệch đồng hồ giữa các service). */
+    private static final int MAX_FUTURE_SLOTS = 3;
+    private static final double WINDOW_MINUTES = 5.0;
+
+    private static final VehicleClass[] CLASSES = VehicleClass.values();
+
+    private final TrafficMetricRepository repository;
+
+    private final long[] slotStamp = new long[SLOTS];
+    private final Map<String, long[]> districtTotals = new HashMap<>();
+    private final Map<String, long[]> cameraTotals = new HashMap<>();
+    private final long[][] classTotals = new long[CLASSES.length][SLOTS];
+
+    /** Trong lúc warm-up chỉ nhận ghi trực tiếp cho slot >= mốc này (phần trước đó nạp từ DB). */
+    private long liveFromSlot = Long.MAX_VALUE;
+    private volatile boolean ready;
+
+    public LiveWindowEngine(TrafficMetricRepository repository) {
+        this.repository = repository;
+        Arrays.fill(slotStamp, Long.MIN_VALUE);
+    }
+
+    // ------------------------------------------------------------------
+    // Ghi
+    // ------------------------------------------------------------------
+
+    public synchronized void apply(List<TrafficMetricsDTO> inserted) {
+        long now = currentSlot();
+        for (TrafficMetricsDTO dto : inserted) {
+            long slot = Math.floorDiv(dto.getTimestamp(), SLOT_SECONDS * 1000L);
+            if (slot < liveFromSlot) continue;
+            int idx = slotForWrite(slot, now);
+            if (idx < 0) continue;
+
+            add(districtTotals, dto.getDistrict(), idx, dto.getTotalCount());
+            add(cameraTotals, dto.getCameraName(), idx, dto.getTotalCount());
+            if (dto.getDetectionDetails() != null) {
+                for (Map.Entry<String, Integer> e : dto.getDetectionDetails().entrySet()) {
+                    if (e.getValue() != null) {
+                        classTotals[VehicleClass.of(e.getKey()).ordinal()][idx] += e.getValue();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Vị trí slot trong mảng vòng, hoặc -1 nếu slot đã trượt khỏi cả hai cửa sổ / quá xa trong tương lai.
+     */
+    private int slotForWrite(long slot, long now) {
+        if (slot <= now - 2L * WINDOW_SLOTS || slot > now + MAX_FUTURE_SLOTS) return -1;
+        int idx = (int) Math.floorMod(slot, (long) SLOTS);
+        if (slotStamp[idx] != slot) {
+            if (slotStamp[idx] > slot) return -1;
+            clear(idx);
+            slotStamp[idx] = slot;
+        }
+        return idx;
+    }
+
+    private void clear(int idx) {
+        for (long[] values : districtTotals.values()) values[idx] = 0;
+        for (long[] values : cameraTotals.values()) values[idx] = 0;
+        for (long[] values : classTotals) values[idx] = 0;
+    }
+
+    private static void add(Map<String, long[]> totals, String key, int idx, long count) {
+        if (key == null || key.isEmpty()) return;
+        totals.computeIfAbsent(key, k -> new long[SLOTS])[idx] += count;
+    }
+
+    // ------------------------------------------------------------------
+    // Warm-up
+    // ------------------------------------------------------------------
+
+    @Async
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        try {
+            long started = System.currentTimeMillis();
+            long cutoff;
+            synchronized (this) {
+                cutoff = currentSlot() + 1;
+                liveFromSlot = cutoff;
+            }
+            Instant from = Instant.ofEpochSecond((cutoff - 2L * WINDOW_SLOTS) * SLOT_SECONDS);
+            Instant to = Instant.ofEpochSecond(cutoff * SLOT_SECONDS);
+
+            List<Object[]> totals = repository.sumTotalCountByDistrictCameraAndSlot(from, to, SLOT_SECONDS);
+            List<Object[]> detections = repository.sumDetectionsBySlot(from, to, SLOT_SECONDS);
+
+            synchronized (this) {
+                long now = currentSlot();
+                for (Object[] row : totals) {
+                    int idx = slotForWrite(((Number) row[2]).longValue(), now);
+                    if (idx < 0) continue;
+                    long count = ((Number) row[3]).longValue();
+                    add(districtTotals, (String) row[0], idx, count);
+                    add(cameraTotals, (String) row[1], idx, count);
+                }
+                for (Object[] row : detections) {
+                    int idx = slotForWrite(((Number) row[0]).longValue(), now);
+                    if (idx < 0) continue;
+                    classTotals[VehicleClass.of((String) row[1]).ordinal()][idx] += ((Number) row[2]).longValue();
+                }
+                liveFromSlot = Long.MIN_VALUE;
+            }
+            ready = true;
+            log.info("Live window warmed: {} district/camera slot rows, {} districts, {} cameras ({}ms)",
+                    totals.size(), districtTotals.size(), cameraTotals.size(), System.currentTimeMillis() - started);
+        } catch (Exception e) {
+            synchronized (this) {
+                liveFromSlot = Long.MIN_VALUE;
+            }
+            ready = true;
+            log.warn("Live window warm-up failed, dashboard update starts from live data only: {}", e.getMessage());
+        }
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    // ------------------------------------------------------------------
+    // Đọc
+    // ------------------------------------------------------------------
+
+    /**
+     * Dựng gói dashboard-update từ cửa sổ hiện tại. hourlySummary (theo phút) do caller cung cấp từ ring phút.
+     */
+    public DashboardUpdateDTO buildUpdate(List<HourlyDistrictSummaryDTO> hourlySummary) {
+        List<DistrictGrowthDTO> growth = new ArrayList<>();
+        List<TopTrafficDTO> districts = new ArrayList<>();
+        List<TopTrafficDTO> cameras = new ArrayList<>();
+        List<VehicleTypeRatioDTO> ratio = new ArrayList<>();
+
+        synchronized (this) {
+            long now = currentSlot();
+            long currentFrom = now - WINDOW_SLOTS + 1;
+            long previousFrom = currentFrom - WINDOW_SLOTS;
+
+            for (Map.Entry<String, long[]> e : districtTotals.entrySet()) {
+                long current = sum(e.getValue(), currentFrom, now);
+                long previous = sum(e.getValue(), previousFrom, currentFrom - 1);
+                addGrowth(growth, e.getKey(), current, previous);
+                addTop(districts, e.getKey(), current);
+            }
+            for (Map.Entry<String, long[]> e : cameraTotals.entrySet()) {
+                addTop(cameras, e.getKey(), sum(e.getValue(), currentFrom, now));
+            }
+
+            long totalVehicles = 0;
+            long[] classCounts = new long[CLASSES.length];
+            for (VehicleClass vc : CLASSES) {
+                if (vc == VehicleClass.PERSON) continue;
+                classCounts[vc.ordinal()] = sum(classTotals[vc.ordinal()], currentFrom, now);
+                totalVehicles += classCounts[vc.ordinal()];
+            }
+            if (totalVehicles > 0) {
+                for (VehicleClass vc : CLASSES) {
+                    long count = classCounts[vc.ordinal()];
+                    if (count == 0) continue;
+                    double percentage = (double) count / totalVehicles * 100.0;
+                    ratio.add(new VehicleTypeRatioDTO(vc.getColumn(), count, Math.round(percentage * 100.0) / 100.0));
+                }
+            }
+        }
+
+        growth.sort((a, b) -> Double.compare(b.getGrowthRate(), a.getGrowthRate()));
+        ratio.sort((a, b) -> Double.compare(b.getPercentage(), a.getPercentage()));
+
+        return DashboardUpdateDTO.builder()
+                .hourlySummary(hourlySummary)
+                .fastestGrowing(limit(growth))
+                .vehicleRatio(ratio)
+                .busiestDistricts(limit(top(districts)))
+                .busiestCameras(limit(top(cameras)))
+                .timestamp(System.currentTimeMillis())
+                .build();
+    }
+
+    /**
+     * Cùng công thức với TrafficService.getTop5FastestGrowingDistricts: so sánh trung bình/phút của 2 cửa sổ.
+     */
+    private static void addGrowth(List<DistrictGrowthDTO> growth, String district, long currentTotal, long prevTotal) {
+        long currentAvg = Math.round(currentTotal / WINDOW_MINUTES);
+        long prevAvg = Math.round(prevTotal / WINDOW_MINUTES);
+        if (currentAvg == 0 && prevAvg == 0) return;
+
+        double growthRate = (prevAvg == 0) ? 100.0 : ((double) (currentAvg - prevAvg) / prevAvg) * 100;
+        growth.add(new DistrictGrowthDTO(district, Math.round(growthRate * 100.0) / 100.0, currentAvg, prevAvg));
+    }
+
+    private static void addTop(List<TopTrafficDTO> top, String name, long total) {
+        long avgCount = Math.round(total / WINDOW_MINUTES);
+        if (avgCount > 0) {
+            top.add(new TopTrafficDTO(name, avgCount));
+        }
+    }
+
+    private static List<TopTrafficDTO> top(List<TopTrafficDTO> items) {
+        items.sort((a, b) -> Long.compare(b.getCount(), a.getCount()));
+        return items;
+    }
+
+    private static <T> List<T> limit(List<T> items) {
+        return items.size() > 5 ? new ArrayList<>(items.subList(0, 5)) : items;
+    }
+
+    /** Tổng các slot trong [fromSlot, toSlot] còn hợp lệ (stamp khớp). */
+    private long sum(long[] values, long fromSlot, long toSlot) {
+        long total = 0;
+        for (long slot = fromSlot; slot <= toSlot; slot++) {
+            int idx = (int) Math.floorMod(slot, (long) SLOTS);
+            if (slotStamp[idx] == slot) total += values[idx];
+        }
+        return total;
+    }
+
+    private static long currentSlot() {
+        return Math.floorDiv(System.currentTimeMillis(), SLOT_SECONDS * 1000L);
+    }
+}
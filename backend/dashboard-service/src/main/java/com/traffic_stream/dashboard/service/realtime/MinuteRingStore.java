@@ -0,0 +1,428 @@
+package com.traffic_stream.dashboard.service.realtime;
+
+import com.traffic_stream.dashboard.dto.TrafficMetricsDTO;
+import com.traffic_stream.dashboard.repository.TrafficRollupRepository;
+import com.traffic_stream.dashboard.repository.TrafficRollupRepository.Rollup;
+import com.traffic_stream.dashboard.repository.TrafficRollupRepository.RollupRow;
+import com.traffic_stream.dashboard.service.rollup.RollupsReadyEvent;
+import com.traffic_stream.dashboard.service.rollup.RollupsRebuiltEvent;
+import com.traffic_stream.dashboard.shared.constant.VehicleClass;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Time-series trong bộ nhớ cho ~25 giờ gần nhất, bucket 1 phút, dạng ring buffer mảng nguyên thủy.
+ * <ul>
+ *     <li>Quận: long[] đủ mọi cột rollup (total, vehicle, từng loại xe, sample).</li>
+ *     <li>Camera: int[] chỉ giữ total và vehicle (2 cột các API theo camera cần). Mỗi series camera gồm
+ *     12KB giá trị + 12KB stamp (long[1.500]), nên 2.000 camera × 1.500 phút ≈ 48MB.</li>
+ * </ul>
+ * Mỗi slot có "minute stamp" (epoch minute); slot có stamp khác phút đang hỏi coi như 0, nên ghi/đọc
+ * không bao giờ cần dọn dữ liệu cũ. Truy vấn ghi kết quả vào mảng do caller cấp, không cấp phát thêm.
+ * <p>
+ * Được cập nhật sau khi transaction ingest commit; warm-up từ rollup phút sau {@link RollupsReadyEvent}
+ * và nạp lại khoảng vừa được đối soát sau {@link RollupsRebuiltEvent}.
+ * Khoảng ngoài ring (cũ hơn ~25h), khoảng đang nạp lại hoặc khi chưa warm-up xong thì caller đọc rollup trong DB.
+ * </p>
+ * <p>
+ * Trong lúc nạp lại từ phút F, bản ghi live có phút >= F không được cộng vào ring mà chỉ đánh dấu phút đó
+ * "dirty"; sau khi nạp xong, các phút dirty được đọc lại từ rollup (đã chứa các bản ghi này vì ring chỉ nhận
+ * ghi sau commit). Lượt cuối chạy dưới write lock nên không bản ghi nào bị mất hay bị cộng 2 lần.
+ * </p>
+ */
+@Component
+@Slf4j
+public class MinuteRingStore {
+
+    public static final int SLOTS = 25 * 60;
+
+    /** Cột của series camera. */
+    public static final int CAMERA_TOTAL = 0;
+    public static final int CAMERA_VEHICLE = 1;
+    private static final int CAMERA_FIELDS = 2;
+
+    private static final int DISTRICT_FIELDS = TrafficRollupRepository.COUNT_COLUMNS.size();
+
+    private final TrafficRollupRepository rollupRepository;
+
+    private final Map<String, Series> cameraSeries = new ConcurrentHashMap<>();
+    private final Map<String, Series> districtSeries = new ConcurrentHashMap<>();
+
+    /** Phút nhỏ nhất mà ring có dữ liệu đầy đủ (Long.MAX_VALUE khi chưa warm-up). */
+    private volatile long coveredFromMinute = Long.MAX_VALUE;
+
+    /**
+     * Các phút >= mốc này đang được nạp lại từ DB: ghi live chỉ đánh dấu dirty, đọc đi xuống DB.
+     * Long.MIN_VALUE trước khi warm-up xong, Long.MAX_VALUE khi không có lần nạp nào.
+     */
+    private volatile long reloadingFromMinute = Long.MIN_VALUE;
+    private final Set<Long> dirtyMinutes = ConcurrentHashMap.newKeySet();
+    /** Read: các batch ghi live (song song). Write: mở/đóng một lần nạp lại. */
+    private final ReentrantReadWriteLock reloadLock = new ReentrantReadWriteLock();
+
+    public MinuteRingStore(TrafficRollupRepository rollupRepository) {
+        this.rollupRepository = rollupRepository;
+    }
+
+    /**
+     * Một series: giá trị phẳng [slot * fields + field] và stamp phút của từng slot.
+     * Ghi/đọc đồng bộ trên chính object (tranh chấp thấp: mỗi camera chỉ 1 partition ghi).
+     */
+    private static final class Series {
+        final int fields;
+        final long[] stamps = new long[SLOTS];
+        final int[] intValues;
+        final long[] longValues;
+
+        Series(int fields, boolean wide) {
+            this.fields = fields;
+            this.intValues = wide ? null : new int[SLOTS * fields];
+            this.longValues = wide ? new long[SLOTS * fields] : null;
+            java.util.Arrays.fill(stamps, -1);
+        }
+
+        /** Trả về offset của slot cho phút (reset slot nếu đang giữ phút khác). */
+        int slotForWrite(long minute) {
+            int slot = (int) Math.floorMod(minute, (long) SLOTS);
+            if (stamps[slot] != minute) {
+                if (stamps[slot] > minute) return -1; // phút quá cũ, slot đã bị phút mới hơn chiếm
+                stamps[slot] = minute;
+                int base = slot * fields;
+                if (longValues != null) {
+                    java.util.Arrays.fill(longValues, base, base + fields, 0L);
+                } else {
+                    java.util.Arrays.fill(intValues, base, base + fields, 0);
+                }
+            }
+            return slot * fields;
+        }
+
+        long get(long minute, int field) {
+            int slot = (int) Math.floorMod(minute, (long) SLOTS);
+            if (stamps[slot] != minute) return 0;
+            int idx = slot * fields + field;
+            return longValues != null ? longValues[idx] : intValues[idx];
+        }
+
+        void add(int base, int field, long value) {
+            if (longValues != null) {
+                longValues[base + field] += value;
+            } else {
+                intValues[base + field] += (int) value;
+            }
+        }
+    }
+
+    // ------------------------------------------------------------------
+    // Ghi
+    // ------------------------------------------------------------------
+
+    public void apply(List<TrafficMetricsDTO> inserted) {
+        long oldest = currentMinute() - SLOTS + 1;
+        reloadLock.readLock().lock();
+        try {
+            long reloadingFrom = reloadingFromMinute;
+            for (TrafficMetricsDTO dto : inserted) {
+                long minute = Math.floorDiv(dto.getTimestamp(), 60_000L);
+                if (minute < oldest) continue;
+                if (minute >= reloadingFrom) {
+                    dirtyMinutes.add(minute);
+                    continue;
+                }
+                write(dto, minute);
+            }
+        } finally {
+            reloadLock.readLock().unlock();
+        }
+    }
+
+    private void write(TrafficMetricsDTO dto, long minute) {
+        long total = dto.getTotalCount();
+        long vehicle = 0;
+        String district = dto.getDistrict() != null ? dto.getDistrict() : "";
+        Series ds = districtSeries.computeIfAbsent(district, k -> new Series(DISTRICT_FIELDS, true));
+
+        synchronized (ds) {
+            int base = ds.slotForWrite(minute);
+            if (base >= 0) {
+                if (dto.getDetectionDetails() != null) {
+                    for (Map.Entry<String, Integer> e : dto.getDetectionDetails().entrySet()) {
+                        if (e.getValue() == null) continue;
+                        VehicleClass vc = VehicleClass.of(e.getKey());
+                        ds.add(base, TrafficRollupRepository.classIndex(vc), e.getValue());
+                        if (vc.isVehicle()) vehicle += e.getValue();
+                    }
+                }
+                ds.add(base, TrafficRollupRepository.TOTAL, total);
+                ds.add(base, TrafficRollupRepository.VEHICLE, vehicle);
+                ds.add(base, TrafficRollupRepository.SAMPLES, 1);
+            } else {
+                vehicle = vehicleCount(dto);
+            }
+        }
+
+        if (dto.getCameraId() == null) return;
+        Series cs = cameraSeries.computeIfAbsent(dto.getCameraId(), k -> new Series(CAMERA_FIELDS, false));
+        synchronized (cs) {
+            int base = cs.slotForWrite(minute);
+            if (base >= 0) {
+                cs.add(base, CAMERA_TOTAL, total);
+                cs.add(base, CAMERA_VEHICLE, vehicle);
+            }
+        }
+    }
+
+    private static long vehicleCount(TrafficMetricsDTO dto) {
+        long vehicle = 0;
+        if (dto.getDetectionDetails() != null) {
+            for (Map.Entry<String, Integer> e : dto.getDetectionDetails().entrySet()) {
+                if (e.getValue() != null && VehicleClass.of(e.getKey()).isVehicle()) vehicle += e.getValue();
+            }
+        }
+        return vehicle;
+    }
+
+    // ------------------------------------------------------------------
+    // Warm-up
+    // ------------------------------------------------------------------
+
+    @Async
+    @EventListener(RollupsReadyEvent.class)
+    public void warmUp() {
+        try {
+            long started = System.currentTimeMillis();
+            long cutoff = currentMinute() + 1;
+            long from = cutoff - SLOTS;
+            int rows = reload(from, cutoff);
+            coveredFromMinute = from;
+            log.info("Minute ring store warmed: {} camera-minute rows, {} cameras, {} districts ({}ms)",
+                    rows, cameraSeries.size(), districtSeries.size(), System.currentTimeMillis() - started);
+        } catch (Exception e) {
+            abortReload();
+            log.warn("Minute ring store warm-up failed, time series will be read from rollups: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Rollup của khoảng đối soát vừa được tính lại từ dữ liệu thô: nạp lại phần tương ứng trong ring
+     * (tới phút hiện tại, vì ghi live của khoảng này cũng được đọc lại từ rollup).
+     */
+    @EventListener(RollupsRebuiltEvent.class)
+    public void onRollupsRebuilt(RollupsRebuiltEvent event) {
+        if (coveredFromMinute == Long.MAX_VALUE) return; // chưa warm-up, warm-up sẽ đọc rollup mới
+        try {
+            long started = System.currentTimeMillis();
+            long to = currentMinute() + 1;
+            long from = Math.max(toMinute(event.getFrom().truncatedTo(ChronoUnit.HOURS)), to - SLOTS);
+            int rows = reload(from, to);
+            log.info("Minute ring store reloaded {} minutes after rollup rebuild: {} camera-minute rows ({}ms)",
+                    to - from, rows, System.currentTimeMillis() - started);
+        } catch (Exception e) {
+            // Phần đang nạp dở không còn đúng: bỏ phủ ring, đọc rollup trong DB cho tới lần warm-up sau
+            coveredFromMinute = Long.MAX_VALUE;
+            abortReload();
+            log.warn("Minute ring store reload failed, time series will be read from rollups: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Nạp lại [fromMinute, toMinute) từ rollup phút, rồi đọc lại các phút bị ghi live trong lúc nạp.
+     * Lượt đọc lại cuối cùng giữ write lock (chặn ghi live vài ms) để đóng khoảng nạp mà không hở bản ghi nào.
+     */
+    private synchronized int reload(long fromMinute, long toMinute) {
+        reloadLock.writeLock().lock();
+        try {
+            reloadingFromMinute = Math.min(reloadingFromMinute, fromMinute);
+        } finally {
+            reloadLock.writeLock().unlock();
+        }
+
+        clearMinutes(fromMinute, toMinute);
+        int rows = loadRange(fromMinute, toMinute);
+        rows += reloadDirtyMinutes();
+
+        reloadLock.writeLock().lock();
+        try {
+            rows += reloadDirtyMinutes();
+            reloadingFromMinute = Long.MAX_VALUE;
+        } finally {
+            reloadLock.writeLock().unlock();
+        }
+        return rows;
+    }
+
+    private void abortReload() {
+        reloadLock.writeLock().lock();
+        try {
+            dirtyMinutes.clear();
+            reloadingFromMinute = Long.MAX_VALUE;
+        } finally {
+            reloadLock.writeLock().unlock();
+        }
+    }
+
+    /** Đọc lại khoảng phủ các phút dirty hiện có (thường chỉ vài phút gần nhất). */
+    private int reloadDirtyMinutes() {
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+        for (Long minute : List.copyOf(dirtyMinutes)) {
+            dirtyMinutes.remove(minute);
+            min = Math.min(min, minute);
+            max = Math.max(max, minute);
+        }
+        if (min > max) return 0;
+        clearMinutes(min, max + 1);
+        return loadRange(min, max + 1);
+    }
+
+    /** Xóa các phút [fromMinute, toMinute) khỏi mọi series (đặt lại stamp, slot sẽ được reset khi ghi). */
+    private void clearMinutes(long fromMinute, long toMinute) {
+        long from = Math.max(fromMinute, toMinute - SLOTS);
+        for (Map<String, Series> map : List.of(cameraSeries, districtSeries)) {
+            for (Series s : map.values()) {
+                synchronized (s) {
+                    for (long minute = from; minute < toMinute; minute++) {
+                        int slot = (int) Math.floorMod(minute, (long) SLOTS);
+                        if (s.stamps[slot] == minute) s.stamps[slot] = -1;
+                    }
+                }
+            }
+        }
+    }
+
+    private int loadRange(long fromMinute, long toMinute) {
+        int rows = 0;
+        // Nạp theo từng giờ để không giữ cả 25h rollup trong một result set
+        for (long hourStart = fromMinute; hourStart < toMinute; hourStart += 60) {
+            long hourEnd = Math.min(hourStart + 60, toMinute);
+            Instant f = Instant.ofEpochSecond(hourStart * 60);
+            Instant t = Instant.ofEpochSecond(hourEnd * 60);
+            for (RollupRow row : rollupRepository.findRows(Rollup.CAMERA_MINUTE, f, t, null)) {
+                load(row);
+                rows++;
+            }
+        }
+        return rows;
+    }
+
+    private void load(RollupRow row) {
+        long minute = row.getBucket().getEpochSecond() / 60;
+        long[] counts = row.getCounts();
+
+        Series ds = districtSeries.computeIfAbsent(row.getDistrict() != null ? row.getDistrict() : "",
+                k -> new Series(DISTRICT_FIELDS, true));
+        synchronized (ds) {
+            int base = ds.slotForWrite(minute);
+            if (base >= 0) {
+                for (int i = 0; i < DISTRICT_FIELDS; i++) ds.add(base, i, counts[i]);
+            }
+        }
+
+        Series cs = cameraSeries.computeIfAbsent(row.getKey(), k -> new Series(CAMERA_FIELDS, false));
+        synchronized (cs) {
+            int base = cs.slotForWrite(minute);
+            if (base >= 0) {
+                cs.add(base, CAMERA_TOTAL, counts[TrafficRollupRepository.TOTAL]);
+                cs.add(base, CAMERA_VEHICLE, counts[TrafficRollupRepository.VEHICLE]);
+            }
+        }
+    }
+
+    // ------------------------------------------------------------------
+    // Đọc
+    // ------------------------------------------------------------------
+
+    /**
+     * Ring có trả lời được khoảng [fromMinute, toMinute) không.
+     */
+    public boolean covers(long fromMinute, long toMinute) {
+        long now = currentMinute();
+        return fromMinute >= coveredFromMinute
+                && fromMinute > now - SLOTS
+                && toMinute <= now + 1
+                && toMinute <= reloadingFromMinute;
+    }
+
+    /**
+     * Resample series camera: out[i] = tổng field trong [fromMinute + i*step, fromMinute + (i+1)*step).
+     *
+     * @return false nếu ring không phủ khoảng này (caller đọc rollup)
+     */
+    public boolean cameraSeries(String cameraId, int field, long fromMinute, int stepMinutes, long[] out) {
+        long toMinute = fromMinute + (long) stepMinutes * out.length;
+        if (!covers(fromMinute, Math.min(toMinute, currentMinute() + 1))) return false;
+        java.util.Arrays.fill(out, 0);
+        Series s = cameraSeries.get(cameraId);
+        if (s != null) accumulate(s, field, fromMinute, stepMinutes, out);
+        return true;
+    }
+
+    /**
+     * Resample series quận (district == null → cộng mọi quận).
+     */
+    public boolean districtSeries(String district, int field, long fromMinute, int stepMinutes, long[] out) {
+        long toMinute = fromMinute + (long) stepMinutes * out.length;
+        if (!covers(fromMinute, Math.min(toMinute, currentMinute() + 1))) return false;
+        java.util.Arrays.fill(out, 0);
+        if (district != null && !district.isEmpty()) {
+            Series s = districtSeries.get(district);
+            if (s != null) accumulate(s, field, fromMinute, stepMinutes, out);
+        } else {
+            for (Series s : districtSeries.values()) {
+                accumulate(s, field, fromMinute, stepMinutes, out);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Đọc mọi cột của 1 quận tại 1 phút vào out (độ dài = COUNT_COLUMNS).
+     *
+     * @return false nếu quận không có dữ liệu ở phút đó
+     */
+    public boolean readDistrictMinute(String district, long minute, long[] out) {
+        Series s = districtSeries.get(district);
+        if (s == null) return false;
+        synchronized (s) {
+            int slot = (int) Math.floorMod(minute, (long) SLOTS);
+            if (s.stamps[slot] != minute) return false;
+            System.arraycopy(s.longValues, slot * s.fields, out, 0, s.fields);
+            return true;
+        }
+    }
+
+    public Set<String> districts() {
+        return districtSeries.keySet();
+    }
+
+    private static void accumulate(Series s, int field, long fromMinute, int step, long[] out) {
+        synchronized (s) {
+            long minute = fromMinute;
+            for (int i = 0; i < out.length; i++) {
+                long sum = 0;
+                for (int k = 0; k < step; k++, minute++) {
+                    sum += s.get(minute, field);
+                }
+                out[i] += sum;
+            }
+        }
+    }
+
+    public static long currentMinute() {
+        return Math.floorDiv(System.currentTimeMillis(), 60_000L);
+    }
+
+    public static long toMinute(Instant instant) {
+        return Math.floorDiv(instant.toEpochMilli(), 60_000L);
+    }
+}
@@ -0,0 +1,199 @@
+package com.traffic_stream.dashboard.service.realtime;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.traffic_stream.dashboard.dto.TrafficMetricsDTO;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Service;
+import org.springframework.util.MimeTypeUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Đẩy metrics real-time qua STOMP.
+ * <p>
+ * Mỗi DTO chỉ được serialize JSON đúng một lần; các frame (toàn thành phố, theo quận, theo camera)
+ * được ghép từ cùng các mảng byte đó và gửi đi dưới dạng payload đã serialize sẵn, nên broker không
+ * phải convert lại cho từng destination/session.
+ * </p>
+ * Destinations:
+ * <ul>
+ *     <li>/topic/traffic – toàn bộ batch (giữ tương thích, có thể tắt)</li>
+ *     <li>/topic/traffic/district/{district} – các bản ghi của một quận</li>
+ *     <li>/topic/traffic/camera/{cameraId} – các bản ghi của một camera</li>
+ *     <li>/topic/traffic/delta/district/{district} – chỉ các field thay đổi của từng camera so với frame trước</li>
+ * </ul>
+ */
+@Service
+@Slf4j
+public class TrafficBroadcastService {
+
+    public static final String TOPIC_ALL = "/topic/traffic";
+    public static final String TOPIC_DISTRICT = "/topic/traffic/district/";
+    public static final String TOPIC_CAMERA = "/topic/traffic/camera/";
+    public static final String TOPIC_DISTRICT_DELTA = "/topic/traffic/delta/district/";
+
+    private final SimpMessagingTemplate messagingTemplate;
+    private final ObjectMapper objectMapper;
+
+    /** Trạng thái camera đã gửi ở frame delta gần nhất */
+    private final Map<String, TrafficMetricsDTO> lastDeltaState = new ConcurrentHashMap<>();
+    /** Khóa theo quận: publish() chạy song song trên pool WebSocket, delta của một quận phải tính và gửi tuần tự */
+    private final Map<String, Object> deltaLocks = new ConcurrentHashMap<>();
+
+    @Value("${app.websocket.broadcast-all:true}")
+    private boolean broadcastAll;
+
+    @Value("${app.websocket.delta-enabled:true}")
+    private boolean deltaEnabled;
+
+    public TrafficBroadcastService(SimpMessagingTemplate messagingTemplate, ObjectMapper objectMapper) {
+        this.messagingTemplate = messagingTemplate;
+        this.objectMapper = objectMapper;
+    }
+
+    public void publish(List<TrafficMetricsDTO> batch) {
+        if (batch == null || batch.isEmpty()) return;
+
+        Map<String, List<byte[]>> byDistrict = new HashMap<>();
+        Map<String, List<byte[]>> byCamera = new HashMap<>();
+        Map<String, List<TrafficMetricsDTO>> latestByDistrict = new HashMap<>();
+        List<byte[]> all = new ArrayList<>(batch.size());
+
+        for (TrafficMetricsDTO dto : batch) {
+            byte[] json;
+            try {
+                json = objectMapper.writeValueAsBytes(dto);
+            } catch (Exception e) {
+                log.warn("Không serialize được metric của camera {}: {}", dto.getCameraId(), e.getMessage());
+                continue;
+            }
+            all.add(json);
+            if (dto.getDistrict() != null) {
+                byDistrict.computeIfAbsent(dto.getDistrict(), k -> new ArrayList<>()).add(json);
+                latestByDistrict.computeIfAbsent(dto.getDistrict(), k -> new ArrayList<>()).add(dto);
+            }
+            if (dto.getCameraId() != null) {
+                byCamera.computeIfAbsent(dto.getCameraId(), k -> new ArrayList<>()).add(json);
+            }
+        }
+
+        if (broadcastAll) {
+            sendRaw(TOPIC_ALL, joinArray(all));
+        }
+        byDistrict.forEach((district, items) -> sendRaw(TOPIC_DISTRICT + district, joinArray(items)));
+        byCamera.forEach((cameraId, items) -> sendRaw(TOPIC_CAMERA + cameraId, joinArray(items)));
+
+        if (deltaEnabled) {
+            latestByDistrict.forEach(this::publishDelta);
+        }
+    }
+
+    /**
+     * Frame delta: {"timestamp": ..., "cameras": [{"camera_id": ..., <các field thay đổi>}]}.
+     * Camera chưa từng gửi sẽ có đủ field.
+     * <p>
+     * Đọc trạng thái cũ, so sánh, ghi trạng thái mới và gửi frame nằm trong cùng một khóa của quận: hai batch
+     * chạy song song không thể cùng so với một trạng thái cũ (gửi thiếu field) hay gửi frame ngược thứ tự.
+     * </p>
+     */
+    private void publishDelta(String district, List<TrafficMetricsDTO> items) {
+        synchronized (deltaLocks.computeIfAbsent(district, k -> new Object())) {
+            ArrayNode cameras = objectMapper.createArrayNode();
+            for (TrafficMetricsDTO dto : items) {
+                if (dto.getCameraId() == null) continue;
+                TrafficMetricsDTO previous = lastDeltaState.get(dto.getCameraId());
+                if (previous != null && previous.getTimestamp() > dto.getTimestamp()) {
+                    // Bản ghi đến trễ: giữ trạng thái mới hơn, không gửi lùi
+                    continue;
+                }
+                lastDeltaState.put(dto.getCameraId(), dto);
+                ObjectNode changes = diff(previous, dto);
+                if (changes != null) {
+                    cameras.add(changes);
+                }
+            }
+            if (!cameras.isEmpty()) {
+                sendDeltaFrame(district, cameras);
+            }
+        }
+    }
+
+    private void sendDeltaFrame(String district, ArrayNode cameras) {
+        ObjectNode frame = objectMapper.createObjectNode();
+        frame.put("timestamp", System.currentTimeMillis());
+        frame.set("cameras", cameras);
+        try {
+            sendRaw(TOPIC_DISTRICT_DELTA + district, objectMapper.writeValueAsBytes(frame));
+        } catch (Exception e) {
+            log.warn("Không serialize được delta frame của quận {}: {}", district, e.getMessage());
+        }
+    }
+
+    private ObjectNode diff(TrafficMetricsDTO prev, TrafficMetricsDTO curr) {
+        ObjectNode node = objectMapper.createObjectNode();
+        node.put("camera_id", curr.getCameraId());
+        boolean changed = false;
+
+        if (prev == null || !Objects.equals(prev.getCameraName(), curr.getCameraName())) {
+            node.put("camera_name", curr.getCameraName());
+            changed = true;
+        }
+        if (prev == null || !Objects.equals(prev.getCoordinates(), curr.getCoordinates())) {
+            node.set("coordinates", objectMapper.valueToTree(curr.getCoordinates()));
+            changed = true;
+        }
+        if (prev == null || prev.getTotalCount() != curr.getTotalCount()) {
+            node.put("total_count", curr.getTotalCount());
+            changed = true;
+        }
+        if (prev == null || prev.getMaxCount() != curr.getMaxCount()) {
+            node.put("max_count", curr.getMaxCount());
+            changed = true;
+        }
+        if (prev == null || !Objects.equals(prev.getDetectionDetails(), curr.getDetectionDetails())) {
+            node.set("detection_details", objectMapper.valueToTree(curr.getDetectionDetails()));
+            changed = true;
+        }
+        if (prev == null || !Objects.equals(prev.getAnnotatedImageUrl(), curr.getAnnotatedImageUrl())) {
+            node.put("annotated_image_url", curr.getAnnotatedImageUrl());
+            changed = true;
+        }
+        if (!changed && prev.getTimestamp() == curr.getTimestamp()) {
+            return null;
+        }
+        node.put("timestamp", curr.getTimestamp());
+        return node;
+    }
+
+    private byte[] joinArray(List<byte[]> items) {
+        int size = 2 + Math.max(0, items.size() - 1);
+        for (byte[] item : items) size += item.length;
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(size);
+        out.write('[');
+        for (int i = 0; i < items.size(); i++) {
+            if (i > 0) out.write(',');
+            out.writeBytes(items.get(i));
+        }
+        out.write(']');
+        return out.toByteArray();
+    }
+
+    private void sendRaw(String destination, byte[] payload) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setContentType(MimeTypeUtils.APPLICATION_JSON);
+        accessor.setLeaveMutable(true);
+        Message<byte[]> message = MessageBuilder.createMessage(payload, accessor.getMessageHeaders());
+        messagingTemplate.send(destination, message);
+    }
+}
@@ -0,0 +1,279 @@
+package com.traffic_stream.dashboard.service.registry;
+
+import com.traffic_stream.dashboard.dto.TrafficMetricsDTO;
+import com.traffic_stream.dashboard.entity.Camera;
+import com.traffic_stream.dashboard.repository.CameraRepository;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Danh mục camera/quận trong bộ nhớ, nguồn là bảng cameras.
+ * <ul>
+ *     <li>Ingest: camera mới hoặc đổi tên/quận/toạ độ → upsert ngay; last_seen chỉ ghi lại sau mỗi last-seen-resolution.</li>
+ *     <li>Bộ nhớ chỉ cập nhật sau khi transaction ingest commit, rồi phát {@link CameraRegistryChangedEvent}.</li>
+ *     <li>Khởi động: nạp bảng cameras; nếu rỗng (kiểm tra trước khi Kafka listener chạy) thì backfill 1 lần từ traffic_metrics.</li>
+ * </ul>
+ * Khi chưa nạp xong, {@link #isReady()} = false và caller dùng các query cũ trên traffic_metrics.
+ */
+@Component
+@Slf4j
+public class CameraRegistry {
+
+    private static final String UPSERT_SQL = "INSERT INTO cameras " +
+            "(camera_id, camera_name, district, latitude, longitude, first_seen, last_seen) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?) " +
+            "ON CONFLICT (camera_id) DO UPDATE SET " +
+            "camera_name = EXCLUDED.camera_name, district = EXCLUDED.district, " +
+            "latitude = COALESCE(EXCLUDED.latitude, cameras.latitude), " +
+            "longitude = COALESCE(EXCLUDED.longitude, cameras.longitude), " +
+            "first_seen = LEAST(cameras.first_seen, EXCLUDED.first_seen), " +
+            "last_seen = GREATEST(cameras.last_seen, EXCLUDED.last_seen)";
+
+    private final CameraRepository cameraRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+    private final Duration lastSeenResolution;
+
+    private final Map<String, Camera> cameras = new ConcurrentHashMap<>();
+    private volatile NavigableSet<String> districts = Collections.emptyNavigableSet();
+    private volatile boolean ready = false;
+    private boolean backfillRequired;
+
+    public CameraRegistry(CameraRepository cameraRepository,
+                          JdbcTemplate jdbcTemplate,
+                          TransactionTemplate transactionTemplate,
+                          ApplicationEventPublisher eventPublisher,
+                          @Value("${app.registry.last-seen-resolution-seconds:60}") long lastSeenResolutionSeconds) {
+        this.cameraRepository = cameraRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.eventPublisher = eventPublisher;
+        this.lastSeenResolution = Duration.ofSeconds(lastSeenResolutionSeconds);
+    }
+
+    /**
+     * Kiểm tra trước khi Kafka listener chạy: load() chạy sau ApplicationReadyEvent, lúc đó recordSeen
+     * đã có thể ghi vài camera vào bảng nên count() không còn phản ánh bảng rỗng.
+     */
+    @PostConstruct
+    public void checkBackfill() {
+        backfillRequired = cameraRepository.count() == 0;
+    }
+
+    @Async
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        try {
+            long started = System.currentTimeMillis();
+            if (backfillRequired) {
+                Integer backfilled = transactionTemplate.execute(status -> cameraRepository.backfillFromMetrics());
+                log.info("Camera registry backfilled {} cameras from traffic_metrics", backfilled);
+            }
+            for (Camera camera : cameraRepository.findAll()) {
+                cameras.merge(camera.getCameraId(), camera, CameraRegistry::newer);
+            }
+            rebuildDistricts();
+            ready = true;
+            eventPublisher.publishEvent(new CameraRegistryChangedEvent(List.copyOf(cameras.values()), true));
+            log.info("Camera registry loaded: {} cameras, {} districts ({}ms)",
+                    cameras.size(), districts.size(), System.currentTimeMillis() - started);
+        } catch (Exception e) {
+            log.warn("Camera registry load failed, falling back to traffic_metrics lookups: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Ghi nhận camera từ batch vừa insert. Gọi trong transaction ingest.
+     */
+    public void recordSeen(List<TrafficMetricsDTO> inserted) {
+        if (inserted.isEmpty()) return;
+
+        Map<String, Camera> pending = new TreeMap<>(); // sắp xếp theo id → thứ tự khóa ổn định
+        List<Camera> changed = new ArrayList<>();
+        for (TrafficMetricsDTO dto : inserted) {
+            if (dto.getCameraId() == null) continue;
+            Instant seen = Instant.ofEpochMilli(dto.getTimestamp());
+            Camera incoming = fromDto(dto, seen);
+
+            Camera base = pending.getOrDefault(dto.getCameraId(), cameras.get(dto.getCameraId()));
+            if (base == null) {
+                pending.put(incoming.getCameraId(), incoming);
+                changed.add(incoming);
+                continue;
+            }
+
+            boolean attributesChanged = !Objects.equals(base.getCameraName(), incoming.getCameraName())
+                    || !Objects.equals(base.getDistrict(), incoming.getDistrict())
+                    || (incoming.getLatitude() != null && !Objects.equals(base.getLatitude(), incoming.getLatitude()))
+                    || (incoming.getLongitude() != null && !Objects.equals(base.getLongitude(), incoming.getLongitude()));
+            boolean lastSeenStale = base.getLastSeen() == null
+                    || seen.isAfter(base.getLastSeen().plus(lastSeenResolution));
+            boolean earlier = base.getFirstSeen() != null && seen.isBefore(base.getFirstSeen());
+
+            if (attributesChanged || lastSeenStale || earlier) {
+                Camera merged = Camera.builder()
+                        .cameraId(base.getCameraId())
+                        .cameraName(incoming.getCameraName())
+                        .district(incoming.getDistrict())
+                        .latitude(incoming.getLatitude() != null ? incoming.getLatitude() : base.getLatitude())
+                        .longitude(incoming.getLongitude() != null ? incoming.getLongitude() : base.getLongitude())
+                        .firstSeen(min(base.getFirstSeen(), seen))
+                        .lastSeen(max(base.getLastSeen(), seen))
+                        .build();
+                pending.put(merged.getCameraId(), merged);
+                if (attributesChanged) changed.add(merged);
+            }
+        }
+        if (pending.isEmpty()) return;
+
+        List<Camera> rows = new ArrayList<>(pending.values());
+        jdbcTemplate.batchUpdate(UPSERT_SQL, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                Camera c = rows.get(i);
+                ps.setString(1, c.getCameraId());
+                ps.setString(2, c.getCameraName());
+                ps.setString(3, c.getDistrict());
+                setDouble(ps, 4, c.getLatitude());
+                setDouble(ps, 5, c.getLongitude());
+                ps.setTimestamp(6, Timestamp.from(c.getFirstSeen()));
+                ps.setTimestamp(7, Timestamp.from(c.getLastSeen()));
+            }
+
+            @Override
+            public int getBatchSize() {
+                return rows.size();
+            }
+        });
+
+        Runnable publish = () -> applyCommitted(rows, changed);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    publish.run();
+                }
+            });
+        } else {
+            publish.run();
+        }
+    }
+
+    private void applyCommitted(List<Camera> rows, List<Camera> changed) {
+        for (Camera c : rows) {
+            cameras.merge(c.getCameraId(), c, CameraRegistry::newer);
+        }
+        if (changed.isEmpty()) return;
+
+        int before = districts.size();
+        rebuildDistricts();
+        eventPublisher.publishEvent(new CameraRegistryChangedEvent(List.copyOf(changed), districts.size() != before));
+        log.info("Camera registry updated: {} new/changed cameras", changed.size());
+    }
+
+    // ------------------------------------------------------------------
+    // Lookup
+    // ------------------------------------------------------------------
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    /** Danh sách quận đã sắp xếp. */
+    public List<String> getDistricts() {
+        return new ArrayList<>(districts);
+    }
+
+    /** Camera theo quận (null/rỗng = tất cả), sắp xếp theo cameraId. */
+    public List<Camera> getCameras(String district) {
+        boolean all = district == null || district.trim().isEmpty();
+        return cameras.values().stream()
+                .filter(c -> all || district.equals(c.getDistrict()))
+                .sorted(Comparator.comparing(Camera::getCameraId))
+                .toList();
+    }
+
+    public Optional<Camera> find(String cameraId) {
+        return Optional.ofNullable(cameras.get(cameraId));
+    }
+
+    public boolean districtExists(String district) {
+        return districts.contains(district);
+    }
+
+    /** Quận của camera, null nếu camera không tồn tại. */
+    public String districtOf(String cameraId) {
+        Camera c = cameras.get(cameraId);
+        return c != null ? c.getDistrict() : null;
+    }
+
+    public boolean cameraExists(String cameraId) {
+        return cameras.containsKey(cameraId);
+    }
+
+    private void rebuildDistricts() {
+        NavigableSet<String> set = new TreeSet<>();
+        for (Camera c : cameras.values()) {
+            if (c.getDistrict() != null) set.add(c.getDistrict());
+        }
+        districts = Collections.unmodifiableNavigableSet(set);
+    }
+
+    private static Camera fromDto(TrafficMetricsDTO dto, Instant seen) {
+        List<Double> coords = dto.getCoordinates();
+        boolean hasCoords = coords != null && coords.size() >= 2 && coords.get(0) != null && coords.get(1) != null;
+        return Camera.builder()
+                .cameraId(dto.getCameraId())
+                .cameraName(dto.getCameraName())
+                .district(dto.getDistrict())
+                .longitude(hasCoords ? coords.get(0) : null)
+                .latitude(hasCoords ? coords.get(1) : null)
+                .firstSeen(seen)
+                .lastSeen(seen)
+                .build();
+    }
+
+    /** Giữ bản có last_seen mới hơn (ghi đồng thời từ nhiều consumer). */
+    private static Camera newer(Camera a, Camera b) {
+        if (a.getLastSeen() == null) return b;
+        if (b.getLastSeen() == null) return a;
+        return b.getLastSeen().isBefore(a.getLastSeen()) ? a : b;
+    }
+
+    private static Instant min(Instant a, Instant b) {
+        return a == null || b.isBefore(a) ? b : a;
+    }
+
+    private static Instant max(Instant a, Instant b) {
+        return a == null || b.isAfter(a) ? b : a;
+    }
+
+    private static void setDouble(PreparedStatement ps, int index, Double value) throws SQLException {
+        if (value != null) {
+            ps.setDouble(index, value);
+        } else {
+            ps.setNull(index, Types.DOUBLE);
+        }
+    }
+}
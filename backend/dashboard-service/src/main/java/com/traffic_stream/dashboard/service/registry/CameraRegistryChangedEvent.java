@@ -0,0 +1,27 @@
+package com.traffic_stream.dashboard.service.registry;
+
+import com.traffic_stream.dashboard.entity.Camera;
+
+import java.util.List;
+
+/**
+ * Phát ra (sau commit) khi có camera mới hoặc camera đổi tên/quận/toạ độ.
+ */
+public class CameraRegistryChangedEvent {
+
+    private final List<Camera> changed;
+    private final boolean districtsChanged;
+
+    public CameraRegistryChangedEvent(List<Camera> changed, boolean districtsChanged) {
+        this.changed = changed;
+        this.districtsChanged = districtsChanged;
+    }
+
+    public List<Camera> getChanged() {
+        return changed;
+    }
+
+    public boolean isDistrictsChanged() {
+        return districtsChanged;
+    }
+}
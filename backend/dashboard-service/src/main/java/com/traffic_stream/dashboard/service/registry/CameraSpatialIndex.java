@@ -0,0 +1,222 @@
+package com.traffic_stream.dashboard.service.registry;
+
+import com.traffic_stream.dashboard.entity.Camera;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+
+/**
+ * Chỉ mục không gian (lưới đều theo độ) trên toạ độ camera của {@link CameraRegistry}.
+ * <p>
+ * Mỗi lần registry đổi (camera mới/đổi toạ độ, hiếm) thì dựng lại một lưới bất biến rồi thay tham chiếu,
+ * nên truy vấn viewport/kNN không cần khóa. Viewport chỉ duyệt các ô giao với khung nhìn; kNN mở rộng
+ * dần theo vòng ô quanh điểm hỏi và dừng khi vòng tiếp theo chắc chắn xa hơn phần tử thứ k.
+ * </p>
+ */
+@Component
+@Slf4j
+public class CameraSpatialIndex {
+
+    private static final double EARTH_RADIUS_METERS = 6_371_008.8;
+    private static final double METERS_PER_DEGREE = Math.PI * EARTH_RADIUS_METERS / 180.0;
+
+    /** Retry-After (giây) gợi ý cho client khi danh mục camera chưa nạp xong. */
+    public static final long LOADING_RETRY_AFTER_SECONDS = 5;
+
+    private final CameraRegistry registry;
+    private final double cellSize;
+
+    private volatile Grid grid;
+
+    public CameraSpatialIndex(CameraRegistry registry,
+                              @Value("${app.spatial.cell-size-degrees:0.01}") double cellSize) {
+        this.registry = registry;
+        this.cellSize = cellSize;
+        this.grid = new Grid(cellSize, List.of());
+    }
+
+    /** Một camera trong chỉ mục (kèm khoảng cách tới điểm hỏi với truy vấn kNN). */
+    public static final class Hit {
+        private final Camera camera;
+        private final double distanceMeters;
+
+        Hit(Camera camera, double distanceMeters) {
+            this.camera = camera;
+            this.distanceMeters = distanceMeters;
+        }
+
+        public Camera getCamera() {
+            return camera;
+        }
+
+        public double getDistanceMeters() {
+            return distanceMeters;
+        }
+    }
+
+    @EventListener(CameraRegistryChangedEvent.class)
+    public void onRegistryChanged(CameraRegistryChangedEvent event) {
+        rebuild();
+    }
+
+    public void rebuild() {
+        long started = System.nanoTime();
+        Grid next = new Grid(cellSize, registry.getCameras(null));
+        grid = next;
+        log.debug("Camera spatial index rebuilt: {} cameras in {} cells ({}µs)",
+                next.size(), next.cells.size(), (System.nanoTime() - started) / 1000);
+    }
+
+    public boolean isReady() {
+        return registry.isReady();
+    }
+
+    /**
+     * Camera nằm trong khung [minLat, maxLat] x [minLng, maxLng], tối đa {@code limit} camera.
+     */
+    public List<Camera> withinBounds(double minLat, double minLng, double maxLat, double maxLng, int limit) {
+        Grid g = grid;
+        List<Camera> result = new ArrayList<>();
+        if (g.size() == 0 || minLat > maxLat || minLng > maxLng) return result;
+
+        int x0 = Math.max(g.cellX(minLng), g.minX);
+        int x1 = Math.min(g.cellX(maxLng), g.maxX);
+        int y0 = Math.max(g.cellY(minLat), g.minY);
+        int y1 = Math.min(g.cellY(maxLat), g.maxY);
+        if (x0 > x1 || y0 > y1) return result;
+
+        long cellCount = (long) (x1 - x0 + 1) * (y1 - y0 + 1);
+        if (cellCount > g.cells.size()) {
+            // Khung nhìn rộng hơn số ô có camera: duyệt thẳng các ô có dữ liệu
+            for (Camera[] cell : g.cells.values()) {
+                if (collect(cell, minLat, minLng, maxLat, maxLng, result, limit)) break;
+            }
+        } else {
+            outer:
+            for (int x = x0; x <= x1; x++) {
+                for (int y = y0; y <= y1; y++) {
+                    Camera[] cell = g.cells.get(Grid.key(x, y));
+                    if (cell != null && collect(cell, minLat, minLng, maxLat, maxLng, result, limit)) break outer;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * k camera gần điểm (lat, lng) nhất, sắp theo khoảng cách tăng dần; maxDistanceMeters <= 0 = không giới hạn.
+     */
+    public List<Hit> nearest(double lat, double lng, int k, double maxDistanceMeters) {
+        Grid g = grid;
+        if (g.size() == 0 || k <= 0) return List.of();
+        double limit = maxDistanceMeters > 0 ? maxDistanceMeters : Double.MAX_VALUE;
+
+        // max-heap theo khoảng cách, giữ k phần tử gần nhất
+        PriorityQueue<Hit> heap = new PriorityQueue<>(k + 1,
+                Comparator.comparingDouble(Hit::getDistanceMeters).reversed());
+        int cx = g.cellX(lng);
+        int cy = g.cellY(lat);
+        // Khoảng cách tối thiểu (m) khi đi thêm 1 ô theo chiều hẹp nhất (kinh độ co lại theo cos(lat))
+        double cellMeters = cellSize * METERS_PER_DEGREE * Math.min(1.0, Math.cos(Math.toRadians(Math.abs(lat)) ));
+        int maxRing = Math.max(Math.max(Math.abs(cx - g.minX), Math.abs(cx - g.maxX)),
+                Math.max(Math.abs(cy - g.minY), Math.abs(cy - g.maxY)));
+
+        for (int ring = 0; ring <= maxRing; ring++) {
+            // Mọi camera ở vòng này trở đi cách điểm hỏi ít nhất (ring - 1) ô
+            double ringMin = Math.max(0, ring - 1) * cellMeters;
+            if (ringMin > limit) break;
+            if (heap.size() == k && ringMin > heap.peek().getDistanceMeters()) break;
+
+            for (int x = cx - ring; x <= cx + ring; x++) {
+                for (int y = cy - ring; y <= cy + ring; y++) {
+                    if (Math.max(Math.abs(x - cx), Math.abs(y - cy)) != ring) continue;
+                    Camera[] cell = g.cells.get(Grid.key(x, y));
+                    if (cell == null) continue;
+                    for (Camera c : cell) {
+                        double d = haversine(lat, lng, c.getLatitude(), c.getLongitude());
+                        if (d > limit) continue;
+                        if (heap.size() < k) {
+                            heap.offer(new Hit(c, d));
+                        } else if (d < heap.peek().getDistanceMeters()) {
+                            heap.poll();
+                            heap.offer(new Hit(c, d));
+                        }
+                    }
+                }
+            }
+        }
+
+        List<Hit> result = new ArrayList<>(heap);
+        result.sort(Comparator.comparingDouble(Hit::getDistanceMeters));
+        return result;
+    }
+
+    private static boolean collect(Camera[] cell, double minLat, double minLng, double maxLat, double maxLng,
+                                   List<Camera> result, int limit) {
+        for (Camera c : cell) {
+            if (c.getLatitude() >= minLat && c.getLatitude() <= maxLat
+                    && c.getLongitude() >= minLng && c.getLongitude() <= maxLng) {
+                result.add(c);
+                if (result.size() >= limit) return true;
+            }
+        }
+        return false;
+    }
+
+    static double haversine(double lat1, double lng1, double lat2, double lng2) {
+        double dLat = Math.toRadians(lat2 - lat1);
+        double dLng = Math.toRadians(lng2 - lng1);
+        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+                + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2)) * Math.sin(dLng / 2) * Math.sin(dLng / 2);
+        return 2 * EARTH_RADIUS_METERS * Math.asin(Math.min(1.0, Math.sqrt(a)));
+    }
+
+    /** Lưới bất biến: ô (x, y) = floor(lng / cellSize), floor(lat / cellSize). */
+    private static final class Grid {
+        private final double cellSize;
+        private final Map<Long, Camera[]> cells;
+        private final int count;
+        private int minX = Integer.MAX_VALUE, maxX = Integer.MIN_VALUE;
+        private int minY = Integer.MAX_VALUE, maxY = Integer.MIN_VALUE;
+
+        Grid(double cellSize, List<Camera> cameras) {
+            this.cellSize = cellSize;
+            Map<Long, List<Camera>> buckets = new HashMap<>();
+            int n = 0;
+            for (Camera c : cameras) {
+                if (c.getLatitude() == null || c.getLongitude() == null) continue;
+                int x = cellX(c.getLongitude());
+                int y = cellY(c.getLatitude());
+                buckets.computeIfAbsent(key(x, y), k -> new ArrayList<>()).add(c);
+                minX = Math.min(minX, x);
+                maxX = Math.max(maxX, x);
+                minY = Math.min(minY, y);
+                maxY = Math.max(maxY, y);
+                n++;
+            }
+            Map<Long, Camera[]> frozen = new HashMap<>(buckets.size() * 2);
+            buckets.forEach((k, v) -> frozen.put(k, v.toArray(new Camera[0])));
+            this.cells = frozen;
+            this.count = n;
+        }
+
+        int size() {
+            return count;
+        }
+
+        int cellX(double lng) {
+            return (int) Math.floor(lng / cellSize);
+        }
+
+        int cellY(double lat) {
+            return (int) Math.floor(lat / cellSize);
+        }
+
+        static long key(int x, int y) {
+            return ((long) x << 32) | (y & 0xffffffffL);
+        }
+    }
+}
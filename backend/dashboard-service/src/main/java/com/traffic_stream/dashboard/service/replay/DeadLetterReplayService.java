@@ -0,0 +1,200 @@
+package com.traffic_stream.dashboard.service.replay;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.traffic_stream.dashboard.consumer.TrafficConsumerMetrics;
+import com.traffic_stream.dashboard.dto.DeadLetterReplayResultDTO;
+import com.traffic_stream.dashboard.dto.TrafficMetricsDTO;
+import com.traffic_stream.dashboard.service.TrafficService;
+import com.traffic_stream.dashboard.shared.utils.KafkaSendHelper;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Replay các record nằm trong dead-letter topic sau khi nguyên nhân lỗi đã được khắc phục.
+ * <p>
+ * Dùng group cố định và commit offset sau mỗi lần chạy, nên mỗi record DLT chỉ được replay một lần.
+ * Chỉ đọc tới end offset tại thời điểm bắt đầu và chỉ commit tới record cuối đã xử lý (không vượt điểm dừng);
+ * record vẫn lỗi được ghi lại vào DLT để không bị mất.
+ * </p>
+ */
+@Service
+@Slf4j
+public class DeadLetterReplayService {
+
+    private static final String REPLAY_GROUP = "dashboard-dlt-replay";
+    private static final Duration POLL_TIMEOUT = Duration.ofSeconds(2);
+    private static final int MAX_EMPTY_POLLS = 5;
+
+    private final TrafficService trafficService;
+    private final KafkaTemplate<String, Object> dltTemplate;
+    private final TrafficConsumerMetrics metrics;
+    private final ObjectReader dtoReader;
+
+    @Value("${spring.kafka.bootstrap-servers}")
+    private String bootstrapServers;
+
+    @Value("${app.kafka.dlt.topic}")
+    private String deserializationDlt;
+
+    @Value("${app.kafka.retry.topic}-dlt")
+    private String retryDlt;
+
+    @Value("${app.kafka.send-timeout-ms:10000}")
+    private long sendTimeoutMs;
+
+    public DeadLetterReplayService(TrafficService trafficService,
+                                   KafkaTemplate<String, Object> metricsRetryKafkaTemplate,
+                                   TrafficConsumerMetrics metrics,
+                                   ObjectMapper objectMapper) {
+        this.trafficService = trafficService;
+        this.dltTemplate = metricsRetryKafkaTemplate;
+        this.metrics = metrics;
+        this.dtoReader = objectMapper.readerFor(TrafficMetricsDTO.class)
+                .without(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+    }
+
+    public DeadLetterReplayResultDTO replay() {
+        List<String> topics = List.of(retryDlt, deserializationDlt);
+        long started = System.currentTimeMillis();
+        long read = 0;
+        long inserted = 0;
+        long failed = 0;
+
+        try (Consumer<String, byte[]> consumer = createConsumer()) {
+            Map<TopicPartition, Long> stopOffsets = assignAll(consumer, topics);
+
+            int emptyPolls = 0;
+            while (!stopOffsets.isEmpty() && emptyPolls < MAX_EMPTY_POLLS) {
+                ConsumerRecords<String, byte[]> records = consumer.poll(POLL_TIMEOUT);
+                if (records.isEmpty()) {
+                    emptyPolls++;
+                    continue;
+                }
+                emptyPolls = 0;
+
+                List<TrafficMetricsDTO> batch = new ArrayList<>(records.count());
+                List<ConsumerRecord<String, byte[]>> unreadable = new ArrayList<>();
+                // Offset kế tiếp đã thực sự xử lý, theo từng partition: poll có thể đã fetch quá điểm dừng
+                // (record mới vào DLT, hoặc bản re-park của chính lần chạy này) nên không commit position
+                Map<TopicPartition, OffsetAndMetadata> processed = new HashMap<>();
+                for (TopicPartition tp : records.partitions()) {
+                    Long stop = stopOffsets.get(tp);
+                    if (stop == null) continue;
+
+                    for (ConsumerRecord<String, byte[]> record : records.records(tp)) {
+                        if (record.offset() >= stop) break;
+                        read++;
+                        processed.put(tp, new OffsetAndMetadata(record.offset() + 1));
+                        TrafficMetricsDTO dto = parse(record.value());
+                        if (dto != null) {
+                            batch.add(dto);
+                        } else {
+                            unreadable.add(record);
+                        }
+                    }
+                    if (consumer.position(tp) >= stop) {
+                        stopOffsets.remove(tp);
+                        consumer.pause(List.of(tp));
+                    }
+                }
+
+                List<CompletableFuture<?>> sends = new ArrayList<>();
+                try {
+                    inserted += trafficService.persistMetricsBatch(batch);
+                    metrics.dltReplayed(batch.size());
+                } catch (Exception e) {
+                    log.error("DLT replay batch of {} failed, re-parking: {}", batch.size(), e.getMessage());
+                    for (TrafficMetricsDTO dto : batch) {
+                        sends.add(dltTemplate.send(retryDlt, dto.getCameraId(), dto));
+                    }
+                    failed += batch.size();
+                }
+                for (ConsumerRecord<String, byte[]> record : unreadable) {
+                    sends.add(dltTemplate.send(new ProducerRecord<>(record.topic(), null, record.key(), record.value(), record.headers())));
+                }
+                failed += unreadable.size();
+                // Record chỉ rời DLT (commit offset) khi bản re-park đã được broker xác nhận; lỗi thì dừng replay,
+                // lần chạy sau đọc lại từ offset cũ
+                KafkaSendHelper.awaitAll(sends, Duration.ofMillis(sendTimeoutMs), "dead-letter topics");
+                if (!processed.isEmpty()) {
+                    consumer.commitSync(processed);
+                }
+            }
+        }
+
+        long elapsed = System.currentTimeMillis() - started;
+        long succeeded = read - failed;
+        log.info("DLT replay done: {} records read, {} inserted, {} failed ({}ms)", read, inserted, failed, elapsed);
+        return new DeadLetterReplayResultDTO(topics, read, inserted, succeeded - inserted, failed, elapsed);
+    }
+
+    Consumer<String, byte[]> createConsumer() {
+        Map<String, Object> props = new HashMap<>();
+        props.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+        props.put(ConsumerConfig.GROUP_ID_CONFIG, REPLAY_GROUP);
+        props.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false);
+        props.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
+        props.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, 1000);
+        return new DefaultKafkaConsumerFactory<>(props, new StringDeserializer(), new ByteArrayDeserializer())
+                .createConsumer();
+    }
+
+    /**
+     * Gán mọi partition của các DLT và trả về end offset hiện tại làm điểm dừng.
+     * Vị trí bắt đầu là offset đã commit của group replay (hoặc earliest).
+     */
+    private Map<TopicPartition, Long> assignAll(Consumer<String, byte[]> consumer, List<String> topics) {
+        List<TopicPartition> tps = new ArrayList<>();
+        for (String topic : topics) {
+            List<PartitionInfo> partitions = consumer.partitionsFor(topic);
+            if (partitions == null) continue;
+            for (PartitionInfo p : partitions) {
+                tps.add(new TopicPartition(p.topic(), p.partition()));
+            }
+        }
+        if (tps.isEmpty()) return new HashMap<>();
+
+        consumer.assign(tps);
+        Map<TopicPartition, Long> endOffsets = consumer.endOffsets(tps);
+        Map<TopicPartition, Long> stopOffsets = new HashMap<>();
+        List<TopicPartition> idle = new ArrayList<>();
+        for (TopicPartition tp : tps) {
+            long end = endOffsets.getOrDefault(tp, 0L);
+            if (consumer.position(tp) >= end) {
+                idle.add(tp);
+            } else {
+                stopOffsets.put(tp, end);
+            }
+        }
+        consumer.pause(idle);
+        return stopOffsets;
+    }
+
+    private TrafficMetricsDTO parse(byte[] payload) {
+        if (payload == null || payload.length == 0) return null;
+        try {
+            return dtoReader.readValue(payload);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package com.traffic_stream.dashboard.service.replay;
+
+import com.traffic_stream.dashboard.dto.TrafficMetricsDTO;
+import com.traffic_stream.dashboard.dto.ReplayResultDTO;
+import com.traffic_stream.dashboard.service.TrafficService;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.OffsetAndTimestamp;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+
+/**
+ * Đọc lại (replay) một khoảng thời gian của traffic_metrics_topic và ghi vào DB.
+ * <p>
+ * Dùng consumer riêng (group id ngẫu nhiên, không commit offset) nên không ảnh hưởng
+ * tới consumer group chính. Insert là idempotent theo (camera_id, timestamp), vì vậy
+ * replay cùng một khoảng nhiều lần không làm thay đổi số bản ghi.
+ * </p>
+ */
+@Service
+@Slf4j
+public class TrafficMetricsReplayService {
+
+    private static final Duration POLL_TIMEOUT = Duration.ofSeconds(2);
+    private static final int MAX_EMPTY_POLLS = 5;
+
+    private final ConsumerFactory<String, TrafficMetricsDTO> consumerFactory;
+    private final TrafficService trafficService;
+
+    @Value("${spring.kafka.topic.name}")
+    private String topic;
+
+    public TrafficMetricsReplayService(ConsumerFactory<String, TrafficMetricsDTO> consumerFactory,
+                                       TrafficService trafficService) {
+        this.consumerFactory = consumerFactory;
+        this.trafficService = trafficService;
+    }
+
+    /**
+     * Replay các record có timestamp Kafka trong [from, to).
+     */
+    public ReplayResultDTO replay(Instant from, Instant to) {
+        if (!from.isBefore(to)) {
+            throw new IllegalArgumentException("Replay 'from' must be before 'to'");
+        }
+
+        Properties overrides = new Properties();
+        overrides.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, "false");
+        overrides.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "none");
+
+        long started = System.currentTimeMillis();
+        long polled = 0;
+        long inserted = 0;
+
+        try (Consumer<String, TrafficMetricsDTO> consumer = consumerFactory.createConsumer(
+                "dashboard-replay-" + UUID.randomUUID(), null, "-replay", overrides)) {
+
+            Map<TopicPartition, Long> stopOffsets = assignRange(consumer, from, to);
+            if (stopOffsets.isEmpty()) {
+                log.info("Replay {} -> {}: no records in range", from, to);
+                return new ReplayResultDTO(topic, from, to, 0, 0, 0, System.currentTimeMillis() - started);
+            }
+
+            int emptyPolls = 0;
+            while (!stopOffsets.isEmpty() && emptyPolls < MAX_EMPTY_POLLS) {
+                ConsumerRecords<String, TrafficMetricsDTO> records = consumer.poll(POLL_TIMEOUT);
+                if (records.isEmpty()) {
+                    emptyPolls++;
+                    continue;
+                }
+                emptyPolls = 0;
+
+                List<TrafficMetricsDTO> batch = new ArrayList<>(records.count());
+                for (TopicPartition tp : records.partitions()) {
+                    Long stop = stopOffsets.get(tp);
+                    if (stop == null) continue;
+
+                    for (ConsumerRecord<String, TrafficMetricsDTO> record : records.records(tp)) {
+                        if (record.offset() >= stop) break;
+                        polled++;
+                        if (record.value() != null) {
+                            batch.add(record.value());
+                        }
+                    }
+                    if (consumer.position(tp) >= stop) {
+                        stopOffsets.remove(tp);
+                        consumer.pause(List.of(tp));
+                    }
+                }
+                inserted += trafficService.persistMetricsBatch(batch);
+            }
+        }
+
+        long elapsed = System.currentTimeMillis() - started;
+        log.info("Replay {} -> {} done: {} records read, {} inserted, {} duplicates ({}ms)",
+                from, to, polled, inserted, polled - inserted, elapsed);
+        return new ReplayResultDTO(topic, from, to, polled, inserted, polled - inserted, elapsed);
+    }
+
+    /**
+     * Gán tất cả partition của topic, seek tới offset đầu tiên >= from và
+     * trả về offset dừng (record đầu tiên >= to, hoặc end offset).
+     */
+    private Map<TopicPartition, Long> assignRange(Consumer<String, TrafficMetricsDTO> consumer, Instant from, Instant to) {
+        List<PartitionInfo> partitions = consumer.partitionsFor(topic);
+        if (partitions == null || partitions.isEmpty()) {
+            throw new IllegalStateException("Topic not found: " + topic);
+        }
+
+        List<TopicPartition> tps = partitions.stream()
+                .map(p -> new TopicPartition(p.topic(), p.partition()))
+                .toList();
+        consumer.assign(tps);
+
+        Map<TopicPartition, Long> fromQuery = new HashMap<>();
+        Map<TopicPartition, Long> toQuery = new HashMap<>();
+        for (TopicPartition tp : tps) {
+            fromQuery.put(tp, from.toEpochMilli());
+            toQuery.put(tp, to.toEpochMilli());
+        }
+
+        Map<TopicPartition, OffsetAndTimestamp> startOffsets = consumer.offsetsForTimes(fromQuery);
+        Map<TopicPartition, OffsetAndTimestamp> endByTime = consumer.offsetsForTimes(toQuery);
+        Map<TopicPartition, Long> endOffsets = consumer.endOffsets(tps);
+
+        Map<TopicPartition, Long> stopOffsets = new HashMap<>();
+        List<TopicPartition> idle = new ArrayList<>();
+        for (TopicPartition tp : tps) {
+            OffsetAndTimestamp start = startOffsets.get(tp);
+            if (start == null) {
+                idle.add(tp);
+                continue;
+            }
+            OffsetAndTimestamp stopAt = endByTime.get(tp);
+            long stop = stopAt != null ? stopAt.offset() : endOffsets.getOrDefault(tp, 0L);
+            if (start.offset() >= stop) {
+                idle.add(tp);
+                continue;
+            }
+            consumer.seek(tp, start.offset());
+            stopOffsets.put(tp, stop);
+        }
+        consumer.pause(idle);
+        return stopOffsets;
+    }
+}
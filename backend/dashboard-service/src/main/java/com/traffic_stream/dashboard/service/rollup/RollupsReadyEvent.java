@@ -0,0 +1,8 @@
+package com.traffic_stream.dashboard.service.rollup;
+
+/**
+ * Phát ra sau khi kiểm tra/backfill rollup lúc khởi động xong – các bộ nhớ đệm đọc từ rollup
+ * (ring buffer...) chỉ nên warm-up sau sự kiện này.
+ */
+public class RollupsReadyEvent {
+}
@@ -0,0 +1,26 @@
+package com.traffic_stream.dashboard.service.rollup;
+
+import java.time.Instant;
+
+/**
+ * Phát ra sau khi rollup trong [from, to) được tính lại từ dữ liệu thô và đã commit (đối soát định kỳ);
+ * các bộ nhớ đệm giữ bản sao rollup của khoảng này cần nạp lại.
+ */
+public class RollupsRebuiltEvent {
+
+    private final Instant from;
+    private final Instant to;
+
+    public RollupsRebuiltEvent(Instant from, Instant to) {
+        this.from = from;
+        this.to = to;
+    }
+
+    public Instant getFrom() {
+        return from;
+    }
+
+    public Instant getTo() {
+        return to;
+    }
+}
@@ -0,0 +1,128 @@
+package com.traffic_stream.dashboard.service.rollup;
+
+import com.traffic_stream.dashboard.dto.TrafficMetricsDTO;
+import com.traffic_stream.dashboard.repository.TrafficRollupRepository;
+import com.traffic_stream.dashboard.repository.TrafficRollupRepository.Rollup;
+import com.traffic_stream.dashboard.repository.TrafficRollupRepository.RollupRow;
+import com.traffic_stream.dashboard.shared.constant.VehicleClass;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * Duy trì các bảng rollup phút/giờ (camera và quận) một cách tăng dần từ luồng ingest.
+ * <p>
+ * Chỉ những bản ghi thực sự được insert (không trùng) mới được cộng vào rollup, nên
+ * redelivery/replay không làm sai số liệu. Dữ liệu đến muộn được cộng vào đúng bucket của nó.
+ * </p>
+ */
+@Service
+@Slf4j
+public class TrafficRollupService {
+
+    private static final Comparator<RollupRow> LOCK_ORDER =
+            Comparator.comparing(RollupRow::getKey).thenComparing(RollupRow::getBucket);
+
+    private final TrafficRollupRepository repository;
+
+    public TrafficRollupService(TrafficRollupRepository repository) {
+        this.repository = repository;
+    }
+
+    /**
+     * Cộng các bản ghi vừa insert vào 4 bảng rollup. Phải được gọi trong cùng transaction với insert.
+     */
+    public void apply(List<TrafficMetricsDTO> inserted) {
+        if (inserted == null || inserted.isEmpty()) return;
+
+        Map<Rollup, Map<String, RollupRow>> deltas = new EnumMap<>(Rollup.class);
+        for (Rollup r : Rollup.values()) {
+            deltas.put(r, new HashMap<>());
+        }
+
+        for (TrafficMetricsDTO dto : inserted) {
+            long[] counts = countsOf(dto);
+            Instant ts = Instant.ofEpochMilli(dto.getTimestamp());
+            String district = dto.getDistrict() != null ? dto.getDistrict() : "";
+
+            for (Rollup r : Rollup.values()) {
+                String key = r.isCamera() ? dto.getCameraId() : district;
+                if (key == null) continue;
+                Instant bucket = ts.truncatedTo(r.getUnit());
+                RollupRow row = deltas.get(r).computeIfAbsent(key + '|' + bucket.toEpochMilli(),
+                        k -> new RollupRow(key, bucket, district, TrafficRollupRepository.newCounts()));
+                long[] acc = row.getCounts();
+                for (int i = 0; i < acc.length; i++) {
+                    acc[i] += counts[i];
+                }
+            }
+        }
+
+        // Thứ tự bảng cố định + sắp xếp (key, bucket) trong từng bảng → thứ tự khóa nhất quán giữa các consumer
+        for (Rollup r : Rollup.values()) {
+            List<RollupRow> rows = new ArrayList<>(deltas.get(r).values());
+            rows.sort(LOCK_ORDER);
+            repository.upsert(r, rows);
+        }
+    }
+
+    /**
+     * Tính lại rollup trong [from, to) từ dữ liệu thô (from/to được làm tròn ra theo giờ).
+     */
+    @Transactional
+    public int rebuild(Instant from, Instant to) {
+        Instant start = from.truncatedTo(ChronoUnit.HOURS);
+        Instant end = to.truncatedTo(ChronoUnit.HOURS);
+        if (end.isBefore(to)) {
+            end = end.plus(1, ChronoUnit.HOURS);
+        }
+        return repository.rebuild(start, end);
+    }
+
+    public boolean isEmpty() {
+        return repository.isEmpty();
+    }
+
+    public Instant[] findRawTimeRange() {
+        return repository.findRawTimeRange();
+    }
+
+    public Map<Instant, Long> sumByBucket(Rollup rollup, String column, String key, Instant from, Instant to) {
+        return repository.sumByBucket(rollup, column, key, from, to);
+    }
+
+    public List<RollupRow> findRows(Rollup rollup, Instant from, Instant to, Collection<String> keys) {
+        return repository.findRows(rollup, from, to, keys);
+    }
+
+    public void streamCameraRows(Rollup rollup, Instant from, Instant to, Collection<String> cameraIds,
+                                 Collection<String> districts, int fetchSize, Consumer<RollupRow> handler) {
+        repository.streamCameraRows(rollup, from, to, cameraIds, districts, fetchSize, handler);
+    }
+
+    public List<RollupRow> sumByKey(Rollup minuteRollup, Rollup hourRollup, Instant from, Instant to) {
+        return repository.sumByKey(minuteRollup, hourRollup, from, to);
+    }
+
+    private static long[] countsOf(TrafficMetricsDTO dto) {
+        long[] counts = TrafficRollupRepository.newCounts();
+        counts[TrafficRollupRepository.TOTAL] = dto.getTotalCount();
+        counts[TrafficRollupRepository.SAMPLES] = 1;
+        if (dto.getDetectionDetails() != null) {
+            for (Map.Entry<String, Integer> e : dto.getDetectionDetails().entrySet()) {
+                if (e.getValue() == null) continue;
+                VehicleClass vc = VehicleClass.of(e.getKey());
+                counts[TrafficRollupRepository.classIndex(vc)] += e.getValue();
+                if (vc.isVehicle()) {
+                    counts[TrafficRollupRepository.VEHICLE] += e.getValue();
+                }
+            }
+        }
+        return counts;
+    }
+}
@@ -0,0 +1,104 @@
+package com.traffic_stream.dashboard.service.scheduler;
+
+import com.traffic_stream.dashboard.service.rollup.RollupsReadyEvent;
+import com.traffic_stream.dashboard.service.rollup.RollupsRebuiltEvent;
+import com.traffic_stream.dashboard.service.rollup.TrafficRollupService;
+import com.traffic_stream.dashboard.service.sketch.TrafficSketchService;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+
+/**
+ * Đối soát rollup với dữ liệu thô.
+ * <ul>
+ *     <li>Khởi động: nếu bảng rollup rỗng nhưng traffic_metrics có dữ liệu → backfill theo từng ngày.</li>
+ *     <li>Định kỳ: tính lại N giờ gần nhất để bắt dữ liệu đến muộn hoặc ghi ngoài pipeline (kèm sketch của khoảng đó),
+ *     rồi phát {@link RollupsRebuiltEvent} để ring buffer trong bộ nhớ nạp lại khoảng này.</li>
+ * </ul>
+ */
+@Component
+@DependsOn("databaseSchemaInitializer")
+@Slf4j
+public class RollupReconciliationJob {
+
+    private final TrafficRollupService rollupService;
+    private final ApplicationEventPublisher eventPublisher;
+    private final TrafficSketchService sketchService;
+
+    @Value("${app.rollup.reconcile-window-hours:2}")
+    private int reconcileWindowHours;
+
+    private boolean backfillRequired;
+    private volatile boolean backfillDone;
+
+    public RollupReconciliationJob(TrafficRollupService rollupService, ApplicationEventPublisher eventPublisher,
+                                   TrafficSketchService sketchService) {
+        this.rollupService = rollupService;
+        this.eventPublisher = eventPublisher;
+        this.sketchService = sketchService;
+    }
+
+    /**
+     * Kiểm tra trước khi Kafka listener chạy, vì ingest sẽ ghi vào rollup ngay sau đó.
+     */
+    @PostConstruct
+    public void checkBackfill() {
+        backfillRequired = rollupService.isEmpty();
+    }
+
+    @Async
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfillIfEmpty() {
+        try {
+            if (!backfillRequired) return;
+            Instant[] range = rollupService.findRawTimeRange();
+            if (range == null) return;
+
+            log.info("Rollup tables are empty, backfilling from {} to {}...", range[0], range[1]);
+            long started = System.currentTimeMillis();
+            Instant cursor = range[0].truncatedTo(ChronoUnit.DAYS);
+            Instant end = range[1].plus(1, ChronoUnit.HOURS);
+            int rows = 0;
+            while (cursor.isBefore(end)) {
+                Instant next = cursor.plus(1, ChronoUnit.DAYS);
+                rows += rollupService.rebuild(cursor, next.isBefore(end) ? next : end);
+                cursor = next;
+            }
+            log.info("✓ Rollup backfill done: {} camera-minute rows ({}ms)", rows, System.currentTimeMillis() - started);
+        } catch (Exception e) {
+            log.error("Rollup backfill failed: {}", e.getMessage(), e);
+        } finally {
+            backfillDone = true;
+            eventPublisher.publishEvent(new RollupsReadyEvent());
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app.rollup.reconcile-interval-ms:600000}",
+            initialDelayString = "${app.rollup.reconcile-interval-ms:600000}")
+    public void reconcileRecent() {
+        if (!backfillDone) return;
+        try {
+            long started = System.currentTimeMillis();
+            Instant now = Instant.now();
+            Instant from = now.minus(Duration.ofHours(reconcileWindowHours));
+            int rows = rollupService.rebuild(from, now);
+            eventPublisher.publishEvent(new RollupsRebuiltEvent(from, now));
+            sketchService.resealSince(from);
+            log.info("Rollup reconciliation ({}h): {} camera-minute rows ({}ms)",
+                    reconcileWindowHours, rows, System.currentTimeMillis() - started);
+        } catch (Exception e) {
+            log.error("Rollup reconciliation failed: {}", e.getMessage());
+        }
+    }
+}
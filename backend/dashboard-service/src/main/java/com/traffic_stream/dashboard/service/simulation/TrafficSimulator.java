@@ -0,0 +1,265 @@
+package com.traffic_stream.dashboard.service.simulation;
+
+import com.traffic_stream.dashboard.config.SimulatorProperties;
+import com.traffic_stream.dashboard.dto.TrafficMetricsDTO;
+import com.traffic_stream.dashboard.service.TrafficService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bộ sinh TrafficMetricsDTO giả lập để chạy tải/soak test local (bật bằng APP_SIMULATE=true).
+ * <ul>
+ *     <li>N camera cố định (theo seed), chia vào các quận, mỗi camera có hệ số lưu lượng riêng.</li>
+ *     <li>Đường cong theo giờ trong ngày: 2 đỉnh cao điểm sáng/chiều, thấp vào ban đêm.</li>
+ *     <li>Tỉ lệ loại phương tiện cấu hình được; đợt tăng đột biến (burst) ngẫu nhiên theo quận.</li>
+ * </ul>
+ * Message được phát đều theo tick với tốc độ mục tiêu, tới Kafka hoặc thẳng vào {@link TrafficService}.
+ */
+@Component
+@ConditionalOnProperty(name = "app.simulate", havingValue = "true")
+@Slf4j
+public class TrafficSimulator {
+
+    private static final ZoneId VN_ZONE = ZoneId.of("Asia/Ho_Chi_Minh");
+    private static final DateTimeFormatter VN_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss").withZone(VN_ZONE);
+    private static final long REPORT_INTERVAL_MS = 10_000;
+
+    // Vùng toạ độ TP.HCM [lng, lat]
+    private static final double MIN_LNG = 106.55, MAX_LNG = 106.85;
+    private static final double MIN_LAT = 10.65, MAX_LAT = 11.00;
+
+    private final SimulatorProperties props;
+    private final TrafficService trafficService;
+    private final KafkaTemplate<String, Object> kafkaTemplate;
+    private final Counter sentCounter;
+    private final Random random;
+    private final List<SimCamera> cameras;
+    private final Map<String, Long> burstUntil = new HashMap<>();
+
+    @Value("${spring.kafka.topic.name}")
+    private String topic;
+
+    private ScheduledExecutorService executor;
+    private int cursor;
+    private double carry;
+    private long sentSinceReport;
+    private long lastReport;
+
+    public TrafficSimulator(SimulatorProperties props,
+                            TrafficService trafficService,
+                            KafkaTemplate<String, Object> metricsRetryKafkaTemplate,
+                            MeterRegistry registry) {
+        this.props = props;
+        this.trafficService = trafficService;
+        this.kafkaTemplate = metricsRetryKafkaTemplate;
+        this.sentCounter = registry.counter("traffic.simulator.sent", "target", props.getTarget().name());
+        this.random = new Random(props.getSeed());
+        this.cameras = buildCameras();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        double rate = messagesPerSecond();
+        log.warn("Traffic simulator ENABLED: {} cameras, {} districts, {} msg/s -> {}",
+                cameras.size(), props.getDistricts().size(), String.format("%.1f", rate), props.getTarget());
+
+        lastReport = System.currentTimeMillis();
+        executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "traffic-simulator");
+            t.setDaemon(true);
+            return t;
+        });
+        executor.scheduleAtFixedRate(this::tick, props.getTickMs(), props.getTickMs(), TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    private void tick() {
+        try {
+            long now = System.currentTimeMillis();
+            maybeStartBurst(now);
+
+            carry += messagesPerSecond() * props.getTickMs() / 1000.0;
+            int toSend = (int) carry;
+            carry -= toSend;
+            if (toSend == 0) return;
+
+            double diurnal = diurnalFactor(now);
+            List<TrafficMetricsDTO> batch = new ArrayList<>(toSend);
+            for (int i = 0; i < toSend; i++) {
+                SimCamera camera = cameras.get(cursor);
+                cursor = (cursor + 1) % cameras.size();
+                batch.add(generate(camera, now, diurnal));
+            }
+            emit(batch);
+            report(now, batch.size());
+        } catch (Exception e) {
+            log.error("Simulator tick failed: {}", e.getMessage());
+        }
+    }
+
+    private void emit(List<TrafficMetricsDTO> batch) {
+        if (props.getTarget() == SimulatorProperties.Target.DIRECT) {
+            trafficService.processMetricsBatch(batch);
+        } else {
+            for (TrafficMetricsDTO dto : batch) {
+                kafkaTemplate.send(topic, dto.getCameraId(), dto);
+            }
+        }
+        sentCounter.increment(batch.size());
+    }
+
+    private TrafficMetricsDTO generate(SimCamera camera, long now, double diurnal) {
+        double mean = props.getPeakMeanCount() * camera.weight * diurnal * burstFactor(camera.district, now);
+        // Xấp xỉ Poisson bằng phân phối chuẩn (variance = mean)
+        int total = (int) Math.max(0, Math.round(mean + random.nextGaussian() * Math.sqrt(mean)));
+
+        Map<String, Integer> details = new LinkedHashMap<>();
+        int assigned = 0;
+        String dominant = null;
+        for (Map.Entry<String, Double> e : props.getClassMix().entrySet()) {
+            if (dominant == null) dominant = e.getKey();
+            double expected = total * e.getValue();
+            int n = (int) Math.max(0, Math.round(expected + random.nextGaussian() * Math.sqrt(expected)));
+            n = Math.min(n, total - assigned);
+            if (n > 0) {
+                details.put(e.getKey(), n);
+                assigned += n;
+            }
+        }
+        if (assigned < total && dominant != null) {
+            details.merge(dominant, total - assigned, Integer::sum);
+        }
+
+        // Timestamp tăng dần theo camera để không bị coi là bản ghi trùng (camera_id, timestamp)
+        long ts = Math.max(now, camera.lastTimestamp + 1);
+        camera.lastTimestamp = ts;
+
+        TrafficMetricsDTO dto = new TrafficMetricsDTO();
+        dto.setCameraId(camera.id);
+        dto.setCameraName(camera.name);
+        dto.setDistrict(camera.district);
+        dto.setCoordinates(List.of(camera.lng, camera.lat));
+        dto.setTotalCount(total);
+        dto.setDetectionDetails(details);
+        dto.setTimestamp(ts);
+        dto.setTimestampVn(VN_FORMAT.format(Instant.ofEpochMilli(ts)));
+        return dto;
+    }
+
+    /**
+     * Hệ số theo giờ địa phương: nền ban đêm + 2 đỉnh Gauss (7h30 và 17h30) + mức ban ngày.
+     */
+    private double diurnalFactor(long now) {
+        LocalTime time = Instant.ofEpochMilli(now).atZone(VN_ZONE).toLocalTime();
+        double h = time.toSecondOfDay() / 3600.0;
+        double morning = Math.exp(-Math.pow(h - 7.5, 2) / (2 * 1.2 * 1.2));
+        double evening = Math.exp(-Math.pow(h - 17.5, 2) / (2 * 1.5 * 1.5));
+        double daytime = (h >= 6 && h <= 22) ? 0.55 : 0;
+        double night = props.getNightFactor();
+        return Math.min(1.0, night + (1 - night) * Math.max(daytime, Math.max(morning, evening)));
+    }
+
+    private void maybeStartBurst(long now) {
+        burstUntil.values().removeIf(until -> until <= now);
+        double p = props.getBurstPerMinute() * props.getTickMs() / 60_000.0;
+        if (random.nextDouble() < p) {
+            String district = props.getDistricts().get(random.nextInt(props.getDistricts().size()));
+            burstUntil.put(district, now + props.getBurstDurationSeconds() * 1000);
+            log.info("Simulator burst started in {} for {}s (x{})",
+                    district, props.getBurstDurationSeconds(), props.getBurstMultiplier());
+        }
+    }
+
+    private double burstFactor(String district, long now) {
+        Long until = burstUntil.get(district);
+        return until != null && until > now ? props.getBurstMultiplier() : 1.0;
+    }
+
+    private double messagesPerSecond() {
+        if (props.getRate() > 0) return props.getRate();
+        return cameras.size() * 1000.0 / Math.max(1, props.getCameraIntervalMs());
+    }
+
+    private void report(long now, int sent) {
+        sentSinceReport += sent;
+        if (now - lastReport >= REPORT_INTERVAL_MS) {
+            log.info("Simulator: {} msg/s (burst districts: {})",
+                    sentSinceReport * 1000 / (now - lastReport), burstUntil.keySet());
+            sentSinceReport = 0;
+            lastReport = now;
+        }
+    }
+
+    private List<SimCamera> buildCameras() {
+        List<String> districts = props.getDistricts();
+        if (districts.isEmpty() || props.getCameras() <= 0) {
+            throw new IllegalStateException("app.simulator.cameras and app.simulator.districts must not be empty");
+        }
+
+        // Mỗi quận có một tâm ngẫu nhiên trong vùng TP.HCM, camera rải quanh tâm đó
+        Map<String, double[]> centers = new HashMap<>();
+        for (String d : districts) {
+            centers.put(d, new double[]{
+                    MIN_LNG + random.nextDouble() * (MAX_LNG - MIN_LNG),
+                    MIN_LAT + random.nextDouble() * (MAX_LAT - MIN_LAT)});
+        }
+
+        List<SimCamera> list = new ArrayList<>(props.getCameras());
+        for (int i = 0; i < props.getCameras(); i++) {
+            String district = districts.get(i % districts.size());
+            double[] c = centers.get(district);
+            // Log-normal: vài camera nút giao lớn rất đông, đa số vừa phải
+            double weight = Math.min(3.0, Math.exp(random.nextGaussian() * 0.5 - 0.125));
+            list.add(new SimCamera(
+                    String.format("SIM-%04d", i + 1),
+                    "Camera giả lập " + (i + 1) + " (" + district + ")",
+                    district,
+                    c[0] + random.nextGaussian() * 0.01,
+                    c[1] + random.nextGaussian() * 0.01,
+                    weight));
+        }
+        return list;
+    }
+
+    private static final class SimCamera {
+        final String id;
+        final String name;
+        final String district;
+        final double lng;
+        final double lat;
+        final double weight;
+        long lastTimestamp;
+
+        SimCamera(String id, String name, String district, double lng, double lat, double weight) {
+            this.id = id;
+            this.name = name;
+            this.district = district;
+            this.lng = lng;
+            this.lat = lat;
+            this.weight = weight;
+        }
+    }
+}
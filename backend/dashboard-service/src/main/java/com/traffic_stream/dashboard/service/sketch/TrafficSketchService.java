@@ -0,0 +1,255 @@
+package com.traffic_stream.dashboard.service.sketch;
+
+import com.traffic_stream.dashboard.repository.TrafficSketchRepository;
+import com.traffic_stream.dashboard.repository.TrafficSketchRepository.SketchRow;
+import com.traffic_stream.dashboard.repository.TrafficSketchRepository.SketchTable;
+import com.traffic_stream.dashboard.service.rollup.RollupsReadyEvent;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.datasketches.hll.HllSketch;
+import org.apache.datasketches.hll.Union;
+import org.apache.datasketches.kll.KllDoublesSketch;
+import org.apache.datasketches.memory.Memory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Sketch xấp xỉ theo quận: HLL đếm camera phân biệt, KLL cho phân bố số xe mỗi camera-phút.
+ * <p>
+ * Một camera-phút chỉ chốt được khi phút đã đóng (ingest chia nhỏ theo batch), nên sketch phút được dựng
+ * từ traffic_rollup_camera_minute (do ingest duy trì) sau độ trễ {@code app.sketch.seal-delay-seconds};
+ * sketch giờ là hợp của các sketch phút trong giờ. Đọc một khoảng bất kỳ = hợp sketch giờ (phần nguyên giờ)
+ * với sketch phút ở hai đầu. Dựng lại là ghi đè nên chạy lại (đối soát, backfill) không bị đếm trùng.
+ * </p>
+ */
+@Service
+@Slf4j
+public class TrafficSketchService {
+
+    static final int HLL_LG_K = 12;
+    static final int KLL_K = 200;
+    private static final int WRITE_BATCH = 500;
+
+    private final TrafficSketchRepository repository;
+    private final Duration sealDelay;
+
+    /** Các phút trước mốc này đã có sketch; null = chưa khởi tạo xong. */
+    private volatile Instant sealedUntil;
+
+    public TrafficSketchService(TrafficSketchRepository repository,
+                                @Value("${app.sketch.seal-delay-seconds:120}") long sealDelaySeconds) {
+        this.repository = repository;
+        this.sealDelay = Duration.ofSeconds(sealDelaySeconds);
+    }
+
+    /** Kết quả hợp sketch trên một khoảng. */
+    public static class Merged {
+        private final HllSketch cameras;
+        private final KllDoublesSketch counts;
+
+        Merged(HllSketch cameras, KllDoublesSketch counts) {
+            this.cameras = cameras;
+            this.counts = counts;
+        }
+
+        public HllSketch getCameras() {
+            return cameras;
+        }
+
+        public KllDoublesSketch getCounts() {
+            return counts;
+        }
+    }
+
+    // ------------------------------------------------------------------
+    // Dựng sketch
+    // ------------------------------------------------------------------
+
+    @Async
+    @EventListener(RollupsReadyEvent.class)
+    public void initialize() {
+        try {
+            Instant horizon = sealHorizon();
+            Instant latest = repository.findLatestMinuteBucket();
+            if (latest != null) {
+                Instant from = latest.plus(1, ChronoUnit.MINUTES);
+                if (from.isBefore(horizon)) seal(from, horizon);
+            } else {
+                Instant[] range = repository.findCameraMinuteRange();
+                if (range != null) {
+                    log.info("Sketch tables are empty, backfilling from {} to {}...", range[0], horizon);
+                    long started = System.currentTimeMillis();
+                    seal(range[0], horizon);
+                    log.info("✓ Sketch backfill done ({}ms)", System.currentTimeMillis() - started);
+                }
+            }
+            sealedUntil = horizon;
+        } catch (Exception e) {
+            log.error("Sketch initialization failed: {}", e.getMessage(), e);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app.sketch.seal-interval-ms:60000}")
+    public void sealRecent() {
+        Instant from = sealedUntil;
+        if (from == null) return;
+        Instant horizon = sealHorizon();
+        if (!from.isBefore(horizon)) return;
+        try {
+            seal(from, horizon);
+            sealedUntil = horizon;
+        } catch (Exception e) {
+            log.error("Sketch sealing failed: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Dựng lại sketch từ {@code from} tới mốc đã chốt (gọi sau khi rollup được đối soát lại).
+     */
+    public void resealSince(Instant from) {
+        Instant to = sealedUntil;
+        if (to == null || !from.isBefore(to)) return;
+        seal(from, to);
+    }
+
+    /**
+     * Dựng sketch phút trong [from, to) rồi dựng lại sketch giờ của các giờ bị ảnh hưởng.
+     * Xử lý từng giờ một để bộ nhớ không phụ thuộc độ dài khoảng.
+     */
+    public synchronized void seal(Instant from, Instant to) {
+        Instant cursor = from.truncatedTo(ChronoUnit.MINUTES);
+        while (cursor.isBefore(to)) {
+            Instant hour = cursor.truncatedTo(ChronoUnit.HOURS);
+            Instant next = hour.plus(1, ChronoUnit.HOURS);
+            Instant chunkEnd = next.isBefore(to) ? next : to;
+            buildMinuteSketches(cursor, chunkEnd);
+            buildHourSketches(hour, next);
+            cursor = chunkEnd;
+        }
+    }
+
+    private void buildMinuteSketches(Instant from, Instant to) {
+        List<SketchRow> batch = new ArrayList<>();
+        Accumulator[] current = {null};
+        repository.streamCameraMinutes(from, to, (district, bucket, cameraId, vehicleCount) -> {
+            Accumulator acc = current[0];
+            if (acc == null || !acc.matches(district, bucket)) {
+                if (acc != null) addAndFlush(SketchTable.DISTRICT_MINUTE, batch, acc.toRow());
+                acc = new Accumulator(district, bucket);
+                current[0] = acc;
+            }
+            acc.cameras.update(cameraId);
+            acc.counts.update(vehicleCount);
+        });
+        if (current[0] != null) batch.add(current[0].toRow());
+        repository.upsert(SketchTable.DISTRICT_MINUTE, batch);
+    }
+
+    private void buildHourSketches(Instant from, Instant to) {
+        List<SketchRow> batch = new ArrayList<>();
+        Accumulator[] current = {null};
+        repository.stream(SketchTable.DISTRICT_MINUTE, from, to, null, row -> {
+            Instant hour = row.getBucket().truncatedTo(ChronoUnit.HOURS);
+            Accumulator acc = current[0];
+            if (acc == null || !acc.matches(row.getDistrict(), hour)) {
+                if (acc != null) addAndFlush(SketchTable.DISTRICT_HOUR, batch, acc.toRow());
+                acc = new Accumulator(row.getDistrict(), hour);
+                current[0] = acc;
+            }
+            acc.merge(row);
+        });
+        if (current[0] != null) batch.add(current[0].toRow());
+        repository.upsert(SketchTable.DISTRICT_HOUR, batch);
+    }
+
+    private void addAndFlush(SketchTable table, List<SketchRow> batch, SketchRow row) {
+        batch.add(row);
+        if (batch.size() >= WRITE_BATCH) {
+            repository.upsert(table, batch);
+            batch.clear();
+        }
+    }
+
+    private Instant sealHorizon() {
+        return Instant.now().minus(sealDelay).truncatedTo(ChronoUnit.MINUTES);
+    }
+
+    // ------------------------------------------------------------------
+    // Đọc
+    // ------------------------------------------------------------------
+
+    /**
+     * Hợp sketch trong [from, to) (làm tròn ra phút). district = null → toàn thành phố.
+     */
+    public Merged merge(String district, Instant from, Instant to) {
+        Instant mStart = from.truncatedTo(ChronoUnit.MINUTES);
+        Instant mEnd = ceil(to, ChronoUnit.MINUTES);
+        Instant hStart = ceil(mStart, ChronoUnit.HOURS);
+        Instant hEnd = mEnd.truncatedTo(ChronoUnit.HOURS);
+
+        Accumulator acc = new Accumulator(district, mStart);
+        if (hStart.isBefore(hEnd)) {
+            repository.stream(SketchTable.DISTRICT_MINUTE, mStart, hStart, district, acc::merge);
+            repository.stream(SketchTable.DISTRICT_HOUR, hStart, hEnd, district, acc::merge);
+            repository.stream(SketchTable.DISTRICT_MINUTE, hEnd, mEnd, district, acc::merge);
+        } else {
+            repository.stream(SketchTable.DISTRICT_MINUTE, mStart, mEnd, district, acc::merge);
+        }
+        return new Merged(acc.cameras.getResult(), acc.counts);
+    }
+
+    /**
+     * Số camera phân biệt theo từng giờ trong [from, to) (làm tròn ra giờ), key = đầu giờ.
+     * Giờ không có dữ liệu không xuất hiện trong kết quả.
+     */
+    public Map<Instant, HllSketch> camerasByHour(String district, Instant from, Instant to) {
+        Map<Instant, Union> unions = new LinkedHashMap<>();
+        repository.stream(SketchTable.DISTRICT_HOUR, from.truncatedTo(ChronoUnit.HOURS), ceil(to, ChronoUnit.HOURS),
+                district, row -> unions.computeIfAbsent(row.getBucket(), b -> new Union(HLL_LG_K))
+                        .update(HllSketch.heapify(row.getCameras())));
+        Map<Instant, HllSketch> result = new LinkedHashMap<>();
+        unions.forEach((bucket, union) -> result.put(bucket, union.getResult()));
+        return result;
+    }
+
+    private static Instant ceil(Instant t, ChronoUnit unit) {
+        Instant floor = t.truncatedTo(unit);
+        return floor.equals(t) ? t : floor.plus(1, unit);
+    }
+
+    /** Sketch đang dựng cho một (quận, bucket): nhận cả giá trị thô lẫn sketch đã serialize. */
+    private static final class Accumulator {
+        private final String district;
+        private final Instant bucket;
+        private final Union cameras = new Union(HLL_LG_K);
+        private final KllDoublesSketch counts = KllDoublesSketch.newHeapInstance(KLL_K);
+
+        Accumulator(String district, Instant bucket) {
+            this.district = district;
+            this.bucket = bucket;
+        }
+
+        boolean matches(String district, Instant bucket) {
+            return this.district.equals(district) && this.bucket.equals(bucket);
+        }
+
+        void merge(SketchRow row) {
+            cameras.update(HllSketch.heapify(row.getCameras()));
+            counts.merge(KllDoublesSketch.heapify(Memory.wrap(row.getCounts())));
+        }
+
+        SketchRow toRow() {
+            return new SketchRow(district, bucket, cameras.getResult().toCompactByteArray(), counts.toByteArray());
+        }
+    }
+}
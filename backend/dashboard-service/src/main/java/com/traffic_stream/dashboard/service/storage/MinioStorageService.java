@@ -1,16 +1,15 @@
 package com.traffic_stream.dashboard.service.storage;
 
 import com.traffic_stream.dashboard.entity.ReportJob;
-import io.minio.BucketExistsArgs;
-import io.minio.MakeBucketArgs;
 import io.minio.MinioClient;
 import io.minio.PutObjectArgs;
+import io.minio.StatObjectArgs;
+import io.minio.errors.ErrorResponseException;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
-import java.io.File;
-import java.io.FileInputStream;
+import java.io.ByteArrayInputStream;
 import java.io.InputStream;
 import java.time.Instant;
 import java.time.ZoneId;
@@ -23,64 +22,68 @@ import java.time.format.DateTimeFormatter;
 public class MinioStorageService {
 
     private final MinioClient minioClient;
+    private final MinioBucketInitializer bucketInitializer;
 
 
-    public String uploadReportFile(File file, ReportJob job, String bucket) throws Exception {
+    /**
+     * Upload PDF đã dựng trong bộ nhớ. Bucket được tạo một lần lúc khởi động (MinioBucketInitializer), nên không
+     * kiểm tra lại mỗi lần upload; chỉ khi MinIO báo NoSuchBucket (vd. lúc khởi động MinIO chưa sẵn sàng)
+     * mới tạo bucket rồi thử lại một lần.
+     */
+    public String uploadReportFile(byte[] pdf, ReportJob job, String bucket) throws Exception {
         log.info("Starting MinIO upload for job {}, bucket: {}", job.getId(), bucket);
 
-        // Ensure bucket exists
-        ensureBucketExists(bucket);
-
         String year = DateTimeFormatter.ofPattern("yyyy").withZone(ZoneId.systemDefault()).format(Instant.now());
         String month = DateTimeFormatter.ofPattern("MM").withZone(ZoneId.systemDefault()).format(Instant.now());
 
         String objectName = String.format("reports/%s/%s/traffic_report_%s.pdf", year, month, job.getId());
-        log.info("Object name: {}, file size: {} bytes", objectName, file.length());
+        log.info("Object name: {}, file size: {} bytes", objectName, pdf.length);
 
-        try (FileInputStream fis = new FileInputStream(file)) {
-            log.info("Uploading to MinIO bucket: {}, object: {}", bucket, objectName);
-            minioClient.putObject(
-                    PutObjectArgs.builder()
-                            .bucket(bucket)
-                            .object(objectName)
-                            .stream(fis, file.length(), -1)
-                            .contentType("application/pdf")
-                            .build()
-            );
-            log.info("Successfully uploaded to MinIO: {}", objectName);
+        try {
+            putPdf(bucket, objectName, pdf);
+        } catch (ErrorResponseException e) {
+            if (!"NoSuchBucket".equals(e.errorResponse().code())) {
+                log.error("Failed to upload to MinIO: {}", e.getMessage(), e);
+                throw e;
+            }
+            log.warn("Bucket {} does not exist, creating it and retrying upload", bucket);
+            bucketInitializer.createBucketIfNotExists(bucket);
+            putPdf(bucket, objectName, pdf);
         } catch (Exception e) {
             log.error("Failed to upload to MinIO: {}", e.getMessage(), e);
             throw e;
         }
+        log.info("Successfully uploaded to MinIO: {}", objectName);
 
         // return object path or presigned URL if you prefer
         return objectName; // store object path in DB; download API will stream
     }
 
+    private void putPdf(String bucket, String objectName, byte[] pdf) throws Exception {
+        minioClient.putObject(
+                PutObjectArgs.builder()
+                        .bucket(bucket)
+                        .object(objectName)
+                        .stream(new ByteArrayInputStream(pdf), pdf.length, -1)
+                        .contentType("application/pdf")
+                        .build()
+        );
+    }
+
     /**
-     * Kiểm tra và tạo bucket nếu chưa tồn tại
+     * Object còn trong bucket không (HEAD, không tải nội dung). Lỗi khác NoSuchKey được ném lại.
      */
-    private void ensureBucketExists(String bucketName) throws Exception {
+    public boolean objectExists(String objectName, String bucket) throws Exception {
         try {
-            boolean exists = minioClient.bucketExists(
-                    BucketExistsArgs.builder()
-                            .bucket(bucketName)
-                            .build()
-            );
-
-            if (!exists) {
-                log.warn("Bucket {} does not exist, creating it now...", bucketName);
-                minioClient.makeBucket(
-                        MakeBucketArgs.builder()
-                                .bucket(bucketName)
-                                .build()
-                );
-                log.info("Successfully created bucket: {}", bucketName);
-            } else {
-                log.debug("Bucket {} already exists", bucketName);
+            minioClient.statObject(StatObjectArgs.builder()
+                    .bucket(bucket)
+                    .object(objectName)
+                    .build());
+            return true;
+        } catch (ErrorResponseException e) {
+            if ("NoSuchKey".equals(e.errorResponse().code())) {
+                return false;
             }
-        } catch (Exception e) {
-            log.error("Failed to ensure bucket exists: {}", bucketName, e);
             throw e;
         }
     }
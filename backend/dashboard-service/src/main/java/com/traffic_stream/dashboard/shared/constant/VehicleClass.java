@@ -0,0 +1,75 @@
+package com.traffic_stream.dashboard.shared.constant;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Các loại đối tượng trong detection_details (key do traffic-analysis-service sinh ra).
+ * <p>
+ * Mỗi loại ứng với 1 cột trong các bảng rollup. Key lạ (train, ...) được gom vào OTHER.
+ * Chỉ khớp đúng tên key như cách đếm cũ trên traffic_metrics: "motorbike"/"motobike" không phải alias của
+ * MOTORCYCLE mà tính vào other, để số liệu rollup khớp với báo cáo/dữ liệu lịch sử.
+ * Nhóm hiển thị trên dashboard chỉ có 4 loại: car, motorcycle, truck, other; PERSON không tính là xe.
+ * </p>
+ */
+public enum VehicleClass {
+
+    CAR("car", "car"),
+    MOTORCYCLE("motorcycle", "motorcycle"),
+    TRUCK("truck", "truck"),
+    BUS("bus", "other"),
+    BICYCLE("bicycle", "other"),
+    PERSON("person", null),
+    OTHER("other", "other");
+
+    private static final Map<String, VehicleClass> LOOKUP = new HashMap<>();
+
+    static {
+        for (VehicleClass vc : values()) {
+            for (String alias : vc.aliases) {
+                LOOKUP.put(alias, vc);
+            }
+        }
+    }
+
+    private final String column;
+    private final String summaryType;
+    private final List<String> aliases;
+
+    VehicleClass(String column, String summaryType, String... extraAliases) {
+        this.column = column;
+        this.summaryType = summaryType;
+        List<String> all = new ArrayList<>(List.of(extraAliases));
+        all.add(0, column);
+        this.aliases = List.copyOf(all);
+    }
+
+    /**
+     * Tra loại từ key thô (không phân biệt hoa thường). Key null/lạ → OTHER.
+     */
+    public static VehicleClass of(String rawType) {
+        if (rawType == null) return OTHER;
+        return LOOKUP.getOrDefault(rawType.toLowerCase(Locale.ROOT), OTHER);
+    }
+
+    /** Tên cột trong bảng rollup. */
+    public String getColumn() {
+        return column;
+    }
+
+    /** Nhóm hiển thị (car / motorcycle / truck / other), null nếu không phải phương tiện. */
+    public String getSummaryType() {
+        return summaryType;
+    }
+
+    public boolean isVehicle() {
+        return this != PERSON;
+    }
+
+    public List<String> getAliases() {
+        return aliases;
+    }
+}
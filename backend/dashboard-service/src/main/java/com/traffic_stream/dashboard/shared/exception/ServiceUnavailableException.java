@@ -0,0 +1,18 @@
+package com.traffic_stream.dashboard.shared.exception;
+
+/**
+ * Dữ liệu phục vụ request chưa sẵn sàng (đang nạp lúc khởi động...): trả 503 kèm Retry-After.
+ */
+public class ServiceUnavailableException extends RuntimeException {
+
+    private final long retryAfterSeconds;
+
+    public ServiceUnavailableException(String message, long retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
@@ -18,6 +18,7 @@ public class ReportJobMapper {
                 .districts(createReportRequest.getDistricts() == null ? null : createReportRequest.getDistricts())
                 .cameras(createReportRequest.getCameras() == null ? null : createReportRequest.getCameras())
                 .executeAt(createReportRequest.getExecuteAt() == null ? Instant.now() : createReportRequest.getExecuteAt())
+                .useCache(createReportRequest.getUseCache() == null || createReportRequest.getUseCache())
                 .fileUrl(null)
                 .build();
     }
@@ -65,10 +65,11 @@ public class FormatRestResponse implements ResponseBodyAdvice<Object> {
 
         String path = request.getURI().getPath();
 
-        // Skip Swagger/OpenAPI
+        // Skip Swagger/OpenAPI and actuator endpoints
         if (path.startsWith("/v3/api-docs")
                 || path.startsWith("/swagger-ui")
-                || path.startsWith("/swagger-ui.html")) {
+                || path.startsWith("/swagger-ui.html")
+                || path.startsWith("/actuator")) {
             return body;
         }
 
@@ -0,0 +1,33 @@
+package com.traffic_stream.dashboard.shared.utils;
+
+import org.springframework.kafka.KafkaException;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+public class KafkaSendHelper {
+
+    /**
+     * Chờ mọi lệnh KafkaTemplate.send() được broker xác nhận trước khi commit offset.
+     * Ném KafkaException nếu có lệnh lỗi hoặc quá timeout, để offset không được commit và batch được xử lý lại.
+     */
+    public static void awaitAll(List<? extends CompletableFuture<?>> sends, Duration timeout, String what) {
+        if (sends.isEmpty()) return;
+        try {
+            CompletableFuture.allOf(sends.toArray(new CompletableFuture<?>[0]))
+                    .get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new KafkaException("Interrupted while sending " + sends.size() + " record(s) to " + what, e);
+        } catch (ExecutionException e) {
+            throw new KafkaException("Failed to send record(s) to " + what, e.getCause());
+        } catch (TimeoutException e) {
+            throw new KafkaException("Timed out after " + timeout.toMillis() + "ms sending "
+                    + sends.size() + " record(s) to " + what, e);
+        }
+    }
+}
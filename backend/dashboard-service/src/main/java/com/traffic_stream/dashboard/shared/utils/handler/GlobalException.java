@@ -2,7 +2,9 @@ package com.traffic_stream.dashboard.shared.utils.handler;
 
 import com.traffic_stream.dashboard.dto.ApiResponse;
 import com.traffic_stream.dashboard.shared.exception.ResourceNotFoundException;
+import com.traffic_stream.dashboard.shared.exception.ServiceUnavailableException;
 import jakarta.validation.ConstraintViolationException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.http.converter.HttpMessageNotReadableException;
@@ -79,6 +81,24 @@ public class GlobalException {
         return ResponseEntity.badRequest().body(res);
     }
 
+    /**
+     * Data needed by the request is still loading (e.g. camera registry at startup): HTTP 503 with Retry-After.
+     */
+    @ExceptionHandler(ServiceUnavailableException.class)
+    public ResponseEntity<ApiResponse<Object>> handleServiceUnavailable(ServiceUnavailableException ex) {
+
+        ApiResponse<Object> res = new ApiResponse<>();
+        res.setSuccess(false);
+        res.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+        res.setMessage(ex.getMessage());
+        res.setCode("SERVICE_UNAVAILABLE");
+        res.setTimestamp(Instant.now());
+
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(ex.getRetryAfterSeconds()))
+                .body(res);
+    }
+
     /**
      * Handle unexpected/unhandled exceptions and return HTTP 500.
      */
@@ -0,0 +1,48 @@
+package com.traffic_stream.dashboard.web;
+
+import com.traffic_stream.dashboard.dto.DeadLetterReplayResultDTO;
+import com.traffic_stream.dashboard.dto.ReplayResultDTO;
+import com.traffic_stream.dashboard.service.replay.DeadLetterReplayService;
+import com.traffic_stream.dashboard.service.replay.TrafficMetricsReplayService;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.time.Instant;
+
+@RestController
+@RequestMapping("/api/admin")
+@CrossOrigin(originPatterns = "*")
+public class AdminController {
+
+    private final TrafficMetricsReplayService replayService;
+    private final DeadLetterReplayService deadLetterReplayService;
+
+    public AdminController(TrafficMetricsReplayService replayService,
+                           DeadLetterReplayService deadLetterReplayService) {
+        this.replayService = replayService;
+        this.deadLetterReplayService = deadLetterReplayService;
+    }
+
+    /**
+     * Replay traffic_metrics_topic trong khoảng [from, to) vào DB.
+     * Insert idempotent nên có thể chạy lại nhiều lần an toàn.
+     * Endpoint: POST /api/admin/replay?from=2025-12-01T00:00:00Z&to=2025-12-01T01:00:00Z
+     */
+    @PostMapping("/replay")
+    public ResponseEntity<ReplayResultDTO> replay(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant from,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant to) {
+        return ResponseEntity.ok(replayService.replay(from, to));
+    }
+
+    /**
+     * Replay các record trong dead-letter topic (sau khi đã sửa nguyên nhân lỗi).
+     * Record vẫn lỗi được đưa lại vào DLT.
+     * Endpoint: POST /api/admin/dlt/replay
+     */
+    @PostMapping("/dlt/replay")
+    public ResponseEntity<DeadLetterReplayResultDTO> replayDeadLetters() {
+        return ResponseEntity.ok(deadLetterReplayService.replay());
+    }
+}
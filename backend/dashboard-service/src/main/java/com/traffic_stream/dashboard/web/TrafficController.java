@@ -1,26 +1,50 @@
 package com.traffic_stream.dashboard.web;
 
 import com.traffic_stream.dashboard.dto.CameraDTO;
+import com.traffic_stream.dashboard.dto.CameraLocationDTO;
+import com.traffic_stream.dashboard.dto.DistinctCountDTO;
 import com.traffic_stream.dashboard.dto.DistrictDTO;
+import com.traffic_stream.dashboard.dto.PercentileSummaryDTO;
 import com.traffic_stream.dashboard.entity.TrafficMetric;
+import com.traffic_stream.dashboard.dto.TrafficMetricPageDTO;
 import com.traffic_stream.dashboard.service.TrafficService;
+import com.traffic_stream.dashboard.service.export.TrafficMetricExportService;
+import com.traffic_stream.dashboard.service.heatmap.HeatmapTileService;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import com.traffic_stream.dashboard.dto.DistrictDailySummaryDTO;
 import com.traffic_stream.dashboard.dto.VehicleTypeRatioDTO;
 
+import java.io.BufferedOutputStream;
+import java.io.OutputStream;
+import java.time.LocalDate;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.zip.GZIPOutputStream;
 
 @RestController
 @RequestMapping("/api/traffic")
 @CrossOrigin(originPatterns = "*")
 public class TrafficController {
 
+    private static final int EXPORT_BUFFER_SIZE = 64 * 1024;
+
     private final TrafficService trafficService;
+    private final TrafficMetricExportService exportService;
+    private final HeatmapTileService heatmapTileService;
 
-    public TrafficController(TrafficService trafficService) {
+    public TrafficController(TrafficService trafficService,
+                             TrafficMetricExportService exportService,
+                             HeatmapTileService heatmapTileService) {
         this.trafficService = trafficService;
+        this.exportService = exportService;
+        this.heatmapTileService = heatmapTileService;
     }
 
     /**
@@ -68,6 +92,57 @@ public class TrafficController {
         return ResponseEntity.ok(metrics);
     }
 
+    /**
+     * API 3 (phân trang keyset): giống /by-date nhưng trả về từng trang, sắp theo (timestamp, id)
+     * Lọc (optional): ?date=YYYY-MM-DD, ?cameraId=Id
+     * Phân trang: ?limit=1000 (tối đa 5000), ?cursor=<nextCursor của trang trước>
+     * Endpoint: GET /api/traffic/by-date/page
+     */
+    @GetMapping("/by-date/page")
+    public ResponseEntity<TrafficMetricPageDTO> getMetricsByDatePage(
+            @RequestParam(required = false) String date,
+            @RequestParam(required = false) String cameraId,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer limit) {
+        return ResponseEntity.ok(trafficService.getMetricsByDatePage(date, cameraId, cursor, limit));
+    }
+
+    /**
+     * API 3 (xuất file): stream toàn bộ bản ghi của ngày dạng NDJSON (mặc định) hoặc CSV
+     * Không bọc ApiResponse; nén gzip nếu client gửi Accept-Encoding: gzip
+     * Endpoint: GET /api/traffic/by-date/export?date=2025-10-30&format=csv
+     */
+    @GetMapping("/by-date/export")
+    public ResponseEntity<StreamingResponseBody> exportMetricsByDate(
+            @RequestParam(required = false) String date,
+            @RequestParam(required = false) String cameraId,
+            @RequestParam(required = false) String format,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+        TrafficMetricExportService.Format exportFormat = TrafficMetricExportService.Format.of(format);
+        LocalDate day = exportService.resolveDate(date);
+        boolean gzip = acceptEncoding != null && acceptEncoding.toLowerCase(Locale.ROOT).contains("gzip");
+
+        StreamingResponseBody body = out -> {
+            OutputStream target = gzip ? new GZIPOutputStream(out, EXPORT_BUFFER_SIZE) : out;
+            OutputStream buffered = new BufferedOutputStream(target, EXPORT_BUFFER_SIZE);
+            exportService.export(day, cameraId, exportFormat, buffered);
+            buffered.flush();
+            if (target instanceof GZIPOutputStream gz) {
+                gz.finish();
+            }
+        };
+
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(exportFormat.getContentType() + ";charset=UTF-8"))
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"traffic-metrics-" + day
+                        + "." + exportFormat.getExtension() + "\"")
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (gzip) {
+            response.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+        return response.body(body);
+    }
+
     /**
      * API 4 (CHO CHART 24H): Lấy tổng count theo giờ
      * Lọc (optional): ?date=YYYY-MM-DD (Mặc định là hôm nay)
@@ -128,6 +203,50 @@ public class TrafficController {
         return ResponseEntity.ok(cameras);
     }
 
+    /**
+     * API 7b: Camera trong khung nhìn bản đồ (kèm số xe mới nhất)
+     * Endpoint: GET /api/traffic/cameras/within?minLat=10.76&minLng=106.69&maxLat=10.79&maxLng=106.72
+     */
+    @GetMapping("/cameras/within")
+    public ResponseEntity<List<CameraLocationDTO>> getCamerasWithin(
+            @RequestParam double minLat,
+            @RequestParam double minLng,
+            @RequestParam double maxLat,
+            @RequestParam double maxLng,
+            @RequestParam(required = false) Integer limit) {
+        return ResponseEntity.ok(trafficService.getCamerasWithin(minLat, minLng, maxLat, maxLng, limit));
+    }
+
+    /**
+     * API 7c: k camera gần một điểm nhất
+     * Endpoint: GET /api/traffic/cameras/nearest?lat=10.7736&lng=106.7040&k=10&maxDistance=2000
+     */
+    @GetMapping("/cameras/nearest")
+    public ResponseEntity<List<CameraLocationDTO>> getNearestCameras(
+            @RequestParam double lat,
+            @RequestParam double lng,
+            @RequestParam(required = false) Integer k,
+            @RequestParam(required = false) Double maxDistance) {
+        return ResponseEntity.ok(trafficService.getNearestCameras(lat, lng, k, maxDistance));
+    }
+
+    /**
+     * API 7d: Tile heatmap (Web Mercator z/x/y) tổng số xe theo ô, mã hóa nhị phân run-length
+     * Endpoint: GET /api/traffic/heatmap/12/3249/1923?date=2025-12-01&hour=8
+     * Trả về Resource (như tải PDF) để FormatRestResponse không bọc byte nhị phân vào ApiResponse.
+     */
+    @GetMapping(value = "/heatmap/{z}/{x}/{y}", produces = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public ResponseEntity<Resource> getHeatmapTile(
+            @PathVariable int z,
+            @PathVariable int x,
+            @PathVariable int y,
+            @RequestParam(required = false) String date,
+            @RequestParam(required = false) Integer hour) {
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                .body(new ByteArrayResource(heatmapTileService.getTile(z, x, y, date, hour)));
+    }
+
     /**
      * API 8: Lấy số lượng xe kỷ lục (Max Count)
      * Endpoint: GET /api/traffic/camera/{cameraId}/max-count
@@ -177,4 +296,42 @@ public class TrafficController {
         return ResponseEntity.ok(summary);
     }
 
-}
\ No newline at end of file
+
+    /**
+     * API Sketch: phân vị số xe mỗi camera-phút (xấp xỉ)
+     * Lọc (optional): ?district=..., ?start=..., ?end=... (mặc định 24h qua), ?quantiles=0.5,0.95,0.99
+     * Endpoint: GET /api/traffic/percentiles/camera-minute?district=Quận 1&quantiles=0.95
+     */
+    @GetMapping("/percentiles/camera-minute")
+    public ResponseEntity<PercentileSummaryDTO> getCameraMinutePercentiles(
+            @RequestParam(required = false) String start,
+            @RequestParam(required = false) String end,
+            @RequestParam(required = false) String district,
+            @RequestParam(required = false) String quantiles) {
+        return ResponseEntity.ok(trafficService.getCameraMinutePercentiles(start, end, district, quantiles));
+    }
+
+    /**
+     * API Sketch: số camera phân biệt có dữ liệu trong khoảng (xấp xỉ)
+     * Endpoint: GET /api/traffic/distinct-cameras?district=Quận 1&start=2025-12-01&end=2025-12-07
+     */
+    @GetMapping("/distinct-cameras")
+    public ResponseEntity<DistinctCountDTO> getDistinctCameras(
+            @RequestParam(required = false) String start,
+            @RequestParam(required = false) String end,
+            @RequestParam(required = false) String district) {
+        return ResponseEntity.ok(trafficService.getDistinctCameraCount(start, end, district));
+    }
+
+    /**
+     * API Sketch: số camera hoạt động theo từng giờ
+     * Endpoint: GET /api/traffic/distinct-cameras/hourly?district=Quận 1&start=2025-12-01&end=2025-12-02
+     */
+    @GetMapping("/distinct-cameras/hourly")
+    public ResponseEntity<Map<String, Long>> getActiveCamerasHourly(
+            @RequestParam(required = false) String start,
+            @RequestParam(required = false) String end,
+            @RequestParam(required = false) String district) {
+        return ResponseEntity.ok(trafficService.getActiveCamerasHourly(start, end, district));
+    }
+}
@@ -0,0 +1,45 @@
+package com.traffic_stream.dashboard;
+
+import io.minio.MinioClient;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.kafka.test.EmbeddedKafkaBroker;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.DockerClientFactory;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+/**
+ * Nền chung cho test tích hợp cần PostgreSQL thật (ON CONFLICT, upsert rollup, pg_indexes...).
+ * <p>
+ * Một container dùng chung cho mọi lớp con; máy không có Docker thì các test này được bỏ qua.
+ * Kafka trỏ tới broker của {@code @EmbeddedKafka} nếu lớp con khai báo, ngược lại tới cổng không tồn tại
+ * (listener chỉ log cảnh báo). MinIO được mock.
+ * </p>
+ */
+@SpringBootTest
+@Testcontainers(disabledWithoutDocker = true)
+public abstract class PostgresIntegrationTest {
+
+    protected static final PostgreSQLContainer<?> POSTGRES = new PostgreSQLContainer<>("postgres:15-alpine");
+
+    static {
+        if (DockerClientFactory.instance().isDockerAvailable()) {
+            POSTGRES.start();
+        }
+    }
+
+    @MockBean
+    protected MinioClient minioClient;
+
+    @DynamicPropertySource
+    static void postgresProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", POSTGRES::getJdbcUrl);
+        registry.add("spring.datasource.username", POSTGRES::getUsername);
+        registry.add("spring.datasource.password", POSTGRES::getPassword);
+        registry.add("spring.kafka.bootstrap-servers",
+                () -> System.getProperty(EmbeddedKafkaBroker.SPRING_EMBEDDED_KAFKA_BROKERS, "localhost:1"));
+        registry.add("app.simulate", () -> "false");
+    }
+}
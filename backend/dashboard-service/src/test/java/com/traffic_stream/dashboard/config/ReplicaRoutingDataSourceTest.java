@@ -0,0 +1,91 @@
+package com.traffic_stream.dashboard.config;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.postgresql.ds.PGSimpleDataSource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import javax.sql.DataSource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Định tuyến đọc/ghi trên 2 PostgreSQL thật (mỗi bên có bảng node ghi tên của mình).
+ * Bỏ qua khi máy không có Docker.
+ */
+@Testcontainers(disabledWithoutDocker = true)
+class ReplicaRoutingDataSourceTest {
+
+    @Container
+    private static final PostgreSQLContainer<?> PRIMARY = new PostgreSQLContainer<>("postgres:15-alpine");
+
+    @Container
+    private static final PostgreSQLContainer<?> REPLICA = new PostgreSQLContainer<>("postgres:15-alpine");
+
+    @BeforeAll
+    static void markNodes() {
+        for (PostgreSQLContainer<?> db : new PostgreSQLContainer<?>[]{PRIMARY, REPLICA}) {
+            JdbcTemplate jdbc = new JdbcTemplate(dataSource(db));
+            jdbc.execute("CREATE TABLE node (name TEXT)");
+            jdbc.update("INSERT INTO node VALUES (?)", db == PRIMARY ? "primary" : "replica");
+        }
+    }
+
+    @Test
+    void readOnlyTransactionsGoToReplicaAndWritesToPrimary() {
+        ReplicaRoutingDataSource routing = new ReplicaRoutingDataSource(dataSource(PRIMARY), dataSource(REPLICA));
+
+        assertThat(nodeOf(routing, true)).isEqualTo("replica");
+        assertThat(nodeOf(routing, false)).isEqualTo("primary");
+        assertThat(routing.isReplicaAvailable()).isTrue();
+    }
+
+    @Test
+    void lagMonitorKeepsHealthyReplicaEnabled() {
+        ReplicaRoutingDataSource routing = new ReplicaRoutingDataSource(dataSource(PRIMARY), dataSource(REPLICA));
+        routing.markUnavailable("test");
+
+        new ReplicaLagMonitor(routing, new SimpleMeterRegistry(), 30).checkReplica();
+
+        assertThat(routing.isReplicaAvailable()).isTrue();
+        assertThat(nodeOf(routing, true)).isEqualTo("replica");
+    }
+
+    @Test
+    void unreachableReplicaFallsBackToPrimary() {
+        ReplicaRoutingDataSource routing = new ReplicaRoutingDataSource(dataSource(PRIMARY), unreachable());
+
+        assertThat(nodeOf(routing, true)).isEqualTo("primary");
+        assertThat(routing.isReplicaAvailable()).isFalse();
+    }
+
+    private static String nodeOf(ReplicaRoutingDataSource routing, boolean readOnly) {
+        // Giống cấu hình thật: proxy lùi việc lấy connection tới câu lệnh đầu tiên (sau khi cờ read-only đã gắn)
+        DataSource lazy = new LazyConnectionDataSourceProxy(routing);
+        TransactionTemplate tx = new TransactionTemplate(new DataSourceTransactionManager(lazy));
+        tx.setReadOnly(readOnly);
+        return tx.execute(status -> new JdbcTemplate(lazy).queryForObject("SELECT name FROM node", String.class));
+    }
+
+    private static DataSource dataSource(PostgreSQLContainer<?> db) {
+        PGSimpleDataSource ds = new PGSimpleDataSource();
+        ds.setUrl(db.getJdbcUrl());
+        ds.setUser(db.getUsername());
+        ds.setPassword(db.getPassword());
+        return ds;
+    }
+
+    private static DataSource unreachable() {
+        PGSimpleDataSource ds = new PGSimpleDataSource();
+        ds.setUrl("jdbc:postgresql://127.0.0.1:1/none");
+        ds.setConnectTimeout(1);
+        return ds;
+    }
+}
@@ -0,0 +1,58 @@
+package com.traffic_stream.dashboard.config;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+/**
+ * Fallback về primary khi replica không cấp được connection, cho cả 2 biến thể getConnection.
+ */
+class ReplicaRoutingFallbackTest {
+
+    private final DataSource primary = mock(DataSource.class);
+    private final DataSource replica = mock(DataSource.class);
+    private final Connection primaryConnection = mock(Connection.class);
+    private final ReplicaRoutingDataSource routing = new ReplicaRoutingDataSource(primary, replica);
+
+    @BeforeEach
+    void readOnlyTransaction() {
+        TransactionSynchronizationManager.setActualTransactionActive(true);
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+    }
+
+    @AfterEach
+    void clearTransaction() {
+        TransactionSynchronizationManager.setActualTransactionActive(false);
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(false);
+    }
+
+    @Test
+    void getConnectionFallsBackToPrimary() throws Exception {
+        when(replica.getConnection()).thenThrow(new SQLException("replica down"));
+        when(primary.getConnection()).thenReturn(primaryConnection);
+
+        assertThat(routing.getConnection()).isSameAs(primaryConnection);
+        assertThat(routing.isReplicaAvailable()).isFalse();
+    }
+
+    @Test
+    void getConnectionWithCredentialsFallsBackToPrimary() throws Exception {
+        when(replica.getConnection("reader", "secret")).thenThrow(new SQLException("replica down"));
+        when(primary.getConnection("reader", "secret")).thenReturn(primaryConnection);
+
+        assertThat(routing.getConnection("reader", "secret")).isSameAs(primaryConnection);
+        assertThat(routing.isReplicaAvailable()).isFalse();
+
+        // Replica đã bị đánh dấu không dùng được: lần sau đi thẳng vào primary
+        routing.getConnection("reader", "secret");
+        verify(replica, times(1)).getConnection("reader", "secret");
+    }
+}
@@ -0,0 +1,83 @@
+package com.traffic_stream.dashboard.consumer;
+
+import com.traffic_stream.dashboard.dto.TrafficMetricsDTO;
+import com.traffic_stream.dashboard.service.TrafficService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.CannotGetJdbcConnectionException;
+import org.springframework.kafka.KafkaException;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class TrafficMetricsConsumerTest {
+
+    private TrafficService trafficService;
+    private KafkaTemplate<String, Object> template;
+    private TrafficMetricsConsumer consumer;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        trafficService = mock(TrafficService.class);
+        template = mock(KafkaTemplate.class);
+        consumer = new TrafficMetricsConsumer(trafficService, template, new TrafficConsumerMetrics(new SimpleMeterRegistry()));
+        ReflectionTestUtils.setField(consumer, "retryTopic", "metrics-retry");
+        ReflectionTestUtils.setField(consumer, "dltTopic", "metrics-dlt");
+        ReflectionTestUtils.setField(consumer, "sendTimeoutMs", 1000L);
+    }
+
+    @Test
+    void infrastructureFailureIsRethrownWithoutTouchingRetryTopic() {
+        doThrow(new CannotGetJdbcConnectionException("db down")).when(trafficService).processMetricsBatch(anyList());
+
+        assertThatThrownBy(() -> consumer.consumeTrafficMetricsBatch(records(4)))
+                .isInstanceOf(KafkaException.class);
+
+        verify(trafficService, never()).persistMetricsBatch(anyList());
+        verifyNoInteractions(template);
+    }
+
+    @Test
+    void poisonRecordIsSentToRetryAndAwaited() {
+        List<ConsumerRecord<String, TrafficMetricsDTO>> records = records(2);
+        doThrow(new DataIntegrityViolationException("bad row")).when(trafficService).processMetricsBatch(anyList());
+        when(trafficService.persistMetricsBatch(anyList())).thenAnswer(inv -> {
+            List<TrafficMetricsDTO> half = inv.getArgument(0);
+            if (half.contains(records.get(1).value())) throw new DataIntegrityViolationException("bad row");
+            return half.size();
+        });
+        CompletableFuture<SendResult<String, Object>> failed = new CompletableFuture<>();
+        failed.completeExceptionally(new IllegalStateException("broker unavailable"));
+        when(template.send(eq("metrics-retry"), any(), any())).thenReturn(failed);
+
+        // Gửi sang retry topic lỗi → listener phải ném lỗi để offset không được commit
+        assertThatThrownBy(() -> consumer.consumeTrafficMetricsBatch(records))
+                .isInstanceOf(KafkaException.class)
+                .hasMessageContaining("metrics-retry");
+
+        verify(template).send(eq("metrics-retry"), eq("cam-1"), same(records.get(1).value()));
+    }
+
+    private List<ConsumerRecord<String, TrafficMetricsDTO>> records(int n) {
+        List<ConsumerRecord<String, TrafficMetricsDTO>> list = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            TrafficMetricsDTO dto = new TrafficMetricsDTO();
+            dto.setCameraId("cam-" + i);
+            dto.setTimestamp(1_700_000_000_000L + i);
+            list.add(new ConsumerRecord<>("metrics", 0, i, "cam-" + i, dto));
+        }
+        return list;
+    }
+}
@@ -0,0 +1,90 @@
+package com.traffic_stream.dashboard.repository;
+
+import com.traffic_stream.dashboard.PostgresIntegrationTest;
+import com.traffic_stream.dashboard.entity.TrafficMetric;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Phân trang keyset của API 3: con trỏ (timestamp, id) phải là cận của index scan trên idx_traffic_time_id
+ * (không phải Filter sau khi quét từ :start), và duyệt hết các trang không bỏ sót/lặp bản ghi cùng timestamp.
+ */
+class TrafficMetricPageQueryTest extends PostgresIntegrationTest {
+
+    private static final Instant DAY = Instant.parse("2025-01-01T00:00:00Z");
+    private static final int ROWS = 50_000;
+
+    @Autowired
+    private TrafficMetricRepository repository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private NamedParameterJdbcTemplate namedJdbc;
+
+    @BeforeEach
+    void seed() {
+        jdbcTemplate.execute("TRUNCATE traffic_metrics");
+        // Mỗi giây 50 camera → nhiều bản ghi trùng timestamp, con trỏ phải phân xử bằng id
+        jdbcTemplate.update("INSERT INTO traffic_metrics (camera_id, district, total_count, timestamp) " +
+                "SELECT 'cam-' || (g % 50), 'Quận 1', 1, ?::timestamptz + (g / 50) * interval '1 second' " +
+                "FROM generate_series(0, ?) g", OffsetDateTime.ofInstant(DAY, ZoneOffset.UTC), ROWS - 1);
+        jdbcTemplate.execute("ANALYZE traffic_metrics");
+    }
+
+    @Test
+    void cursorIsAnIndexBoundNotAFilter() {
+        Long afterId = jdbcTemplate.queryForObject(
+                "SELECT id FROM traffic_metrics ORDER BY timestamp, id OFFSET 40000 LIMIT 1", Long.class);
+        OffsetDateTime afterTimestamp = jdbcTemplate.queryForObject(
+                "SELECT timestamp FROM traffic_metrics WHERE id = ?", OffsetDateTime.class, afterId);
+
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("start", OffsetDateTime.ofInstant(DAY, ZoneOffset.UTC))
+                .addValue("end", OffsetDateTime.ofInstant(DAY.plus(1, ChronoUnit.DAYS), ZoneOffset.UTC))
+                .addValue("cameraId", null, java.sql.Types.VARCHAR)
+                .addValue("afterTimestamp", afterTimestamp)
+                .addValue("afterId", afterId)
+                .addValue("limit", 100);
+        List<String> plan = namedJdbc.queryForList(
+                "EXPLAIN (ANALYZE, COSTS OFF) " + TrafficMetricRepository.PAGE_AFTER_SQL, params, String.class);
+        String text = String.join("\n", plan);
+
+        assertThat(text).contains("Index Scan using idx_traffic_time_id");
+        assertThat(plan).anySatisfy(line -> assertThat(line).contains("Index Cond").contains("ROW("));
+        // Trang ở offset 40000 không được phải đọc rồi bỏ 40000 dòng phía trước
+        assertThat(text).doesNotContain("Rows Removed by Filter");
+    }
+
+    @Test
+    void walkingAllPagesReturnsEveryRowOnce() {
+        List<Long> seen = new ArrayList<>();
+        Instant afterTimestamp = DAY;
+        long afterId = -1L;
+        while (true) {
+            List<TrafficMetric> page = repository.findPageAfter(DAY, DAY.plus(1, ChronoUnit.DAYS), null,
+                    afterTimestamp, afterId, 5_000);
+            if (page.isEmpty()) break;
+            page.forEach(m -> seen.add(m.getId()));
+            TrafficMetric last = page.get(page.size() - 1);
+            afterTimestamp = last.getTimestamp();
+            afterId = last.getId();
+        }
+
+        assertThat(seen).hasSize(ROWS).doesNotHaveDuplicates();
+    }
+}
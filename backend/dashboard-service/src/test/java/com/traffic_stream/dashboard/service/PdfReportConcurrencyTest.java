@@ -0,0 +1,178 @@
+package com.traffic_stream.dashboard.service;
+
+import com.traffic_stream.dashboard.dto.report.ReportAnalysisDTO;
+import com.traffic_stream.dashboard.dto.report.ReportAnalysisDTO.*;
+import com.traffic_stream.dashboard.entity.ReportJob;
+import com.traffic_stream.dashboard.shared.utils.MinioEndpointUtils;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDResources;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+import org.apache.pdfbox.text.PDFTextStripper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 20 báo cáo dựng song song trên cùng singleton PdfReportService/PdfBuilderService: mỗi PDF phải giữ
+ * đúng tiêu đề của mình và số "Trang N" liên tục — trước PdfRenderContext, font và bộ đếm trang bị
+ * chia sẻ nên các báo cáo chạy cùng lúc lẫn trang của nhau.
+ */
+class PdfReportConcurrencyTest {
+
+    private static final int REPORTS = 20;
+    private static final Instant T0 = Instant.parse("2025-01-01T00:00:00Z");
+
+    @TempDir
+    Path tempDir;
+
+    private AnnotatedImagePrefetcher prefetcher;
+    private PdfReportService reportService;
+    private List<String> imageUrls;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        PdfBuilderService builder = new PdfBuilderService();
+        ReflectionTestUtils.setField(builder, "chartScale", 1);
+        builder.locateFonts();
+
+        MinioEndpointUtils minio = new MinioEndpointUtils();
+        ReflectionTestUtils.setField(minio, "internalEndpoint", "http://minio:9000");
+        ReflectionTestUtils.setField(minio, "publicEndpoint", "http://localhost:9000");
+
+        ImageUrlResolverService urlResolver = new ImageUrlResolverService();
+        ReflectionTestUtils.setField(urlResolver, "frontendHost", "localhost");
+        ReflectionTestUtils.setField(urlResolver, "backendHost", "host.docker.internal");
+        ReflectionTestUtils.setField(urlResolver, "frontendPort", "3000");
+        ReflectionTestUtils.setField(urlResolver, "backendPort", "3000");
+
+        prefetcher = new AnnotatedImagePrefetcher(urlResolver, new SimpleMeterRegistry(), 4, 32L << 20, 40_000);
+        reportService = new PdfReportService(builder, minio, prefetcher);
+
+        imageUrls = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            File image = tempDir.resolve("frame-" + i + ".png").toFile();
+            ImageIO.write(new BufferedImage(640, 360, BufferedImage.TYPE_INT_RGB), "png", image);
+            imageUrls.add(image.toURI().toString());
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        prefetcher.shutdown();
+    }
+
+    @Test
+    void concurrentReportsKeepTheirOwnTitleAndPageNumbers() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(REPORTS, r -> {
+            Thread t = new Thread(r, "report-worker");
+            t.setDaemon(true);
+            return t;
+        });
+        try {
+            List<Future<byte[]>> results = new ArrayList<>();
+            for (int r = 0; r < REPORTS; r++) {
+                final int report = r;
+                results.add(pool.submit(() -> reportService.generatePdfReport(
+                        ReportJob.builder().id((long) report).build(), analysis(report))));
+            }
+
+            for (int r = 0; r < REPORTS; r++) {
+                byte[] pdf = results.get(r).get(120, TimeUnit.SECONDS);
+                try (PDDocument document = Loader.loadPDF(pdf)) {
+                    PDFTextStripper stripper = new PDFTextStripper();
+                    assertThat(stripper.getText(document)).as("report %d title", r).contains("Báo cáo số " + r);
+
+                    // Ảnh minh họa được prefetcher nén JPEG, biểu đồ nhúng lossless: đếm ảnh JPEG là đếm ảnh minh họa
+                    assertThat(jpegImages(document)).as("report %d annotated images", r).isEqualTo(imageUrls.size());
+
+                    assertThat(document.getNumberOfPages()).isGreaterThan(1);
+                    for (int page = 2; page <= document.getNumberOfPages(); page++) {
+                        stripper.setStartPage(page);
+                        stripper.setEndPage(page);
+                        assertThat(stripper.getText(document)).as("report %d page %d", r, page)
+                                .contains("Trang " + page);
+                    }
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static int jpegImages(PDDocument document) throws IOException {
+        int count = 0;
+        for (PDPage page : document.getPages()) {
+            PDResources resources = page.getResources();
+            for (COSName name : resources.getXObjectNames()) {
+                if (resources.getXObject(name) instanceof PDImageXObject image && "jpg".equals(image.getSuffix())) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    private ReportAnalysisDTO analysis(int report) {
+        List<DistrictAnalysis> districts = new ArrayList<>();
+        for (int i = 0; i < 12; i++) {
+            districts.add(DistrictAnalysis.builder().districtName("Quận " + i).totalVehicles(1000L * i + report)
+                    .percentage(8.3).activeCameras(3).avgVehiclesPerCamera(33.3).build());
+        }
+        List<CameraAnalysis> cameras = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            cameras.add(CameraAnalysis.builder().cameraId("CAM" + i).cameraName("Ngã tư " + i)
+                    .district("Quận " + (i % 12)).totalVehicles(100L * i).avgVehicles(3.0)
+                    .isActive(i % 5 != 0).hasAnomaly(i % 7 == 0).anomalyType("SURGE").build());
+        }
+        List<TimelineData> timeline = new ArrayList<>();
+        for (int i = 0; i < 48; i++) {
+            timeline.add(TimelineData.builder().timestamp(T0.plusSeconds(1800L * i))
+                    .totalVehicles(500L + (long) i * report).build());
+        }
+        List<AnnotatedImageInfo> images = new ArrayList<>();
+        for (int i = 0; i < imageUrls.size(); i++) {
+            images.add(AnnotatedImageInfo.builder().cameraId("CAM" + i).cameraName("Ngã tư " + i)
+                    .imageUrl(imageUrls.get(i)).timestamp(T0).vehicleCount(i).build());
+        }
+
+        return ReportAnalysisDTO.builder()
+                .reportTitle("Báo cáo số " + report)
+                .startTime(T0).endTime(T0.plusSeconds(86_400)).intervalMinutes(30)
+                .totalCameras(30).activeCameras(24).offlineCameras(6)
+                .totalVehicles(123_456L).avgVehiclesPerCamera(4115.2)
+                .vehicleTypePercentages(Map.of("car", 60.0, "motorcycle", 40.0))
+                .busiestDistrict("Quận 1").quietestDistrict("Quận 2")
+                .busiestCamera("CAM1").quietestCamera("CAM2")
+                .districtAnalyses(districts).cameraAnalyses(cameras).timelineData(timeline)
+                .peakHour(T0).peakHourVolume(900L).offPeakHour(T0).offPeakHourVolume(10L)
+                .vehicleTypeCounts(Map.of("car", 600L, "motorcycle", 400L, "truck", 50L))
+                .offlineCameraList(List.of("CAM0", "CAM5"))
+                .anomalies(List.of(AnomalyEvent.builder().cameraId("CAM7").cameraName("Ngã tư 7")
+                        .type("TRAFFIC_SURGE").description("Tăng đột biến").detectedAt(T0).severity(0.8).build()))
+                .annotatedImages(images)
+                .conclusions(List.of("Kết luận " + report, "Giao thông ổn định"))
+                .build();
+    }
+}
@@ -0,0 +1,65 @@
+package com.traffic_stream.dashboard.service;
+
+import com.traffic_stream.dashboard.config.MinioBucketProperties;
+import com.traffic_stream.dashboard.entity.ReportJob;
+import com.traffic_stream.dashboard.repository.ReportCacheRepository;
+import com.traffic_stream.dashboard.service.registry.CameraRegistry;
+import com.traffic_stream.dashboard.service.rollup.TrafficRollupService;
+import com.traffic_stream.dashboard.service.storage.MinioStorageService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class ReportResultCacheTest {
+
+    private static final Instant END = Instant.now().truncatedTo(ChronoUnit.HOURS).minus(1, ChronoUnit.HOURS);
+
+    private TrafficRollupService rollupService;
+    private CameraRegistry cameraRegistry;
+    private ReportResultCache cache;
+
+    @BeforeEach
+    void setUp() {
+        rollupService = mock(TrafficRollupService.class);
+        cameraRegistry = mock(CameraRegistry.class);
+        cache = new ReportResultCache(mock(ReportCacheRepository.class), rollupService, cameraRegistry,
+                mock(MinioStorageService.class), mock(MinioBucketProperties.class));
+        ReflectionTestUtils.setField(cache, "enabled", true);
+        cache.onRollupsReady();
+    }
+
+    @Test
+    void districtJobIsNotCachedWhileRegistryIsLoading() {
+        when(cameraRegistry.isReady()).thenReturn(false);
+
+        assertThat(cache.keyOf(job(List.of("Quận 1")))).isEmpty();
+        verify(rollupService, never()).sumByKey(any(), any(), any(), any());
+    }
+
+    @Test
+    void jobWithoutDistrictFilterDoesNotNeedRegistry() {
+        when(cameraRegistry.isReady()).thenReturn(false);
+        when(rollupService.sumByKey(any(), any(), any(), any())).thenReturn(List.of());
+
+        assertThat(cache.keyOf(job(null))).isPresent();
+    }
+
+    private static ReportJob job(List<String> districts) {
+        return ReportJob.builder()
+                .id(1L)
+                .name("Báo cáo tuần")
+                .startTime(END.minus(7, ChronoUnit.DAYS))
+                .endTime(END)
+                .intervalMinutes(60)
+                .districts(districts)
+                .build();
+    }
+}
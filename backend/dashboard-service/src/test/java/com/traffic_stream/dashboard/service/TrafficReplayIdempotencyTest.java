@@ -0,0 +1,145 @@
+package com.traffic_stream.dashboard.service;
+
+import com.traffic_stream.dashboard.PostgresIntegrationTest;
+import com.traffic_stream.dashboard.dto.ReplayResultDTO;
+import com.traffic_stream.dashboard.dto.TrafficMetricsDTO;
+import com.traffic_stream.dashboard.service.replay.TrafficMetricsReplayService;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Replay cùng một batch 2 lần (redelivery Kafka, replay DLT, POST /api/admin/replay) không được sinh bản ghi
+ * trùng hay cộng rollup 2 lần: natural key uk_traffic_camera_time + ON CONFLICT DO NOTHING.
+ * Listener chính bị dừng để chỉ công cụ replay đọc topic của broker nhúng.
+ */
+@EmbeddedKafka(partitions = 1, topics = "${spring.kafka.topic.name}")
+class TrafficReplayIdempotencyTest extends PostgresIntegrationTest {
+
+    @Autowired
+    private TrafficService trafficService;
+
+    @Autowired
+    private TrafficMetricsReplayService replayService;
+
+    @Autowired
+    private KafkaTemplate<String, Object> metricsRetryKafkaTemplate;
+
+    @Autowired
+    private KafkaListenerEndpointRegistry listenerRegistry;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Value("${spring.kafka.topic.name}")
+    private String topic;
+
+    @BeforeEach
+    void cleanTables() {
+        listenerRegistry.stop();
+        jdbcTemplate.execute("TRUNCATE traffic_metrics, traffic_rollup_camera_minute, traffic_rollup_camera_hour, " +
+                "traffic_rollup_district_minute, traffic_rollup_district_hour");
+    }
+
+    @Test
+    void replayingSameBatchTwiceIsIdempotent() {
+        List<TrafficMetricsDTO> batch = batch(Instant.now().truncatedTo(ChronoUnit.MINUTES).minus(10, ChronoUnit.MINUTES));
+
+        int first = trafficService.persistMetricsBatch(batch);
+        long rowsAfterFirst = count("traffic_metrics");
+        long rollupTotalAfterFirst = rollupTotal();
+
+        int second = trafficService.persistMetricsBatch(batch(batch.get(0).getTimestamp()));
+
+        assertThat(first).isEqualTo(batch.size());
+        assertThat(second).isZero();
+        assertThat(count("traffic_metrics")).isEqualTo(rowsAfterFirst).isEqualTo(batch.size());
+        assertThat(rollupTotal()).isEqualTo(rollupTotalAfterFirst).isEqualTo(expectedTotal(batch));
+    }
+
+    @Test
+    void replayingSameRangeFromKafkaTwiceIsIdempotent() throws Exception {
+        Instant start = Instant.now().truncatedTo(ChronoUnit.MINUTES).minus(30, ChronoUnit.MINUTES);
+        List<TrafficMetricsDTO> batch = batch(start);
+        for (TrafficMetricsDTO dto : batch) {
+            // Timestamp Kafka = timestamp của bản ghi, replay chọn khoảng theo timestamp Kafka
+            metricsRetryKafkaTemplate.send(new ProducerRecord<>(topic, null, dto.getTimestamp(), dto.getCameraId(), dto))
+                    .get(10, TimeUnit.SECONDS);
+        }
+        Instant to = start.plus(1, ChronoUnit.MINUTES);
+
+        ReplayResultDTO first = replayService.replay(start, to);
+        long rowsAfterFirst = count("traffic_metrics");
+        long rollupTotalAfterFirst = rollupTotal();
+
+        ReplayResultDTO second = replayService.replay(start, to);
+
+        assertThat(first.getRecordsRead()).isEqualTo(batch.size());
+        assertThat(first.getInserted()).isEqualTo(batch.size());
+        assertThat(second.getRecordsRead()).isEqualTo(batch.size());
+        assertThat(second.getInserted()).isZero();
+        assertThat(second.getDuplicatesSkipped()).isEqualTo(batch.size());
+        assertThat(count("traffic_metrics")).isEqualTo(rowsAfterFirst).isEqualTo(batch.size());
+        assertThat(rollupTotal()).isEqualTo(rollupTotalAfterFirst).isEqualTo(expectedTotal(batch));
+    }
+
+    @Test
+    void naturalKeyReplacesLegacyCameraTimeIndex() {
+        List<String> indexes = jdbcTemplate.queryForList(
+                "SELECT indexname FROM pg_indexes WHERE tablename = 'traffic_metrics'", String.class);
+
+        assertThat(indexes).contains("uk_traffic_camera_time").doesNotContain("idx_traffic_camera_time");
+    }
+
+    private List<TrafficMetricsDTO> batch(Instant start) {
+        return batch(start.toEpochMilli());
+    }
+
+    private List<TrafficMetricsDTO> batch(long startMillis) {
+        List<TrafficMetricsDTO> list = new ArrayList<>();
+        for (int cam = 0; cam < 5; cam++) {
+            for (int i = 0; i < 4; i++) {
+                TrafficMetricsDTO dto = new TrafficMetricsDTO();
+                dto.setCameraId("replay-cam-" + cam);
+                dto.setCameraName("Replay camera " + cam);
+                dto.setDistrict("Quận 1");
+                dto.setCoordinates(List.of(106.70 + cam * 0.001, 10.77));
+                dto.setDetectionDetails(Map.of("car", 2 + i, "motorcycle", 5));
+                dto.setTotalCount(7 + i);
+                dto.setTimestamp(startMillis + i * 15_000L);
+                list.add(dto);
+            }
+        }
+        return list;
+    }
+
+    private long expectedTotal(List<TrafficMetricsDTO> batch) {
+        return batch.stream().mapToLong(TrafficMetricsDTO::getTotalCount).sum();
+    }
+
+    private long count(String table) {
+        Long n = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM " + table, Long.class);
+        return n != null ? n : 0;
+    }
+
+    private long rollupTotal() {
+        Long n = jdbcTemplate.queryForObject(
+                "SELECT COALESCE(SUM(total_count), 0) FROM traffic_rollup_camera_minute", Long.class);
+        return n != null ? n : 0;
+    }
+}
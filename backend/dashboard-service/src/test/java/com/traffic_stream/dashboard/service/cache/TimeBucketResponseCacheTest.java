@@ -0,0 +1,133 @@
+package com.traffic_stream.dashboard.service.cache;
+
+import com.traffic_stream.dashboard.service.rollup.RollupsRebuiltEvent;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class TimeBucketResponseCacheTest {
+
+    private static final Instant CLOSED_HOUR = Instant.now().truncatedTo(ChronoUnit.HOURS).minus(3, ChronoUnit.HOURS);
+
+    private final TimeBucketResponseCache cache = new TimeBucketResponseCache(10_000, 5, 120, new SimpleMeterRegistry());
+
+    @Test
+    void concurrentMissesOnSameBucketRunLoaderOnce() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(32);
+        try {
+            List<Future<Long>> results = new ArrayList<>();
+            for (int i = 0; i < 32; i++) {
+                // Mỗi request lệch vài giây nhưng cùng bucket giờ → cùng key
+                Instant from = CLOSED_HOUR.plusSeconds(i);
+                results.add(pool.submit(() -> cache.get("hourly-series", ChronoUnit.HOURS, from, from.plusSeconds(1800),
+                        List.of(), () -> {
+                            loads.incrementAndGet();
+                            await(release);
+                            return 42L;
+                        })));
+            }
+            Thread.sleep(200);
+            release.countDown();
+            for (Future<Long> f : results) {
+                assertThat(f.get(5, TimeUnit.SECONDS)).isEqualTo(42L);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        assertThat(loads.get()).isEqualTo(1);
+    }
+
+    @Test
+    void failedLoadIsPropagatedToWaitersAndNotCached() {
+        assertThatThrownBy(() -> cache.get("minute-series", ChronoUnit.MINUTES, CLOSED_HOUR, CLOSED_HOUR.plusSeconds(600),
+                List.of(), () -> {
+                    throw new IllegalArgumentException("bad range");
+                })).isInstanceOf(IllegalArgumentException.class);
+
+        Long value = cache.get("minute-series", ChronoUnit.MINUTES, CLOSED_HOUR, CLOSED_HOUR.plusSeconds(600),
+                List.of(), () -> 7L);
+        assertThat(value).isEqualTo(7L);
+    }
+
+    /**
+     * Tải giả lập: 500 client dashboard đồng thời × 20 request vào 12 khoảng (mỗi client lệch vài giây),
+     * loader mô phỏng truy vấn DB 20ms. Đếm số truy vấn thật so với số request.
+     */
+    @Test
+    void loadTestDatabaseQueriesPerRequest() throws Exception {
+        int clients = 500;
+        int requestsPerClient = 20;
+        int ranges = 12;
+        AtomicInteger dbQueries = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(clients);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int c = 0; c < clients; c++) {
+                int client = c;
+                futures.add(pool.submit(() -> {
+                    for (int r = 0; r < requestsPerClient; r++) {
+                        int range = (client + r) % ranges;
+                        Instant from = CLOSED_HOUR.minus(range, ChronoUnit.HOURS).plusSeconds(client);
+                        cache.get("hourly-series", ChronoUnit.HOURS, from, from.plus(30, ChronoUnit.MINUTES),
+                                List.of("Quận 1"), () -> {
+                                    dbQueries.incrementAndGet();
+                                    sleep(20);
+                                    return range;
+                                });
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> f : futures) f.get(60, TimeUnit.SECONDS);
+        } finally {
+            pool.shutdownNow();
+        }
+
+        // Mỗi khoảng chỉ được tính đúng 1 lần dù các client trượt cache cùng lúc (không cache: 1 truy vấn / request)
+        assertThat(dbQueries.get()).isEqualTo(ranges);
+    }
+
+    @Test
+    void rebuiltRollupsInvalidateOverlappingClosedEntries() {
+        Instant inside = CLOSED_HOUR.minus(2, ChronoUnit.HOURS);
+        Instant outside = CLOSED_HOUR.minus(6, ChronoUnit.HOURS);
+        cache.get("hourly-series", ChronoUnit.HOURS, inside, inside.plus(1, ChronoUnit.HOURS), List.of(), () -> 1L);
+        cache.get("hourly-series", ChronoUnit.HOURS, outside, outside.plus(1, ChronoUnit.HOURS), List.of(), () -> 1L);
+
+        cache.onRollupsRebuilt(new RollupsRebuiltEvent(CLOSED_HOUR.minus(3, ChronoUnit.HOURS), CLOSED_HOUR));
+
+        Long rebuilt = cache.get("hourly-series", ChronoUnit.HOURS, inside, inside.plus(1, ChronoUnit.HOURS),
+                List.of(), () -> 2L);
+        Long untouched = cache.get("hourly-series", ChronoUnit.HOURS, outside, outside.plus(1, ChronoUnit.HOURS),
+                List.of(), () -> 2L);
+        assertThat(rebuilt).isEqualTo(2L);
+        assertThat(untouched).isEqualTo(1L);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void sleep(long ms) {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
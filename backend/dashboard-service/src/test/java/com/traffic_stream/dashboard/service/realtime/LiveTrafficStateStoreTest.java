@@ -0,0 +1,68 @@
+package com.traffic_stream.dashboard.service.realtime;
+
+import com.traffic_stream.dashboard.dto.TrafficMetricsDTO;
+import com.traffic_stream.dashboard.repository.TrafficMetricRepository;
+import com.traffic_stream.dashboard.service.registry.CameraRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+class LiveTrafficStateStoreTest {
+
+    private TrafficMetricRepository repository;
+    private LiveTrafficStateStore store;
+
+    @BeforeEach
+    void setUp() {
+        repository = mock(TrafficMetricRepository.class);
+        store = new LiveTrafficStateStore(repository, mock(CameraRegistry.class));
+    }
+
+    @Test
+    void coldStartBatchLooksUpMaxCountsOnceForAllUnseenCameras() {
+        // Chưa warm-up: max trong DB của cam-0 là 90, các camera khác chưa có bản ghi
+        when(repository.findMaxCountsByCameraIds(anyList()))
+                .thenReturn(List.<Object[]>of(new Object[]{"cam-0", 90}));
+        List<TrafficMetricsDTO> batch = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            batch.add(dto("cam-" + (i % 25), 10 + i));
+        }
+
+        store.stampMaxCounts(batch);
+
+        verify(repository, times(1)).findMaxCountsByCameraIds(argThat(ids -> ids.size() == 25));
+        verify(repository, never()).findMaxCountByCameraId(anyString());
+        assertThat(batch.get(0).getMaxCount()).isEqualTo(90);
+        // cam-1 xuất hiện 2 lần trong batch: lần sau mang max của lần trước
+        assertThat(batch.get(1).getMaxCount()).isEqualTo(11);
+        assertThat(batch.get(26).getMaxCount()).isEqualTo(36);
+    }
+
+    @Test
+    void applyLooksUpOnlyCamerasNotYetInMemory() {
+        when(repository.findMaxCountsByCameraIds(anyList())).thenReturn(List.of());
+        store.apply(List.of(dto("cam-a", 5), dto("cam-b", 7)));
+
+        store.apply(List.of(dto("cam-a", 6), dto("cam-c", 1)));
+
+        verify(repository).findMaxCountsByCameraIds(List.of("cam-a", "cam-b"));
+        verify(repository).findMaxCountsByCameraIds(List.of("cam-c"));
+        verify(repository, never()).findMaxCountByCameraId(anyString());
+    }
+
+    private static TrafficMetricsDTO dto(String cameraId, int total) {
+        TrafficMetricsDTO dto = new TrafficMetricsDTO();
+        dto.setCameraId(cameraId);
+        dto.setDistrict("Quận 1");
+        dto.setTotalCount(total);
+        dto.setTimestamp(1_700_000_000_000L + total);
+        return dto;
+    }
+}
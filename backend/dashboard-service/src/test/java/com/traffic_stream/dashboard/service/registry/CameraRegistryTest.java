@@ -0,0 +1,46 @@
+package com.traffic_stream.dashboard.service.registry;
+
+import com.traffic_stream.dashboard.repository.CameraRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class CameraRegistryTest {
+
+    private final CameraRepository cameraRepository = mock(CameraRepository.class);
+    private final TransactionTemplate transactionTemplate = mock(TransactionTemplate.class);
+    private final CameraRegistry registry = new CameraRegistry(cameraRepository, mock(JdbcTemplate.class),
+            transactionTemplate, mock(ApplicationEventPublisher.class), 60);
+
+    CameraRegistryTest() {
+        when(transactionTemplate.execute(any())).thenAnswer(inv -> ((TransactionCallback<?>) inv.getArgument(0)).doInTransaction(null));
+        when(cameraRepository.findAll()).thenReturn(List.of());
+    }
+
+    @Test
+    void backfillRunsWhenTableWasEmptyAtStartupEvenIfIngestInsertedCamerasSince() {
+        when(cameraRepository.count()).thenReturn(0L, 3L);
+
+        registry.checkBackfill();   // trước khi Kafka listener chạy: bảng rỗng
+        registry.load();            // ApplicationReadyEvent: ingest đã ghi 3 camera
+
+        verify(cameraRepository).backfillFromMetrics();
+    }
+
+    @Test
+    void noBackfillWhenTableAlreadyPopulated() {
+        when(cameraRepository.count()).thenReturn(120L);
+
+        registry.checkBackfill();
+        registry.load();
+
+        verify(cameraRepository, never()).backfillFromMetrics();
+    }
+}
@@ -0,0 +1,104 @@
+package com.traffic_stream.dashboard.service.replay;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.traffic_stream.dashboard.consumer.TrafficConsumerMetrics;
+import com.traffic_stream.dashboard.dto.DeadLetterReplayResultDTO;
+import com.traffic_stream.dashboard.dto.TrafficMetricsDTO;
+import com.traffic_stream.dashboard.service.TrafficService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.consumer.OffsetResetStrategy;
+import org.apache.kafka.common.Node;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+class DeadLetterReplayServiceTest {
+
+    private static final String RETRY_DLT = "metrics-retry-dlt";
+    private static final String DESERIALIZATION_DLT = "metrics-dlt";
+    private static final TopicPartition RETRY_DLT_0 = new TopicPartition(RETRY_DLT, 0);
+    private static final TopicPartition DESERIALIZATION_DLT_0 = new TopicPartition(DESERIALIZATION_DLT, 0);
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private TrafficService trafficService;
+    private MockConsumer<String, byte[]> kafka;
+    private DeadLetterReplayService replayService;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        trafficService = mock(TrafficService.class);
+        when(trafficService.persistMetricsBatch(anyList())).thenAnswer(inv -> ((List<?>) inv.getArgument(0)).size());
+
+        // close() no-op để còn đọc được offset đã commit sau khi replay đóng consumer
+        kafka = new MockConsumer<>(OffsetResetStrategy.EARLIEST) {
+            @Override
+            public synchronized void close() {
+            }
+        };
+        kafka.updatePartitions(RETRY_DLT, List.of(partition(RETRY_DLT)));
+        kafka.updatePartitions(DESERIALIZATION_DLT, List.of(partition(DESERIALIZATION_DLT)));
+        kafka.updateBeginningOffsets(Map.of(RETRY_DLT_0, 0L, DESERIALIZATION_DLT_0, 0L));
+
+        replayService = new DeadLetterReplayService(trafficService, mock(KafkaTemplate.class),
+                new TrafficConsumerMetrics(new SimpleMeterRegistry()), objectMapper) {
+            @Override
+            Consumer<String, byte[]> createConsumer() {
+                return kafka;
+            }
+        };
+        ReflectionTestUtils.setField(replayService, "retryDlt", RETRY_DLT);
+        ReflectionTestUtils.setField(replayService, "deserializationDlt", DESERIALIZATION_DLT);
+        ReflectionTestUtils.setField(replayService, "sendTimeoutMs", 1000L);
+    }
+
+    @Test
+    void recordsBeyondTheSnapshotAreNotCommitted() throws Exception {
+        // Snapshot lúc bắt đầu: DLT có 5 record. 3 record nữa vào DLT trong lúc replay chạy
+        // và được trả về cùng lần poll đầu tiên.
+        kafka.updateEndOffsets(Map.of(RETRY_DLT_0, 5L, DESERIALIZATION_DLT_0, 0L));
+        List<ConsumerRecord<String, byte[]>> parked = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            parked.add(record(i));
+        }
+        kafka.schedulePollTask(() -> parked.forEach(kafka::addRecord));
+
+        DeadLetterReplayResultDTO result = replayService.replay();
+
+        assertThat(result.getRecordsRead()).isEqualTo(5);
+        assertThat(result.getInserted()).isEqualTo(5);
+        // Chỉ commit tới điểm dừng: offset 5..7 vẫn nằm trong DLT cho lần replay sau
+        Map<TopicPartition, OffsetAndMetadata> committed = kafka.committed(Set.of(RETRY_DLT_0));
+        assertThat(committed.get(RETRY_DLT_0).offset()).isEqualTo(5L);
+        verify(trafficService).persistMetricsBatch(argThat(batch -> batch.size() == 5
+                && batch.stream().map(TrafficMetricsDTO::getCameraId).toList()
+                        .equals(List.of("cam-0", "cam-1", "cam-2", "cam-3", "cam-4"))));
+    }
+
+    private ConsumerRecord<String, byte[]> record(int offset) throws Exception {
+        TrafficMetricsDTO dto = new TrafficMetricsDTO();
+        dto.setCameraId("cam-" + offset);
+        dto.setTimestamp(1_700_000_000_000L + offset);
+        return new ConsumerRecord<>(RETRY_DLT, 0, offset, dto.getCameraId(), objectMapper.writeValueAsBytes(dto));
+    }
+
+    private static PartitionInfo partition(String topic) {
+        return new PartitionInfo(topic, 0, Node.noNode(), new Node[0], new Node[0]);
+    }
+}
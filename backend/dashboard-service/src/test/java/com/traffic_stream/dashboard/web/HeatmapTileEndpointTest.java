@@ -0,0 +1,60 @@
+package com.traffic_stream.dashboard.web;
+
+import com.traffic_stream.dashboard.service.TrafficService;
+import com.traffic_stream.dashboard.service.export.TrafficMetricExportService;
+import com.traffic_stream.dashboard.service.heatmap.HeatmapTileService;
+import com.traffic_stream.dashboard.shared.exception.ServiceUnavailableException;
+import com.traffic_stream.dashboard.shared.utils.FormatRestResponse;
+import com.traffic_stream.dashboard.shared.utils.handler.GlobalException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+/**
+ * Tile heatmap phải đi qua FormatRestResponse nguyên vẹn (không bị bọc ApiResponse); danh mục camera
+ * chưa nạp xong thì trả 503 + Retry-After thay vì 400.
+ */
+class HeatmapTileEndpointTest {
+
+    private final HeatmapTileService heatmapTileService = mock(HeatmapTileService.class);
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    void setUp() {
+        TrafficController controller = new TrafficController(mock(TrafficService.class),
+                mock(TrafficMetricExportService.class), heatmapTileService);
+        mockMvc = MockMvcBuilders.standaloneSetup(controller)
+                .setControllerAdvice(new FormatRestResponse(), new GlobalException())
+                .build();
+    }
+
+    @Test
+    void tileIsReturnedAsRawVarintStream() throws Exception {
+        // size = 2, max = 300 (varint 0xAC 0x02), run (3 ô, 0) rồi (1 ô, 300)
+        byte[] tile = {2, (byte) 0xAC, 0x02, 3, 0, 1, (byte) 0xAC, 0x02};
+        when(heatmapTileService.getTile(12, 3249, 1923, "2025-12-01", 8)).thenReturn(tile);
+
+        mockMvc.perform(get("/api/traffic/heatmap/12/3249/1923").param("date", "2025-12-01").param("hour", "8"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_OCTET_STREAM))
+                .andExpect(content().bytes(tile));
+    }
+
+    @Test
+    void registryStillLoadingReturns503WithRetryAfter() throws Exception {
+        when(heatmapTileService.getTile(12, 3249, 1923, null, null))
+                .thenThrow(new ServiceUnavailableException("Camera registry is still loading, please retry shortly", 5));
+
+        mockMvc.perform(get("/api/traffic/heatmap/12/3249/1923"))
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(header().string(HttpHeaders.RETRY_AFTER, "5"));
+    }
+}